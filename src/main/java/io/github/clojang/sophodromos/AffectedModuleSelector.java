@@ -0,0 +1,262 @@
+package io.github.clojang.sophodromos;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.execution.ProjectDependencyGraph;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Determines which reactor modules are affected by the changes since a git base ref. A module is
+ * affected when it contains a changed file or depends, directly or transitively, on a module that
+ * does. The outcome is stored in the session user properties so that the execution listener and
+ * every module's mojo execution share a single computation.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn", "PMD.GuardLogStatement"})
+class AffectedModuleSelector {
+
+  /** User property naming the git ref to compare against. */
+  protected static final String BASE_REF_PROPERTY = "sophodromos.changedSince";
+
+  private static final String COMPUTED_KEY = "sophodromos.affected.computed";
+  private static final String SUMMARY_KEY = "sophodromos.affected.summary";
+  private static final String UNAFFECTED_PREFIX = "sophodromos.unaffected.";
+  private static final String TRUE_VALUE = "true";
+
+  private final MavenSession session;
+  private final Log log;
+
+  /**
+   * Constructs a new AffectedModuleSelector.
+   *
+   * @param session the Maven session
+   * @param log Maven logger
+   */
+  protected AffectedModuleSelector(final MavenSession session, final Log log) {
+    this.session = session;
+    this.log = log;
+  }
+
+  /**
+   * Computes the affected modules once per session. When the changes cannot be determined, for
+   * example because the base ref does not exist, every module is treated as affected.
+   *
+   * @param baseRef the git ref to compare the working tree against
+   */
+  protected void selectAffectedModules(final String baseRef) {
+    final Properties userProperties = session.getUserProperties();
+    synchronized (userProperties) {
+      if (TRUE_VALUE.equals(userProperties.getProperty(COMPUTED_KEY))) {
+        return;
+      }
+      userProperties.setProperty(COMPUTED_KEY, TRUE_VALUE);
+
+      final List<MavenProject> projects = session.getProjects();
+      final Set<MavenProject> affected;
+      try {
+        affected = findAffectedModules(projects, findChangedFiles(baseRef));
+      } catch (final IOException e) {
+        if (log.isWarnEnabled()) {
+          log.warn("Could not determine changes since " + baseRef + ", testing all modules: " + e);
+        }
+        return;
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      for (final MavenProject project : projects) {
+        if (!affected.contains(project)) {
+          userProperties.setProperty(UNAFFECTED_PREFIX + getModuleId(project), TRUE_VALUE);
+        }
+      }
+      userProperties.setProperty(
+          SUMMARY_KEY,
+          affected.size()
+              + " of "
+              + projects.size()
+              + " modules affected by changes since "
+              + baseRef);
+    }
+  }
+
+  /**
+   * Checks whether a module was found to be unaffected by the changes.
+   *
+   * @param project the module
+   * @return true if the module's tests can be skipped
+   */
+  protected boolean isUnaffected(final MavenProject project) {
+    return TRUE_VALUE.equals(
+        session.getUserProperties().getProperty(UNAFFECTED_PREFIX + getModuleId(project)));
+  }
+
+  /**
+   * Gets a one-line description of the selection, if one was made.
+   *
+   * @return the summary, or null if every module is tested
+   */
+  protected String getSummary() {
+    return session.getUserProperties().getProperty(SUMMARY_KEY);
+  }
+
+  /**
+   * Maps changed files to the modules containing them and adds every downstream module. Files are
+   * attributed to the module with the longest matching base directory. Only the POM of a module
+   * with pom packaging counts, so that documentation or CI files next to an aggregator do not mark
+   * every child module as affected.
+   *
+   * @param projects the reactor modules
+   * @param changedFiles absolute paths of the changed files
+   * @return the affected modules, in reactor order
+   */
+  protected Set<MavenProject> findAffectedModules(
+      final List<MavenProject> projects, final Collection<Path> changedFiles) {
+    final Set<MavenProject> changed = new LinkedHashSet<>();
+    for (final Path file : changedFiles) {
+      final MavenProject owner = findOwningModule(projects, file);
+      if (owner != null && (!"pom".equals(owner.getPackaging()) || isPomFile(owner, file))) {
+        changed.add(owner);
+      }
+    }
+
+    final Set<MavenProject> affected = new LinkedHashSet<>();
+    final ProjectDependencyGraph graph = session.getProjectDependencyGraph();
+    for (final MavenProject project : projects) {
+      if (changed.contains(project)) {
+        affected.add(project);
+        if (graph != null) {
+          affected.addAll(graph.getDownstreamProjects(project, true));
+        }
+      }
+    }
+    return affected;
+  }
+
+  private static MavenProject findOwningModule(final List<MavenProject> projects, final Path file) {
+    MavenProject owner = null;
+    int ownerDepth = -1;
+    for (final MavenProject project : projects) {
+      final Path basedir = normalize(project.getBasedir().toPath());
+      if (file.startsWith(basedir) && basedir.getNameCount() > ownerDepth) {
+        owner = project;
+        ownerDepth = basedir.getNameCount();
+      }
+    }
+    return owner;
+  }
+
+  private static boolean isPomFile(final MavenProject project, final Path file) {
+    return project.getFile() != null && normalize(project.getFile().toPath()).equals(file);
+  }
+
+  /**
+   * Lists committed, staged, unstaged and untracked changes since the working tree branched off the
+   * base ref. Commits made on the base ref after that point are not changes of this branch.
+   */
+  private List<Path> findChangedFiles(final String baseRef)
+      throws IOException, InterruptedException {
+    final Path workingDirectory = Paths.get(session.getExecutionRootDirectory());
+    final List<String> topLevel = git(workingDirectory, "rev-parse", "--show-toplevel");
+    if (topLevel.isEmpty()) {
+      throw new IOException("Not a git working tree: " + workingDirectory);
+    }
+    final Path repositoryRoot = normalize(Paths.get(topLevel.get(0)));
+    final String mergeBase = findMergeBase(repositoryRoot, baseRef);
+
+    final Set<String> relativePaths =
+        new LinkedHashSet<>(git(repositoryRoot, "diff", "--name-only", mergeBase, "--"));
+    relativePaths.addAll(
+        git(repositoryRoot, "ls-files", "--others", "--exclude-standard", "--full-name"));
+
+    final List<Path> changedFiles = new ArrayList<>();
+    for (final String relativePath : relativePaths) {
+      changedFiles.add(repositoryRoot.resolve(relativePath).normalize());
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Files changed since " + baseRef + ": " + changedFiles);
+    }
+    return changedFiles;
+  }
+
+  /**
+   * Resolves the commit the working tree branched off the base ref. The ref is resolved on its own
+   * first, after {@code --end-of-options}, so that a ref looking like an option cannot become one.
+   *
+   * @param repositoryRoot the root of the git working tree
+   * @param baseRef the configured base ref
+   * @return the merge base commit ID
+   * @throws IOException if the ref names no commit or shares no history with HEAD
+   */
+  protected static String findMergeBase(final Path repositoryRoot, final String baseRef)
+      throws IOException, InterruptedException {
+    final List<String> base =
+        git(repositoryRoot, "rev-parse", "--verify", "--end-of-options", baseRef + "^{commit}");
+    if (base.size() != 1) {
+      throw new IOException(baseRef + " names no commit");
+    }
+    final List<String> mergeBase = git(repositoryRoot, "merge-base", base.get(0), "HEAD");
+    if (mergeBase.size() != 1) {
+      throw new IOException(baseRef + " shares no history with HEAD");
+    }
+    return mergeBase.get(0);
+  }
+
+  private static List<String> git(final Path directory, final String... arguments)
+      throws IOException, InterruptedException {
+    final List<String> command = new ArrayList<>();
+    command.add("git");
+    // Print non-ASCII paths verbatim instead of as quoted octal escapes
+    command.add("-c");
+    command.add("core.quotePath=false");
+    command.addAll(List.of(arguments));
+    final Process process =
+        new ProcessBuilder(command)
+            .directory(directory.toFile())
+            .redirectError(ProcessBuilder.Redirect.DISCARD)
+            .start();
+
+    final List<String> lines = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      String line = reader.readLine();
+      while (line != null) {
+        if (!line.isBlank()) {
+          lines.add(line.trim());
+        }
+        line = reader.readLine();
+      }
+    }
+    final int exitCode = process.waitFor();
+    if (exitCode != 0) {
+      throw new IOException(String.join(" ", command) + " exited with " + exitCode);
+    }
+    return lines;
+  }
+
+  private static Path normalize(final Path path) {
+    final Path absolute = path.toAbsolutePath().normalize();
+    try {
+      return absolute.toRealPath();
+    } catch (final IOException e) {
+      // Deleted files have no real path, their lexical path is good enough
+      return absolute;
+    }
+  }
+
+  private static String getModuleId(final MavenProject project) {
+    return project.getGroupId() + ":" + project.getArtifactId();
+  }
+}
@@ -0,0 +1,111 @@
+package io.github.clojang.sophodromos;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Finds which of many literal patterns occur in a text in one pass over the text, however many
+ * patterns there are. The patterns are compiled into an Aho-Corasick automaton: a trie of the
+ * patterns whose nodes also link to the longest proper suffix that is a trie node, so that a
+ * mismatch falls back without rereading the text.
+ *
+ * <p>Every pattern carries flags, and a match reports the union of the flags of all patterns found,
+ * which is all that the output filter rules need to know.
+ */
+final class AhoCorasickMatcher {
+
+  private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+  private final int[] failureLinks;
+  private final int[] nodeFlags;
+  private final int allFlags;
+
+  /**
+   * Compiles the patterns into an automaton.
+   *
+   * @param patternFlags the flags of each pattern; empty patterns are ignored
+   */
+  protected AhoCorasickMatcher(final Map<String, Integer> patternFlags) {
+    transitions.add(new HashMap<>());
+    final List<Integer> flags = new ArrayList<>();
+    flags.add(0);
+    int union = 0;
+    for (final Map.Entry<String, Integer> pattern : patternFlags.entrySet()) {
+      if (!pattern.getKey().isEmpty()) {
+        final int node = addPattern(pattern.getKey(), flags);
+        flags.set(node, flags.get(node) | pattern.getValue());
+        union |= pattern.getValue();
+      }
+    }
+    this.allFlags = union;
+    this.nodeFlags = new int[transitions.size()];
+    for (int node = 0; node < nodeFlags.length; node++) {
+      nodeFlags[node] = flags.get(node);
+    }
+    this.failureLinks = new int[transitions.size()];
+    linkFailures();
+  }
+
+  /**
+   * Finds the patterns occurring in a text.
+   *
+   * @param text the text to search
+   * @return the union of the flags of the patterns found, 0 if none occurs
+   */
+  protected int match(final CharSequence text) {
+    int node = 0;
+    int found = 0;
+    for (int index = 0; index < text.length() && found != allFlags; index++) {
+      final Character next = text.charAt(index);
+      Integer target = transitions.get(node).get(next);
+      while (target == null && node != 0) {
+        node = failureLinks[node];
+        target = transitions.get(node).get(next);
+      }
+      node = target == null ? 0 : target;
+      found |= nodeFlags[node];
+    }
+    return found;
+  }
+
+  private int addPattern(final String pattern, final List<Integer> flags) {
+    int node = 0;
+    for (int index = 0; index < pattern.length(); index++) {
+      final Integer existing = transitions.get(node).get(pattern.charAt(index));
+      if (existing == null) {
+        transitions.add(new HashMap<>());
+        flags.add(0);
+        final int created = transitions.size() - 1;
+        transitions.get(node).put(pattern.charAt(index), created);
+        node = created;
+      } else {
+        node = existing;
+      }
+    }
+    return node;
+  }
+
+  private void linkFailures() {
+    // Breadth first, so that the links of shorter prefixes are known before they are followed
+    final Queue<Integer> queue = new ArrayDeque<>(transitions.get(0).values());
+    while (!queue.isEmpty()) {
+      final int node = queue.remove();
+      for (final Map.Entry<Character, Integer> transition : transitions.get(node).entrySet()) {
+        final int child = transition.getValue();
+        int fallback = failureLinks[node];
+        Integer target = transitions.get(fallback).get(transition.getKey());
+        while (target == null && fallback != 0) {
+          fallback = failureLinks[fallback];
+          target = transitions.get(fallback).get(transition.getKey());
+        }
+        failureLinks[child] = target == null ? 0 : target;
+        // A node also matches every pattern that ends in its suffixes
+        nodeFlags[child] |= nodeFlags[failureLinks[child]];
+        queue.add(child);
+      }
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package io.github.clojang.sophodromos;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Class-level dependency graph of a module's own classes, built from the constant pools of the
+ * compiled class files. Nested classes are folded into their top-level class, and references to
+ * classes outside the scanned directories are dropped.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn"})
+class ClassDependencyGraph {
+
+  private static final String CLASS_SUFFIX = ".class";
+
+  private final ConstantPoolReader reader = new ConstantPoolReader();
+  private final Map<String, Set<String>> references = new HashMap<>();
+
+  /** Default constructor. */
+  protected ClassDependencyGraph() {
+    // Populated through addClassDirectory
+  }
+
+  /**
+   * Adds every class below a class output directory to the graph.
+   *
+   * @param directory the class output directory
+   * @throws IOException if a class file cannot be read
+   */
+  protected void addClassDirectory(final Path directory) throws IOException {
+    if (directory == null || !Files.isDirectory(directory)) {
+      return;
+    }
+    final List<Path> classFiles;
+    try (Stream<Path> files = Files.walk(directory)) {
+      classFiles =
+          files
+              .filter(Files::isRegularFile)
+              .filter(file -> file.getFileName().toString().endsWith(CLASS_SUFFIX))
+              .collect(Collectors.toList());
+    }
+    for (final Path classFile : classFiles) {
+      final String owner = ClassFileHasher.toTopLevelClassName(directory.relativize(classFile));
+      final Set<String> ownerReferences =
+          references.computeIfAbsent(owner, name -> new HashSet<>());
+      for (final String referenced : reader.readReferencedClasses(classFile)) {
+        ownerReferences.add(ClassFileHasher.toTopLevelClassName(referenced));
+      }
+    }
+  }
+
+  /**
+   * Computes the classes a class depends on, directly or indirectly, including itself.
+   *
+   * @param className fully qualified top-level class name
+   * @return the transitive dependencies among the scanned classes, in name order
+   */
+  protected Set<String> transitiveDependencies(final String className) {
+    final Set<String> visited = new TreeSet<>();
+    if (!references.containsKey(className)) {
+      return visited;
+    }
+    final Deque<String> pending = new ArrayDeque<>();
+    pending.push(className);
+    visited.add(className);
+    while (!pending.isEmpty()) {
+      for (final String dependency : references.get(pending.pop())) {
+        if (references.containsKey(dependency) && visited.add(dependency)) {
+          pending.push(dependency);
+        }
+      }
+    }
+    return visited;
+  }
+}
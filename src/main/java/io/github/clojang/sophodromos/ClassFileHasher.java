@@ -0,0 +1,156 @@
+package io.github.clojang.sophodromos;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Computes content hashes of compiled classes. Nested and anonymous classes are folded into the
+ * hash of their top-level class so that a change anywhere in a source file changes its hash.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn"})
+class ClassFileHasher {
+
+  private static final String CLASS_SUFFIX = ".class";
+  private static final String ALGORITHM = "SHA-256";
+  private static final int BUFFER_SIZE = 8192;
+
+  /** Default constructor. */
+  protected ClassFileHasher() {
+    // Stateless hasher
+  }
+
+  /**
+   * Hashes every top-level class below the given class output directory.
+   *
+   * @param directory the class output directory, e.g. target/test-classes
+   * @return map of fully qualified top-level class name to hex-encoded hash, in name order
+   * @throws IOException if the directory cannot be read
+   */
+  protected Map<String, String> hashClassDirectory(final Path directory) throws IOException {
+    final Map<String, String> hashes = new TreeMap<>();
+    if (directory == null || !Files.isDirectory(directory)) {
+      return hashes;
+    }
+
+    final List<Path> classFiles;
+    try (Stream<Path> files = Files.walk(directory)) {
+      classFiles =
+          files
+              .filter(Files::isRegularFile)
+              .filter(file -> file.getFileName().toString().endsWith(CLASS_SUFFIX))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+
+    final Map<String, MessageDigest> digests = new TreeMap<>();
+    for (final Path classFile : classFiles) {
+      final String topLevelName = toTopLevelClassName(directory.relativize(classFile));
+      final MessageDigest digest = digests.computeIfAbsent(topLevelName, name -> newDigest());
+      digest.update(classFile.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+      updateDigest(digest, classFile);
+    }
+
+    final HexFormat hex = HexFormat.of();
+    for (final Map.Entry<String, MessageDigest> entry : digests.entrySet()) {
+      hashes.put(entry.getKey(), hex.formatHex(entry.getValue().digest()));
+    }
+    return hashes;
+  }
+
+  /**
+   * Hashes every non-class file below an output directory into a single hash. Resources copied into
+   * class output directories can change test behaviour without changing any class.
+   *
+   * @param directory the class output directory
+   * @return the hex-encoded hash of all resources, including their relative paths
+   * @throws IOException if the directory cannot be read
+   */
+  protected String hashResources(final Path directory) throws IOException {
+    final MessageDigest digest = newDigest();
+    if (directory != null && Files.isDirectory(directory)) {
+      final List<Path> resources;
+      try (Stream<Path> files = Files.walk(directory)) {
+        resources =
+            files
+                .filter(Files::isRegularFile)
+                .filter(file -> !file.getFileName().toString().endsWith(CLASS_SUFFIX))
+                .sorted()
+                .collect(Collectors.toList());
+      }
+      for (final Path resource : resources) {
+        final String relativePath = directory.relativize(resource).toString().replace('\\', '/');
+        digest.update(relativePath.getBytes(StandardCharsets.UTF_8));
+        updateDigest(digest, resource);
+      }
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * Hashes the content of a single file.
+   *
+   * @param file the file to hash
+   * @return the hex-encoded hash
+   * @throws IOException if the file cannot be read
+   */
+  protected String hashFile(final Path file) throws IOException {
+    final MessageDigest digest = newDigest();
+    updateDigest(digest, file);
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * Converts a class file path relative to its output directory into the name of its top-level
+   * class.
+   *
+   * @param relativePath path such as com/example/FooTest$Inner.class
+   * @return the top-level class name, e.g. com.example.FooTest
+   */
+  protected static String toTopLevelClassName(final Path relativePath) {
+    final String path = relativePath.toString().replace('\\', '/');
+    return toTopLevelClassName(
+        path.substring(0, path.length() - CLASS_SUFFIX.length()).replace('/', '.'));
+  }
+
+  /**
+   * Converts a binary class name into the name of its top-level class.
+   *
+   * @param binaryName name such as com.example.FooTest$Inner
+   * @return the top-level class name, e.g. com.example.FooTest
+   */
+  protected static String toTopLevelClassName(final String binaryName) {
+    final int simpleNameStart = binaryName.lastIndexOf('.') + 1;
+    final int nestedIndex = binaryName.indexOf('$', simpleNameStart);
+    return nestedIndex > simpleNameStart ? binaryName.substring(0, nestedIndex) : binaryName;
+  }
+
+  private static void updateDigest(final MessageDigest digest, final Path file) throws IOException {
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    try (InputStream input = Files.newInputStream(file)) {
+      int read = input.read(buffer);
+      while (read >= 0) {
+        digest.update(buffer, 0, read);
+        read = input.read(buffer);
+      }
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(ALGORITHM + " is not available", e);
+    }
+  }
+}
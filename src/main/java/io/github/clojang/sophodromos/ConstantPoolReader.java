@@ -0,0 +1,151 @@
+package io.github.clojang.sophodromos;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the classes referenced by a compiled class directly from its constant pool, without loading
+ * the class. Both class entries and type descriptors (fields, methods, generic signatures and
+ * annotations) are considered, so type-only references are found as well.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.AvoidLiteralsInIfCondition"})
+class ConstantPoolReader {
+
+  private static final int MAGIC = 0xCAFEBABE;
+
+  private static final int TAG_UTF8 = 1;
+  private static final int TAG_INTEGER = 3;
+  private static final int TAG_FLOAT = 4;
+  private static final int TAG_LONG = 5;
+  private static final int TAG_DOUBLE = 6;
+  private static final int TAG_CLASS = 7;
+  private static final int TAG_STRING = 8;
+  private static final int TAG_FIELD_REF = 9;
+  private static final int TAG_METHOD_REF = 10;
+  private static final int TAG_INTERFACE_METHOD_REF = 11;
+  private static final int TAG_NAME_AND_TYPE = 12;
+  private static final int TAG_METHOD_HANDLE = 15;
+  private static final int TAG_METHOD_TYPE = 16;
+  private static final int TAG_DYNAMIC = 17;
+  private static final int TAG_INVOKE_DYNAMIC = 18;
+  private static final int TAG_MODULE = 19;
+  private static final int TAG_PACKAGE = 20;
+
+  private static final Pattern DESCRIPTOR_TYPE = Pattern.compile("L([\\w/$]+)[;<]");
+
+  /** Default constructor. */
+  protected ConstantPoolReader() {
+    // Stateless reader
+  }
+
+  /**
+   * Reads the names of all classes referenced by a class file.
+   *
+   * @param classFile the class file to read
+   * @return referenced binary class names such as com.example.Foo$Bar
+   * @throws IOException if the file cannot be read or is not a class file
+   */
+  protected Set<String> readReferencedClasses(final Path classFile) throws IOException {
+    try (InputStream input = Files.newInputStream(classFile)) {
+      return readReferencedClasses(input);
+    }
+  }
+
+  /**
+   * Reads the names of all classes referenced by class file content.
+   *
+   * @param classContent the class file content
+   * @return referenced binary class names such as com.example.Foo$Bar
+   * @throws IOException if the content cannot be read or is not a class file
+   */
+  @SuppressWarnings("PMD.AvoidReassigningLoopVariables") // Long and double take two slots
+  protected Set<String> readReferencedClasses(final InputStream classContent) throws IOException {
+    final DataInputStream data = new DataInputStream(new BufferedInputStream(classContent));
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a class file");
+    }
+    data.readUnsignedShort(); // minor version
+    data.readUnsignedShort(); // major version
+
+    final int poolCount = data.readUnsignedShort();
+    final String[] utf8Entries = new String[poolCount];
+    final int[] classNameIndexes = new int[poolCount];
+    int classCount = 0;
+
+    for (int index = 1; index < poolCount; index++) {
+      final int tag = data.readUnsignedByte();
+      switch (tag) {
+        case TAG_UTF8:
+          utf8Entries[index] = data.readUTF();
+          break;
+        case TAG_CLASS:
+          classNameIndexes[classCount++] = data.readUnsignedShort();
+          break;
+        case TAG_STRING:
+        case TAG_METHOD_TYPE:
+        case TAG_MODULE:
+        case TAG_PACKAGE:
+          data.readUnsignedShort();
+          break;
+        case TAG_METHOD_HANDLE:
+          data.readUnsignedByte();
+          data.readUnsignedShort();
+          break;
+        case TAG_INTEGER:
+        case TAG_FLOAT:
+        case TAG_FIELD_REF:
+        case TAG_METHOD_REF:
+        case TAG_INTERFACE_METHOD_REF:
+        case TAG_NAME_AND_TYPE:
+        case TAG_DYNAMIC:
+        case TAG_INVOKE_DYNAMIC:
+          data.readInt();
+          break;
+        case TAG_LONG:
+        case TAG_DOUBLE:
+          data.readLong();
+          index++;
+          break;
+        default:
+          throw new IOException("Unknown constant pool tag " + tag + " at index " + index);
+      }
+    }
+
+    final Set<String> referenced = new HashSet<>();
+    for (int i = 0; i < classCount; i++) {
+      addClassEntry(referenced, utf8Entries[classNameIndexes[i]]);
+    }
+    for (final String entry : utf8Entries) {
+      if (entry != null && entry.indexOf(';') > 0) {
+        addDescriptorTypes(referenced, entry);
+      }
+    }
+    return referenced;
+  }
+
+  private static void addClassEntry(final Set<String> referenced, final String internalName) {
+    if (internalName == null) {
+      return;
+    }
+    if (internalName.startsWith("[")) {
+      addDescriptorTypes(referenced, internalName);
+    } else {
+      referenced.add(internalName.replace('/', '.'));
+    }
+  }
+
+  private static void addDescriptorTypes(final Set<String> referenced, final String descriptor) {
+    final Matcher matcher = DESCRIPTOR_TYPE.matcher(descriptor);
+    while (matcher.find()) {
+      referenced.add(matcher.group(1).replace('/', '.'));
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package io.github.clojang.sophodromos;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lightweight Java agent attached to forked test JVMs while recording coverage maps. It does not
+ * instrument any bytecode: it only notes which classes from the module's main and test output
+ * directories are loaded, and writes them to a file when the JVM exits. Because each recording fork
+ * runs a single test class, the loaded main classes are exactly the classes that test touched.
+ *
+ * <p>This class is loaded on the test JVM's system class path and must depend on the JDK only.
+ */
+@SuppressWarnings({
+  "PMD.UseUtilityClass",
+  "PMD.LawOfDemeter",
+  "PMD.SystemPrintln",
+  "PMD.OnlyOneReturn"
+})
+// A coverage file that cannot be written is reported on the test JVM's standard error
+public final class CoverageAgent {
+
+  /** Agent property naming the directory that receives coverage files. */
+  static final String OUTPUT_DIRECTORY = "outputDirectory";
+
+  /** Agent property holding the absolute path of the module's main class output directory. */
+  static final String MAIN_CLASSES = "mainClasses";
+
+  /** Agent property holding the absolute path of the module's test class output directory. */
+  static final String TEST_CLASSES = "testClasses";
+
+  /** Line prefix for main classes in coverage files. */
+  static final String MAIN_PREFIX = "main ";
+
+  /** Line prefix for test classes in coverage files. */
+  static final String TEST_PREFIX = "test ";
+
+  /** File name suffix of coverage files. */
+  static final String FILE_SUFFIX = ".coverage";
+
+  private CoverageAgent() {
+    // Agent entry point only
+  }
+
+  /**
+   * Agent entry point.
+   *
+   * @param agentArgs path of the properties file describing what to record
+   * @param instrumentation the JVM instrumentation instance
+   */
+  public static void premain(final String agentArgs, final Instrumentation instrumentation) {
+    final Properties config = new Properties();
+    try (InputStream input = Files.newInputStream(Paths.get(agentArgs))) {
+      config.load(input);
+    } catch (final IOException e) {
+      throw new UncheckedIOException("Could not read coverage agent configuration", e);
+    }
+
+    final LoadRecorder recorder =
+        new LoadRecorder(config.getProperty(MAIN_CLASSES), config.getProperty(TEST_CLASSES));
+    instrumentation.addTransformer(recorder);
+
+    final Path outputDirectory = Paths.get(config.getProperty(OUTPUT_DIRECTORY));
+    Runtime.getRuntime()
+        .addShutdownHook(new Thread(() -> recorder.writeTo(outputDirectory), "sd-coverage"));
+  }
+
+  /** Records loaded classes by the output directory they were loaded from. */
+  private static final class LoadRecorder implements ClassFileTransformer {
+    private static final Integer OTHER = 0;
+    private static final Integer MAIN = 1;
+    private static final Integer TEST = 2;
+
+    private final Path mainDirectory;
+    private final Path testDirectory;
+    private final Map<URL, Integer> locationKinds = new ConcurrentHashMap<>();
+    private final Set<String> mainClasses = ConcurrentHashMap.newKeySet();
+    private final Set<String> testClasses = ConcurrentHashMap.newKeySet();
+
+    private LoadRecorder(final String mainDirectory, final String testDirectory) {
+      this.mainDirectory = Paths.get(mainDirectory);
+      this.testDirectory = Paths.get(testDirectory);
+    }
+
+    @Override
+    @SuppressWarnings("PMD.ReturnEmptyCollectionRatherThanNull") // null means "not transformed"
+    public byte[] transform(
+        final ClassLoader loader,
+        final String className,
+        final Class<?> classBeingRedefined,
+        final ProtectionDomain protectionDomain,
+        final byte[] classfileBuffer) {
+      if (classBeingRedefined == null && className != null && protectionDomain != null) {
+        final CodeSource codeSource = protectionDomain.getCodeSource();
+        final URL location = codeSource == null ? null : codeSource.getLocation();
+        if (location != null) {
+          record(location, className);
+        }
+      }
+      return null;
+    }
+
+    private void record(final URL location, final String internalName) {
+      final Integer kind = locationKinds.computeIfAbsent(location, this::classify);
+      if (MAIN.equals(kind)) {
+        mainClasses.add(topLevelName(internalName));
+      } else if (TEST.equals(kind)) {
+        testClasses.add(topLevelName(internalName));
+      }
+    }
+
+    private Integer classify(final URL location) {
+      if (!"file".equals(location.getProtocol())) {
+        return OTHER;
+      }
+      try {
+        final Path directory = Paths.get(location.toURI());
+        if (directory.equals(mainDirectory)) {
+          return MAIN;
+        }
+        return directory.equals(testDirectory) ? TEST : OTHER;
+      } catch (final URISyntaxException | IllegalArgumentException e) {
+        return OTHER;
+      }
+    }
+
+    private static String topLevelName(final String internalName) {
+      final String name = internalName.replace('/', '.');
+      final int simpleNameStart = name.lastIndexOf('.') + 1;
+      final int nestedIndex = name.indexOf('$', simpleNameStart);
+      return nestedIndex > simpleNameStart ? name.substring(0, nestedIndex) : name;
+    }
+
+    private void writeTo(final Path outputDirectory) {
+      if (testClasses.isEmpty()) {
+        return;
+      }
+      final List<String> lines = new ArrayList<>(mainClasses.size() + testClasses.size());
+      for (final String testClass : testClasses) {
+        lines.add(TEST_PREFIX + testClass);
+      }
+      for (final String mainClass : mainClasses) {
+        lines.add(MAIN_PREFIX + mainClass);
+      }
+      final String name = "fork-" + ProcessHandle.current().pid();
+      final Path coverageFile = outputDirectory.resolve(name + FILE_SUFFIX);
+      try {
+        Files.createDirectories(outputDirectory);
+        final Path tempFile = outputDirectory.resolve(name + ".tmp");
+        Files.write(tempFile, lines, StandardCharsets.UTF_8);
+        Files.move(tempFile, coverageFile, StandardCopyOption.ATOMIC_MOVE);
+      } catch (final IOException e) {
+        System.err.println("Could not write coverage file " + coverageFile + ": " + e);
+      }
+    }
+  }
+}
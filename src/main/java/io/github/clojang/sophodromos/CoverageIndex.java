@@ -0,0 +1,81 @@
+package io.github.clojang.sophodromos;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Encodes per-test coverage maps compactly. Every class that appears in any map is given a stable
+ * index, and a map is stored as the Base64 form of a bit set over those indices. Indices are only
+ * ever appended so that stored maps stay valid.
+ */
+@SuppressWarnings("PMD.LawOfDemeter")
+class CoverageIndex {
+
+  private final List<String> classes;
+  private final Map<String, Integer> positions = new HashMap<>();
+
+  /**
+   * Creates an index continuing from a previously stored class list.
+   *
+   * @param classes the stored class list, in index order
+   */
+  protected CoverageIndex(final List<String> classes) {
+    this.classes = new ArrayList<>(classes);
+    for (int i = 0; i < this.classes.size(); i++) {
+      positions.putIfAbsent(this.classes.get(i), i);
+    }
+  }
+
+  /**
+   * Encodes a set of class names, adding unknown names to the index.
+   *
+   * @param coveredClasses the classes to encode
+   * @return the Base64-encoded bit set
+   */
+  protected String encode(final Set<String> coveredClasses) {
+    final BitSet bits = new BitSet(classes.size());
+    for (final String className : coveredClasses) {
+      bits.set(positions.computeIfAbsent(className, this::append));
+    }
+    return Base64.getEncoder().encodeToString(bits.toByteArray());
+  }
+
+  /**
+   * Decodes a stored coverage map.
+   *
+   * @param coverage the Base64-encoded bit set
+   * @return the covered class names, in name order
+   * @throws IllegalArgumentException if the value is not valid Base64 or refers to unknown indices
+   */
+  protected Set<String> decode(final String coverage) {
+    final BitSet bits = BitSet.valueOf(Base64.getDecoder().decode(coverage));
+    if (bits.length() > classes.size()) {
+      throw new IllegalArgumentException("Coverage map refers to unknown class index");
+    }
+    final Set<String> coveredClasses = new TreeSet<>();
+    for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+      coveredClasses.add(classes.get(i));
+    }
+    return coveredClasses;
+  }
+
+  /**
+   * Gets the class list to store alongside the encoded maps.
+   *
+   * @return the class names, in index order
+   */
+  protected List<String> getClasses() {
+    return new ArrayList<>(classes);
+  }
+
+  private Integer append(final String className) {
+    classes.add(className);
+    return classes.size() - 1;
+  }
+}
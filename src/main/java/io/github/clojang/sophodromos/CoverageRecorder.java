@@ -0,0 +1,187 @@
+package io.github.clojang.sophodromos;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Records which module classes each test class loads at runtime. The plugin jar doubles as a Java
+ * agent ({@link CoverageAgent}); this class configures it for the forked test JVMs and attributes
+ * the files it writes back to the test classes that ran.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn", "PMD.GuardLogStatement"})
+class CoverageRecorder {
+
+  private static final String COVERAGE_DIRECTORY = "coverage";
+  private static final String AGENT_PROPERTIES = "agent.properties";
+
+  private final MavenProject project;
+  private final Path outputDirectory;
+  private final Log log;
+
+  /**
+   * Constructs a new CoverageRecorder.
+   *
+   * @param project the Maven project
+   * @param historyDirectory the module's history directory
+   * @param log Maven logger
+   */
+  protected CoverageRecorder(
+      final MavenProject project, final Path historyDirectory, final Log log) {
+    this.project = project;
+    this.outputDirectory = historyDirectory.resolve(COVERAGE_DIRECTORY).toAbsolutePath();
+    this.log = log;
+  }
+
+  /**
+   * Prepares a recording: removes stale coverage files and writes the agent configuration.
+   *
+   * @return the JVM option attaching the agent, or null if recording is not possible
+   */
+  protected String prepareAgentOption() {
+    final Path agentJar = findPluginJar();
+    if (agentJar == null) {
+      if (log.isWarnEnabled()) {
+        log.warn("Coverage recording needs the packaged plugin jar, recording is disabled");
+      }
+      return null;
+    }
+
+    final Properties config = new Properties();
+    config.setProperty(CoverageAgent.OUTPUT_DIRECTORY, outputDirectory.toString());
+    config.setProperty(
+        CoverageAgent.MAIN_CLASSES, absolutePath(project.getBuild().getOutputDirectory()));
+    config.setProperty(
+        CoverageAgent.TEST_CLASSES, absolutePath(project.getBuild().getTestOutputDirectory()));
+
+    final Path configFile = outputDirectory.resolve(AGENT_PROPERTIES);
+    try {
+      deleteCoverageFiles();
+      Files.createDirectories(outputDirectory);
+      try (OutputStream output = Files.newOutputStream(configFile)) {
+        config.store(output, "SophoDromos coverage agent");
+      }
+    } catch (final IOException e) {
+      if (log.isWarnEnabled()) {
+        log.warn("Could not prepare coverage recording: " + e.getMessage());
+      }
+      return null;
+    }
+    return "-javaagent:" + agentJar + '=' + configFile;
+  }
+
+  /**
+   * Reads the coverage files written by the agent and deletes them. Each forked JVM runs a single
+   * test class while recording, so every module class it loaded is attributed to the test classes
+   * that ran in it.
+   *
+   * @param executedTestClasses the top-level test classes that ran
+   * @return map of test class name to the module classes it loaded
+   */
+  protected Map<String, Set<String>> collectCoverage(final Set<String> executedTestClasses) {
+    final Map<String, Set<String>> coverage = new TreeMap<>();
+    final List<Path> files;
+    try {
+      files = listCoverageFiles();
+    } catch (final IOException e) {
+      if (log.isWarnEnabled()) {
+        log.warn("Could not read recorded coverage: " + e.getMessage());
+      }
+      return coverage;
+    }
+
+    for (final Path file : files) {
+      try {
+        attribute(Files.readAllLines(file, StandardCharsets.UTF_8), executedTestClasses, coverage);
+        Files.deleteIfExists(file);
+      } catch (final IOException e) {
+        if (log.isWarnEnabled()) {
+          log.warn("Could not read coverage file " + file + ": " + e.getMessage());
+        }
+      }
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Recorded coverage for " + coverage.size() + " test classes");
+    }
+    return coverage;
+  }
+
+  private static void attribute(
+      final List<String> lines,
+      final Set<String> executedTestClasses,
+      final Map<String, Set<String>> coverage) {
+    final Set<String> loaded = new HashSet<>();
+    final Set<String> owners = new HashSet<>();
+    for (final String line : lines) {
+      if (line.startsWith(CoverageAgent.MAIN_PREFIX)) {
+        loaded.add(line.substring(CoverageAgent.MAIN_PREFIX.length()));
+      } else if (line.startsWith(CoverageAgent.TEST_PREFIX)) {
+        final String testClass = line.substring(CoverageAgent.TEST_PREFIX.length());
+        // Test-side helpers are part of the coverage of the test class that loaded them
+        loaded.add(testClass);
+        if (executedTestClasses.contains(testClass)) {
+          owners.add(testClass);
+        }
+      }
+    }
+    // A fork that loaded several executed test classes is attributed to all of them
+    for (final String owner : owners) {
+      coverage.computeIfAbsent(owner, name -> new HashSet<>()).addAll(loaded);
+    }
+  }
+
+  private void deleteCoverageFiles() throws IOException {
+    for (final Path file : listCoverageFiles()) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private List<Path> listCoverageFiles() throws IOException {
+    if (!Files.isDirectory(outputDirectory)) {
+      return List.of();
+    }
+    try (Stream<Path> files = Files.list(outputDirectory)) {
+      return files
+          .filter(file -> file.getFileName().toString().endsWith(CoverageAgent.FILE_SUFFIX))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static String absolutePath(final String directory) {
+    return Paths.get(directory).toAbsolutePath().normalize().toString();
+  }
+
+  /**
+   * Locates the packaged plugin jar, which doubles as the coverage agent and the warm JVM pool.
+   *
+   * @return the jar, or null when the plugin runs from a class directory
+   */
+  protected static Path findPluginJar() {
+    final CodeSource codeSource = CoverageAgent.class.getProtectionDomain().getCodeSource();
+    if (codeSource == null || codeSource.getLocation() == null) {
+      return null;
+    }
+    try {
+      final Path location = Paths.get(codeSource.getLocation().toURI());
+      return Files.isRegularFile(location) ? location : null;
+    } catch (final URISyntaxException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+}
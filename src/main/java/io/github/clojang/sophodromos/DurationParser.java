@@ -0,0 +1,67 @@
+package io.github.clojang.sophodromos;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Parses the durations of the plugin's parameters, such as time budgets and timeouts. */
+@SuppressWarnings("PMD.OnlyOneReturn")
+final class DurationParser {
+
+  private static final Pattern DURATION_PART = Pattern.compile("(\\d+)(ms|s|m|h)");
+  private static final Pattern PLAIN_SECONDS = Pattern.compile("\\d+");
+
+  private DurationParser() {
+    // Static helpers only
+  }
+
+  /**
+   * Parses a duration such as {@code 5m}, {@code 90s}, {@code 1m30s}, {@code 1500ms} or in ISO-8601
+   * format such as {@code PT5M}. A plain number is taken as seconds.
+   *
+   * @param duration the duration to parse
+   * @return the duration in milliseconds
+   * @throws IllegalArgumentException if the duration cannot be parsed
+   */
+  protected static long parse(final String duration) {
+    final String normalized = duration.trim().toLowerCase(Locale.ROOT);
+    if (PLAIN_SECONDS.matcher(normalized).matches()) {
+      return Long.parseLong(normalized) * 1000;
+    }
+    if (normalized.startsWith("p")) {
+      try {
+        return Duration.parse(normalized.toUpperCase(Locale.ROOT)).toMillis();
+      } catch (final DateTimeParseException e) {
+        throw new IllegalArgumentException("Invalid duration '" + duration + "'", e);
+      }
+    }
+
+    final Matcher matcher = DURATION_PART.matcher(normalized);
+    long millis = 0;
+    int end = 0;
+    while (matcher.find() && matcher.start() == end) {
+      final long amount = Long.parseLong(matcher.group(1));
+      switch (matcher.group(2)) {
+        case "h":
+          millis += Duration.ofHours(amount).toMillis();
+          break;
+        case "m":
+          millis += Duration.ofMinutes(amount).toMillis();
+          break;
+        case "s":
+          millis += Duration.ofSeconds(amount).toMillis();
+          break;
+        default:
+          millis += amount;
+          break;
+      }
+      end = matcher.end();
+    }
+    if (end == 0 || end != normalized.length()) {
+      throw new IllegalArgumentException("Invalid duration '" + duration + "'");
+    }
+    return millis;
+  }
+}
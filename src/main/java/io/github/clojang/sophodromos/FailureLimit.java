@@ -0,0 +1,118 @@
+package io.github.clojang.sophodromos;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Stops the tests of the whole reactor after a number of failed tests, so that a broken build is
+ * not rediscovered in every module. The failed tests of all modules are added up in one counter as
+ * their classes complete. Once it reaches the limit, the child invocations still running are
+ * destroyed together with the test JVMs they forked, and modules that have not started yet are
+ * skipped.
+ *
+ * <p>Like the runs of {@link TestPipeline}, the counter and the running processes are kept in the
+ * session data as JDK types only, so that every module's mojo sees the same ones.
+ */
+@SuppressWarnings("PMD.LawOfDemeter")
+final class FailureLimit {
+
+  private static final String COUNT_KEY = "sophodromos.failures.count";
+  private static final String PROCESSES_KEY = "sophodromos.failures.processes";
+
+  private final SessionData data;
+  private final int maxFailures;
+  private final long graceMillis;
+
+  /**
+   * Constructs a new FailureLimit.
+   *
+   * @param session the Maven session shared by the modules
+   * @param maxFailures the failed tests after which the build stops, 0 for no limit
+   * @param graceMillis how long destroyed processes may take to terminate before they are killed
+   */
+  protected FailureLimit(
+      final MavenSession session, final int maxFailures, final long graceMillis) {
+    this.data = session.getRepositorySession().getData();
+    this.maxFailures = maxFailures;
+    this.graceMillis = graceMillis;
+  }
+
+  /**
+   * Checks whether the build has had as many failed tests as allowed.
+   *
+   * @return true if no further tests should run
+   */
+  protected boolean isReached() {
+    return maxFailures > 0 && getCount().get() >= maxFailures;
+  }
+
+  /**
+   * Adds failed tests to the count of the build, destroying the running child invocations when they
+   * reach the limit.
+   *
+   * @param failedTests the failed and erroneous tests just reported
+   */
+  protected void recordFailures(final long failedTests) {
+    if (maxFailures > 0 && failedTests > 0) {
+      final long count = getCount().addAndGet(failedTests);
+      // Only the update crossing the limit destroys, later ones find nothing left to destroy
+      if (count >= maxFailures && count - failedTests < maxFailures) {
+        for (final Process process : getProcesses().keySet()) {
+          destroy(process);
+        }
+      }
+    }
+  }
+
+  /**
+   * Registers a running child invocation, destroying it right away if the limit is already reached.
+   *
+   * @param process the child invocation
+   */
+  protected void track(final Process process) {
+    if (maxFailures > 0) {
+      getProcesses().put(process, Boolean.FALSE);
+      // The limit may have been reached while the process was starting
+      if (isReached()) {
+        destroy(process);
+      }
+    }
+  }
+
+  /**
+   * Unregisters a child invocation that has exited.
+   *
+   * @param process the child invocation
+   * @return true if it was destroyed because the limit was reached
+   */
+  protected boolean untrack(final Process process) {
+    return maxFailures > 0 && Boolean.TRUE.equals(getProcesses().remove(process));
+  }
+
+  /**
+   * Describes why tests are not run once the limit is reached.
+   *
+   * @return the reason
+   */
+  protected String describe() {
+    return "the build reached sophodromos.maxFailures after " + getCount().get() + " failed tests";
+  }
+
+  private void destroy(final Process process) {
+    // The process may have exited and been unregistered since it was listed
+    if (getProcesses().replace(process, Boolean.FALSE, Boolean.TRUE)) {
+      ProcessTreeReaper.terminate(process, graceMillis);
+    }
+  }
+
+  private AtomicLong getCount() {
+    return TestPipeline.getOrCreate(data, COUNT_KEY, new AtomicLong());
+  }
+
+  private ConcurrentMap<Process, Boolean> getProcesses() {
+    return TestPipeline.getOrCreate(data, PROCESSES_KEY, new ConcurrentHashMap<Process, Boolean>());
+  }
+}
@@ -0,0 +1,164 @@
+package io.github.clojang.sophodromos;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Holds back what tests write to standard output until it is known whether they failed. The output
+ * of a test class, from its {@code Running} line to its {@code Tests run} line, is buffered and
+ * dropped when the class passes, or released right before the class's results when it has failures
+ * or errors. Test events such as the outcomes of test methods pass straight through.
+ *
+ * <p>Surefire's console output does not mark where the output of one test method ends and the next
+ * begins, so output is kept or dropped per test class. Each class's buffer holds up to a number of
+ * bytes in memory and moves to a temporary file beyond that.
+ */
+@SuppressWarnings("PMD.LawOfDemeter")
+class FailureOutputBuffer {
+
+  private static final Pattern RUNNING_PATTERN =
+      Pattern.compile("^(?:\\[INFO\\]\\s+)?Running (\\S+)$");
+  private static final Pattern COMPLETED_PATTERN =
+      Pattern.compile(
+          "^(?:\\[(?:INFO|WARNING|ERROR)\\]\\s+)?Tests run: \\d+, Failures: (\\d+), Errors: (\\d+),"
+              + " .* -+ in (\\S+)$");
+  private static final Pattern TEST_EVENT_PATTERN =
+      Pattern.compile(
+          "^(?:\\[(?:INFO|WARNING|ERROR)\\]\\s+)?(?:\\S+\\(\\S+\\)\\s+Time elapsed:.*"
+              + "|\\S+\\s+--\\s+Time elapsed:.*|Tests run: .*)$");
+
+  private final long maxBufferBytes;
+  private final Deque<ClassOutput> running = new ArrayDeque<>();
+
+  /**
+   * Constructs a new FailureOutputBuffer.
+   *
+   * @param maxBufferBytes the most bytes of a class's output held in memory
+   */
+  protected FailureOutputBuffer(final long maxBufferBytes) {
+    this.maxBufferBytes = maxBufferBytes;
+  }
+
+  /**
+   * Accepts the next output line.
+   *
+   * @param line the line, with the lines of concurrently running classes already sorted by class
+   * @param sink receives the lines to process now, in order
+   * @throws IOException if a buffer moved to a temporary file could not be written or read
+   */
+  protected void accept(final String line, final Consumer<String> sink) throws IOException {
+    final Matcher runningMatcher = RUNNING_PATTERN.matcher(line);
+    final Matcher completedMatcher = COMPLETED_PATTERN.matcher(line);
+    if (runningMatcher.matches()) {
+      running.push(new ClassOutput(runningMatcher.group(1)));
+      sink.accept(line);
+    } else if (completedMatcher.matches() && isRunning(completedMatcher.group(3))) {
+      // Nested classes complete before the class enclosing them
+      final ClassOutput completed = running.pop();
+      final int failed =
+          Integer.parseInt(completedMatcher.group(1)) + Integer.parseInt(completedMatcher.group(2));
+      if (failed > 0) {
+        completed.release(sink);
+      } else {
+        completed.discard();
+      }
+      sink.accept(line);
+    } else if (running.isEmpty() || TEST_EVENT_PATTERN.matcher(line).matches()) {
+      sink.accept(line);
+    } else {
+      running.peek().add(line, maxBufferBytes);
+    }
+  }
+
+  /**
+   * Releases the output of classes that never completed, such as those of a crashed fork, whose
+   * outcome is unknown.
+   *
+   * @param sink receives the held back lines
+   * @throws IOException if a buffer moved to a temporary file could not be read
+   */
+  protected void flush(final Consumer<String> sink) throws IOException {
+    while (!running.isEmpty()) {
+      running.removeLast().release(sink);
+    }
+  }
+
+  /**
+   * Checks whether a line is a test event, such as a class starting or a test method's outcome,
+   * rather than output of the tests.
+   *
+   * @param line the output line
+   * @return true for a test event
+   */
+  protected static boolean isTestEvent(final String line) {
+    return RUNNING_PATTERN.matcher(line).matches() || TEST_EVENT_PATTERN.matcher(line).matches();
+  }
+
+  private boolean isRunning(final String className) {
+    return !running.isEmpty() && running.peek().className.equals(className);
+  }
+
+  /** The output of one test class, in memory up to a size and in a temporary file beyond it. */
+  private static final class ClassOutput {
+    private final String className;
+    private final List<String> lines = new ArrayList<>();
+    private long bytes;
+    private Path overflowFile;
+    private BufferedWriter overflow;
+
+    private ClassOutput(final String className) {
+      this.className = className;
+    }
+
+    private void add(final String line, final long maxBytes) throws IOException {
+      if (overflow != null) {
+        overflow.write(line);
+        overflow.newLine();
+      } else {
+        lines.add(line);
+        bytes += line.length() + 1L;
+      }
+      if (overflow == null && bytes > maxBytes) {
+        overflowFile = Files.createTempFile("sophodromos-output-", ".log");
+        overflow = Files.newBufferedWriter(overflowFile, StandardCharsets.UTF_8);
+        for (final String buffered : lines) {
+          overflow.write(buffered);
+          overflow.newLine();
+        }
+        lines.clear();
+      }
+    }
+
+    private void release(final Consumer<String> sink) throws IOException {
+      lines.forEach(sink);
+      if (overflow != null) {
+        overflow.close();
+        try (BufferedReader reader =
+            Files.newBufferedReader(overflowFile, StandardCharsets.UTF_8)) {
+          reader.lines().forEach(sink);
+        } finally {
+          Files.deleteIfExists(overflowFile);
+        }
+      }
+    }
+
+    private void discard() throws IOException {
+      lines.clear();
+      if (overflow != null) {
+        overflow.close();
+        Files.deleteIfExists(overflowFile);
+      }
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package io.github.clojang.sophodromos;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Untangles the output of concurrently running test classes. With several Surefire forks or JUnit
+ * running classes in parallel, the lines of different classes arrive interleaved, while the output
+ * parsing expects each class's lines together. Surefire's console output does not name the fork a
+ * line came from, so lines are attributed to the test class they belong to: a class is running from
+ * its {@code Running} line until its {@code Tests run} line, and its lines are held back and
+ * released as one block once the class completes. Lines naming no class go to the only running
+ * class, or pass straight through when several are running and the line mentions none of them.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn"})
+class ForkOutputDemultiplexer {
+
+  private static final Pattern RUNNING_PATTERN =
+      Pattern.compile("^(?:\\[INFO\\]\\s+)?Running (\\S+)$");
+  private static final Pattern COMPLETED_PATTERN =
+      Pattern.compile("^(?:\\[(?:INFO|WARNING|ERROR)\\]\\s+)?Tests run: .* -+ in (\\S+)$");
+  private static final Pattern METHOD_IN_PARENS_PATTERN =
+      Pattern.compile("^(?:\\[(?:INFO|WARNING|ERROR)\\]\\s+)?\\S+\\((\\S+)\\)\\s+Time elapsed:.*$");
+  private static final Pattern QUALIFIED_METHOD_PATTERN =
+      Pattern.compile("^(?:\\[(?:INFO|WARNING|ERROR)\\]\\s+)?(\\S+)\\.[^.\\s]+\\s+--\\s+.*$");
+
+  private final Map<String, List<String>> running = new LinkedHashMap<>();
+  private int maxConcurrentClasses;
+
+  /**
+   * Accepts the next output line.
+   *
+   * @param line the line as read from the child invocation
+   * @return the lines to process now, in order; empty while the line is held back
+   */
+  protected List<String> accept(final String line) {
+    final Matcher runningMatcher = RUNNING_PATTERN.matcher(line);
+    if (runningMatcher.matches()) {
+      start(runningMatcher.group(1)).add(line);
+      return List.of();
+    }
+    final Matcher completedMatcher = COMPLETED_PATTERN.matcher(line);
+    if (completedMatcher.matches()) {
+      return complete(completedMatcher.group(1), line);
+    }
+
+    final List<String> buffer = findBuffer(line);
+    if (buffer == null) {
+      return List.of(line);
+    }
+    buffer.add(line);
+    return List.of();
+  }
+
+  /**
+   * Releases the lines of classes that never completed, such as those of a crashed fork.
+   *
+   * @return the held back lines, class by class
+   */
+  protected List<String> flush() {
+    final List<String> lines = new ArrayList<>();
+    for (final List<String> buffer : running.values()) {
+      lines.addAll(buffer);
+    }
+    running.clear();
+    return lines;
+  }
+
+  /**
+   * Gets the most test classes that were running at the same time.
+   *
+   * @return the highest concurrency seen
+   */
+  protected int getMaxConcurrentClasses() {
+    return maxConcurrentClasses;
+  }
+
+  private List<String> start(final String className) {
+    final List<String> buffer = new ArrayList<>();
+    final List<String> previous = running.put(className, buffer);
+    if (previous != null) {
+      // The same class started again, e.g. by a rerun of failing tests
+      buffer.addAll(previous);
+    }
+    maxConcurrentClasses = Math.max(maxConcurrentClasses, running.size());
+    return buffer;
+  }
+
+  private List<String> complete(final String className, final String line) {
+    final List<String> buffer = running.remove(className);
+    if (buffer == null) {
+      return List.of(line);
+    }
+    buffer.add(line);
+    return buffer;
+  }
+
+  private List<String> findBuffer(final String line) {
+    if (running.isEmpty()) {
+      return null;
+    }
+    // Method lines of a completed class follow its summary and need no sorting
+    final String className = findClassName(line);
+    if (className != null) {
+      return running.get(className);
+    }
+    if (running.size() == 1) {
+      return running.values().iterator().next();
+    }
+    // A stack trace or message of a running class mentions it
+    for (final Map.Entry<String, List<String>> entry : running.entrySet()) {
+      if (line.contains(entry.getKey())) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  private String findClassName(final String line) {
+    final Matcher parensMatcher = METHOD_IN_PARENS_PATTERN.matcher(line);
+    if (parensMatcher.matches()) {
+      return parensMatcher.group(1);
+    }
+    final Matcher qualifiedMatcher = QUALIFIED_METHOD_PATTERN.matcher(line);
+    if (qualifiedMatcher.matches()) {
+      return qualifiedMatcher.group(1);
+    }
+    return null;
+  }
+}
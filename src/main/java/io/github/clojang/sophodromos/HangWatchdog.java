@@ -0,0 +1,274 @@
+package io.github.clojang.sophodromos;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Watches a child invocation for tests that stop making progress, such as a deadlocked test. The
+ * interceptor reports each test event it parses: a test class starting, a test's outcome and a
+ * class's results. A test class is taken to hang when no event arrived for the hang timeout, or
+ * when it has run for a multiple of its recorded duration. The thread stacks of every Java process
+ * in the child invocation's tree are then dumped with {@code jcmd Thread.print}, and the forked
+ * test JVMs may be killed so that the build goes on.
+ *
+ * <p>Surefire's plain report prints the outcomes of a class's tests when the class completes, so a
+ * hang is found per test class, not per test method.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.DoNotUseThreads", "PMD.AvoidUsingVolatile"})
+// Watches on a daemon thread while the output threads report events
+class HangWatchdog {
+
+  private static final long CHECK_INTERVAL_MILLIS = 1000L;
+  // Short tests vary too much for a multiple of their duration to mean anything
+  private static final long MIN_RELATIVE_HANG_MILLIS = 30_000L;
+  private static final long JCMD_TIMEOUT_SECONDS = 30L;
+  private static final String NO_CLASS = "";
+
+  private final Process process;
+  private final long hangTimeoutMillis;
+  private final double durationFactor;
+  private final ToLongFunction<String> recordedDurations;
+  private final Path dumpDirectory;
+  private final long killGraceMillis;
+  private final Log log;
+  private final Map<String, Long> runningClasses = new ConcurrentHashMap<>();
+  private final Set<String> reportedClasses = ConcurrentHashMap.newKeySet();
+  private final List<String> hungTests = new CopyOnWriteArrayList<>();
+  private final Thread thread;
+  private volatile long lastEventNanos = System.nanoTime();
+  private volatile boolean killed;
+
+  /**
+   * Constructs a new HangWatchdog.
+   *
+   * @param process the child invocation
+   * @param hangTimeoutMillis the time without any test event that counts as a hang, 0 for none
+   * @param durationFactor the multiple of a class's recorded duration that counts as a hang, 0 for
+   *     none
+   * @param recordedDurations the recorded duration of a test class in milliseconds, 0 if unknown
+   * @param dumpDirectory the directory to write the thread dumps to
+   * @param killGraceMillis how long hung forks may take to terminate, or -1 to leave them running
+   * @param log the Maven logger
+   */
+  protected HangWatchdog(
+      final Process process,
+      final long hangTimeoutMillis,
+      final double durationFactor,
+      final ToLongFunction<String> recordedDurations,
+      final Path dumpDirectory,
+      final long killGraceMillis,
+      final Log log) {
+    this.process = process;
+    this.hangTimeoutMillis = hangTimeoutMillis;
+    this.durationFactor = durationFactor;
+    this.recordedDurations = recordedDurations;
+    this.dumpDirectory = dumpDirectory;
+    this.killGraceMillis = killGraceMillis;
+    this.log = log;
+    this.thread = new Thread(this::watch, "sophodromos-hang-watchdog");
+    thread.setDaemon(true);
+  }
+
+  /** Starts watching. */
+  protected void start() {
+    thread.start();
+  }
+
+  /**
+   * Stops watching once the child invocation has exited.
+   *
+   * @throws InterruptedException if interrupted while waiting for a thread dump in progress
+   */
+  protected void stop() throws InterruptedException {
+    thread.interrupt();
+    thread.join();
+  }
+
+  /**
+   * Records that a test class started.
+   *
+   * @param className the test class name
+   */
+  protected void testClassStarted(final String className) {
+    lastEventNanos = System.nanoTime();
+    runningClasses.put(className, lastEventNanos);
+  }
+
+  /**
+   * Records that a test class completed.
+   *
+   * @param className the test class name
+   */
+  protected void testClassCompleted(final String className) {
+    lastEventNanos = System.nanoTime();
+    runningClasses.remove(className);
+  }
+
+  /** Records any other test event, such as a test's outcome. */
+  protected void testEvent() {
+    lastEventNanos = System.nanoTime();
+  }
+
+  /**
+   * Gets the hangs found, each naming the test class and where its thread dumps are.
+   *
+   * @return the hangs in the order they were found
+   */
+  protected List<String> getHungTests() {
+    return new ArrayList<>(hungTests);
+  }
+
+  /**
+   * Checks whether the forked test JVMs were killed because of a hang.
+   *
+   * @return true if a hang was ended by killing the forks
+   */
+  protected boolean isKilled() {
+    return killed;
+  }
+
+  private void watch() {
+    // Once the forks are killed, the classes they ran never complete
+    while (process.isAlive() && !killed) {
+      try {
+        Thread.sleep(CHECK_INTERVAL_MILLIS);
+        check();
+      } catch (final InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  private void check() throws InterruptedException {
+    final long now = System.nanoTime();
+    final long idleMillis = TimeUnit.NANOSECONDS.toMillis(now - lastEventNanos);
+    final boolean idle = hangTimeoutMillis > 0 && idleMillis >= hangTimeoutMillis;
+    // Stuck before any class started or between two classes
+    if (runningClasses.isEmpty() && idle && reportedClasses.add(NO_CLASS)) {
+      reportHang(NO_CLASS, idleMillis);
+    }
+    for (final Map.Entry<String, Long> running : runningClasses.entrySet()) {
+      final long runningMillis = TimeUnit.NANOSECONDS.toMillis(now - running.getValue());
+      if ((idle || isPastRecordedDuration(running.getKey(), runningMillis))
+          && reportedClasses.add(running.getKey())) {
+        reportHang(running.getKey(), runningMillis);
+      }
+    }
+  }
+
+  private boolean isPastRecordedDuration(final String className, final long runningMillis) {
+    final long recordedMillis = durationFactor > 0 ? recordedDurations.applyAsLong(className) : 0L;
+    return recordedMillis > 0
+        && runningMillis >= Math.max(MIN_RELATIVE_HANG_MILLIS, durationFactor * recordedMillis);
+  }
+
+  private void reportHang(final String className, final long stuckMillis)
+      throws InterruptedException {
+    final String testName = NO_CLASS.equals(className) ? "no test class running" : className;
+    if (log.isWarnEnabled()) {
+      log.warn(
+          "⏳ No test progress for "
+              + stuckMillis / 1000
+              + "s ("
+              + testName
+              + "), capturing thread dumps");
+    }
+    final List<Path> dumps = dumpJavaThreads(className);
+    final StringBuilder description =
+        new StringBuilder(testName)
+            .append(": no progress for ")
+            .append(stuckMillis / 1000)
+            .append('s');
+    if (!dumps.isEmpty()) {
+      description.append(", thread dumps in ").append(dumpDirectory);
+    }
+    if (killGraceMillis >= 0) {
+      killForks();
+      description.append(", forks killed");
+    }
+    hungTests.add(description.toString());
+  }
+
+  private List<Path> dumpJavaThreads(final String className) throws InterruptedException {
+    final List<Path> dumps = new ArrayList<>();
+    for (final ProcessHandle handle : listJavaProcesses()) {
+      final Path dump =
+          dumpDirectory.resolve(
+              (NO_CLASS.equals(className) ? "unknown" : className) + "-" + handle.pid() + ".txt");
+      try {
+        Files.createDirectories(dumpDirectory);
+        final Process jcmd =
+            new ProcessBuilder(findJcmd(), Long.toString(handle.pid()), "Thread.print")
+                .redirectErrorStream(true)
+                .redirectOutput(dump.toFile())
+                .start();
+        if (jcmd.waitFor(JCMD_TIMEOUT_SECONDS, TimeUnit.SECONDS) && jcmd.exitValue() == 0) {
+          dumps.add(dump);
+        } else {
+          jcmd.destroyForcibly();
+        }
+      } catch (final IOException e) {
+        if (log.isWarnEnabled()) {
+          log.warn("Could not dump the threads of process " + handle.pid() + ": " + e.getMessage());
+        }
+      }
+    }
+    return dumps;
+  }
+
+  private List<ProcessHandle> listJavaProcesses() {
+    final List<ProcessHandle> javaProcesses = new ArrayList<>();
+    try {
+      final ProcessHandle root = process.toHandle();
+      if (isJava(root)) {
+        javaProcesses.add(root);
+      }
+      root.descendants().filter(HangWatchdog::isJava).forEach(javaProcesses::add);
+    } catch (final UnsupportedOperationException e) {
+      // Runs in the warm JVM pool are no operating system processes
+    }
+    return javaProcesses;
+  }
+
+  private void killForks() {
+    killed = true;
+    final List<ProcessHandle> forks = new ArrayList<>();
+    try {
+      process.toHandle().descendants().filter(HangWatchdog::isJava).forEach(forks::add);
+    } catch (final UnsupportedOperationException e) {
+      // Without a process tree, the whole run is ended
+    }
+    if (forks.isEmpty()) {
+      ProcessTreeReaper.terminate(process, killGraceMillis);
+    }
+    // The child Maven invocation reports the crashed forks and goes on
+    for (final ProcessHandle fork : forks) {
+      ProcessTreeReaper.terminate(fork, killGraceMillis);
+    }
+  }
+
+  private static boolean isJava(final ProcessHandle handle) {
+    return handle
+        .info()
+        .command()
+        .map(command -> Paths.get(command).getFileName().toString().startsWith("java"))
+        .orElse(false);
+  }
+
+  private static String findJcmd() {
+    // The JDK running Maven can attach to the forks, which normally run on the same JDK
+    final Path jcmd = Paths.get(System.getProperty("java.home"), "bin", "jcmd");
+    return Files.isExecutable(jcmd) ? jcmd.toString() : "jcmd";
+  }
+}
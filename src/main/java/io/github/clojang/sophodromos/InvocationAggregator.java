@@ -0,0 +1,106 @@
+package io.github.clojang.sophodromos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collapses the invocations of a parameterized or {@code @RepeatedTest} method, which Surefire
+ * reports one line each with an {@code [n]} suffix, into one row with the invocation count, the
+ * passed and failed invocations and the median and 99th percentile duration. Passing invocations
+ * are not shown or kept on their own; failing ones still are, so their details stay available.
+ *
+ * <p>The invocations of a method are reported one after the other, so only the method being
+ * reported is tracked: its row is released once a line reports anything else, such as another
+ * method or the class's results.
+ */
+class InvocationAggregator {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final TestOutputFormatter formatter;
+  private final List<String> released = new ArrayList<>();
+  private String className;
+  private String methodName;
+  private long failed;
+  private long[] durations = new long[INITIAL_CAPACITY];
+  private int count;
+
+  /**
+   * Constructs a new InvocationAggregator.
+   *
+   * @param formatter the formatter of the rows
+   */
+  protected InvocationAggregator(final TestOutputFormatter formatter) {
+    this.formatter = formatter;
+  }
+
+  /**
+   * Adds an invocation to its method's row, releasing the row of the previous method.
+   *
+   * @param invocation the invocation
+   * @return true if the invocation passed and its own line is not to be shown
+   */
+  protected boolean accept(final OutputPatternMatcher.TestInvocation invocation) {
+    if (!invocation.className.equals(className) || !invocation.methodName.equals(methodName)) {
+      flush();
+      className = invocation.className;
+      methodName = invocation.methodName;
+    }
+    if (count == durations.length) {
+      durations = Arrays.copyOf(durations, count * 2);
+    }
+    durations[count++] = invocation.durationMillis;
+    if (invocation.failed) {
+      failed++;
+    }
+    return !invocation.failed;
+  }
+
+  /** Releases the row of the method being reported, if any. */
+  protected void flush() {
+    if (count > 0) {
+      Arrays.sort(durations, 0, count);
+      released.add(
+          formatter.formatInvocations(
+              className,
+              methodName,
+              count - failed,
+              failed,
+              percentile(durations, count, 50),
+              percentile(durations, count, 99)));
+    }
+    className = null;
+    methodName = null;
+    failed = 0;
+    count = 0;
+    // A long parameterized method's durations are not kept for the rest of the run
+    if (durations.length > INITIAL_CAPACITY) {
+      durations = new long[INITIAL_CAPACITY];
+    }
+  }
+
+  /**
+   * Takes the rows released since the last call.
+   *
+   * @return the rows, in order
+   */
+  protected List<String> takeReleasedLines() {
+    final List<String> lines = new ArrayList<>(released);
+    released.clear();
+    return lines;
+  }
+
+  /**
+   * Gets a percentile of sorted durations by the nearest-rank method.
+   *
+   * @param sorted the durations, sorted up to the count
+   * @param count the number of durations
+   * @param percent the percentile, from 1 to 100
+   * @return the duration at the percentile
+   */
+  protected static long percentile(final long[] sorted, final int count, final int percent) {
+    final int rank = (int) Math.ceil(percent / 100.0 * count);
+    return sorted[Math.max(0, rank - 1)];
+  }
+}
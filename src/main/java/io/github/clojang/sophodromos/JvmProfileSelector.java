@@ -0,0 +1,206 @@
+package io.github.clojang.sophodromos;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Chooses the JVM options of the forked test JVM from how long a module's tests took before. Forks
+ * that finish within seconds spend much of their time starting up and compiling code they run only
+ * once, so the {@code short} profile stops at the C1 compiler; longer forks get the {@code long}
+ * profile, by default the JVM's own settings with full C2 compilation. The duration says nothing
+ * about the memory the tests need, so neither profile sets a heap by default; the heap sized from
+ * the recorded peak RSS, like options the project's {@code argLine} sets, takes precedence.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn"})
+class JvmProfileSelector {
+
+  /** Setting that leaves the forked JVM options alone. */
+  protected static final String NONE = "none";
+
+  /** Setting that chooses the profile from the recorded durations. */
+  protected static final String AUTO = "auto";
+
+  /** Profile for forks that finish within the threshold. */
+  protected static final String SHORT = "short";
+
+  /** Profile for forks that take longer than the threshold. */
+  protected static final String LONG = "long";
+
+  private final String setting;
+  private final long thresholdMillis;
+  private final List<String> shortOptions;
+  private final List<String> longOptions;
+
+  /**
+   * Constructs a new JvmProfileSelector.
+   *
+   * @param setting {@code none}, {@code auto}, or a profile name to always apply
+   * @param thresholdMillis the longest expected fork duration that gets the short profile
+   * @param shortOptions the JVM options of the short profile, separated by whitespace
+   * @param longOptions the JVM options of the long profile, separated by whitespace
+   */
+  protected JvmProfileSelector(
+      final String setting,
+      final long thresholdMillis,
+      final String shortOptions,
+      final String longOptions) {
+    this.setting = setting == null ? NONE : setting.trim().toLowerCase(Locale.ROOT);
+    this.thresholdMillis = thresholdMillis;
+    this.shortOptions = splitOptions(shortOptions);
+    this.longOptions = splitOptions(longOptions);
+  }
+
+  /**
+   * Checks whether a profile setting is supported.
+   *
+   * @param setting the configured setting
+   * @return true for {@code none}, {@code auto}, {@code short} and {@code long}
+   */
+  protected static boolean isSupportedSetting(final String setting) {
+    final String normalized = setting == null ? NONE : setting.trim().toLowerCase(Locale.ROOT);
+    return NONE.equals(normalized)
+        || AUTO.equals(normalized)
+        || SHORT.equals(normalized)
+        || LONG.equals(normalized);
+  }
+
+  /**
+   * Chooses the profile for a fork running the given test classes.
+   *
+   * @param recordedDurations the recorded durations of the classes that ran before, in milliseconds
+   * @param testClassCount the number of test classes the fork runs, including ones without history
+   * @param argLine the project's own {@code argLine}, whose options take precedence
+   * @return the profile, or null if none applies
+   */
+  protected Profile select(
+      final Collection<Long> recordedDurations, final int testClassCount, final String argLine) {
+    if (NONE.equals(setting) || testClassCount == 0) {
+      return null;
+    }
+    final long estimatedMillis = estimate(recordedDurations, testClassCount);
+    final String name;
+    if (AUTO.equals(setting)) {
+      if (estimatedMillis < 0) {
+        // Without history a wrong guess could slow down a long fork considerably
+        return null;
+      }
+      name = estimatedMillis <= thresholdMillis ? SHORT : LONG;
+    } else {
+      name = setting;
+    }
+
+    final List<String> projectOptions = splitOptions(argLine);
+    final List<String> options = new ArrayList<>();
+    // An initial heap above a maximum heap set elsewhere would keep the JVM from starting
+    final boolean projectSetsMaxHeap = containsOption(projectOptions, "-Xmx");
+    for (final String option : SHORT.equals(name) ? shortOptions : longOptions) {
+      if (!containsOption(projectOptions, option)
+          && !(projectSetsMaxHeap && option.startsWith("-Xms"))) {
+        options.add(option);
+      }
+    }
+    return new Profile(name, options, estimatedMillis);
+  }
+
+  /**
+   * Estimates the fork duration, counting classes without history at the median recorded duration.
+   *
+   * @return the estimate in milliseconds, or -1 if no class has recorded history
+   */
+  private static long estimate(final Collection<Long> recordedDurations, final int testClassCount) {
+    if (recordedDurations.isEmpty()) {
+      return -1L;
+    }
+    final List<Long> sorted = new ArrayList<>(recordedDurations);
+    sorted.sort(null);
+    long total = 0;
+    for (final long duration : sorted) {
+      total += duration;
+    }
+    final int unknownClasses = Math.max(0, testClassCount - sorted.size());
+    return total + unknownClasses * sorted.get(sorted.size() / 2);
+  }
+
+  private static boolean containsOption(final List<String> options, final String option) {
+    final String key = optionKey(option);
+    for (final String candidate : options) {
+      if (optionKey(candidate).equals(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets the setting an option configures: {@code -Xmx1g} and {@code -Xmx256m} both set the maximum
+   * heap, {@code -XX:+Flag} and {@code -XX:-Flag} the same flag.
+   */
+  private static String optionKey(final String option) {
+    if (option.startsWith("-XX:")) {
+      final String setting = option.substring("-XX:".length());
+      final String name =
+          setting.startsWith("+") || setting.startsWith("-") ? setting.substring(1) : setting;
+      final int value = name.indexOf('=');
+      return "-XX:" + (value < 0 ? name : name.substring(0, value));
+    }
+    if (option.startsWith("-Xms") || option.startsWith("-Xmx") || option.startsWith("-Xss")) {
+      return option.substring(0, "-Xmx".length());
+    }
+    final int value = option.indexOf(option.startsWith("-D") ? '=' : ':');
+    return value < 0 ? option : option.substring(0, value);
+  }
+
+  private static List<String> splitOptions(final String options) {
+    final List<String> split = new ArrayList<>();
+    if (options != null) {
+      for (final String option : options.trim().split("\\s+")) {
+        if (!option.isEmpty()) {
+          split.add(option);
+        }
+      }
+    }
+    return split;
+  }
+
+  /** The profile chosen for a fork. */
+  protected static final class Profile {
+    private final String name;
+    private final List<String> options;
+    private final long estimatedMillis;
+
+    private Profile(final String name, final List<String> options, final long estimatedMillis) {
+      this.name = name;
+      this.options = List.copyOf(options);
+      this.estimatedMillis = estimatedMillis;
+    }
+
+    /**
+     * Gets the profile name.
+     *
+     * @return {@code short} or {@code long}
+     */
+    protected String getName() {
+      return name;
+    }
+
+    /**
+     * Gets the JVM options to add to the fork, without those the project sets itself.
+     *
+     * @return the options
+     */
+    protected List<String> getOptions() {
+      return options;
+    }
+
+    /**
+     * Gets the expected duration of the fork's tests.
+     *
+     * @return the estimate in milliseconds, or -1 if unknown
+     */
+    protected long getEstimatedMillis() {
+      return estimatedMillis;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package io.github.clojang.sophodromos;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collapses repeats of an output line, such as a warning that tests emit tens of thousands of
+ * times, into its first occurrence and a marker with the number of repeats. The last few distinct
+ * lines are kept in a small hash map ordered by their last occurrence; a line found there is
+ * counted instead of shown, and its marker is released once the line falls out of the window, so
+ * repeats are caught both back to back and interleaved with a few other lines.
+ *
+ * <p>Blank lines are always shown. The window is cleared at each test event, so that the stack
+ * traces of two failures are shown in full even where their frames are the same.
+ */
+class LineDeduplicator {
+
+  private final TestOutputFormatter formatter;
+  private final int window;
+  private final Map<String, long[]> recent;
+  private final List<String> released = new ArrayList<>();
+
+  /**
+   * Constructs a new LineDeduplicator.
+   *
+   * @param formatter the formatter of the markers
+   * @param window the number of recent distinct lines a repeat is looked for in, 1 for back to back
+   *     repeats only
+   */
+  protected LineDeduplicator(final TestOutputFormatter formatter, final int window) {
+    this.formatter = formatter;
+    this.window = window;
+    // Access order moves a repeated line to the end, so frequent repeats stay in the window
+    this.recent = new LinkedHashMap<>(window * 2, 0.75f, true);
+  }
+
+  /**
+   * Counts a line if it repeats a recent one, releasing the markers of lines that fall out of the
+   * window.
+   *
+   * @param line the formatted output line
+   * @return true if the line is a repeat and is not to be shown
+   */
+  protected boolean accept(final String line) {
+    boolean repeat = false;
+    if (!line.isBlank()) {
+      final long[] repeats = recent.get(line);
+      if (repeats == null) {
+        recent.put(line, new long[1]);
+        if (recent.size() > window) {
+          final Iterator<Map.Entry<String, long[]>> eldest = recent.entrySet().iterator();
+          release(eldest.next());
+          eldest.remove();
+        }
+      } else {
+        repeats[0]++;
+        repeat = true;
+      }
+    }
+    return repeat;
+  }
+
+  /** Releases the markers of all recent lines and clears the window, e.g. at a test event. */
+  protected void flush() {
+    for (final Map.Entry<String, long[]> entry : recent.entrySet()) {
+      release(entry);
+    }
+    recent.clear();
+  }
+
+  /**
+   * Takes the markers released since the last call.
+   *
+   * @return the markers, in order
+   */
+  protected List<String> takeReleasedLines() {
+    final List<String> lines = new ArrayList<>(released);
+    released.clear();
+    return lines;
+  }
+
+  private void release(final Map.Entry<String, long[]> entry) {
+    if (entry.getValue()[0] > 0) {
+      released.add(formatter.formatRepeatedLine(entry.getKey(), entry.getValue()[0]));
+    }
+  }
+}
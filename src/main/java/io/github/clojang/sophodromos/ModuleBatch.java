@@ -0,0 +1,352 @@
+package io.github.clojang.sophodromos;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Runs the tests of small reactor modules together in one forked JVM. For a module with a handful
+ * of fast test classes, starting a child Maven invocation costs far more than the tests themselves,
+ * so such modules are queued in the session while the reactor builds and run by the last module.
+ * Every module gets a class loader of its own over its complete test classpath, so modules cannot
+ * see each other's classes or dependency versions, and each module's output is kept apart so that
+ * its results are attributed to it.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn", "PMD.GuardLogStatement"})
+class ModuleBatch {
+
+  private static final String QUEUE_KEY = "sophodromos.batch.queue";
+  private static final int PIPE_SIZE = 64 * 1024;
+
+  private final MavenSession session;
+  private final Log log;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private Process worker;
+  private BufferedReader workerOutput;
+  private Writer workerInput;
+  private volatile boolean stopped;
+
+  /**
+   * Constructs a new ModuleBatch.
+   *
+   * @param session the Maven session holding the queue
+   * @param log Maven logger
+   */
+  protected ModuleBatch(final MavenSession session, final Log log) {
+    this.session = session;
+    this.log = log;
+  }
+
+  /**
+   * Queues a module whose tests should run with the batch.
+   *
+   * @param project the module
+   * @param historyDirectory the module's test history directory
+   */
+  protected void enqueue(final MavenProject project, final File historyDirectory) {
+    // Each module has its own batch instance, while pipelined modules queue concurrently
+    synchronized (session.getUserProperties()) {
+      final Map<String, String> queue = loadQueue();
+      queue.put(getModuleId(project), historyDirectory.getAbsolutePath());
+      saveQueue(queue);
+    }
+  }
+
+  /**
+   * Gets the queued modules, in the order they were queued.
+   *
+   * @return map of module ID to the module's test history directory
+   */
+  protected synchronized Map<String, File> getQueuedModules() {
+    final Map<String, File> modules = new LinkedHashMap<>();
+    for (final Map.Entry<String, String> entry : loadQueue().entrySet()) {
+      modules.put(entry.getKey(), new File(entry.getValue()));
+    }
+    return modules;
+  }
+
+  /** Empties the queue once its modules have run. */
+  protected synchronized void clearQueue() {
+    session.getUserProperties().remove(QUEUE_KEY);
+  }
+
+  /**
+   * Finds a queued module among the reactor projects.
+   *
+   * @param moduleId the module ID
+   * @return the project, or null if it is not part of the reactor
+   */
+  protected MavenProject findProject(final String moduleId) {
+    for (final MavenProject project : session.getProjects()) {
+      if (getModuleId(project).equals(moduleId)) {
+        return project;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Starts running a module's test classes in the batch JVM, which is started first if needed. The
+   * run is handed back as a {@link Process} whose output is the module's test output in Surefire's
+   * format.
+   *
+   * @param project the module
+   * @param testClasses the test classes to run, in order
+   * @return the running tests
+   * @throws IOException if the batch JVM cannot be started or was stopped
+   * @throws DependencyResolutionRequiredException if the module's test classpath is not resolved
+   */
+  protected synchronized Process start(final MavenProject project, final List<String> testClasses)
+      throws IOException, DependencyResolutionRequiredException {
+    final List<String> classpath = new ArrayList<>();
+    for (final String element : project.getTestClasspathElements()) {
+      final Path path = Paths.get(element).toAbsolutePath();
+      if (Files.exists(path)) {
+        classpath.add(path.toString());
+      }
+    }
+    WarmPoolClient.addPlatformLauncher(classpath);
+
+    if (stopped) {
+      throw new IOException("the batch JVM was stopped");
+    }
+    if (worker == null || !worker.isAlive()) {
+      attach(startWorker());
+    }
+    workerInput.write(project.getBasedir().getAbsolutePath());
+    workerInput.write(WarmPoolWorker.FIELD_SEPARATOR);
+    workerInput.write(String.join(File.pathSeparator, classpath));
+    workerInput.write(WarmPoolWorker.FIELD_SEPARATOR);
+    workerInput.write(String.join(",", testClasses));
+    workerInput.write('\n');
+    workerInput.flush();
+    return startNextRun();
+  }
+
+  /**
+   * Checks whether the batch JVM was stopped by destroying one of its runs, e.g. when a module
+   * timed out, so that the modules still queued cannot run.
+   *
+   * @return true once the batch JVM was stopped
+   */
+  protected boolean isStopped() {
+    return stopped;
+  }
+
+  /**
+   * Takes over a started batch JVM, waiting until it is ready for runs.
+   *
+   * @param batchWorker the batch JVM
+   * @throws IOException if the batch JVM did not get ready
+   */
+  protected synchronized void attach(final Process batchWorker) throws IOException {
+    worker = batchWorker;
+    workerOutput =
+        new BufferedReader(new InputStreamReader(worker.getInputStream(), StandardCharsets.UTF_8));
+    workerInput = new OutputStreamWriter(worker.getOutputStream(), StandardCharsets.UTF_8);
+    final String status = workerOutput.readLine();
+    if (!WarmPoolWorker.READY.equals(status)) {
+      worker.destroy();
+      worker = null;
+      throw new IOException("the batch JVM did not start: " + status);
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Started batch JVM for small modules");
+    }
+  }
+
+  /**
+   * Presents the output of the run just requested from the batch JVM as a process of its own.
+   * Destroying the run stops the batch JVM, since a single test class cannot be stopped in it.
+   *
+   * @return the running tests
+   * @throws IOException if the run's output cannot be relayed
+   */
+  protected synchronized Process startNextRun() throws IOException {
+    return new BatchedRun(workerOutput, this::stop);
+  }
+
+  /** Stops the batch JVM. */
+  protected synchronized void close() {
+    if (worker != null) {
+      try {
+        // Closing standard input ends the worker's request loop
+        workerInput.close();
+      } catch (final IOException e) {
+        worker.destroy();
+      }
+      worker = null;
+    }
+  }
+
+  /** Kills the batch JVM with the processes it started, ending the output of its current run. */
+  private synchronized void stop() {
+    stopped = true;
+    if (worker != null) {
+      final Process stoppedWorker = worker;
+      final BufferedReader stoppedOutput = workerOutput;
+      stoppedWorker.descendants().forEach(ProcessHandle::destroyForcibly);
+      stoppedWorker.destroyForcibly();
+      closeQuietly(workerInput);
+      // The relay holds the reader's lock until it reads the end of the killed JVM's output
+      stoppedWorker.onExit().thenRun(() -> closeQuietly(stoppedOutput));
+      worker = null;
+      if (log.isWarnEnabled()) {
+        log.warn("Stopped the batch JVM of small modules; the modules still queued will not run");
+      }
+    }
+  }
+
+  private static void closeQuietly(final Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (final IOException e) {
+      // The stream of a killed process
+    }
+  }
+
+  private Process startWorker() throws IOException {
+    final Path pluginJar = CoverageRecorder.findPluginJar();
+    if (pluginJar == null) {
+      throw new IOException("running modules in a batch needs the packaged plugin jar");
+    }
+    return new ProcessBuilder(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp",
+            pluginJar.toString(),
+            WarmPoolWorker.class.getName(),
+            WarmPoolWorker.ISOLATED)
+        .directory(new File(session.getExecutionRootDirectory()))
+        .redirectErrorStream(true)
+        .start();
+  }
+
+  private Map<String, String> loadQueue() {
+    final String queueJson = session.getUserProperties().getProperty(QUEUE_KEY, "{}");
+    try {
+      return objectMapper.readValue(
+          queueJson, new TypeReference<LinkedHashMap<String, String>>() {});
+    } catch (final JsonProcessingException e) {
+      if (log.isWarnEnabled()) {
+        log.warn("Could not read the module batch queue, starting a new one: " + e.getMessage());
+      }
+      return new LinkedHashMap<>();
+    }
+  }
+
+  private void saveQueue(final Map<String, String> queue) {
+    try {
+      session.getUserProperties().setProperty(QUEUE_KEY, objectMapper.writeValueAsString(queue));
+    } catch (final JsonProcessingException e) {
+      if (log.isErrorEnabled()) {
+        log.error("Could not store the module batch queue: " + e.getMessage(), e);
+      }
+    }
+  }
+
+  private static String getModuleId(final MavenProject project) {
+    return project.getGroupId() + ":" + project.getArtifactId();
+  }
+
+  /** One module's run in the batch JVM, presented as a process writing the module's output. */
+  @SuppressWarnings("PMD.DoNotUseThreads") // Relays the worker output while it is captured
+  private static final class BatchedRun extends Process {
+    private final PipedInputStream output = new PipedInputStream(PIPE_SIZE);
+    private final Thread relay;
+    private final Runnable stopWorker;
+    private volatile int exitCode = 1;
+
+    private BatchedRun(final BufferedReader workerOutput, final Runnable stopWorker)
+        throws IOException {
+      super();
+      this.stopWorker = stopWorker;
+      final PipedOutputStream sink = new PipedOutputStream(output);
+      this.relay = new Thread(() -> relay(workerOutput, sink), "sophodromos-batch-relay");
+      relay.setDaemon(true);
+      relay.start();
+    }
+
+    /** Relays the worker output up to the end of this run; the worker stays for the next one. */
+    private void relay(final BufferedReader workerOutput, final PipedOutputStream sink) {
+      try (OutputStream out = sink) {
+        String line = workerOutput.readLine();
+        while (line != null && !line.startsWith(WarmPoolWorker.DONE)) {
+          out.write((line + '\n').getBytes(StandardCharsets.UTF_8));
+          out.flush();
+          line = workerOutput.readLine();
+        }
+        if (line == null) {
+          out.write((WarmPoolDaemon.WORKER_CRASHED + '\n').getBytes(StandardCharsets.UTF_8));
+        } else {
+          exitCode = 0;
+        }
+      } catch (final IOException e) {
+        // The run ends with exit code 1
+      }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return output;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      // The worker's standard error is merged into its output
+      return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+      relay.join();
+      return exitCode;
+    }
+
+    @Override
+    public int exitValue() {
+      if (relay.isAlive()) {
+        throw new IllegalThreadStateException("Tests are still running in the batch JVM");
+      }
+      return exitCode;
+    }
+
+    @Override
+    public boolean isAlive() {
+      return relay.isAlive();
+    }
+
+    @Override
+    public void destroy() {
+      // Interrupting the relay would not end a read from the worker
+      stopWorker.run();
+    }
+  }
+}
@@ -0,0 +1,393 @@
+package io.github.clojang.sophodromos;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Content-addressed cache of green module test results. Entries are keyed by a hash of everything
+ * the run depends on, so a hit can be replayed instead of starting Surefire. The cache directory
+ * may be shared between machines: entries are written atomically, verified by checksum when read,
+ * and evicted least-recently-used first once the cache grows beyond its size limit.
+ */
+@SuppressWarnings({
+  "PMD.LawOfDemeter",
+  "PMD.OnlyOneReturn",
+  "PMD.DataClass",
+  "PMD.GuardLogStatement"
+})
+class ModuleResultCache {
+
+  private static final String ALGORITHM = "SHA-256";
+  private static final String ENTRY_SUFFIX = ".json";
+
+  private final Path cacheDirectory;
+  private final long maxSizeBytes;
+  private final Log log;
+  private final ObjectMapper objectMapper =
+      new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  /** Stored file: the serialized entry and its checksum. */
+  public static class StoredEntry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String checksum;
+    private String payload;
+
+    public StoredEntry() {} // For JSON deserialization
+
+    public String getChecksum() {
+      return checksum;
+    }
+
+    public void setChecksum(final String checksum) {
+      this.checksum = checksum;
+    }
+
+    public String getPayload() {
+      return payload;
+    }
+
+    public void setPayload(final String payload) {
+      this.payload = payload;
+    }
+  }
+
+  /** Cached outcome of a single test class. */
+  public static class CachedClassResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String className;
+    private int testsRun;
+    private int skipped;
+    private long executionTime;
+
+    public CachedClassResult() {} // For JSON deserialization
+
+    public String getClassName() {
+      return className;
+    }
+
+    public void setClassName(final String className) {
+      this.className = className;
+    }
+
+    public int getTestsRun() {
+      return testsRun;
+    }
+
+    public void setTestsRun(final int testsRun) {
+      this.testsRun = testsRun;
+    }
+
+    public int getSkipped() {
+      return skipped;
+    }
+
+    public void setSkipped(final int skipped) {
+      this.skipped = skipped;
+    }
+
+    public long getExecutionTime() {
+      return executionTime;
+    }
+
+    public void setExecutionTime(final long executionTime) {
+      this.executionTime = executionTime;
+    }
+  }
+
+  /** Cached green result of a module's test run. */
+  public static class CacheEntry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String key;
+    private int totalTests;
+    private int passedTests;
+    private int skippedTests;
+    private long executionTime;
+    private List<String> outputLines = new ArrayList<>();
+    private List<CachedClassResult> classResults = new ArrayList<>();
+
+    public CacheEntry() {} // For JSON deserialization
+
+    public String getKey() {
+      return key;
+    }
+
+    public void setKey(final String key) {
+      this.key = key;
+    }
+
+    public int getTotalTests() {
+      return totalTests;
+    }
+
+    public void setTotalTests(final int totalTests) {
+      this.totalTests = totalTests;
+    }
+
+    public int getPassedTests() {
+      return passedTests;
+    }
+
+    public void setPassedTests(final int passedTests) {
+      this.passedTests = passedTests;
+    }
+
+    public int getSkippedTests() {
+      return skippedTests;
+    }
+
+    public void setSkippedTests(final int skippedTests) {
+      this.skippedTests = skippedTests;
+    }
+
+    public long getExecutionTime() {
+      return executionTime;
+    }
+
+    public void setExecutionTime(final long executionTime) {
+      this.executionTime = executionTime;
+    }
+
+    public List<String> getOutputLines() {
+      return outputLines == null ? new ArrayList<>() : new ArrayList<>(outputLines);
+    }
+
+    public void setOutputLines(final List<String> outputLines) {
+      this.outputLines = outputLines == null ? new ArrayList<>() : new ArrayList<>(outputLines);
+    }
+
+    public List<CachedClassResult> getClassResults() {
+      return classResults == null ? new ArrayList<>() : new ArrayList<>(classResults);
+    }
+
+    public void setClassResults(final List<CachedClassResult> classResults) {
+      this.classResults = classResults == null ? new ArrayList<>() : new ArrayList<>(classResults);
+    }
+  }
+
+  /**
+   * Creates a new result cache.
+   *
+   * @param cacheDirectory directory holding the cache entries
+   * @param maxSizeBytes size above which least recently used entries are evicted
+   * @param log Maven logger
+   */
+  protected ModuleResultCache(final Path cacheDirectory, final long maxSizeBytes, final Log log) {
+    this.cacheDirectory = cacheDirectory;
+    this.maxSizeBytes = maxSizeBytes;
+    this.log = log;
+  }
+
+  /**
+   * Computes the cache key of a module run.
+   *
+   * @param moduleFingerprint fingerprint of the module's classes, resources and test classpath
+   * @param configuration settings that can change the outcome, such as the surefire configuration
+   * @return the hex-encoded cache key
+   */
+  protected static String computeKey(
+      final String moduleFingerprint, final Map<String, String> configuration) {
+    final StringBuilder content = new StringBuilder(moduleFingerprint).append('\n');
+    for (final Map.Entry<String, String> entry : new TreeMap<>(configuration).entrySet()) {
+      content.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+    }
+    return sha256(content.toString());
+  }
+
+  /**
+   * Looks up a cached result. A hit marks the entry as recently used; an entry that fails its
+   * integrity check is deleted and reported as a miss.
+   *
+   * @param key the cache key
+   * @return the cached result, or null on a miss
+   */
+  protected TestExecutionResult load(final String key) {
+    final Path entryFile = entryFile(key);
+    if (!Files.isRegularFile(entryFile)) {
+      return null;
+    }
+    try {
+      final StoredEntry stored = objectMapper.readValue(entryFile.toFile(), StoredEntry.class);
+      final CacheEntry entry =
+          stored.getPayload() == null || !sha256(stored.getPayload()).equals(stored.getChecksum())
+              ? null
+              : objectMapper.readValue(stored.getPayload(), CacheEntry.class);
+      if (entry == null || !key.equals(entry.getKey())) {
+        if (log.isWarnEnabled()) {
+          log.warn("Discarding corrupt result cache entry " + entryFile);
+        }
+        Files.deleteIfExists(entryFile);
+        return null;
+      }
+      Files.setLastModifiedTime(entryFile, FileTime.fromMillis(System.currentTimeMillis()));
+      return toResult(entry);
+    } catch (final IOException e) {
+      if (log.isWarnEnabled()) {
+        log.warn("Could not read result cache entry " + entryFile + ": " + e.getMessage());
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Stores a green result and evicts old entries if the cache is over its size limit.
+   *
+   * @param key the cache key
+   * @param result the result to store; results with failures are ignored
+   */
+  protected void store(final String key, final TestExecutionResult result) {
+    if (result.hasFailures() || result.getExitCode() != 0) {
+      return;
+    }
+    final Path entryFile = entryFile(key);
+    try {
+      final StoredEntry stored = new StoredEntry();
+      stored.setPayload(objectMapper.writeValueAsString(toEntry(key, result)));
+      stored.setChecksum(sha256(stored.getPayload()));
+
+      Files.createDirectories(entryFile.getParent());
+      final Path tempFile = Files.createTempFile(entryFile.getParent(), key, ".tmp");
+      objectMapper.writeValue(tempFile.toFile(), stored);
+      moveIntoPlace(tempFile, entryFile);
+      evict();
+    } catch (final IOException e) {
+      if (log.isWarnEnabled()) {
+        log.warn("Could not write result cache entry " + entryFile + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private static CacheEntry toEntry(final String key, final TestExecutionResult result) {
+    final CacheEntry entry = new CacheEntry();
+    entry.setKey(key);
+    entry.setTotalTests(result.getTotalTests());
+    entry.setPassedTests(result.getPassedTests());
+    entry.setSkippedTests(result.getSkippedTests());
+    entry.setExecutionTime(result.getExecutionTime());
+    entry.setOutputLines(result.getOutputLines());
+    final List<CachedClassResult> classResults = new ArrayList<>();
+    for (final TestExecutionResult.TestClassResult classResult : result.getClassResults()) {
+      final CachedClassResult cached = new CachedClassResult();
+      cached.setClassName(classResult.getClassName());
+      cached.setTestsRun(classResult.getTestsRun());
+      cached.setSkipped(classResult.getSkipped());
+      cached.setExecutionTime(classResult.getExecutionTime());
+      classResults.add(cached);
+    }
+    entry.setClassResults(classResults);
+    return entry;
+  }
+
+  private static TestExecutionResult toResult(final CacheEntry entry) {
+    final TestExecutionResult result = new TestExecutionResult();
+    result.setTotalTests(entry.getTotalTests());
+    result.setPassedTests(entry.getPassedTests());
+    result.setSkippedTests(entry.getSkippedTests());
+    result.setExecutionTime(entry.getExecutionTime());
+    for (final String line : entry.getOutputLines()) {
+      result.addOutputLine(line);
+    }
+    for (final CachedClassResult cached : entry.getClassResults()) {
+      result.recordClassResult(
+          new TestExecutionResult.TestClassResult(
+              cached.getClassName(),
+              cached.getTestsRun(),
+              0,
+              0,
+              cached.getSkipped(),
+              cached.getExecutionTime()));
+    }
+    result.setReplayedFromCache(true);
+    return result;
+  }
+
+  /** Deletes least recently used entries until the cache fits its size limit. */
+  private void evict() throws IOException {
+    final List<Path> entries;
+    try (Stream<Path> files = Files.walk(cacheDirectory)) {
+      entries =
+          files
+              .filter(Files::isRegularFile)
+              .filter(file -> file.getFileName().toString().endsWith(ENTRY_SUFFIX))
+              .collect(Collectors.toList());
+    }
+
+    final Map<Path, FileTime> lastUsed = new TreeMap<>();
+    long totalSize = 0;
+    for (final Path entry : entries) {
+      try {
+        lastUsed.put(entry, Files.getLastModifiedTime(entry));
+        totalSize += Files.size(entry);
+      } catch (final NoSuchFileException e) {
+        // Evicted concurrently by another build sharing the cache
+        lastUsed.remove(entry);
+      }
+    }
+    if (totalSize <= maxSizeBytes) {
+      return;
+    }
+
+    final List<Path> oldestFirst = new ArrayList<>(lastUsed.keySet());
+    oldestFirst.sort(Comparator.comparing(lastUsed::get));
+    for (final Path entry : oldestFirst) {
+      if (totalSize <= maxSizeBytes) {
+        break;
+      }
+      try {
+        final long size = Files.size(entry);
+        Files.deleteIfExists(entry);
+        totalSize -= size;
+      } catch (final NoSuchFileException e) {
+        // Already gone
+      }
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Result cache size after eviction: " + totalSize + " bytes");
+    }
+  }
+
+  private Path entryFile(final String key) {
+    // Spread entries over subdirectories to keep directory listings short
+    return cacheDirectory.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+  }
+
+  private static void moveIntoPlace(final Path tempFile, final Path target) throws IOException {
+    try {
+      Files.move(
+          tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (final AtomicMoveNotSupportedException e) {
+      Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static String sha256(final String content) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+      return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(ALGORITHM + " is not available", e);
+    }
+  }
+}
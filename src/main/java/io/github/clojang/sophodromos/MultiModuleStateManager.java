@@ -48,6 +48,15 @@ class MultiModuleStateManager {
     private long testsFailed;
     private long testsSkipped;
     private double timeElapsed;
+    private String skipReason;
+    private String startupLauncher;
+    private long startupSavedMillis;
+    private long sharedArchiveSavedMillis;
+    private String jvmProfile;
+    private String jvmProfileOptions;
+    private String stopReason;
+    private long treeCpuMillis;
+    private List<String> hungTests = new ArrayList<>();
 
     public ModuleTestResults() {} // For JSON deserialization
 
@@ -112,6 +121,78 @@ class MultiModuleStateManager {
       this.timeElapsed = timeElapsed;
     }
 
+    public String getSkipReason() {
+      return skipReason;
+    }
+
+    public void setSkipReason(final String skipReason) {
+      this.skipReason = skipReason;
+    }
+
+    public String getStartupLauncher() {
+      return startupLauncher;
+    }
+
+    public void setStartupLauncher(final String startupLauncher) {
+      this.startupLauncher = startupLauncher;
+    }
+
+    public long getStartupSavedMillis() {
+      return startupSavedMillis;
+    }
+
+    public void setStartupSavedMillis(final long startupSavedMillis) {
+      this.startupSavedMillis = startupSavedMillis;
+    }
+
+    public long getSharedArchiveSavedMillis() {
+      return sharedArchiveSavedMillis;
+    }
+
+    public void setSharedArchiveSavedMillis(final long sharedArchiveSavedMillis) {
+      this.sharedArchiveSavedMillis = sharedArchiveSavedMillis;
+    }
+
+    public String getJvmProfile() {
+      return jvmProfile;
+    }
+
+    public void setJvmProfile(final String jvmProfile) {
+      this.jvmProfile = jvmProfile;
+    }
+
+    public String getJvmProfileOptions() {
+      return jvmProfileOptions;
+    }
+
+    public void setJvmProfileOptions(final String jvmProfileOptions) {
+      this.jvmProfileOptions = jvmProfileOptions;
+    }
+
+    public String getStopReason() {
+      return stopReason;
+    }
+
+    public void setStopReason(final String stopReason) {
+      this.stopReason = stopReason;
+    }
+
+    public long getTreeCpuMillis() {
+      return treeCpuMillis;
+    }
+
+    public void setTreeCpuMillis(final long treeCpuMillis) {
+      this.treeCpuMillis = treeCpuMillis;
+    }
+
+    public List<String> getHungTests() {
+      return hungTests;
+    }
+
+    public void setHungTests(final List<String> hungTests) {
+      this.hungTests = hungTests == null ? new ArrayList<>() : new ArrayList<>(hungTests);
+    }
+
     public void addTestOutput(final String line) {
       if (testOutput == null) {
         testOutput = new ArrayList<>();
@@ -266,9 +347,16 @@ class MultiModuleStateManager {
    * @param results the test results for this module
    * @return true if this is the last module to complete
    */
-  protected synchronized boolean completeModule(final ModuleTestResults results) {
+  protected boolean completeModule(final ModuleTestResults results) {
     final Properties userProperties = session.getUserProperties();
+    // Each module has its own manager, while pipelined modules complete concurrently
+    synchronized (userProperties) {
+      return recordCompletion(userProperties, results);
+    }
+  }
 
+  private boolean recordCompletion(
+      final Properties userProperties, final ModuleTestResults results) {
     // Add to completed modules
     final String completedStr = userProperties.getProperty(COMPLETED_KEY, "");
     final Set<String> completed = parseStringSet(completedStr);
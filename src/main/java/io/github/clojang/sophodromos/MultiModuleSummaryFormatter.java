@@ -71,6 +71,11 @@ class MultiModuleSummaryFormatter {
 
     summary.append(moduleName).append('\n');
 
+    if (result.getSkipReason() != null) {
+      summary.append("💤 Tests skipped: ").append(result.getSkipReason()).append("\n\n");
+      return;
+    }
+
     // Show test output if available
     if (!result.getTestOutput().isEmpty()) {
       for (final String line : result.getTestOutput()) {
@@ -109,6 +114,37 @@ class MultiModuleSummaryFormatter {
 
     summary.append('\n');
     summary.append(String.format("Time: %.1fs%n", result.getTimeElapsed()));
+    if (result.getTreeCpuMillis() > 0) {
+      summary.append(TestOutputFormatter.describeTreeCpu(result.getTreeCpuMillis())).append('\n');
+    }
+    if (result.getStartupLauncher() != null) {
+      summary
+          .append(
+              TestOutputFormatter.describeStartupSavings(
+                  result.getStartupLauncher(), result.getStartupSavedMillis()))
+          .append('\n');
+    }
+    if (result.getJvmProfile() != null) {
+      summary
+          .append(
+              TestOutputFormatter.describeJvmProfile(
+                  result.getJvmProfile(), result.getJvmProfileOptions()))
+          .append('\n');
+    }
+    if (result.getSharedArchiveSavedMillis() != 0) {
+      summary
+          .append(
+              TestOutputFormatter.describeSharedArchiveSavings(
+                  result.getSharedArchiveSavedMillis()))
+          .append('\n');
+    }
+
+    for (final String hungTest : result.getHungTests()) {
+      summary.append("⏳ Hung: ").append(hungTest).append('\n');
+    }
+    if (result.getStopReason() != null) {
+      summary.append("🛑 Stopped early: ").append(result.getStopReason()).append('\n');
+    }
 
     // Module status
     if (result.getTestsFailed() > 0) {
@@ -147,6 +183,31 @@ class MultiModuleSummaryFormatter {
     }
 
     summary.append('\n');
+    final long skippedModules =
+        state.getModuleResults().values().stream()
+            .filter(result -> result.getSkipReason() != null)
+            .count();
+    if (skippedModules > 0) {
+      summary.append(String.format("💤 %d modules skipped%n", skippedModules));
+    }
+    final long stoppedModules =
+        state.getModuleResults().values().stream()
+            .filter(result -> result.getStopReason() != null)
+            .count();
+    if (stoppedModules > 0) {
+      summary.append(String.format("🛑 %d modules stopped early%n", stoppedModules));
+    }
+    final long startupSavedMillis =
+        state.getModuleResults().values().stream()
+                .filter(result -> result.getStartupLauncher() != null)
+                .mapToLong(MultiModuleStateManager.ModuleTestResults::getStartupSavedMillis)
+                .sum()
+            + state.getModuleResults().values().stream()
+                .mapToLong(MultiModuleStateManager.ModuleTestResults::getSharedArchiveSavedMillis)
+                .sum();
+    if (startupSavedMillis > 0) {
+      summary.append(String.format("⚡ ~%.1fs of startup saved%n", startupSavedMillis / 1000.0));
+    }
     summary.append(String.format("Total Time: %.1fs%n%n", state.getTotalTimeElapsed()));
 
     // Overall status
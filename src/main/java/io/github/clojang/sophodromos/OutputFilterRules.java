@@ -0,0 +1,83 @@
+package io.github.clojang.sophodromos;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * User-defined rules that include, exclude or highlight output lines, e.g. to drop a framework's
+ * banner or deprecation warnings in one project while flagging another library's warnings. A rule
+ * is a literal text found anywhere in a line, or a regular expression matched from the start of the
+ * line if it begins with {@code ^}. The literal rules of all kinds are compiled into one {@link
+ * AhoCorasickMatcher}, so a line is matched against all of them in a single pass, however many
+ * there are; only the anchored expressions are matched one by one.
+ *
+ * <p>An include rule keeps a line that an exclude rule or the built-in filtering would drop.
+ */
+final class OutputFilterRules {
+
+  /** Flag of lines to keep. */
+  protected static final int INCLUDE = 1;
+
+  /** Flag of lines to drop. */
+  protected static final int EXCLUDE = 2;
+
+  /** Flag of lines to highlight. */
+  protected static final int HIGHLIGHT = 4;
+
+  private static final String ANCHOR = "^";
+
+  private final AhoCorasickMatcher literals;
+  private final List<Pattern> anchoredPatterns = new ArrayList<>();
+  private final List<Integer> anchoredFlags = new ArrayList<>();
+
+  /**
+   * Compiles the rules.
+   *
+   * @param include the rules of lines to keep
+   * @param exclude the rules of lines to drop
+   * @param highlight the rules of lines to highlight
+   * @throws IllegalArgumentException if an anchored expression is invalid
+   */
+  protected OutputFilterRules(
+      final List<String> include, final List<String> exclude, final List<String> highlight) {
+    final Map<String, Integer> literalFlags = new LinkedHashMap<>();
+    addRules(include, INCLUDE, literalFlags);
+    addRules(exclude, EXCLUDE, literalFlags);
+    addRules(highlight, HIGHLIGHT, literalFlags);
+    this.literals = new AhoCorasickMatcher(literalFlags);
+  }
+
+  /**
+   * Finds the rules a line matches.
+   *
+   * @param line the output line
+   * @return the union of the flags of the matching rules, 0 if none matches
+   */
+  protected int match(final String line) {
+    int flags = literals.match(line);
+    for (int index = 0; index < anchoredPatterns.size(); index++) {
+      if ((flags & anchoredFlags.get(index)) == 0
+          && anchoredPatterns.get(index).matcher(line).lookingAt()) {
+        flags |= anchoredFlags.get(index);
+      }
+    }
+    return flags;
+  }
+
+  private void addRules(
+      final List<String> rules, final int flag, final Map<String, Integer> literalFlags) {
+    if (rules != null) {
+      for (final String rule : rules) {
+        if (rule.startsWith(ANCHOR)) {
+          anchoredPatterns.add(Pattern.compile(rule));
+          anchoredFlags.add(flag);
+        } else if (!rule.isEmpty()) {
+          literalFlags.merge(rule, flag, (existing, added) -> existing | added);
+        }
+      }
+    }
+  }
+}
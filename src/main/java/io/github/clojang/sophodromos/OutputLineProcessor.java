@@ -7,6 +7,7 @@ import org.apache.maven.project.MavenProject;
 class OutputLineProcessor {
   private final MavenProject project;
   private final TestOutputFormatter formatter;
+  private OutputFilterRules filterRules;
 
   /**
    * Constructs a new OutputLineProcessor. Package-private constructor for internal use within the
@@ -20,6 +21,15 @@ class OutputLineProcessor {
     this.formatter = formatter;
   }
 
+  /**
+   * Sets the user-defined rules that include, exclude or highlight lines.
+   *
+   * @param filterRules the rules, or null for the built-in filtering only
+   */
+  protected void setFilterRules(final OutputFilterRules filterRules) {
+    this.filterRules = filterRules;
+  }
+
   /**
    * Preprocesses an output line for formatting or filtering. Package-private method for internal
    * use within the sophodromos package.
@@ -31,18 +41,42 @@ class OutputLineProcessor {
   // False positives from OnlyOneReturn refactoring and standard method chains
   protected String preprocessOutputLine(final String line) {
     String result = line;
+    final int flags = filterRules == null ? 0 : filterRules.match(line);
+    final boolean included = (flags & OutputFilterRules.INCLUDE) != 0;
 
-    if (shouldSkipLine(line)) {
+    if (!included && ((flags & OutputFilterRules.EXCLUDE) != 0 || shouldSkipLine(line))) {
       result = null;
+    } else if ((flags & OutputFilterRules.HIGHLIGHT) != 0) {
+      result = formatter.formatHighlightedLine(line);
     } else if (isAssertionFailure(line)) {
       result = formatter.formatErrorLine(line.trim());
     } else if (isStackTrace(line)) {
-      result = handleStackTrace(line).orElse(null);
+      result = handleStackTrace(line).orElse(included ? line : null);
     }
 
     return result;
   }
 
+  /**
+   * Preprocesses an error output line, applying the user-defined rules.
+   *
+   * @param line the error line to process
+   * @return the processed line or null if it should be skipped
+   */
+  @SuppressWarnings("PMD.NullAssignment") // Null marks a skipped line
+  protected String preprocessErrorLine(final String line) {
+    final int flags = filterRules == null ? 0 : filterRules.match(line);
+    String result;
+    if ((flags & OutputFilterRules.INCLUDE) == 0 && (flags & OutputFilterRules.EXCLUDE) != 0) {
+      result = null;
+    } else if ((flags & OutputFilterRules.HIGHLIGHT) != 0) {
+      result = formatter.formatHighlightedLine(line);
+    } else {
+      result = formatter.formatErrorLine(line);
+    }
+    return result;
+  }
+
   private boolean shouldSkipLine(final String line) {
     return line.contains("[INFO]")
         || line.contains("[DEBUG]")
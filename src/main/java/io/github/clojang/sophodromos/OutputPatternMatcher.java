@@ -15,8 +15,9 @@ class OutputPatternMatcher {
       Pattern.compile("^(?:\\[INFO\\]\\s+)?Running (.+)$");
   private static final Pattern RESULT_PATTERN =
       Pattern.compile(
-          "^(?:\\[INFO\\]\\s+)?Tests run: (\\d+), Failures: (\\d+), Errors: (\\d+), "
-              + "Skipped: (\\d+)(?:, Time elapsed: ([\\d.]+) s(?: -- in (.+))?)?$");
+          "^(?:\\[(?:INFO|WARNING|ERROR)\\]\\s+)?Tests run: (\\d+), Failures: (\\d+), "
+              + "Errors: (\\d+), Skipped: (\\d+)(?:, Time elapsed: ([\\d.]+) s(?:ec)?"
+              + "(?: <<< (?:FAILURE|ERROR)!)?(?: -+ in (.+))?)?$");
   private static final Pattern TEST_FAIL_PTN =
       Pattern.compile(
           "^(.+?)\\((.+?)\\)\\s+Time elapsed:\\s+([\\d.]+)\\s+s(?:ec)?\\s+<<<\\s+(FAILURE|ERROR)!");
@@ -26,6 +27,9 @@ class OutputPatternMatcher {
       Pattern.compile(
           "^\\[INFO\\]\\s+([^\\s]+)\\.([^\\s]+)\\s+--\\s+Time elapsed:\\s+([\\d.]+)\\s+s"
               + "(?:ec)?$");
+  // A parameterized or repeated invocation, e.g. test[3], test[3: a=1] or test(int)[3]
+  private static final Pattern INVOCATION_PATTERN =
+      Pattern.compile("^(.+?)\\[\\d+(?::[^\\]]*)?\\]$");
 
   /**
    * Constructs a new OutputPatternMatcher.
@@ -159,6 +163,17 @@ class OutputPatternMatcher {
       if (executionResult != null) {
         executionResult.updateFromSurefireOutput(testsRun, failures, errors, skipped);
         executionResult.setExecutionTime((long) (timeElapsed * 1000));
+        final String testClass = resultMatcher.group(6);
+        if (testClass != null) {
+          executionResult.recordClassResult(
+              new TestExecutionResult.TestClassResult(
+                  testClass.trim(),
+                  testsRun,
+                  failures,
+                  errors,
+                  skipped,
+                  (long) (timeElapsed * 1000)));
+        }
       }
 
       // Only show the first test results summary to avoid duplicates
@@ -170,6 +185,106 @@ class OutputPatternMatcher {
     return result;
   }
 
+  /**
+   * Finds the test class a line reports as starting.
+   *
+   * @param line the line to match
+   * @return the test class name, or null if the line reports no class start
+   */
+  protected String findStartedClass(final String line) {
+    final Matcher runningMatcher = RUNNING_PATTERN.matcher(line);
+    return runningMatcher.matches() ? runningMatcher.group(1).trim() : null;
+  }
+
+  /**
+   * Finds the test class a line reports as completed.
+   *
+   * @param line the line to match
+   * @return the test class name, or null if the line reports no class result
+   */
+  protected String findCompletedClass(final String line) {
+    final Matcher resultMatcher = RESULT_PATTERN.matcher(line);
+    return resultMatcher.matches() && resultMatcher.group(6) != null
+        ? resultMatcher.group(6).trim()
+        : null;
+  }
+
+  /**
+   * Finds the passing test a line reports.
+   *
+   * @param line the line to match
+   * @return the passing test, or null if the line reports none
+   */
+  protected PassedTest findPassedTest(final String line) {
+    PassedTest result = null;
+    final Matcher successMatcher = SUCCESS_PATTERN.matcher(line);
+    final Matcher methodMatcher = MTHD_EXEC_PATTERN.matcher(line);
+    if (successMatcher.matches()) {
+      result =
+          new PassedTest(
+              successMatcher.group(2), (long) (Double.parseDouble(successMatcher.group(3)) * 1000));
+    } else if (methodMatcher.matches()) {
+      result =
+          new PassedTest(
+              methodMatcher.group(1), (long) (Double.parseDouble(methodMatcher.group(3)) * 1000));
+    }
+    return result;
+  }
+
+  /**
+   * Finds the outcome of a parameterized or repeated test invocation a line reports.
+   *
+   * @param line the line to match
+   * @return the invocation, or null if the line reports no test or a test without invocations
+   */
+  @SuppressWarnings("PMD.DataflowAnomalyAnalysis") // The parts depend on the matching format
+  protected TestInvocation findTestInvocation(final String line) {
+    final Matcher failMatcher = TEST_FAIL_PTN.matcher(line);
+    final Matcher successMatcher = SUCCESS_PATTERN.matcher(line);
+    final Matcher methodMatcher = MTHD_EXEC_PATTERN.matcher(line);
+    final boolean failed = failMatcher.matches();
+    String methodName = null;
+    String className = null;
+    String timeElapsed = null;
+    if (failed || successMatcher.matches()) {
+      final Matcher matched = failed ? failMatcher : successMatcher;
+      methodName = matched.group(1);
+      className = matched.group(2);
+      timeElapsed = matched.group(3);
+    } else if (methodMatcher.matches()) {
+      className = methodMatcher.group(1);
+      methodName = methodMatcher.group(2);
+      timeElapsed = methodMatcher.group(3);
+    }
+    TestInvocation result = null;
+    final Matcher invocationMatcher =
+        methodName == null ? null : INVOCATION_PATTERN.matcher(methodName);
+    if (invocationMatcher != null && invocationMatcher.matches()) {
+      result =
+          new TestInvocation(
+              className,
+              invocationMatcher.group(1),
+              (long) (Double.parseDouble(timeElapsed) * 1000),
+              failed);
+    }
+    return result;
+  }
+
+  /**
+   * Checks whether a line reports the progress of the tests: a class starting, a test method's
+   * outcome or a class's results.
+   *
+   * @param line the line to match
+   * @return true if the line is a test event
+   */
+  protected boolean isTestEvent(final String line) {
+    return RUNNING_PATTERN.matcher(line).matches()
+        || RESULT_PATTERN.matcher(line).matches()
+        || TEST_FAIL_PTN.matcher(line).matches()
+        || SUCCESS_PATTERN.matcher(line).matches()
+        || MTHD_EXEC_PATTERN.matcher(line).matches();
+  }
+
   /**
    * Formats a module header line for displaying the current test module being executed.
    *
@@ -221,4 +336,48 @@ class OutputPatternMatcher {
 
     return formatter.formatProgressLine(result.toString());
   }
+
+  /** A passing test found in the output. */
+  protected static class PassedTest {
+    protected final String className;
+    protected final long durationMillis;
+
+    /**
+     * Constructs a new PassedTest.
+     *
+     * @param className the test class name
+     * @param durationMillis the test duration in milliseconds
+     */
+    protected PassedTest(final String className, final long durationMillis) {
+      this.className = className;
+      this.durationMillis = durationMillis;
+    }
+  }
+
+  /** An invocation of a parameterized or repeated test found in the output. */
+  protected static class TestInvocation {
+    protected final String className;
+    protected final String methodName;
+    protected final long durationMillis;
+    protected final boolean failed;
+
+    /**
+     * Constructs a new TestInvocation.
+     *
+     * @param className the test class name
+     * @param methodName the test method name without the invocation suffix
+     * @param durationMillis the invocation duration in milliseconds
+     * @param failed whether the invocation failed or had an error
+     */
+    protected TestInvocation(
+        final String className,
+        final String methodName,
+        final long durationMillis,
+        final boolean failed) {
+      this.className = className;
+      this.methodName = methodName;
+      this.durationMillis = durationMillis;
+      this.failed = failed;
+    }
+  }
 }
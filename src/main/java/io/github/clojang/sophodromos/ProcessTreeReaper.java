@@ -0,0 +1,127 @@
+package io.github.clojang.sophodromos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tears down the process tree of a child invocation: the child Maven JVM and the test JVMs forked
+ * by Surefire. Every process of the tree is asked to terminate, with SIGTERM on Unix, and the ones
+ * still alive after a grace period are killed. Running child invocations are registered so that
+ * they are also torn down when Maven itself shuts down, e.g. after Ctrl+C, instead of being left
+ * behind as orphans.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn", "PMD.DoNotUseThreads"})
+// The shutdown hook is a thread by definition
+final class ProcessTreeReaper {
+
+  private static final Map<Process, Long> RUNNING = new ConcurrentHashMap<>();
+  private static final AtomicBoolean HOOK_ADDED = new AtomicBoolean();
+
+  private ProcessTreeReaper() {
+    // Static helpers only
+  }
+
+  /**
+   * Registers a running child invocation to be torn down if Maven shuts down first.
+   *
+   * @param process the child invocation
+   * @param graceMillis how long its processes may take to terminate before they are killed
+   */
+  protected static void register(final Process process, final long graceMillis) {
+    if (HOOK_ADDED.compareAndSet(false, true)) {
+      Runtime.getRuntime()
+          .addShutdownHook(new Thread(ProcessTreeReaper::terminateAll, "sophodromos-reaper"));
+    }
+    RUNNING.put(process, graceMillis);
+  }
+
+  /**
+   * Unregisters a child invocation that has exited.
+   *
+   * @param process the child invocation
+   */
+  protected static void unregister(final Process process) {
+    RUNNING.remove(process);
+  }
+
+  /**
+   * Asks every process of a child invocation's tree to terminate and kills those still alive after
+   * the grace period. Returns right away; the kill happens in the background.
+   *
+   * @param process the child invocation
+   * @param graceMillis how long the processes may take to terminate
+   * @return completed once the whole tree has exited or been killed
+   */
+  protected static CompletableFuture<Void> terminate(
+      final Process process, final long graceMillis) {
+    final ProcessHandle root;
+    try {
+      root = process.toHandle();
+    } catch (final UnsupportedOperationException e) {
+      // Runs in the warm JVM pool are no operating system processes
+      process.destroy();
+      return CompletableFuture.completedFuture(null);
+    }
+    return terminate(root, graceMillis);
+  }
+
+  /**
+   * Asks every process of a process tree to terminate and kills those still alive after the grace
+   * period, e.g. a single forked test JVM with the processes it started.
+   *
+   * @param root the root of the tree
+   * @param graceMillis how long the processes may take to terminate
+   * @return completed once the whole tree has exited or been killed
+   */
+  protected static CompletableFuture<Void> terminate(
+      final ProcessHandle root, final long graceMillis) {
+    final List<ProcessHandle> tree = new ArrayList<>();
+    // Listed before the root exits, which would orphan the descendants out of its tree
+    root.descendants().forEach(tree::add);
+    tree.add(root);
+    final List<CompletableFuture<ProcessHandle>> exits = new ArrayList<>();
+    for (final ProcessHandle handle : tree) {
+      handle.destroy();
+      exits.add(handle.onExit());
+    }
+    final CompletableFuture<Void> exited =
+        CompletableFuture.allOf(exits.toArray(new CompletableFuture<?>[0]));
+    return exited
+        .copy()
+        .completeOnTimeout(null, graceMillis, TimeUnit.MILLISECONDS)
+        .thenCompose(
+            ignored -> {
+              for (final ProcessHandle handle : tree) {
+                if (handle.isAlive()) {
+                  handle.destroyForcibly();
+                }
+              }
+              return exited;
+            });
+  }
+
+  private static void terminateAll() {
+    final List<CompletableFuture<Void>> terminations = new ArrayList<>();
+    long graceMillis = 0;
+    for (final Map.Entry<Process, Long> running : RUNNING.entrySet()) {
+      terminations.add(terminate(running.getKey(), running.getValue()));
+      graceMillis = Math.max(graceMillis, running.getValue());
+    }
+    try {
+      // The JVM exits once the hook returns, so wait for the kills
+      CompletableFuture.allOf(terminations.toArray(new CompletableFuture<?>[0]))
+          .get(graceMillis + 1000L, TimeUnit.MILLISECONDS);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (final ExecutionException | TimeoutException e) {
+      // Nothing more can be done while the JVM exits
+    }
+  }
+}
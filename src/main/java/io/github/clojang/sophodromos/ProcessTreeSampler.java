@@ -0,0 +1,184 @@
+package io.github.clojang.sophodromos;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Samples the resident memory and CPU time of a child invocation's process tree while it runs, from
+ * the {@code VmRSS} line of {@code /proc/<pid>/status} and the times in {@code /proc/<pid>/stat}.
+ * The child Maven JVM is the root of the tree and the test JVMs forked by Surefire are its
+ * descendants, so the largest descendant is what one fork needs. Processes that are not operating
+ * system processes, such as runs in the warm JVM pool, and systems without {@code /proc} are not
+ * sampled. Neither are invocations through the Maven Daemon, whose forks are children of the daemon
+ * rather than of the client process.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn", "PMD.DoNotUseThreads"})
+// Samples on a daemon thread while the mojo waits for the process
+class ProcessTreeSampler {
+
+  private static final long INTERVAL_MILLIS = 250L;
+  private static final String RSS_FIELD = "VmRSS:";
+  // The kernel reports process times in USER_HZ ticks, 100 per second on Linux
+  private static final long MILLIS_PER_TICK = 10L;
+  private static final int UTIME_FIELD = 11;
+  private static final int CSTIME_FIELD = 14;
+
+  private final Path procRoot;
+  private final Thread thread;
+  private final ProcessHandle root;
+  private volatile long peakForkBytes;
+  private volatile long peakTreeBytes;
+  private volatile long treeCpuMillis;
+
+  private ProcessTreeSampler(final Path procRoot, final ProcessHandle root) {
+    this.procRoot = procRoot;
+    this.root = root;
+    this.thread = new Thread(this::sample, "sophodromos-tree-sampler");
+    thread.setDaemon(true);
+  }
+
+  /**
+   * Starts sampling a process tree.
+   *
+   * @param process the child invocation
+   * @return the running sampler, or null if the process cannot be sampled
+   */
+  protected static ProcessTreeSampler start(final Process process) {
+    final Path procRoot = Paths.get("/proc");
+    if (!Files.isDirectory(procRoot)) {
+      return null;
+    }
+    final ProcessHandle root;
+    try {
+      root = process.toHandle();
+    } catch (final UnsupportedOperationException e) {
+      return null;
+    }
+    final ProcessTreeSampler sampler = new ProcessTreeSampler(procRoot, root);
+    sampler.thread.start();
+    return sampler;
+  }
+
+  /**
+   * Stops sampling once the process has exited.
+   *
+   * @throws InterruptedException if interrupted while waiting for the last sample
+   */
+  protected void stop() throws InterruptedException {
+    thread.interrupt();
+    thread.join();
+  }
+
+  /**
+   * Gets the highest RSS of a single forked test JVM.
+   *
+   * @return the peak in bytes, 0 if no fork was seen, e.g. when the tests ran in the Maven JVM
+   */
+  protected long getPeakForkBytes() {
+    return peakForkBytes;
+  }
+
+  /**
+   * Gets the highest RSS of the whole process tree at one time.
+   *
+   * @return the peak in bytes, 0 if nothing was sampled
+   */
+  protected long getPeakTreeBytes() {
+    return peakTreeBytes;
+  }
+
+  /**
+   * Gets the CPU time the process tree had used by the last sample, including the forks that had
+   * already exited.
+   *
+   * @return the CPU time in milliseconds, 0 if nothing was sampled
+   */
+  protected long getTreeCpuMillis() {
+    return treeCpuMillis;
+  }
+
+  private void sample() {
+    while (root.isAlive()) {
+      sampleOnce();
+      try {
+        Thread.sleep(INTERVAL_MILLIS);
+      } catch (final InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  private void sampleOnce() {
+    final long rootBytes = readRss(procRoot, root.pid());
+    long treeBytes = rootBytes;
+    long largestFork = 0;
+    // Forks that exited and were reaped count towards their parent's children times
+    long cpuMillis = readCpuMillis(procRoot, root.pid());
+    final Iterator<ProcessHandle> descendants = root.descendants().iterator();
+    while (descendants.hasNext()) {
+      final long pid = descendants.next().pid();
+      final long forkBytes = readRss(procRoot, pid);
+      treeBytes += forkBytes;
+      largestFork = Math.max(largestFork, forkBytes);
+      cpuMillis += readCpuMillis(procRoot, pid);
+    }
+    peakForkBytes = Math.max(peakForkBytes, largestFork);
+    peakTreeBytes = Math.max(peakTreeBytes, treeBytes);
+    treeCpuMillis = Math.max(treeCpuMillis, cpuMillis);
+  }
+
+  /**
+   * Reads the CPU time of a process and of its children that it has waited for.
+   *
+   * @param procRoot the proc file system
+   * @param pid the process ID
+   * @return the user and system time in milliseconds, 0 if the process is gone
+   */
+  protected static long readCpuMillis(final Path procRoot, final long pid) {
+    try {
+      final String stat =
+          Files.readString(
+              procRoot.resolve(Long.toString(pid)).resolve("stat"), StandardCharsets.UTF_8);
+      // The command name may contain spaces, the fields after it start with the state
+      final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split("\\s+");
+      long ticks = 0;
+      for (int field = UTIME_FIELD; field <= CSTIME_FIELD; field++) {
+        ticks += Long.parseLong(fields[field]);
+      }
+      return ticks * MILLIS_PER_TICK;
+    } catch (final IOException | NumberFormatException | IndexOutOfBoundsException e) {
+      // The process exited between listing and reading
+    }
+    return 0L;
+  }
+
+  /**
+   * Reads the resident memory of a process.
+   *
+   * @param procRoot the proc file system
+   * @param pid the process ID
+   * @return the RSS in bytes, 0 if the process is gone or the value cannot be read
+   */
+  protected static long readRss(final Path procRoot, final long pid) {
+    try {
+      final List<String> lines =
+          Files.readAllLines(
+              procRoot.resolve(Long.toString(pid)).resolve("status"), StandardCharsets.UTF_8);
+      for (final String line : lines) {
+        if (line.startsWith(RSS_FIELD)) {
+          // The kernel reports kB, which are KiB
+          final String[] fields = line.substring(RSS_FIELD.length()).trim().split("\\s+");
+          return Long.parseLong(fields[0]) * 1024;
+        }
+      }
+    } catch (final IOException | NumberFormatException e) {
+      // The process exited between listing and reading
+    }
+    return 0L;
+  }
+}
@@ -0,0 +1,335 @@
+package io.github.clojang.sophodromos;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Shows one continuously updated status line for the tests of the whole reactor: the modules done,
+ * the tests passed, failed and skipped, the tests per second, the elapsed time and an estimate of
+ * the time left. The interceptor reports each test class as it completes and each module reports
+ * its final counts, which replace what its classes reported, e.g. for replayed or rerun classes.
+ *
+ * <p>The time left is extrapolated from the recorded durations of the tests: every module starts
+ * with the total of its recorded durations, replaced by the estimate of the classes it selects once
+ * it plans its run. The classes that completed use up their module's share, and the elapsed time is
+ * scaled by the ratio of the remaining to the used up duration, which accounts for modules and
+ * forks running concurrently.
+ *
+ * <p>On a terminal the line is redrawn in place a few times per second at most, only when it
+ * changed, with a carriage return and an erase to the end of the line. Test output printed through
+ * {@link #println} erases the line first, so that it stays below the output. Maven's own log lines
+ * do not, so the line is only drawn while a child invocation's output is captured and erased when
+ * the last capture ends. Otherwise a plain line is printed now and then, so that build logs show
+ * the progress without control characters.
+ *
+ * <p>Like the runs of {@link TestPipeline}, the counters are kept in the session data as JDK types
+ * only, so that every module's mojo and the execution listener see the same ones.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.DoNotUseThreads", "PMD.SystemPrintln"})
+// One rendering thread per build writes the status line to the console
+final class ReactorProgress {
+
+  private static final String COUNTERS_KEY = "sophodromos.progress.counters";
+  private static final String MODULES_KEY = "sophodromos.progress.modules";
+  private static final String DRAWN_KEY = "sophodromos.progress.drawn";
+  private static final String CAPTURES_KEY = "sophodromos.progress.captures";
+  private static final String RENDERER_KEY = "sophodromos.progress.renderer";
+  private static final int MODULES_DONE = 0;
+  private static final int PASSED = 1;
+  private static final int FAILED = 2;
+  private static final int SKIPPED = 3;
+  private static final int USED_MILLIS = 4;
+  private static final int TOTAL_MODULES = 5;
+  // A module's counters hold its remaining duration in place of the modules done
+  private static final int MODULE_REMAINING_MILLIS = MODULES_DONE;
+  private static final long FRAME_MILLIS = 250L;
+  private static final String ERASE_LINE = "\u001b[K";
+
+  private final SessionData data;
+  private final String moduleId;
+
+  /**
+   * Constructs a new ReactorProgress reporting for one module.
+   *
+   * @param session the Maven session shared by the modules
+   * @param moduleId the module ID
+   */
+  protected ReactorProgress(final MavenSession session, final String moduleId) {
+    this.data = session.getRepositorySession().getData();
+    this.moduleId = moduleId;
+  }
+
+  /**
+   * Starts showing the status line unless another module already did.
+   *
+   * @param totalModules the modules whose tests the build runs
+   * @param recordedModuleMillis the total recorded test duration by module ID, only loaded once
+   * @param plainIntervalMillis how often a plain line is printed when the output is no terminal
+   * @param width the most characters the line may take
+   */
+  protected void start(
+      final int totalModules,
+      final Supplier<Map<String, Long>> recordedModuleMillis,
+      final long plainIntervalMillis,
+      final int width) {
+    final Thread renderer =
+        new Thread(
+            () -> render(plainIntervalMillis, System.console() != null, width),
+            "sophodromos-progress");
+    renderer.setDaemon(true);
+    if (TestPipeline.getOrCreate(data, RENDERER_KEY, renderer) == renderer) {
+      getCounters().set(TOTAL_MODULES, totalModules);
+      for (final Map.Entry<String, Long> recorded : recordedModuleMillis.get().entrySet()) {
+        getModule(recorded.getKey()).set(MODULE_REMAINING_MILLIS, recorded.getValue());
+      }
+      renderer.start();
+    }
+  }
+
+  /**
+   * Sets the estimated duration of the test classes the module selected to run.
+   *
+   * @param estimatedMillis the estimated duration in milliseconds
+   */
+  protected void modulePlanned(final long estimatedMillis) {
+    getModule(moduleId).set(MODULE_REMAINING_MILLIS, estimatedMillis);
+  }
+
+  /**
+   * Adds the outcome of a test class that just completed.
+   *
+   * @param classResult the class outcome
+   */
+  protected void testClassCompleted(final TestExecutionResult.TestClassResult classResult) {
+    final int failed = classResult.getFailures() + classResult.getErrors();
+    final int skipped = classResult.getSkipped();
+    add(PASSED, Math.max(0, classResult.getTestsRun() - failed - skipped));
+    add(FAILED, failed);
+    add(SKIPPED, skipped);
+    final AtomicLongArray module = getModule(moduleId);
+    // A class slower than estimated uses up no more than its module's share
+    final long used = Math.min(module.get(MODULE_REMAINING_MILLIS), classResult.getExecutionTime());
+    module.addAndGet(MODULE_REMAINING_MILLIS, -used);
+    getCounters().addAndGet(USED_MILLIS, used);
+  }
+
+  /**
+   * Marks the module as done, replacing the counts its classes reported with its final ones.
+   *
+   * @param result the module's result, or null if its tests were skipped
+   */
+  protected void moduleCompleted(final TestExecutionResult result) {
+    final AtomicLongArray module = getModule(moduleId);
+    if (result != null) {
+      add(PASSED, result.getPassedTests() - module.get(PASSED));
+      add(FAILED, result.getFailureCount() - module.get(FAILED));
+      add(SKIPPED, result.getSkippedTests() - module.get(SKIPPED));
+    } else {
+      add(PASSED, -module.get(PASSED));
+      add(FAILED, -module.get(FAILED));
+      add(SKIPPED, -module.get(SKIPPED));
+    }
+    // Tests the module did not run no longer count towards the time left
+    module.set(MODULE_REMAINING_MILLIS, 0L);
+    getCounters().incrementAndGet(MODULES_DONE);
+  }
+
+  /**
+   * Prints a line of output, erasing the status line first if it is drawn, so that the status line
+   * is redrawn below it.
+   *
+   * @param stream the stream to print to
+   * @param line the line
+   */
+  protected void println(final PrintStream stream, final String line) {
+    synchronized (System.out) {
+      if (getDrawn().getAndSet(false)) {
+        System.out.print('\r' + ERASE_LINE);
+        System.out.flush();
+      }
+      stream.println(line);
+    }
+  }
+
+  /**
+   * Lets the status line be drawn while the output of a child invocation is captured, during which
+   * everything printed goes through {@link #println}.
+   */
+  protected void captureStarted() {
+    getCaptures().incrementAndGet();
+  }
+
+  /** Erases the status line when the last capture ends, before Maven logs again. */
+  protected void captureStopped() {
+    synchronized (System.out) {
+      if (getCaptures().decrementAndGet() == 0 && getDrawn().getAndSet(false)) {
+        System.out.print('\r' + ERASE_LINE);
+        System.out.flush();
+      }
+    }
+  }
+
+  /**
+   * Stops showing the status line, erasing it on a terminal and printing a last plain line
+   * otherwise. Does nothing if no module started it or it was already stopped.
+   *
+   * @param session the Maven session
+   */
+  protected static void stop(final MavenSession session) {
+    final Object renderer = session.getRepositorySession().getData().get(RENDERER_KEY);
+    if (renderer instanceof Thread) {
+      ((Thread) renderer).interrupt();
+      try {
+        ((Thread) renderer).join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Describes the progress of the build.
+   *
+   * @param modulesDone the modules whose tests are done
+   * @param totalModules the modules whose tests the build runs
+   * @param passed the passed tests
+   * @param failed the failed and erroneous tests
+   * @param skipped the skipped tests
+   * @param elapsedMillis the time since the tests started
+   * @param remainingMillis the estimated time left, or -1 if unknown
+   * @return the status line
+   */
+  protected static String describe(
+      final long modulesDone,
+      final long totalModules,
+      final long passed,
+      final long failed,
+      final long skipped,
+      final long elapsedMillis,
+      final long remainingMillis) {
+    final double testsPerSecond =
+        elapsedMillis > 0 ? (passed + failed + skipped) * 1000.0 / elapsedMillis : 0.0;
+    return String.format(
+        Locale.ROOT,
+        "Tests: %d/%d modules | %d passed, %d failed, %d skipped | %.1f tests/s | %s elapsed"
+            + " | ETA %s",
+        modulesDone,
+        totalModules,
+        passed,
+        failed,
+        skipped,
+        testsPerSecond,
+        formatDuration(elapsedMillis),
+        remainingMillis < 0 ? "--" : formatDuration(remainingMillis));
+  }
+
+  private void render(final long plainIntervalMillis, final boolean terminal, final int width) {
+    final long started = System.nanoTime();
+    String drawnLine = null;
+    try {
+      while (true) {
+        Thread.sleep(terminal ? FRAME_MILLIS : plainIntervalMillis);
+        final String line = truncate(describeNow(started), width);
+        if (!terminal) {
+          System.out.println(line);
+        } else if ((!line.equals(drawnLine) || !getDrawn().get()) && draw(line)) {
+          drawnLine = line;
+        }
+      }
+    } catch (final InterruptedException e) {
+      // The build is done, the summary follows
+      synchronized (System.out) {
+        if (terminal && getDrawn().getAndSet(false)) {
+          System.out.print('\r' + ERASE_LINE);
+        } else if (!terminal) {
+          System.out.println(truncate(describeNow(started), width));
+        }
+        System.out.flush();
+      }
+    }
+  }
+
+  /** Draws the line while output is captured, returning whether it did. */
+  private boolean draw(final String line) {
+    synchronized (System.out) {
+      final boolean capturing = getCaptures().get() > 0;
+      if (capturing) {
+        System.out.print('\r' + line + ERASE_LINE);
+        System.out.flush();
+        getDrawn().set(true);
+      }
+      return capturing;
+    }
+  }
+
+  private String describeNow(final long started) {
+    final AtomicLongArray counters = getCounters();
+    final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    long remainingMillis = 0;
+    for (final AtomicLongArray module : getModules().values()) {
+      remainingMillis += module.get(MODULE_REMAINING_MILLIS);
+    }
+    final long usedMillis = counters.get(USED_MILLIS);
+    return describe(
+        counters.get(MODULES_DONE),
+        counters.get(TOTAL_MODULES),
+        counters.get(PASSED),
+        counters.get(FAILED),
+        counters.get(SKIPPED),
+        elapsedMillis,
+        usedMillis == 0 || remainingMillis == 0
+            ? -1L
+            : (long) (elapsedMillis * ((double) remainingMillis / usedMillis)));
+  }
+
+  private void add(final int counter, final long delta) {
+    getModule(moduleId).addAndGet(counter, delta);
+    getCounters().addAndGet(counter, delta);
+  }
+
+  private static String truncate(final String line, final int width) {
+    // A wrapped line could not be redrawn in place
+    return line.length() < width ? line : line.substring(0, Math.max(0, width - 1));
+  }
+
+  private static String formatDuration(final long millis) {
+    final long seconds = millis / 1000;
+    if (seconds >= 3600) {
+      return String.format(Locale.ROOT, "%dh%02dm", seconds / 3600, seconds % 3600 / 60);
+    }
+    return seconds >= 60
+        ? String.format(Locale.ROOT, "%dm%02ds", seconds / 60, seconds % 60)
+        : seconds + "s";
+  }
+
+  private AtomicLongArray getCounters() {
+    return TestPipeline.getOrCreate(data, COUNTERS_KEY, new AtomicLongArray(TOTAL_MODULES + 1));
+  }
+
+  private AtomicLongArray getModule(final String id) {
+    return getModules().computeIfAbsent(id, key -> new AtomicLongArray(SKIPPED + 1));
+  }
+
+  private ConcurrentMap<String, AtomicLongArray> getModules() {
+    return TestPipeline.getOrCreate(
+        data, MODULES_KEY, new ConcurrentHashMap<String, AtomicLongArray>());
+  }
+
+  private AtomicBoolean getDrawn() {
+    return TestPipeline.getOrCreate(data, DRAWN_KEY, new AtomicBoolean());
+  }
+
+  private AtomicInteger getCaptures() {
+    return TestPipeline.getOrCreate(data, CAPTURES_KEY, new AtomicInteger());
+  }
+}
@@ -0,0 +1,384 @@
+package io.github.clojang.sophodromos;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Plans how many test JVMs may run at the same time. The CPUs come from the JVM's processor count
+ * and the cgroup v2 {@code cpu.max} quota, the memory from the cgroup v2 {@code memory.max} and
+ * {@code memory.high} limits of this process's cgroup and its ancestors, or from the host's
+ * available memory outside a container. Each fork is expected to need the highest peak RSS recorded
+ * for the modules, and each concurrently tested module also a child Maven JVM, so that the plan
+ * stays within the pod's memory limit instead of being OOM-killed or swapping.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn"})
+class ResourcePlanner {
+
+  /** Memory a child Maven invocation needs besides its test forks. */
+  protected static final long CHILD_MAVEN_BYTES = 256L * 1024 * 1024;
+
+  private static final String UNLIMITED = "max";
+  private static final double MEMORY_HEADROOM = 0.9;
+  private static final double BYTES_PER_GIB = 1024.0 * 1024 * 1024;
+  private static final long HEAP_GRANULE_MB = 64L;
+  private static final long MIN_HEAP_MB = 128L;
+
+  private final Path cgroupRoot;
+  private final Path procRoot;
+
+  /**
+   * Constructs a new ResourcePlanner.
+   *
+   * @param cgroupRoot the cgroup v2 mount point, normally {@code /sys/fs/cgroup}
+   * @param procRoot the proc file system, normally {@code /proc}
+   */
+  protected ResourcePlanner(final Path cgroupRoot, final Path procRoot) {
+    this.cgroupRoot = cgroupRoot;
+    this.procRoot = procRoot;
+  }
+
+  /**
+   * Constructs a ResourcePlanner for the running system.
+   *
+   * @return the planner
+   */
+  protected static ResourcePlanner forSystem() {
+    return new ResourcePlanner(Paths.get("/sys/fs/cgroup"), Paths.get("/proc"));
+  }
+
+  /**
+   * Detects the CPUs and memory available to this process.
+   *
+   * @param availableProcessors the processors the JVM may use
+   * @param reservedBytes the memory already taken by this Maven JVM
+   * @return the resources
+   */
+  protected Resources detect(final int availableProcessors, final long reservedBytes) {
+    final Path cgroup = findOwnCgroup();
+    double cpus = availableProcessors;
+    String cpuSource = "available processors";
+    long memoryBytes = -1L;
+    String memorySource = "unknown memory";
+
+    // A limit anywhere up the hierarchy applies, so the lowest one counts
+    for (Path directory = cgroup;
+        directory != null && directory.startsWith(cgroupRoot);
+        directory = directory.getParent()) {
+      final double quota = readCpuQuota(directory.resolve("cpu.max"));
+      if (quota > 0 && quota < cpus) {
+        cpus = quota;
+        cpuSource = "cgroup quota";
+      }
+      for (final String file : List.of("memory.max", "memory.high")) {
+        final long limit = readLimit(directory.resolve(file));
+        if (limit > 0 && (memoryBytes < 0 || limit < memoryBytes)) {
+          memoryBytes = limit;
+          memorySource = "cgroup " + file;
+        }
+      }
+    }
+    if (memoryBytes < 0) {
+      memoryBytes = readAvailableMemory();
+      memorySource = memoryBytes < 0 ? memorySource : "available host memory";
+    }
+    return new Resources(cpus, cpuSource, memoryBytes, memorySource, reservedBytes, false);
+  }
+
+  /**
+   * Plans the concurrent forks and modules for the given resources. Modules are packed by their
+   * recorded peak RSS: as many modules run at once as fit into the memory budget even if those with
+   * the highest peaks happen to run together, and each of them runs as many forks as the largest
+   * peak allows.
+   *
+   * @param resources the detected resources
+   * @param peakRssBytes the recorded peak RSS of the modules' test forks, unknown ones left out
+   * @param estimatedForkBytes the RSS assumed for a fork of a module without a recorded peak
+   * @param moduleCount the number of modules whose tests run
+   * @return the plan
+   */
+  protected Plan plan(
+      final Resources resources,
+      final Collection<Long> peakRssBytes,
+      final long estimatedForkBytes,
+      final int moduleCount) {
+    final List<Long> forkBytes = new ArrayList<>(peakRssBytes);
+    final boolean recorded = !forkBytes.isEmpty();
+    while (forkBytes.size() < moduleCount) {
+      forkBytes.add(estimatedForkBytes);
+    }
+    if (forkBytes.isEmpty()) {
+      forkBytes.add(estimatedForkBytes);
+    }
+    forkBytes.sort(Collections.reverseOrder());
+    final long largestFork = Math.max(1L, forkBytes.get(0));
+
+    final int cpuSlots = Math.max(1, (int) Math.floor(resources.getCpus()));
+    int modules = Math.max(1, Math.min(forkBytes.size(), cpuSlots));
+    int forks = Math.max(1, cpuSlots / modules);
+    final long budget = resources.getBudgetBytes();
+    if (budget > 0) {
+      modules = 1;
+      long packedBytes = CHILD_MAVEN_BYTES + forkBytes.get(0);
+      while (modules < Math.min(forkBytes.size(), cpuSlots)
+          && packedBytes + CHILD_MAVEN_BYTES + forkBytes.get(modules) <= budget) {
+        packedBytes += CHILD_MAVEN_BYTES + forkBytes.get(modules);
+        modules++;
+      }
+      final long forksPerModule = (budget / modules - CHILD_MAVEN_BYTES) / largestFork;
+      forks = (int) Math.max(1, Math.min(cpuSlots / modules, forksPerModule));
+    }
+    return new Plan(forks, modules, largestFork, recorded);
+  }
+
+  /**
+   * Sizes the maximum heap of a fork from its recorded peak RSS. Since the RSS also holds the
+   * metaspace, code cache and thread stacks, a heap of the whole peak plus a quarter leaves the
+   * tests room to grow, while a fork that needed little no longer gets the largest one's heap.
+   *
+   * @param peakRssBytes the recorded peak RSS of the fork
+   * @return the {@code -Xmx} option, in multiples of 64 MiB
+   */
+  protected static String sizeMaxHeap(final long peakRssBytes) {
+    final long neededMb = (peakRssBytes + peakRssBytes / 4) / (1024 * 1024);
+    final long granules = (neededMb + HEAP_GRANULE_MB - 1) / HEAP_GRANULE_MB;
+    return "-Xmx" + Math.max(MIN_HEAP_MB, granules * HEAP_GRANULE_MB) + "m";
+  }
+
+  private Path findOwnCgroup() {
+    try {
+      for (final String line :
+          Files.readAllLines(procRoot.resolve("self/cgroup"), StandardCharsets.UTF_8)) {
+        // cgroup v2 has a single hierarchy with ID 0 and no controllers listed
+        if (line.startsWith("0::")) {
+          final Path cgroup = cgroupRoot.resolve(line.substring("0::/".length())).normalize();
+          // Inside a container the path is often that of the host and not mounted
+          return Files.isDirectory(cgroup) ? cgroup : cgroupRoot;
+        }
+      }
+    } catch (final IOException | IndexOutOfBoundsException e) {
+      // Fall back to the root, which is the container's own cgroup with a private namespace
+    }
+    return cgroupRoot;
+  }
+
+  private static double readCpuQuota(final Path file) {
+    final String content = readFirstLine(file);
+    if (content == null) {
+      return -1;
+    }
+    final String[] fields = content.trim().split("\\s+");
+    if (fields.length != 2 || UNLIMITED.equals(fields[0])) {
+      return -1;
+    }
+    try {
+      return Double.parseDouble(fields[0]) / Double.parseDouble(fields[1]);
+    } catch (final NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static long readLimit(final Path file) {
+    final String content = readFirstLine(file);
+    if (content == null || UNLIMITED.equals(content.trim())) {
+      return -1L;
+    }
+    try {
+      return Long.parseLong(content.trim());
+    } catch (final NumberFormatException e) {
+      return -1L;
+    }
+  }
+
+  private long readAvailableMemory() {
+    try {
+      for (final String line :
+          Files.readAllLines(procRoot.resolve("meminfo"), StandardCharsets.UTF_8)) {
+        if (line.startsWith("MemAvailable:")) {
+          final String[] fields = line.trim().split("\\s+");
+          return Long.parseLong(fields[1]) * 1024;
+        }
+      }
+    } catch (final IOException | NumberFormatException | IndexOutOfBoundsException e) {
+      // Plan by CPUs only
+    }
+    return -1L;
+  }
+
+  private static String readFirstLine(final Path file) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try {
+      final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+      return lines.isEmpty() ? null : lines.get(0);
+    } catch (final IOException e) {
+      return null;
+    }
+  }
+
+  private static String formatGibibytes(final long bytes) {
+    return String.format(Locale.ROOT, "%.1f GiB", bytes / BYTES_PER_GIB);
+  }
+
+  /** The CPUs and memory available to the build. */
+  protected static final class Resources {
+    private final double cpus;
+    private final String cpuSource;
+    private final long memoryBytes;
+    private final String memorySource;
+    private final long reservedBytes;
+    private final boolean configured;
+
+    private Resources(
+        final double cpus,
+        final String cpuSource,
+        final long memoryBytes,
+        final String memorySource,
+        final long reservedBytes,
+        final boolean configured) {
+      this.cpus = cpus;
+      this.cpuSource = cpuSource;
+      this.memoryBytes = memoryBytes;
+      this.memorySource = memorySource;
+      this.reservedBytes = reservedBytes;
+      this.configured = configured;
+    }
+
+    /**
+     * Replaces the detected memory with a configured budget for the child invocations and their
+     * forks.
+     *
+     * @param budgetBytes the budget in bytes
+     * @return the resources with the budget
+     */
+    protected Resources withMemoryBudget(final long budgetBytes) {
+      return new Resources(cpus, cpuSource, budgetBytes, "configured budget", reservedBytes, true);
+    }
+
+    /**
+     * Gets the CPUs the build may use.
+     *
+     * @return the CPUs, fractional for a cgroup quota
+     */
+    protected double getCpus() {
+      return cpus;
+    }
+
+    /**
+     * Gets the memory the build may use.
+     *
+     * @return the memory in bytes, or -1 if unknown
+     */
+    protected long getMemoryBytes() {
+      return memoryBytes;
+    }
+
+    /**
+     * Gets the memory already taken by this Maven JVM.
+     *
+     * @return the memory in bytes
+     */
+    protected long getReservedBytes() {
+      return reservedBytes;
+    }
+
+    /**
+     * Gets the memory the child invocations and their forks may take together. Of a detected limit
+     * some room is left for the page cache and the kernel, and the memory Maven already holds is
+     * subtracted; a configured budget is used as it is.
+     *
+     * @return the budget in bytes, or -1 if the memory is unknown
+     */
+    protected long getBudgetBytes() {
+      if (memoryBytes < 0 || configured) {
+        return memoryBytes;
+      }
+      return (long) (memoryBytes * MEMORY_HEADROOM) - reservedBytes;
+    }
+
+    /**
+     * Describes the resources and where they were found.
+     *
+     * @return the description
+     */
+    protected String describe() {
+      final String cpuText =
+          cpus == Math.rint(cpus)
+              ? String.format(Locale.ROOT, cpus == 1 ? "%.0f CPU" : "%.0f CPUs", cpus)
+              : String.format(Locale.ROOT, "%.2f CPUs", cpus);
+      return cpuText
+          + " ("
+          + cpuSource
+          + "), "
+          + (memoryBytes < 0
+              ? memorySource
+              : formatGibibytes(memoryBytes) + " (" + memorySource + ")");
+    }
+  }
+
+  /** How many forks and modules run at the same time. */
+  protected static final class Plan {
+    private final int forks;
+    private final int modules;
+    private final long forkBytes;
+    private final boolean recorded;
+
+    private Plan(final int forks, final int modules, final long forkBytes, final boolean recorded) {
+      this.forks = forks;
+      this.modules = modules;
+      this.forkBytes = forkBytes;
+      this.recorded = recorded;
+    }
+
+    /**
+     * Gets the number of concurrent test forks of a module.
+     *
+     * @return the fork count, at least 1
+     */
+    protected int getForks() {
+      return forks;
+    }
+
+    /**
+     * Gets the number of modules whose tests may run at the same time.
+     *
+     * @return the module count, at least 1
+     */
+    protected int getModules() {
+      return modules;
+    }
+
+    /**
+     * Gets the memory planned for each fork.
+     *
+     * @return the memory in bytes
+     */
+    protected long getForkBytes() {
+      return forkBytes;
+    }
+
+    /**
+     * Describes the plan.
+     *
+     * @return the description
+     */
+    protected String describe() {
+      return forks
+          + (forks == 1 ? " fork" : " forks")
+          + " × "
+          + modules
+          + (modules == 1 ? " module" : " modules")
+          + " at "
+          + formatGibibytes(forkBytes)
+          + (recorded ? " peak RSS per fork" : " estimated RSS per fork");
+    }
+  }
+}
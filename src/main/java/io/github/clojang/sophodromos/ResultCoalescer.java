@@ -0,0 +1,96 @@
+package io.github.clojang.sophodromos;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the passing test results of fast suites, such as parameterized or property-based tests
+ * finishing thousands of tests per second, whose one line per result would saturate the terminal
+ * and the build log. While more passing results than the threshold arrive within a second, they are
+ * counted per test class instead of shown, and each class's count is released as one aggregate line
+ * a few times per second at most. Below the threshold, results are shown one by one again.
+ *
+ * <p>Any other test event, such as a failure or a class's results, releases the pending counts
+ * first, so that failures are still shown individually, right away and after the passes before
+ * them.
+ */
+class ResultCoalescer {
+
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final long REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+  private final TestOutputFormatter formatter;
+  private final long threshold;
+  private final Map<String, long[]> pending = new LinkedHashMap<>();
+  private final List<String> released = new ArrayList<>();
+  private long windowStartNanos = System.nanoTime();
+  private long windowCount;
+  private long previousWindowCount;
+  private long lastReleaseNanos = windowStartNanos;
+
+  /**
+   * Constructs a new ResultCoalescer.
+   *
+   * @param formatter the formatter of the aggregate lines
+   * @param threshold the passing results per second above which they are coalesced
+   */
+  protected ResultCoalescer(final TestOutputFormatter formatter, final long threshold) {
+    this.formatter = formatter;
+    this.threshold = threshold;
+  }
+
+  /**
+   * Counts a passing test result, unless results arrive slowly enough to be shown one by one.
+   *
+   * @param className the test class name
+   * @param durationMillis the test duration in milliseconds
+   * @return true if the result is coalesced and its own line is not to be shown
+   */
+  protected boolean coalesce(final String className, final long durationMillis) {
+    final long now = System.nanoTime();
+    if (now - windowStartNanos >= WINDOW_NANOS) {
+      // A quiet second in between means the burst is over
+      previousWindowCount = now - windowStartNanos < 2 * WINDOW_NANOS ? windowCount : 0;
+      windowStartNanos = now;
+      windowCount = 0;
+    }
+    windowCount++;
+    final boolean coalescing = windowCount > threshold || previousWindowCount > threshold;
+    if (!coalescing) {
+      // Shown after the results counted before it
+      flush();
+      return false;
+    }
+    final long[] counts = pending.computeIfAbsent(className, key -> new long[2]);
+    counts[0]++;
+    counts[1] += durationMillis;
+    if (now - lastReleaseNanos >= REFRESH_NANOS) {
+      flush();
+    }
+    return true;
+  }
+
+  /** Releases the pending counts, e.g. before a failure or a class's results are shown. */
+  protected void flush() {
+    for (final Map.Entry<String, long[]> entry : pending.entrySet()) {
+      released.add(
+          formatter.formatPassedResults(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+    }
+    pending.clear();
+    lastReleaseNanos = System.nanoTime();
+  }
+
+  /**
+   * Takes the aggregate lines released since the last call.
+   *
+   * @return the aggregate lines, in order
+   */
+  protected List<String> takeReleasedLines() {
+    final List<String> lines = new ArrayList<>(released);
+    released.clear();
+    return lines;
+  }
+}
@@ -0,0 +1,238 @@
+package io.github.clojang.sophodromos;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Application Class Data Sharing archives for the warm test JVMs, one per module and classpath. The
+ * first JVM started for a classpath records the classes it loads with {@code
+ * -XX:ArchiveClassesAtExit}; later JVMs map them with {@code -XX:SharedArchiveFile} instead of
+ * loading and verifying them again. The archive name contains a hash of the JDK, the JVM options
+ * and every jar's size and modification time, so a changed classpath gets a new archive and the
+ * module's previous one is deleted. Used by {@link WarmPoolDaemon}, so it depends on the JDK only.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn", "PMD.SystemPrintln"})
+// Diagnostics go to the daemon log through standard error
+final class SharedArchiveCache {
+
+  private static final String ARCHIVE_SUFFIX = ".jsa";
+  private static final String METADATA_SUFFIX = ".properties";
+  private static final String TEST_CLASSES = "testClasses";
+  private static final String FIRST_RUN_MILLIS = "firstRunMillis";
+  private static final int MODULE_PREFIX_LENGTH = 16;
+
+  private final Path directory;
+  private final AtomicLong pendingCount = new AtomicLong();
+
+  /**
+   * Constructs a new SharedArchiveCache.
+   *
+   * @param directory where the archives are kept
+   */
+  protected SharedArchiveCache(final Path directory) {
+    this.directory = directory.toAbsolutePath();
+  }
+
+  /**
+   * Chooses the archive for a JVM about to be started.
+   *
+   * @param module the module's identifier
+   * @param classpath the JVM's classpath, jars only
+   * @param jvmOptions the JVM's other options
+   * @return the archive to use or to create, or null if the archive directory cannot be created
+   */
+  protected Archive open(
+      final String module, final String classpath, final List<String> jvmOptions) {
+    final String name =
+        hash(module).substring(0, MODULE_PREFIX_LENGTH)
+            + '-'
+            + hashClasspath(classpath, jvmOptions);
+    final Path archive = directory.resolve(name + ARCHIVE_SUFFIX);
+    if (Files.isRegularFile(archive)) {
+      return new Archive(archive, null);
+    }
+    try {
+      Files.createDirectories(directory);
+    } catch (final IOException e) {
+      System.err.println("Could not create class data sharing directory " + directory + ": " + e);
+      return null;
+    }
+    // Concurrent JVMs may create the same archive; each writes its own file first
+    return new Archive(
+        archive, directory.resolve(name + '.' + pendingCount.incrementAndGet() + ".tmp"));
+  }
+
+  private static String hashClasspath(final String classpath, final List<String> jvmOptions) {
+    final StringBuilder content = new StringBuilder();
+    content.append(System.getProperty("java.home")).append('\n');
+    content.append(System.getProperty("java.vm.version")).append('\n');
+    content.append(jvmOptions).append('\n');
+    for (final String element : classpath.split(File.pathSeparator)) {
+      content.append(element);
+      try {
+        final BasicFileAttributes attributes =
+            Files.readAttributes(Paths.get(element), BasicFileAttributes.class);
+        content.append(' ').append(attributes.size());
+        content.append(' ').append(attributes.lastModifiedTime().toMillis());
+      } catch (final IOException e) {
+        content.append(" missing");
+      }
+      content.append('\n');
+    }
+    return hash(content.toString());
+  }
+
+  private static String hash(final String content) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  /**
+   * The archive of one JVM. A JVM either uses an existing archive or creates it when it exits,
+   * together with the time its first run took, so that later JVMs can report what they saved.
+   */
+  final class Archive {
+    private final Path path;
+    private final Path pending;
+    private final Properties metadata = new Properties();
+
+    private Archive(final Path path, final Path pending) {
+      this.path = path;
+      this.pending = pending;
+      if (pending == null) {
+        readMetadata();
+      }
+    }
+
+    /**
+     * Gets the JVM options using or creating the archive.
+     *
+     * @return the options
+     */
+    protected List<String> getJvmOptions() {
+      return pending == null
+          ? List.of("-XX:SharedArchiveFile=" + path)
+          : List.of("-XX:ArchiveClassesAtExit=" + pending);
+    }
+
+    /**
+     * Checks whether the JVM creates the archive when it exits.
+     *
+     * @return true if the archive is created, false if an existing one is used
+     */
+    protected boolean isCreating() {
+      return pending != null;
+    }
+
+    /**
+     * Records how long the JVM took from its start to the end of its first run.
+     *
+     * @param testClasses the test classes of the first run
+     * @param millis the elapsed time
+     * @return the time saved compared with the JVM that created the archive, or null if unknown
+     */
+    protected Long recordFirstRun(final List<String> testClasses, final long millis) {
+      final String testClassesHash = hash(String.join(",", testClasses));
+      if (pending != null) {
+        metadata.setProperty(TEST_CLASSES, testClassesHash);
+        metadata.setProperty(FIRST_RUN_MILLIS, Long.toString(millis));
+        return null;
+      }
+      // Only the same tests make the first runs comparable
+      final String baseline = metadata.getProperty(FIRST_RUN_MILLIS);
+      if (baseline == null || !testClassesHash.equals(metadata.getProperty(TEST_CLASSES))) {
+        return null;
+      }
+      try {
+        return Long.parseLong(baseline) - millis;
+      } catch (final NumberFormatException e) {
+        return null;
+      }
+    }
+
+    /**
+     * Completes the archive once the creating JVM has exited, replacing the module's archives of
+     * earlier classpaths.
+     */
+    protected void commit() {
+      if (pending == null) {
+        return;
+      }
+      try {
+        if (!Files.isRegularFile(pending) || Files.size(pending) == 0) {
+          System.err.println("No class data sharing archive was written to " + pending);
+          Files.deleteIfExists(pending);
+          return;
+        }
+        if (!metadata.isEmpty()) {
+          try (OutputStream output = Files.newOutputStream(metadataPath())) {
+            metadata.store(output, "SophoDromos class data sharing archive");
+          }
+        }
+        try {
+          Files.move(
+              pending, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+          Files.move(pending, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        deleteStaleArchives();
+        System.err.println("Created class data sharing archive " + path);
+      } catch (final IOException e) {
+        System.err.println("Could not store class data sharing archive " + path + ": " + e);
+      }
+    }
+
+    private void deleteStaleArchives() throws IOException {
+      final String fileName = path.getFileName().toString();
+      final String modulePrefix = fileName.substring(0, MODULE_PREFIX_LENGTH + 1);
+      final String name = fileName.substring(0, fileName.length() - ARCHIVE_SUFFIX.length());
+      try (Stream<Path> files = Files.list(directory)) {
+        for (final Path file : (Iterable<Path>) files::iterator) {
+          final String other = file.getFileName().toString();
+          // Pending files of this classpath may belong to JVMs that are still running
+          if (other.startsWith(modulePrefix) && !other.startsWith(name)) {
+            Files.deleteIfExists(file);
+          }
+        }
+      }
+    }
+
+    private void readMetadata() {
+      final Path metadataPath = metadataPath();
+      if (Files.isRegularFile(metadataPath)) {
+        try (InputStream input = Files.newInputStream(metadataPath)) {
+          metadata.load(input);
+        } catch (final IOException e) {
+          // Savings are not reported without the creating run's time
+          metadata.clear();
+        }
+      }
+    }
+
+    private Path metadataPath() {
+      final String fileName = path.getFileName().toString();
+      return path.resolveSibling(
+          fileName.substring(0, fileName.length() - ARCHIVE_SUFFIX.length()) + METADATA_SUFFIX);
+    }
+  }
+}
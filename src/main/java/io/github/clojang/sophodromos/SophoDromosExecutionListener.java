@@ -36,6 +36,7 @@ public class SophoDromosExecutionListener extends AbstractExecutionListener {
       initializeMultiModuleState(session);
       // Show single warning for multi-module builds
       showMultiModuleWarning(session);
+      selectAffectedModules(session);
     }
   }
 
@@ -45,6 +46,11 @@ public class SophoDromosExecutionListener extends AbstractExecutionListener {
 
     // Only handle if sophodromos multi-module was enabled
     if (isSophoDromosMultiModuleEnabled(session)) {
+      // Modules still testing in the background would be missing from the summary
+      TestPipeline.awaitQuietly(session);
+      // The summary replaces the status line
+      ReactorProgress.stop(session);
+      warnAboutPendingBatch(session);
       showFinalSummary(session);
     }
   }
@@ -126,6 +132,34 @@ public class SophoDromosExecutionListener extends AbstractExecutionListener {
     session.getUserProperties().setProperty(INIT_DONE_KEY, TRUE_VALUE);
   }
 
+  private void selectAffectedModules(final MavenSession session) {
+    final String baseRef =
+        session.getUserProperties().getProperty(AffectedModuleSelector.BASE_REF_PROPERTY);
+    if (baseRef == null || baseRef.isBlank()) {
+      return;
+    }
+
+    final AffectedModuleSelector selector = new AffectedModuleSelector(session, new QuietLog());
+    selector.selectAffectedModules(baseRef);
+    final String selectionSummary = selector.getSummary();
+    if (selectionSummary == null) {
+      System.out.println(
+          "⚠️  Could not determine changes since " + baseRef + ", testing all modules");
+    } else {
+      System.out.println("🎯 " + selectionSummary);
+    }
+  }
+
+  private void warnAboutPendingBatch(final MavenSession session) {
+    // Modules wait for the last module to run them, which a failed or partial build never reaches
+    final Set<String> pending =
+        new ModuleBatch(session, new QuietLog()).getQueuedModules().keySet();
+    if (!pending.isEmpty()) {
+      System.out.println(
+          "⚠️  Tests of batched small modules did not run: " + String.join(", ", pending));
+    }
+  }
+
   private void showFinalSummary(final MavenSession session) {
     // Get the final state and display summary
     final MavenProject firstProject = session.getProjects().get(0);
@@ -1,8 +1,23 @@
 package io.github.clojang.sophodromos;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -12,6 +27,7 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 
 /** SophoDromos Test Mojo - Provides GradlDromus-style test formatting for Maven. */
 @Mojo(
@@ -33,6 +49,32 @@ import org.apache.maven.project.MavenProject;
 // Standard Maven plugin patterns
 public class SophoDromosTestMojo extends AbstractMojo {
 
+  private static final String FORK_COUNT_AUTO = "auto";
+  private static final long OUTPUT_DRAIN_MILLIS = 10_000L;
+  private static final int DEFAULT_TERMINAL_WIDTH = 80;
+  private static final Pattern FORK_COUNT_PATTERN =
+      Pattern.compile(FORK_COUNT_AUTO + "|\\d+|\\d+(?:\\.\\d+)?C");
+  // Project properties that change how tests run; the others do not go into the cache key
+  private static final Pattern CACHE_KEY_PROPERTY =
+      Pattern.compile("argLine|(?:maven\\.)?surefire\\..*|junit\\..*");
+  private static final String SUREFIRE_PLUGIN = "org.apache.maven.plugins:maven-surefire-plugin";
+  // Surefire settings the shared batch JVM does not apply, so their modules run on their own
+  private static final List<String> UNBATCHABLE_SETTINGS =
+      List.of(
+          "argLine",
+          "systemPropertyVariables",
+          "systemProperties",
+          "systemPropertiesFile",
+          "environmentVariables",
+          "includes",
+          "excludes",
+          "includesFile",
+          "excludesFile",
+          "groups",
+          "excludedGroups",
+          "additionalClasspathElements",
+          "classpathDependencyExcludes");
+
   @Parameter(defaultValue = "${project}", readonly = true, required = true)
   private MavenProject project;
 
@@ -81,9 +123,200 @@ public class SophoDromosTestMojo extends AbstractMojo {
   @Parameter(property = "sophodromos.skipSymbol", defaultValue = "💤")
   private String skipSymbol;
 
+  // Test ordering and history
+  @Parameter(property = "sophodromos.runOrder", defaultValue = "default")
+  private String runOrder;
+
+  @Parameter(
+      property = "sophodromos.historyDirectory",
+      defaultValue = "${project.build.directory}/sophodromos")
+  private File historyDirectory;
+
+  @Parameter(property = "sophodromos.incremental", defaultValue = "false")
+  private boolean incremental;
+
+  @Parameter(property = "sophodromos.recordCoverage", defaultValue = "false")
+  private boolean recordCoverage;
+
+  @Parameter(property = "sophodromos.affectedOnly", defaultValue = "false")
+  private boolean affectedOnly;
+
+  @Parameter(property = "sophodromos.timeBudget")
+  private String timeBudget;
+
+  // Forked JVM profile
+  @Parameter(property = "sophodromos.jvmProfile", defaultValue = "none")
+  private String jvmProfile;
+
+  @Parameter(property = "sophodromos.jvmProfileThreshold", defaultValue = "5s")
+  private String jvmProfileThreshold;
+
+  /**
+   * Options of the {@code short} profile. They set no heap: a short run says nothing about the
+   * memory its tests need, so forks keep the JVM's default maximum heap, a share of the memory the
+   * container allows, unless {@code sizeForkHeap} or the {@code argLine} sets one. Warm pool
+   * workers get their bounded heap from {@code warmPoolHeapMb} instead.
+   */
+  @Parameter(
+      property = "sophodromos.jvmProfileShortOptions",
+      defaultValue = "-XX:TieredStopAtLevel=1 -Xshare:auto")
+  private String jvmProfileShortOptions;
+
+  @Parameter(property = "sophodromos.jvmProfileLongOptions", defaultValue = "")
+  private String jvmProfileLongOptions;
+
+  // Reactor module selection
+  @Parameter(property = "sophodromos.changedSince")
+  private String changedSince;
+
+  // Result cache
+  @Parameter(property = "sophodromos.cache", defaultValue = "false")
+  private boolean cache;
+
+  @Parameter(
+      property = "sophodromos.cacheDirectory",
+      defaultValue = "${user.home}/.sophodromos/cache")
+  private File cacheDirectory;
+
+  @Parameter(property = "sophodromos.cacheMaxSizeMb", defaultValue = "512")
+  private long cacheMaxSizeMb;
+
+  // Child invocation launcher
+  @Parameter(property = "sophodromos.launcher", defaultValue = "disabled")
+  private String launcher;
+
+  // Warm JVM pool
+  @Parameter(property = "sophodromos.warmPool", defaultValue = "false")
+  private boolean warmPool;
+
+  @Parameter(
+      property = "sophodromos.warmPoolSocket",
+      defaultValue = "${user.home}/.sophodromos/pool.sock")
+  private File warmPoolSocket;
+
+  @Parameter(property = "sophodromos.warmPoolIdleTimeout", defaultValue = "30m")
+  private String warmPoolIdleTimeout;
+
+  @Parameter(property = "sophodromos.warmPoolMaxMemoryMb", defaultValue = "2048")
+  private int warmPoolMaxMemoryMb;
+
+  @Parameter(property = "sophodromos.warmPoolHeapMb", defaultValue = "512")
+  private int warmPoolHeapMb;
+
+  @Parameter(property = "sophodromos.classDataSharing", defaultValue = "false")
+  private boolean classDataSharing;
+
+  // Batching of small reactor modules
+  @Parameter(property = "sophodromos.batchSmallModules", defaultValue = "false")
+  private boolean batchSmallModules;
+
+  @Parameter(property = "sophodromos.batchMaxTestClasses", defaultValue = "10")
+  private int batchMaxTestClasses;
+
+  @Parameter(property = "sophodromos.batchMaxDuration", defaultValue = "5s")
+  private String batchMaxDuration;
+
+  // Pipelined reactor execution
+  @Parameter(property = "sophodromos.pipeline", defaultValue = "false")
+  private boolean pipeline;
+
+  // Reactor-wide fail-fast
+  @Parameter(property = "sophodromos.maxFailures", defaultValue = "0")
+  private int maxFailures;
+
+  // Child process lifecycle
+  @Parameter(property = "sophodromos.timeout")
+  private String timeout;
+
+  @Parameter(property = "sophodromos.moduleTimeout")
+  private String moduleTimeout;
+
+  @Parameter(property = "sophodromos.killGracePeriod", defaultValue = "10s")
+  private String killGracePeriod;
+
+  // Hang watchdog
+  @Parameter(property = "sophodromos.hangTimeout")
+  private String hangTimeout;
+
+  @Parameter(property = "sophodromos.hangDurationFactor", defaultValue = "0")
+  private double hangDurationFactor;
+
+  @Parameter(property = "sophodromos.killHungTests", defaultValue = "false")
+  private boolean killHungTests;
+
+  // Live progress line
+  @Parameter(property = "sophodromos.progressLine", defaultValue = "false")
+  private boolean progressLine;
+
+  @Parameter(property = "sophodromos.progressInterval", defaultValue = "30s")
+  private String progressInterval;
+
+  @Parameter(property = "sophodromos.coalesceThreshold", defaultValue = "0")
+  private long coalesceThreshold;
+
+  @Parameter(property = "sophodromos.aggregateInvocations", defaultValue = "false")
+  private boolean aggregateInvocations;
+
+  @Parameter(property = "sophodromos.failureOutputOnly", defaultValue = "false")
+  private boolean failureOutputOnly;
+
+  @Parameter(property = "sophodromos.outputBufferKb", defaultValue = "256")
+  private long outputBufferKb;
+
+  @Parameter(property = "sophodromos.dedupWindow", defaultValue = "0")
+  private int dedupWindow;
+
+  // Output filter rules
+  @Parameter(property = "sophodromos.includeOutput")
+  private List<String> includeOutput;
+
+  @Parameter(property = "sophodromos.excludeOutput")
+  private List<String> excludeOutput;
+
+  @Parameter(property = "sophodromos.highlightOutput")
+  private List<String> highlightOutput;
+
+  // Resource planning
+  @Parameter(property = "sophodromos.forkMemoryEstimateMb", defaultValue = "512")
+  private long forkMemoryEstimateMb;
+
+  @Parameter(property = "sophodromos.memoryBudgetMb", defaultValue = "0")
+  private long memoryBudgetMb;
+
+  @Parameter(property = "sophodromos.sizeForkHeap", defaultValue = "false")
+  private boolean sizeForkHeap;
+
+  // Surefire parallelism
+  @Parameter(property = "sophodromos.forkCount")
+  private String forkCount;
+
+  @Parameter(property = "sophodromos.reuseForks")
+  private String reuseForks;
+
+  @Parameter(property = "sophodromos.parallel")
+  private String parallel;
+
+  @Parameter(property = "sophodromos.threadCount", defaultValue = "0")
+  private int threadCount;
+
   private TestOutputFormatter formatter;
+  private TestExecutionInterceptor interceptor;
   private TestProcessManager processManager;
   private TestOutputCapture outputCapture;
+  private long timeBudgetMillis;
+  private long warmPoolIdleTimeoutMillis;
+  private long batchMaxDurationMillis;
+  private long jvmProfileThresholdMillis;
+  private long buildDeadlineMillis;
+  private long moduleTimeoutMillis;
+  private long killGraceMillis;
+  private long hangTimeoutMillis;
+  private long progressIntervalMillis;
+  private TestLauncher testLauncher;
+  private ResourcePlanner.Plan resourcePlan;
+  private FailureLimit failureLimit;
+  private ReactorProgress reactorProgress;
+  private OutputFilterRules outputFilterRules;
 
   /** Default constructor. */
   public SophoDromosTestMojo() {
@@ -93,13 +326,29 @@ public class SophoDromosTestMojo extends AbstractMojo {
   @Override
   @SuppressWarnings("PMD.OnlyOneReturn") // Early returns for different skip conditions
   public void execute() throws MojoExecutionException, MojoFailureException {
+    // Determine execution mode: single-module or multi-module
+    final boolean isMultiModule = !shouldUseSingleModuleMode();
     if (skipTests) {
       logSkippedTests();
+      // A last module without tests still runs the queued modules and fails for pipelined ones
+      if (isMultiModule && isLastReactorModule()) {
+        validateParameters();
+        runModuleBatchWithoutTests();
+      }
+      return;
+    }
+
+    validateParameters();
+
+    final String skipReason = findSkipReason();
+    if (skipReason != null) {
+      skipModule(skipReason, isMultiModule);
+      if (isMultiModule) {
+        runModuleBatchWithoutTests();
+      }
       return;
     }
 
-    // Determine execution mode: single-module or multi-module
-    final boolean isMultiModule = !shouldUseSingleModuleMode();
     if (isMultiModule) {
       executeMultiModuleMode();
       return;
@@ -112,7 +361,11 @@ public class SophoDromosTestMojo extends AbstractMojo {
       initializeComponents();
       displayHeader();
       displayModuleHeader();
-      final TestExecutionResult result = executeTestsWithInterception();
+      final TestExecutionResult result = executeTestsWithInterception(false);
+      if (reactorProgress != null) {
+        reactorProgress.moduleCompleted(result);
+        ReactorProgress.stop(session);
+      }
       displayFormattedResults(result);
       checkForFailures(result);
     } catch (final InterruptedException e) {
@@ -143,15 +396,19 @@ public class SophoDromosTestMojo extends AbstractMojo {
    * Executes sophodromos in multi-module mode with coordinated output.
    * First module shows header, last module shows summary.
    */
-  private void executeMultiModuleMode() throws MojoExecutionException {
+  private void executeMultiModuleMode() throws MojoExecutionException, MojoFailureException {
     try {
       // Determine if this is the first or last module in the reactor
       final List<MavenProject> allProjects = session.getProjects();
       final boolean isFirstModule = allProjects.get(0).equals(project);
       final boolean isLastModule = allProjects.get(allProjects.size() - 1).equals(project);
 
-      // Initialize components
-      initializeComponents();
+      // Initialize components; pipelined modules leave the console to Maven's ongoing build
+      if (pipeline) {
+        initializeMultiModuleComponents(true);
+      } else {
+        initializeComponents();
+      }
 
       // Only first module shows header and warnings
       if (isFirstModule) {
@@ -161,11 +418,29 @@ public class SophoDromosTestMojo extends AbstractMojo {
         displayHeader();
       }
 
-      // All modules run tests but suppress individual summaries
-      final TestExecutionResult result = executeTestsWithInterception();
+      // All modules run tests but suppress individual summaries; small ones may wait for the batch
+      final Map<String, TestExecutionResult> pipelined;
+      final TestExecutionResult result;
+      if (pipeline) {
+        pipelined = runPipelined(isLastModule);
+        if (!isLastModule) {
+          return;
+        }
+        final TestExecutionResult ownResult = pipelined.remove(getModuleId());
+        result = ownResult == null ? new TestExecutionResult() : ownResult;
+      } else {
+        pipelined = Map.of();
+        result = executeTestsWithInterception(batchSmallModules && !isLastModule);
+        if (result == null) {
+          return;
+        }
+        recordModuleResults(project, result);
+      }
+      final Map<String, TestExecutionResult> batched = isLastModule ? runModuleBatch() : Map.of();
 
       // Only last module shows the final summary
       if (isLastModule) {
+        ReactorProgress.stop(session);
         // Create aggregated summary from all modules
         System.out.println();
         System.out.println("=".repeat(80));
@@ -176,12 +451,416 @@ public class SophoDromosTestMojo extends AbstractMojo {
 
       // Check for failures
       checkForFailures(result);
+      checkForModuleFailures(pipelined, "pipelined");
+      checkForModuleFailures(batched, "batched");
 
     } catch (final IOException | InterruptedException e) {
       throw new MojoExecutionException("Failed to execute tests in multi-module mode", e);
     }
   }
 
+  /**
+   * Starts the module's tests in the background, so that Maven can go on with the next module's
+   * lifecycle. The last module then waits for every module's tests.
+   *
+   * @return the results of all pipelined modules for the last module, otherwise an empty map
+   */
+  private Map<String, TestExecutionResult> runPipelined(final boolean isLastModule)
+      throws IOException, InterruptedException {
+    final boolean batchable = batchSmallModules && !isLastModule;
+    final TestPipeline testPipeline = new TestPipeline(session);
+    testPipeline.submit(
+        getModuleId(),
+        getResourcePlan().getModules(),
+        () -> {
+          // Modules waiting for their turn are skipped once the build has failed enough
+          if (failureLimit.isReached()) {
+            recordModuleSkip(project, failureLimit.describe());
+            return null;
+          }
+          final TestExecutionResult result = executeTestsWithInterception(batchable);
+          if (result != null) {
+            recordModuleResults(project, result);
+          }
+          return result;
+        });
+    return isLastModule ? testPipeline.awaitAll() : new LinkedHashMap<>();
+  }
+
+  @SuppressWarnings("PMD.OnlyOneReturn") // The first reason found applies
+  private String findSkipReason() {
+    if (failureLimit.isReached()) {
+      return failureLimit.describe();
+    }
+    if (System.currentTimeMillis() >= buildDeadlineMillis) {
+      return describeBuildTimeout();
+    }
+    if (isUnaffectedByChanges()) {
+      return "unaffected by changes since " + changedSince;
+    }
+    return null;
+  }
+
+  private String describeBuildTimeout() {
+    return "the build exceeded sophodromos.timeout of " + timeout.trim();
+  }
+
+  private long parseDuration(final String name, final String value, final String example)
+      throws MojoExecutionException {
+    try {
+      return DurationParser.parse(value);
+    } catch (final IllegalArgumentException e) {
+      throw new MojoExecutionException(
+          "Unsupported sophodromos." + name + " '" + value + "', expected e.g. " + example, e);
+    }
+  }
+
+  @SuppressWarnings("PMD.OnlyOneReturn") // No rules unless configured
+  private OutputFilterRules compileOutputFilterRules() throws MojoExecutionException {
+    if (hasNoRules(includeOutput) && hasNoRules(excludeOutput) && hasNoRules(highlightOutput)) {
+      return null;
+    }
+    try {
+      return new OutputFilterRules(includeOutput, excludeOutput, highlightOutput);
+    } catch (final IllegalArgumentException e) {
+      throw new MojoExecutionException(
+          "Unsupported sophodromos output filter rule: " + e.getMessage(), e);
+    }
+  }
+
+  private static boolean hasNoRules(final List<String> rules) {
+    return rules == null || rules.isEmpty();
+  }
+
+  @SuppressWarnings("PMD.OnlyOneReturn") // No timeout unless configured
+  private long parseOptionalDuration(final String name, final String value)
+      throws MojoExecutionException {
+    if (value == null || value.isBlank()) {
+      return 0L;
+    }
+    return parseDuration(name, value, "30m");
+  }
+
+  @SuppressWarnings("PMD.OnlyOneReturn") // No budget unless configured
+  private long parseTimeBudget() throws MojoExecutionException {
+    if (timeBudget == null || timeBudget.isBlank()) {
+      return 0L;
+    }
+    try {
+      return DurationParser.parse(timeBudget);
+    } catch (final IllegalArgumentException e) {
+      throw new MojoExecutionException(
+          "Unsupported sophodromos.timeBudget '" + timeBudget + "', expected e.g. 5m or 90s", e);
+    }
+  }
+
+  private TestLauncher resolveLauncher() throws MojoExecutionException {
+    try {
+      final TestLauncher resolved = TestLauncher.resolve(launcher, System.getenv());
+      final Log log = getLog();
+      if (log.isDebugEnabled()) {
+        log.debug("Running child test invocations with " + resolved.getCommand());
+      }
+      return resolved;
+    } catch (final IllegalArgumentException e) {
+      throw new MojoExecutionException(
+          "Unsupported sophodromos.launcher '" + launcher + "': " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Keeps the Maven Daemon from running child invocations that may have to be stopped. Its test
+   * JVMs are forked by the daemon, outside the process tree of the launched client, so timeouts,
+   * the failure limit and the hang watchdog would kill the client and leave the tests running, and
+   * thread dumps would miss them. With {@code auto}, plain Maven runs the tests instead.
+   */
+  private void checkDaemonLauncher(final long timeoutMillis) throws MojoExecutionException {
+    String stopOption = null;
+    if (timeoutMillis > 0) {
+      stopOption = "timeout";
+    } else if (moduleTimeoutMillis > 0) {
+      stopOption = "moduleTimeout";
+    } else if (maxFailures > 0) {
+      stopOption = "maxFailures";
+    } else if (hangTimeoutMillis > 0 || hangDurationFactor > 0) {
+      stopOption = "hangTimeout";
+    }
+    if (testLauncher.isDaemon() && stopOption != null) {
+      if (!TestLauncher.AUTO.equals(launcher)) {
+        throw new MojoExecutionException(
+            "Unsupported sophodromos.launcher '"
+                + launcher
+                + "' with sophodromos."
+                + stopOption
+                + ": the Maven Daemon forks the test JVMs outside the child invocation's process"
+                + " tree, so they could not be stopped");
+      }
+      testLauncher = TestLauncher.maven();
+      final Log log = getLog();
+      if (log.isInfoEnabled()) {
+        log.info(
+            "Running child test invocations with mvn rather than mvnd, which sophodromos."
+                + stopOption
+                + " could not stop");
+      }
+    }
+  }
+
+  private long parseWarmPoolIdleTimeout() throws MojoExecutionException {
+    return parseDuration("warmPoolIdleTimeout", warmPoolIdleTimeout, "30m");
+  }
+
+  private long parseJvmProfileThreshold() throws MojoExecutionException {
+    return parseDuration("jvmProfileThreshold", jvmProfileThreshold, "5s");
+  }
+
+  private long parseBatchMaxDuration() throws MojoExecutionException {
+    return parseDuration("batchMaxDuration", batchMaxDuration, "5s");
+  }
+
+  @SuppressWarnings("PMD.OnlyOneReturn") // Nothing to select without a base ref
+  private boolean isUnaffectedByChanges() {
+    if (changedSince == null || changedSince.isBlank() || session.getProjects().size() <= 1) {
+      return false;
+    }
+    // Normally already computed by the execution listener when the session started
+    final AffectedModuleSelector selector = new AffectedModuleSelector(session, getLog());
+    selector.selectAffectedModules(changedSince);
+    return selector.isUnaffected(project);
+  }
+
+  private void skipModule(final String reason, final boolean isMultiModule) {
+    final Log log = getLog();
+    if (log.isInfoEnabled()) {
+      log.info("Tests skipped: " + reason);
+    }
+    if (isMultiModule) {
+      recordModuleSkip(project, reason);
+    }
+  }
+
+  private void recordModuleSkip(final MavenProject module, final String reason) {
+    final MultiModuleStateManager.ModuleTestResults results =
+        new MultiModuleStateManager.ModuleTestResults(
+            module.getGroupId() + ":" + module.getArtifactId());
+    results.setSkipReason(reason);
+    new MultiModuleStateManager(session, module, getLog()).completeModule(results);
+    if (progressLine) {
+      new ReactorProgress(session, results.getModuleId()).moduleCompleted(null);
+    }
+  }
+
+  private void recordModuleResults(final MavenProject module, final TestExecutionResult result) {
+    final MultiModuleStateManager.ModuleTestResults results =
+        new MultiModuleStateManager.ModuleTestResults(
+            module.getGroupId() + ":" + module.getArtifactId());
+    for (final String line : result.getOutputLines()) {
+      results.addTestOutput(line);
+    }
+    results.setTestResults(
+        result.getTotalTests(),
+        result.getPassedTests(),
+        result.getFailureCount(),
+        result.getSkippedTests(),
+        result.getExecutionTime() / 1000.0);
+    results.setStartupLauncher(result.getStartupLauncher());
+    results.setStartupSavedMillis(result.getStartupSavedMillis());
+    results.setSharedArchiveSavedMillis(result.getSharedArchiveSavedMillis());
+    results.setJvmProfile(result.getJvmProfile());
+    results.setJvmProfileOptions(result.getJvmProfileOptions());
+    results.setStopReason(result.getStopReason());
+    results.setTreeCpuMillis(result.getTreeCpuMillis());
+    results.setHungTests(result.getHungTests());
+    new MultiModuleStateManager(session, module, getLog()).completeModule(results);
+    if (progressLine) {
+      new ReactorProgress(session, results.getModuleId()).moduleCompleted(result);
+    }
+  }
+
+  /**
+   * Runs the tests of the small modules queued during the reactor build together in one forked JVM,
+   * recording each module's results under that module.
+   *
+   * @return the results of the queued modules by module ID
+   */
+  private Map<String, TestExecutionResult> runModuleBatch()
+      throws IOException, InterruptedException {
+    final ModuleBatch batch = new ModuleBatch(session, getLog());
+    final Map<String, TestExecutionResult> results = new LinkedHashMap<>();
+    try {
+      for (final Map.Entry<String, File> queued : batch.getQueuedModules().entrySet()) {
+        final MavenProject module = batch.findProject(queued.getKey());
+        if (module != null && failureLimit.isReached()) {
+          recordModuleSkip(module, failureLimit.describe());
+        } else if (module != null && batch.isStopped()) {
+          // A run that had to be destroyed took the batch JVM down with it
+          final TestExecutionResult result = new TestExecutionResult();
+          result.setStopReason("the batch JVM was stopped before the module's tests ran");
+          recordModuleResults(module, result);
+          results.put(queued.getKey(), result);
+        } else if (module != null) {
+          final TestExecutionResult result = runBatchedModule(batch, module, queued.getValue());
+          recordModuleResults(module, result);
+          results.put(queued.getKey(), result);
+        }
+      }
+    } finally {
+      batch.close();
+      batch.clearQueue();
+    }
+    return results;
+  }
+
+  private TestExecutionResult runBatchedModule(
+      final ModuleBatch batch, final MavenProject module, final File moduleHistoryDirectory)
+      throws IOException, InterruptedException {
+    // Planned again because the module's class hashes are recorded with its results
+    final TestRunPlanner planner = createPlanner(module, moduleHistoryDirectory);
+    final List<String> testClasses = listSelectedClasses(planner, planner.planSelections());
+    TestExecutionResult result = new TestExecutionResult();
+    if (!testClasses.isEmpty()) {
+      // The batch runs in the last module's invocation, while its classes count for their module
+      final ReactorProgress moduleProgress =
+          reactorProgress == null
+              ? null
+              : new ReactorProgress(session, module.getGroupId() + ":" + module.getArtifactId());
+      if (moduleProgress != null) {
+        moduleProgress.modulePlanned(planner.estimateDuration(testClasses));
+      }
+      interceptor.setReactorProgress(moduleProgress);
+      try {
+        result =
+            executeSelection(
+                null,
+                batch.start(module, testClasses),
+                computeModuleDeadline(),
+                planner,
+                moduleHistoryDirectory);
+      } catch (final DependencyResolutionRequiredException e) {
+        throw new IOException("The test classpath of " + module.getId() + " is not resolved", e);
+      } finally {
+        interceptor.setReactorProgress(reactorProgress);
+      }
+    }
+    addPlannedSkips(planner, result);
+    planner.recordResults(result);
+    return result;
+  }
+
+  /** Validates and parses the parameters needed to run tests. */
+  private void validateParameters() throws MojoExecutionException {
+    if (!TestRunPlanner.isSupportedRunOrder(runOrder)) {
+      throw new MojoExecutionException(
+          "Unsupported sophodromos.runOrder '"
+              + runOrder
+              + "', expected '"
+              + TestRunPlanner.ORDER_DEFAULT
+              + "' or '"
+              + TestRunPlanner.ORDER_FAILED_FIRST
+              + "'");
+    }
+
+    if (!JvmProfileSelector.isSupportedSetting(jvmProfile)) {
+      throw new MojoExecutionException(
+          "Unsupported sophodromos.jvmProfile '"
+              + jvmProfile
+              + "', expected none, auto, short or long");
+    }
+
+    if (forkCount != null && !FORK_COUNT_PATTERN.matcher(forkCount.trim()).matches()) {
+      throw new MojoExecutionException(
+          "Unsupported sophodromos.forkCount '"
+              + forkCount
+              + "', expected auto, a number or a multiple of the CPUs such as 1.5C");
+    }
+
+    if (maxFailures < 0) {
+      throw new MojoExecutionException(
+          "Unsupported sophodromos.maxFailures '" + maxFailures + "', expected 0 or more");
+    }
+
+    if (failureOutputOnly && outputBufferKb <= 0) {
+      throw new MojoExecutionException(
+          "Unsupported sophodromos.outputBufferKb '" + outputBufferKb + "', expected 1 or more");
+    }
+
+    if (dedupWindow < 0) {
+      throw new MojoExecutionException(
+          "Unsupported sophodromos.dedupWindow '" + dedupWindow + "', expected 0 or more");
+    }
+
+    if (coalesceThreshold < 0) {
+      throw new MojoExecutionException(
+          "Unsupported sophodromos.coalesceThreshold '"
+              + coalesceThreshold
+              + "', expected 0 or more");
+    }
+
+    timeBudgetMillis = parseTimeBudget();
+    jvmProfileThresholdMillis = parseJvmProfileThreshold();
+    warmPoolIdleTimeoutMillis = parseWarmPoolIdleTimeout();
+    batchMaxDurationMillis = parseBatchMaxDuration();
+    testLauncher = resolveLauncher();
+    killGraceMillis = parseDuration("killGracePeriod", killGracePeriod, "10s");
+    moduleTimeoutMillis = parseOptionalDuration("moduleTimeout", moduleTimeout);
+    hangTimeoutMillis = parseOptionalDuration("hangTimeout", hangTimeout);
+    progressIntervalMillis = parseDuration("progressInterval", progressInterval, "30s");
+    if (progressIntervalMillis <= 0) {
+      throw new MojoExecutionException(
+          "Unsupported sophodromos.progressInterval '" + progressInterval + "', expected e.g. 30s");
+    }
+    outputFilterRules = compileOutputFilterRules();
+    final long timeoutMillis = parseOptionalDuration("timeout", timeout);
+    // The overall timeout counts from the start of the build, like the CI job's
+    buildDeadlineMillis =
+        timeoutMillis == 0 ? Long.MAX_VALUE : session.getStartTime().getTime() + timeoutMillis;
+    checkDaemonLauncher(timeoutMillis);
+    failureLimit = new FailureLimit(session, maxFailures, killGraceMillis);
+  }
+
+  private boolean isLastReactorModule() {
+    final List<MavenProject> allProjects = session.getProjects();
+    return allProjects.get(allProjects.size() - 1).equals(project);
+  }
+
+  /**
+   * Waits for the pipelined modules and runs the queued ones when the last module has no tests of
+   * its own to run.
+   */
+  private void runModuleBatchWithoutTests() throws MojoExecutionException, MojoFailureException {
+    if (!isLastReactorModule()) {
+      return;
+    }
+    try {
+      initializeComponents();
+      final Map<String, TestExecutionResult> pipelined =
+          pipeline ? new TestPipeline(session).awaitAll() : Map.of();
+      checkForModuleFailures(pipelined, "pipelined");
+      checkForModuleFailures(runModuleBatch(), "batched");
+    } catch (final IOException | InterruptedException e) {
+      throw new MojoExecutionException("Failed to run the batch of small modules", e);
+    }
+  }
+
+  private void checkForModuleFailures(
+      final Map<String, TestExecutionResult> results, final String kind)
+      throws MojoFailureException {
+    final List<String> failedModules = new ArrayList<>();
+    for (final Map.Entry<String, TestExecutionResult> entry : results.entrySet()) {
+      if (entry.getValue().hasFailures() || entry.getValue().getStopReason() != null) {
+        failedModules.add(entry.getKey());
+      }
+    }
+    if (!failedModules.isEmpty()) {
+      throw new MojoFailureException(
+          "Tests failed in " + kind + " modules: " + String.join(", ", failedModules));
+    }
+  }
+
+  private String getModuleId() {
+    return project.getGroupId() + ":" + project.getArtifactId();
+  }
+
   private void logSkippedTests() {
     final Log log = getLog();
     if (log.isInfoEnabled()) {
@@ -201,9 +880,17 @@ public class SophoDromosTestMojo extends AbstractMojo {
             skipSymbol,
             terminalWidth);
 
-    final TestExecutionInterceptor interceptor = new TestExecutionInterceptor(project, formatter);
+    interceptor = new TestExecutionInterceptor(project, formatter);
+    interceptor.setCoalesceThreshold(coalesceThreshold);
+    interceptor.setAggregateInvocations(aggregateInvocations);
+    interceptor.setOutputFilterRules(outputFilterRules);
     processManager = new TestProcessManager(project);
+    processManager.setLauncher(testLauncher);
     outputCapture = new TestOutputCapture(interceptor, showProgress && showMethodNames, getLog());
+    outputCapture.setFailureLimit(failureLimit);
+    outputCapture.setFailureOutputOnly(failureOutputOnly ? outputBufferKb * 1024 : 0L);
+    outputCapture.setDedupWindow(dedupWindow);
+    startReactorProgress();
   }
 
   /** Initializes components for multi-module execution with output control. */
@@ -219,12 +906,55 @@ public class SophoDromosTestMojo extends AbstractMojo {
             skipSymbol,
             terminalWidth);
 
-    final TestExecutionInterceptor interceptor = new TestExecutionInterceptor(project, formatter);
+    interceptor = new TestExecutionInterceptor(project, formatter);
+    interceptor.setCoalesceThreshold(coalesceThreshold);
+    interceptor.setAggregateInvocations(aggregateInvocations);
+    interceptor.setOutputFilterRules(outputFilterRules);
     processManager = new TestProcessManager(project);
+    processManager.setLauncher(testLauncher);
 
     // Control output based on multi-module settings
     final boolean showOutput = !suppressOutput && showProgress && showMethodNames;
     outputCapture = new TestOutputCapture(interceptor, showOutput, getLog());
+    outputCapture.setFailureLimit(failureLimit);
+    outputCapture.setFailureOutputOnly(failureOutputOnly ? outputBufferKb * 1024 : 0L);
+    outputCapture.setDedupWindow(dedupWindow);
+    startReactorProgress();
+  }
+
+  /** Starts the live status line of the build, which the first module to get here shows. */
+  @SuppressWarnings("PMD.OnlyOneReturn") // No status line unless configured
+  private void startReactorProgress() {
+    if (!progressLine) {
+      return;
+    }
+    reactorProgress = new ReactorProgress(session, getModuleId());
+    final Set<String> expectedModules =
+        new MultiModuleStateManager(session, project, getLog()).getExpectedModules();
+    reactorProgress.start(
+        expectedModules.isEmpty() ? session.getProjects().size() : expectedModules.size(),
+        this::loadRecordedModuleDurations,
+        progressIntervalMillis,
+        terminalWidth > 0 ? terminalWidth : DEFAULT_TERMINAL_WIDTH);
+    interceptor.setReactorProgress(reactorProgress);
+    outputCapture.setReactorProgress(reactorProgress);
+  }
+
+  /** Adds up the recorded test durations of every reactor module, the basis of the ETA. */
+  private Map<String, Long> loadRecordedModuleDurations() {
+    final Map<String, Long> durations = new LinkedHashMap<>();
+    for (final MavenProject reactorProject : session.getProjects()) {
+      long total = 0;
+      for (final TestHistoryStore.TestClassHistory record :
+          new TestHistoryStore(getHistoryDirectory(reactorProject).toPath(), getLog())
+              .load()
+              .getTestClasses()
+              .values()) {
+        total += record.getLastDurationMillis();
+      }
+      durations.put(reactorProject.getGroupId() + ":" + reactorProject.getArtifactId(), total);
+    }
+    return durations;
   }
 
   /** Determines if a line is actual test output (vs Maven build output). */
@@ -253,6 +983,71 @@ public class SophoDromosTestMojo extends AbstractMojo {
     final String headerMessage =
         formatter.formatHeader("SophoDromos Test Runner (version: " + version + ")");
     System.out.println(headerMessage);
+    // The plan only changes the run when it is capped or sizes the forks
+    final Log log = getLog();
+    if (memoryBudgetMb > 0 || forkCount != null && FORK_COUNT_AUTO.equals(forkCount.trim())) {
+      System.out.println(formatter.formatResourcePlan(planResources()));
+    } else if (log.isDebugEnabled()) {
+      log.debug("Resources: " + planResources());
+    }
+  }
+
+  private ResourcePlanner.Plan getResourcePlan() {
+    if (resourcePlan == null) {
+      planResources();
+    }
+    return resourcePlan;
+  }
+
+  /** Plans the concurrent test JVMs from the CPUs, the memory limit and the recorded peak RSS. */
+  private String planResources() {
+    final Runtime runtime = Runtime.getRuntime();
+    final ResourcePlanner planner = ResourcePlanner.forSystem();
+    // The heap may grow to its maximum while the tests run, the committed heap understates it
+    final ResourcePlanner.Resources detected =
+        planner.detect(runtime.availableProcessors(), runtime.maxMemory());
+    final ResourcePlanner.Resources resources =
+        memoryBudgetMb > 0 ? detected.withMemoryBudget(memoryBudgetMb * 1024 * 1024) : detected;
+    final List<MavenProject> projects = session.getProjects();
+    final List<Long> peakRssBytes = new ArrayList<>();
+    for (final MavenProject reactorProject : projects) {
+      final long peak =
+          new TestHistoryStore(getHistoryDirectory(reactorProject).toPath(), getLog())
+              .load()
+              .getPeakRssBytes();
+      if (peak > 0) {
+        peakRssBytes.add(peak);
+      }
+    }
+    resourcePlan =
+        planner.plan(resources, peakRssBytes, forkMemoryEstimateMb * 1024 * 1024, projects.size());
+    final Log log = getLog();
+    if (log.isDebugEnabled()) {
+      log.debug(
+          "Recorded peak RSS of "
+              + peakRssBytes.size()
+              + " of "
+              + projects.size()
+              + " modules, Maven JVM holds "
+              + resources.getReservedBytes()
+              + " bytes");
+    }
+    return resources.describe() + " → " + resourcePlan.describe();
+  }
+
+  /**
+   * Gets the history directory of a reactor module. The configured directory usually lies in the
+   * current module's build directory, so the same place is used in the other module's.
+   */
+  private File getHistoryDirectory(final MavenProject reactorProject) {
+    final Path buildDirectory = Paths.get(project.getBuild().getDirectory()).toAbsolutePath();
+    final Path configured = historyDirectory.toPath().toAbsolutePath();
+    if (reactorProject.equals(project) || !configured.startsWith(buildDirectory)) {
+      return historyDirectory;
+    }
+    return Paths.get(reactorProject.getBuild().getDirectory())
+        .resolve(buildDirectory.relativize(configured))
+        .toFile();
   }
 
   @SuppressWarnings("PMD.SystemPrintln") // Intentional console output for clean formatting
@@ -382,6 +1177,9 @@ public class SophoDromosTestMojo extends AbstractMojo {
   }
 
   private void checkForFailures(final TestExecutionResult result) throws MojoFailureException {
+    if (result.getStopReason() != null && !result.hasFailures()) {
+      throw new MojoFailureException("Tests stopped: " + result.getStopReason());
+    }
     if (result.hasFailures()) {
       throw new MojoFailureException(
           "Tests failed: "
@@ -392,40 +1190,524 @@ public class SophoDromosTestMojo extends AbstractMojo {
     }
   }
 
-  private TestExecutionResult executeTestsWithInterception()
+  /**
+   * Runs the module's tests.
+   *
+   * @param batchable whether a small module may be queued to run with the module batch
+   * @return the result, or null if the module was queued
+   */
+  private TestExecutionResult executeTestsWithInterception(final boolean batchable)
       throws IOException, InterruptedException {
     logTestExecutionStart();
 
-    final Process process = processManager.createSurefireProcess();
+    final TestRunPlanner planner = createPlanner(project, historyDirectory);
+    configureParallelism();
+    if (recordCoverage) {
+      configureCoverageRecording(planner);
+    }
+
+    final ModuleResultCache resultCache =
+        cache && !recordCoverage
+            ? new ModuleResultCache(cacheDirectory.toPath(), cacheMaxSizeMb * 1024 * 1024, getLog())
+            : null;
+    final String cacheKey = resultCache == null ? null : computeCacheKey(planner);
+    if (cacheKey != null) {
+      final TestExecutionResult cached = resultCache.load(cacheKey);
+      if (cached != null) {
+        replayCachedOutput(cached);
+        return cached;
+      }
+    }
+
+    final List<TestSelection> selections = planner.planSelections();
+    if (reactorProgress != null) {
+      reactorProgress.modulePlanned(
+          planner.estimateDuration(listSelectedClasses(planner, selections)));
+    }
+    if (batchable && isSmallModule(planner, selections)) {
+      new ModuleBatch(session, getLog()).enqueue(project, historyDirectory);
+      final Log log = getLog();
+      if (log.isDebugEnabled()) {
+        log.debug("Queued " + getModuleId() + " to run with the batch of small modules");
+      }
+      return null;
+    }
+
+    // Coverage recording needs Surefire's fresh JVM per test class
+    final WarmPoolClient pool =
+        warmPool && !recordCoverage
+            ? new WarmPoolClient(
+                project,
+                warmPoolSocket.toPath(),
+                warmPoolIdleTimeoutMillis,
+                warmPoolMaxMemoryMb,
+                warmPoolHeapMb,
+                classDataSharing,
+                getLog())
+            : null;
+
+    final String heapOption = applyForkHeap(planner);
+    final JvmProfileSelector.Profile profile = applyJvmProfile(planner, selections, heapOption);
+
+    final TestExecutionResult result = new TestExecutionResult();
+    final long started = System.nanoTime();
+    final long moduleDeadlineMillis = computeModuleDeadline();
+    int pooledSelections = 0;
+    for (final TestSelection selection : selections) {
+      if (failureLimit.isReached() && result.getStopReason() == null) {
+        result.setStopReason(failureLimit.describe());
+      }
+      // A timed out or destroyed invocation also stops the module's remaining selections
+      if (result.getStopReason() != null) {
+        break;
+      }
+      final Process pooled =
+          pool == null ? null : pool.start(planner.listSelectedClasses(selection));
+      if (pooled != null) {
+        pooledSelections++;
+      }
+      result.merge(
+          executeSelection(selection, pooled, moduleDeadlineMillis, planner, historyDirectory));
+    }
+    // Startup costs are only comparable when one launcher ran every invocation
+    String launcherName = null;
+    if (pooledSelections == 0) {
+      launcherName = testLauncher.getName();
+    } else if (pooledSelections == selections.size()) {
+      launcherName = WarmPoolClient.LAUNCHER_NAME;
+    }
+    // A stopped run says nothing about the startup cost of a full one
+    if (result.getStopReason() == null) {
+      planner.recordWallClockTime(
+          (System.nanoTime() - started) / 1_000_000L, selections.size(), result, launcherName);
+    }
+    final Long startupSavedMillis = planner.getStartupSavedMillis();
+    if (startupSavedMillis != null) {
+      result.setStartupSavings(launcherName, startupSavedMillis);
+    }
+    if (pool != null) {
+      result.setSharedArchiveSavedMillis(pool.getSharedArchiveSavedMillis());
+    }
+    // Warm JVMs are started with their own options
+    if (profile != null && pooledSelections < selections.size()) {
+      result.setJvmProfile(profile.getName(), String.join(" ", profile.getOptions()));
+    }
+    addPlannedSkips(planner, result);
+    planner.recordResults(result);
+
+    // Only complete runs can be replayed in place of a full Surefire run
+    if (cacheKey != null
+        && result.getStopReason() == null
+        && !result.isOutputTruncated()
+        && result.getUpToDateClasses().isEmpty()
+        && result.getDeferredClasses().isEmpty()) {
+      resultCache.store(cacheKey, result);
+    }
+
+    return result;
+  }
+
+  private TestRunPlanner createPlanner(
+      final MavenProject module, final File moduleHistoryDirectory) {
+    final TestRunPlanner planner =
+        new TestRunPlanner(
+            module,
+            new TestHistoryStore(moduleHistoryDirectory.toPath(), getLog()),
+            runOrder,
+            getLog());
+    planner.setIncremental(incremental);
+    planner.setAffectedOnly(affectedOnly);
+    planner.setTimeBudget(timeBudgetMillis);
+    return planner;
+  }
+
+  /**
+   * Chooses the JVM profile of the forked test JVMs from the recorded durations of the planned test
+   * classes and adds its options to them.
+   *
+   * @return the applied profile, or null if none applies
+   */
+  private JvmProfileSelector.Profile applyJvmProfile(
+      final TestRunPlanner planner, final List<TestSelection> selections, final String heapOption) {
+    final List<String> testClasses = listSelectedClasses(planner, selections);
+    final JvmProfileSelector.Profile profile =
+        new JvmProfileSelector(
+                jvmProfile,
+                jvmProfileThresholdMillis,
+                jvmProfileShortOptions,
+                jvmProfileLongOptions)
+            .select(
+                planner.getRecordedDurations(testClasses),
+                testClasses.size(),
+                project.getProperties().getProperty("argLine", "")
+                    + (heapOption == null ? "" : " " + heapOption));
+    if (profile != null) {
+      for (final String option : profile.getOptions()) {
+        processManager.addForkedJvmOption(option);
+      }
+      final Log log = getLog();
+      if (log.isDebugEnabled()) {
+        log.debug(
+            "JVM profile "
+                + profile.getName()
+                + " for an expected "
+                + profile.getEstimatedMillis()
+                + "ms of tests: "
+                + profile.getOptions());
+      }
+    }
+    return profile;
+  }
+
+  /**
+   * Sizes the maximum heap of the forked test JVMs from the module's recorded peak RSS, unless the
+   * project sets one itself.
+   *
+   * @return the added option, or null if none was added
+   */
+  @SuppressWarnings("PMD.OnlyOneReturn") // Nothing to size without a recorded peak
+  private String applyForkHeap(final TestRunPlanner planner) {
+    final long peakRssBytes = planner.getRecordedPeakRss();
+    if (!sizeForkHeap
+        || peakRssBytes <= 0
+        || project.getProperties().getProperty("argLine", "").contains("-Xmx")) {
+      return null;
+    }
+    final String heapOption = ResourcePlanner.sizeMaxHeap(peakRssBytes);
+    processManager.addForkedJvmOption(heapOption);
+    final Log log = getLog();
+    if (log.isDebugEnabled()) {
+      log.debug("Sized fork heap " + heapOption + " from a peak RSS of " + peakRssBytes + " bytes");
+    }
+    return heapOption;
+  }
+
+  private static void addPlannedSkips(
+      final TestRunPlanner planner, final TestExecutionResult result) {
+    for (final String upToDateClass : planner.getUpToDateClasses()) {
+      result.addUpToDateClass(upToDateClass, planner.getRecordedTestCount(upToDateClass));
+    }
+    for (final Map.Entry<String, Long> deferred : planner.getDeferredClasses().entrySet()) {
+      result.addDeferredClass(deferred.getKey(), deferred.getValue());
+    }
+  }
+
+  /**
+   * Checks whether a module is small enough for the batch: a few test classes expected to finish
+   * quickly and no JVM options or Surefire settings of its own, which the shared JVM could not
+   * honour.
+   */
+  @SuppressWarnings("PMD.OnlyOneReturn") // Early returns for modules that cannot be batched
+  private boolean isSmallModule(
+      final TestRunPlanner planner, final List<TestSelection> selections) {
+    if (selections.isEmpty() || recordCoverage) {
+      return false;
+    }
+    final String unbatchable = findUnbatchableSetting();
+    if (unbatchable != null) {
+      final Log log = getLog();
+      if (log.isDebugEnabled()) {
+        log.debug(
+            getModuleId() + " runs on its own: the batch JVM cannot apply its " + unbatchable);
+      }
+      return false;
+    }
+    final List<String> testClasses = listSelectedClasses(planner, selections);
+    return testClasses.size() <= batchMaxTestClasses
+        && planner.estimateDuration(testClasses) <= batchMaxDurationMillis;
+  }
+
+  /**
+   * Finds a setting of the module's tests that the batch JVM would ignore: JVM options, system
+   * properties, environment variables, class filters, or a test provider other than the JUnit
+   * Platform and JUnit 4, which would make the tests behave differently or other tests run.
+   *
+   * @return a description of the setting, or null if the module can be batched
+   */
+  @SuppressWarnings("PMD.OnlyOneReturn") // The first setting found applies
+  private String findUnbatchableSetting() {
+    if (!project.getProperties().getProperty("argLine", "").isBlank()) {
+      return "argLine";
+    }
+    final Plugin surefire = project.getPlugin(SUREFIRE_PLUGIN);
+    if (surefire != null) {
+      if (!surefire.getDependencies().isEmpty()) {
+        return "Surefire provider dependencies";
+      }
+      final List<Object> configurations = new ArrayList<>();
+      configurations.add(surefire.getConfiguration());
+      for (final PluginExecution execution : surefire.getExecutions()) {
+        configurations.add(execution.getConfiguration());
+      }
+      for (final Object configuration : configurations) {
+        if (configuration instanceof Xpp3Dom) {
+          for (final String setting : UNBATCHABLE_SETTINGS) {
+            if (((Xpp3Dom) configuration).getChild(setting) != null) {
+              return "Surefire " + setting;
+            }
+          }
+        }
+      }
+    }
+    for (final Artifact artifact : project.getArtifacts()) {
+      if ("org.testng".equals(artifact.getGroupId())) {
+        return "TestNG tests";
+      }
+    }
+    return null;
+  }
+
+  private static List<String> listSelectedClasses(
+      final TestRunPlanner planner, final List<TestSelection> selections) {
+    final List<String> testClasses = new ArrayList<>();
+    for (final TestSelection selection : selections) {
+      testClasses.addAll(planner.listSelectedClasses(selection));
+    }
+    return testClasses;
+  }
+
+  @SuppressWarnings("PMD.OnlyOneReturn") // Falls back to no caching
+  private String computeCacheKey(final TestRunPlanner planner) {
+    final String moduleFingerprint;
+    try {
+      moduleFingerprint = planner.fingerprintModule();
+    } catch (final IOException e) {
+      final Log log = getLog();
+      if (log.isWarnEnabled()) {
+        log.warn("Could not compute result cache key, caching disabled: " + e.getMessage());
+      }
+      return null;
+    }
+
+    final Map<String, String> configuration = new TreeMap<>();
+    configuration.put("plugin.version", getSophoDromosVersion());
+    configuration.put("java.version", System.getProperty("java.version"));
+    configuration.put("java.vendor", System.getProperty("java.vendor"));
+    configuration.put("project", project.getId());
+    for (final String name : project.getProperties().stringPropertyNames()) {
+      if (CACHE_KEY_PROPERTY.matcher(name).matches()) {
+        configuration.put(
+            "project.property." + name, toPortable(project.getProperties().getProperty(name)));
+      }
+    }
+    final Plugin surefire = project.getPlugin(SUREFIRE_PLUGIN);
+    if (surefire != null) {
+      configuration.put("surefire.version", surefire.getVersion());
+      configuration.put(
+          "surefire.configuration", toPortable(String.valueOf(surefire.getConfiguration())));
+    }
+    return ModuleResultCache.computeKey(moduleFingerprint, configuration);
+  }
+
+  /**
+   * Replaces the machine-specific directories in a configuration value, such as an interpolated
+   * {@code ${project.basedir}} or a {@code -javaagent} jar in the local repository, so that cache
+   * keys match between CI runners with other workspace or home directories.
+   */
+  private String toPortable(final String value) {
+    String portable = value;
+    if (session.getLocalRepository() != null) {
+      portable = portable.replace(session.getLocalRepository().getBasedir(), "${localRepository}");
+    }
+    portable = portable.replace(project.getBasedir().getAbsolutePath(), "${basedir}");
+    if (session.getExecutionRootDirectory() != null) {
+      portable = portable.replace(session.getExecutionRootDirectory(), "${rootDirectory}");
+    }
+    return portable.replace(System.getProperty("user.home"), "${user.home}");
+  }
+
+  @SuppressWarnings("PMD.SystemPrintln") // Intentional console output for clean formatting
+  private void replayCachedOutput(final TestExecutionResult cached) {
+    if (showProgress && showMethodNames) {
+      for (final String line : cached.getOutputLines()) {
+        System.out.println(line);
+      }
+    }
+  }
+
+  /**
+   * Passes the configured Surefire parallelism to the child invocations and lets the output of
+   * concurrently running test classes be sorted by class.
+   */
+  private void configureParallelism() {
+    boolean concurrent = false;
+    if (forkCount != null && !forkCount.isBlank()) {
+      final String resolvedForkCount =
+          FORK_COUNT_AUTO.equals(forkCount.trim())
+              ? Integer.toString(getResourcePlan().getForks())
+              : forkCount.trim();
+      processManager.setSurefireProperty("forkCount", resolvedForkCount);
+      concurrent = !"0".equals(resolvedForkCount) && !"1".equals(resolvedForkCount);
+    }
+    if (reuseForks != null && !reuseForks.isBlank()) {
+      processManager.setSurefireProperty("reuseForks", reuseForks.trim());
+    }
+    if (parallel != null && !parallel.isBlank()) {
+      processManager.setSurefireProperty("parallel", parallel.trim());
+      if (threadCount > 0) {
+        processManager.setSurefireProperty("threadCount", Integer.toString(threadCount));
+      }
+      concurrent = true;
+    }
+    outputCapture.setDemultiplexed(concurrent);
+  }
+
+  private void configureCoverageRecording(final TestRunPlanner planner) {
+    final CoverageRecorder recorder =
+        new CoverageRecorder(project, historyDirectory.toPath(), getLog());
+    final String agentOption = recorder.prepareAgentOption();
+    if (agentOption != null) {
+      // One fresh JVM per test class, so every class it loads belongs to that test
+      processManager.addForkedJvmOption(agentOption);
+      processManager.setSurefireProperty("forkCount", "1");
+      processManager.setSurefireProperty("reuseForks", "false");
+      planner.setCoverageRecorder(recorder);
+    }
+  }
+
+  private long computeModuleDeadline() {
+    return moduleTimeoutMillis == 0
+        ? Long.MAX_VALUE
+        : System.currentTimeMillis() + moduleTimeoutMillis;
+  }
+
+  private TestExecutionResult executeSelection(
+      final TestSelection selection,
+      final Process pooled,
+      final long moduleDeadlineMillis,
+      final TestRunPlanner planner,
+      final File moduleHistoryDirectory)
+      throws IOException, InterruptedException {
+    final Process process =
+        pooled == null ? processManager.createSurefireProcess(selection) : pooled;
+    ProcessTreeReaper.register(process, killGraceMillis);
+    failureLimit.track(process);
+    // The client of the Maven Daemon is no parent of the test JVMs
+    final ProcessTreeSampler treeSampler =
+        pooled == null && testLauncher.isDaemon() ? null : ProcessTreeSampler.start(process);
+    final HangWatchdog watchdog = startHangWatchdog(process, planner, moduleHistoryDirectory);
     final ProcessStreams streams = getProcessStreams(process);
     final TestExecutionResult result = new TestExecutionResult();
 
-    final ThreadManager threadManager = createThreadManager(streams, result);
-    threadManager.startThreads();
+    final StreamDrain streamDrain =
+        new StreamDrain(
+            streams.getInputStream(),
+            streams.getErrorStream(),
+            outputCapture.captureOutput(streams.getInputStream(), result),
+            outputCapture.captureErrors(streams.getErrorStream(), result));
 
-    final int exitCode = process.waitFor();
-    threadManager.waitForCompletion();
+    final int exitCode;
+    try {
+      exitCode = waitForExit(process, moduleDeadlineMillis, result);
+    } finally {
+      if (process.isAlive()) {
+        // Interrupted, so the tree would keep running as orphans
+        ProcessTreeReaper.terminate(process, killGraceMillis)
+            .thenRun(() -> ProcessTreeReaper.unregister(process));
+      } else {
+        ProcessTreeReaper.unregister(process);
+      }
+      if (failureLimit.untrack(process)) {
+        result.setStopReason(failureLimit.describe());
+      }
+    }
+    if (!streamDrain.awaitEnd(OUTPUT_DRAIN_MILLIS)) {
+      result.setOutputTruncated(true);
+      final Log log = getLog();
+      if (log.isWarnEnabled()) {
+        log.warn(
+            "Test output truncated: the output of the child invocation was not read to its end "
+                + OUTPUT_DRAIN_MILLIS / 1000
+                + "s after it exited");
+      }
+    }
+    if (watchdog != null) {
+      interceptor.setHangWatchdog(null);
+      watchdog.stop();
+      for (final String hungTest : watchdog.getHungTests()) {
+        result.addHungTest(hungTest);
+      }
+      if (watchdog.isKilled()) {
+        result.setStopReason("hung test JVMs were killed");
+      }
+    }
+    if (treeSampler != null) {
+      treeSampler.stop();
+      result.recordPeakRss(treeSampler.getPeakForkBytes(), treeSampler.getPeakTreeBytes());
+      result.addTreeCpuMillis(treeSampler.getTreeCpuMillis());
+      final Log log = getLog();
+      if (log.isDebugEnabled()) {
+        log.debug(
+            "Child invocation exited with code "
+                + exitCode
+                + " after "
+                + treeSampler.getTreeCpuMillis()
+                + "ms of CPU time in its process tree");
+      }
+    }
 
     result.setExitCode(exitCode);
 
     return result;
   }
 
+  /**
+   * Starts watching a child invocation for hung tests, if a hang timeout or duration factor is
+   * configured.
+   *
+   * @return the running watchdog, or null if none is configured
+   */
+  @SuppressWarnings("PMD.OnlyOneReturn") // Nothing to watch unless configured
+  private HangWatchdog startHangWatchdog(
+      final Process process, final TestRunPlanner planner, final File moduleHistoryDirectory) {
+    if (hangTimeoutMillis == 0 && hangDurationFactor <= 0) {
+      return null;
+    }
+    final HangWatchdog watchdog =
+        new HangWatchdog(
+            process,
+            hangTimeoutMillis,
+            hangDurationFactor,
+            planner::getRecordedDuration,
+            moduleHistoryDirectory.toPath().resolve("thread-dumps"),
+            killHungTests ? killGraceMillis : -1L,
+            getLog());
+    interceptor.setHangWatchdog(watchdog);
+    watchdog.start();
+    return watchdog;
+  }
+
+  /**
+   * Waits for a child invocation, tearing down its process tree once the build or the module runs
+   * out of time.
+   */
+  private int waitForExit(
+      final Process process, final long moduleDeadlineMillis, final TestExecutionResult result)
+      throws InterruptedException {
+    final long deadlineMillis = Math.min(buildDeadlineMillis, moduleDeadlineMillis);
+    if (deadlineMillis != Long.MAX_VALUE
+        && !process.waitFor(
+            Math.max(0L, deadlineMillis - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+      final String reason =
+          deadlineMillis == buildDeadlineMillis
+              ? describeBuildTimeout()
+              : "the module exceeded sophodromos.moduleTimeout of " + moduleTimeout.trim();
+      final Log log = getLog();
+      if (log.isWarnEnabled()) {
+        log.warn("Terminating a child test invocation: " + reason);
+      }
+      result.setStopReason(reason);
+      ProcessTreeReaper.terminate(process, killGraceMillis);
+    }
+    return process.waitFor();
+  }
+
   private ProcessStreams getProcessStreams(final Process process) {
     final InputStream inputStream = process.getInputStream();
     final InputStream errorStream = process.getErrorStream();
     return new ProcessStreams(inputStream, errorStream);
   }
 
-  private ThreadManager createThreadManager(
-      final ProcessStreams streams, final TestExecutionResult result) {
-    final Thread outputThread =
-        outputCapture.createOutputCaptureThread(streams.getInputStream(), result);
-    final Thread errorThread =
-        outputCapture.createErrorCaptureThread(streams.getErrorStream(), result);
-    return new ThreadManager(outputThread, errorThread);
-  }
-
   private void logTestExecutionStart() {
     // Intentionally empty - we want clean output without Maven [INFO] messages
   }
@@ -446,6 +1728,50 @@ public class SophoDromosTestMojo extends AbstractMojo {
 
     System.out.println(summary);
 
+    if (result.isReplayedFromCache()) {
+      System.out.println(formatter.formatCacheHitSummary(result.getExecutionTime()));
+    }
+
+    if (result.getStartupLauncher() != null) {
+      System.out.println(
+          formatter.formatStartupSavings(
+              result.getStartupLauncher(), result.getStartupSavedMillis()));
+    }
+
+    if (result.getJvmProfile() != null) {
+      System.out.println(
+          formatter.formatJvmProfile(result.getJvmProfile(), result.getJvmProfileOptions()));
+    }
+
+    if (result.getSharedArchiveSavedMillis() != 0) {
+      System.out.println(
+          formatter.formatSharedArchiveSavings(result.getSharedArchiveSavedMillis()));
+    }
+
+    if (!result.getUpToDateClasses().isEmpty()) {
+      System.out.println(
+          formatter.formatUpToDateSummary(
+              result.getUpToDateClasses().size(), result.getUpToDateTests()));
+    }
+
+    if (!result.getDeferredClasses().isEmpty()) {
+      System.out.println(
+          formatter.formatDeferredSummary(
+              result.getDeferredClasses(), result.getDeferredTimeMillis()));
+    }
+
+    if (result.getTreeCpuMillis() > 0) {
+      System.out.println(formatter.formatTreeCpu(result.getTreeCpuMillis()));
+    }
+
+    for (final String hungTest : result.getHungTests()) {
+      System.out.println(formatter.formatHungTest(hungTest));
+    }
+
+    if (result.getStopReason() != null) {
+      System.out.println(formatter.formatStopReason(result.getStopReason()));
+    }
+
     if (result.hasFailures() && detailedFailures) {
       final String failureHeader = formatter.formatFailureHeader();
       System.out.println(failureHeader);
@@ -478,24 +1804,4 @@ public class SophoDromosTestMojo extends AbstractMojo {
       return errorStream;
     }
   }
-
-  private static class ThreadManager {
-    private final Thread outputThread;
-    private final Thread errorThread;
-
-    protected ThreadManager(final Thread outputThread, final Thread errorThread) {
-      this.outputThread = outputThread;
-      this.errorThread = errorThread;
-    }
-
-    protected void startThreads() {
-      outputThread.start();
-      errorThread.start();
-    }
-
-    protected void waitForCompletion() throws InterruptedException {
-      outputThread.join(5000);
-      errorThread.join(5000);
-    }
-  }
 }
@@ -0,0 +1,73 @@
+package io.github.clojang.sophodromos;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The capture of a child invocation's two streams, each completing at the stream's end. Both are
+ * read on threads of their own while the invocation runs, so that neither pipe fills up and blocks
+ * the child while the other one is being read.
+ */
+final class StreamDrain {
+  private final InputStream output;
+  private final InputStream errors;
+  private final CompletableFuture<Void> outputDrained;
+  private final CompletableFuture<Void> errorsDrained;
+
+  /**
+   * Constructs a new StreamDrain.
+   *
+   * @param output the standard output of the child invocation
+   * @param errors the standard error of the child invocation
+   * @param outputDrained completed once the standard output has been read to its end
+   * @param errorsDrained completed once the standard error has been read to its end
+   */
+  protected StreamDrain(
+      final InputStream output,
+      final InputStream errors,
+      final CompletableFuture<Void> outputDrained,
+      final CompletableFuture<Void> errorsDrained) {
+    this.output = output;
+    this.errors = errors;
+    this.outputDrained = outputDrained;
+    this.errorsDrained = errorsDrained;
+  }
+
+  /**
+   * Waits for both streams to end once the child invocation has exited. They normally end right
+   * after it; a run in the warm JVM pool relays its output from a socket, which may stall.
+   *
+   * @param timeoutMillis how long to wait for the remaining output
+   * @return true if the output was read to its end, false if it was cut off
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @SuppressWarnings("PMD.OnlyOneReturn") // Either drained or given up on
+  protected boolean awaitEnd(final long timeoutMillis) throws InterruptedException {
+    try {
+      CompletableFuture.allOf(outputDrained, errorsDrained)
+          .get(timeoutMillis, TimeUnit.MILLISECONDS);
+      return true;
+    } catch (final ExecutionException e) {
+      // The readers report their own errors and always complete normally
+      return true;
+    } catch (final TimeoutException e) {
+      outputDrained.complete(null);
+      errorsDrained.complete(null);
+      closeQuietly(output);
+      closeQuietly(errors);
+      return false;
+    }
+  }
+
+  private static void closeQuietly(final InputStream stream) {
+    try {
+      stream.close();
+    } catch (final IOException e) {
+      // Nothing more to read either way
+    }
+  }
+}
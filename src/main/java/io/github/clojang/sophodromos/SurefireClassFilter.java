@@ -0,0 +1,180 @@
+package io.github.clojang.sophodromos;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Matches test class names against the includes and excludes of the module's Surefire
+ * configuration. An explicit {@code -Dtest} list replaces those patterns in the child invocation,
+ * so the planner only lists classes Surefire would have run on its own.
+ *
+ * <p>Patterns are Ant-style paths such as {@code **&#47;*Test.java}, class names such as {@code
+ * com.example.*IT}, or {@code %regex[...]} expressions over the class file path, as in Surefire.
+ */
+final class SurefireClassFilter {
+
+  private static final String SUREFIRE_PLUGIN = "org.apache.maven.plugins:maven-surefire-plugin";
+  private static final List<String> DEFAULT_INCLUDES =
+      List.of("**/Test*.java", "**/*Test.java", "**/*Tests.java", "**/*TestCase.java");
+  private static final List<String> DEFAULT_EXCLUDES = List.of("**/*$*");
+  private static final String REGEX_PREFIX = "%regex[";
+
+  private final List<Pattern> includes;
+  private final List<Pattern> excludes;
+
+  /**
+   * Constructs a new SurefireClassFilter.
+   *
+   * @param includes the include patterns, empty for Surefire's defaults
+   * @param excludes the exclude patterns, empty for Surefire's defaults
+   */
+  protected SurefireClassFilter(final List<String> includes, final List<String> excludes) {
+    this.includes = compile(includes.isEmpty() ? DEFAULT_INCLUDES : includes);
+    this.excludes = compile(excludes.isEmpty() ? DEFAULT_EXCLUDES : excludes);
+  }
+
+  /**
+   * Reads the includes and excludes of the project's Surefire configuration, including the {@code
+   * includesFile} and {@code excludesFile}.
+   *
+   * @param project the Maven project
+   * @param log Maven logger
+   * @return the filter of the project's test classes
+   */
+  protected static SurefireClassFilter of(final MavenProject project, final Log log) {
+    final List<String> includes = new ArrayList<>();
+    final List<String> excludes = new ArrayList<>();
+    final Plugin surefire = project.getPlugin(SUREFIRE_PLUGIN);
+    if (surefire != null && surefire.getConfiguration() instanceof Xpp3Dom) {
+      final Xpp3Dom configuration = (Xpp3Dom) surefire.getConfiguration();
+      readPatterns(configuration.getChild("includes"), includes);
+      readPatterns(configuration.getChild("excludes"), excludes);
+      readPatternFile(project, configuration.getChild("includesFile"), includes, log);
+      readPatternFile(project, configuration.getChild("excludesFile"), excludes, log);
+    }
+    return new SurefireClassFilter(includes, excludes);
+  }
+
+  /**
+   * Checks whether Surefire would run a class on its own.
+   *
+   * @param className the fully qualified class name
+   * @return true if an include and no exclude matches the class
+   */
+  protected boolean matches(final String className) {
+    final String path = className.replace('.', '/') + ".class";
+    return anyMatches(includes, path) && !anyMatches(excludes, path);
+  }
+
+  private static boolean anyMatches(final List<Pattern> patterns, final String path) {
+    boolean matches = false;
+    for (final Pattern pattern : patterns) {
+      if (pattern.matcher(path).matches()) {
+        matches = true;
+        break;
+      }
+    }
+    return matches;
+  }
+
+  private static void readPatterns(final Xpp3Dom element, final List<String> patterns) {
+    if (element != null) {
+      for (final Xpp3Dom child : element.getChildren()) {
+        addPatterns(child.getValue(), patterns);
+      }
+    }
+  }
+
+  private static void readPatternFile(
+      final MavenProject project,
+      final Xpp3Dom element,
+      final List<String> patterns,
+      final Log log) {
+    if (element != null && element.getValue() != null && !element.getValue().isBlank()) {
+      final Path file = project.getBasedir().toPath().resolve(element.getValue().trim());
+      try {
+        for (final String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+          if (!line.trim().startsWith("#")) {
+            addPatterns(line, patterns);
+          }
+        }
+      } catch (final IOException e) {
+        if (log.isWarnEnabled()) {
+          log.warn("Could not read Surefire pattern file " + file + ": " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  private static void addPatterns(final String value, final List<String> patterns) {
+    if (value != null) {
+      for (final String pattern : value.split(",")) {
+        if (!pattern.isBlank()) {
+          patterns.add(pattern.trim());
+        }
+      }
+    }
+  }
+
+  private static List<Pattern> compile(final List<String> patterns) {
+    final List<Pattern> compiled = new ArrayList<>();
+    for (final String pattern : patterns) {
+      compiled.add(compile(pattern));
+    }
+    return compiled;
+  }
+
+  @SuppressWarnings("PMD.OnlyOneReturn") // Regular expressions are taken as they are
+  private static Pattern compile(final String pattern) {
+    if (pattern.startsWith(REGEX_PREFIX) && pattern.endsWith("]")) {
+      return Pattern.compile(pattern.substring(REGEX_PREFIX.length(), pattern.length() - 1));
+    }
+    // A method filter such as Foo#bar selects the whole class here
+    String path = pattern.contains("#") ? pattern.substring(0, pattern.indexOf('#')) : pattern;
+    path = path.replace('\\', '/');
+    final String lower = path.toLowerCase(Locale.ROOT);
+    if (lower.endsWith(".java") || lower.endsWith(".class")) {
+      path = path.substring(0, path.lastIndexOf('.'));
+    }
+    if (!path.contains("/")) {
+      path = "**/" + path.replace('.', '/');
+    }
+    return Pattern.compile(toRegex(path) + "\\.class");
+  }
+
+  /** Translates an Ant-style path pattern into a regular expression. */
+  private static String toRegex(final String path) {
+    final StringBuilder regex = new StringBuilder();
+    int index = 0;
+    while (index < path.length()) {
+      final char c = path.charAt(index);
+      if (path.startsWith("**/", index)) {
+        regex.append("(?:.*/)?");
+        index += 3;
+      } else if (path.startsWith("**", index)) {
+        regex.append(".*");
+        index += 2;
+      } else {
+        if (c == '*') {
+          regex.append("[^/]*");
+        } else if (c == '?') {
+          regex.append("[^/]");
+        } else {
+          regex.append(Pattern.quote(String.valueOf(c)));
+        }
+        index++;
+      }
+    }
+    return regex.toString();
+  }
+}
@@ -1,5 +1,7 @@
 package io.github.clojang.sophodromos;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.maven.project.MavenProject;
 
 /** Intercepts and processes test execution output using GradlDromus formatting. */
@@ -9,6 +11,10 @@ public class TestExecutionInterceptor {
   private final TestOutputFormatter formatter;
   private final OutputPatternMatcher patternMatcher;
   private final OutputLineProcessor lineProcessor;
+  private volatile HangWatchdog hangWatchdog;
+  private volatile ReactorProgress reactorProgress;
+  private ResultCoalescer resultCoalescer;
+  private InvocationAggregator invocationAggregator;
 
   /**
    * Constructs a new TestExecutionInterceptor.
@@ -22,6 +28,97 @@ public class TestExecutionInterceptor {
     this.lineProcessor = new OutputLineProcessor(project, formatter);
   }
 
+  /**
+   * Sets the watchdog to be told about the test events of the running child invocation.
+   *
+   * @param hangWatchdog the watchdog, or null when no invocation is watched
+   */
+  public void setHangWatchdog(final HangWatchdog hangWatchdog) {
+    this.hangWatchdog = hangWatchdog;
+  }
+
+  /**
+   * Sets the status line of the build to be told about each test class that completes.
+   *
+   * @param reactorProgress the status line of the module whose tests run, or null for none
+   */
+  public void setReactorProgress(final ReactorProgress reactorProgress) {
+    this.reactorProgress = reactorProgress;
+  }
+
+  /**
+   * Sets the user-defined rules that include, exclude or highlight output lines.
+   *
+   * @param filterRules the rules, or null for the built-in filtering only
+   */
+  public void setOutputFilterRules(final OutputFilterRules filterRules) {
+    lineProcessor.setFilterRules(filterRules);
+  }
+
+  /**
+   * Coalesces passing test results into one line per test class while they arrive faster than the
+   * threshold.
+   *
+   * @param threshold the passing results per second above which they are coalesced, 0 for never
+   */
+  public void setCoalesceThreshold(final long threshold) {
+    this.resultCoalescer = threshold > 0 ? new ResultCoalescer(formatter, threshold) : null;
+  }
+
+  /**
+   * Sets whether the invocations of parameterized and repeated test methods are shown as one row
+   * per method instead of one line each.
+   *
+   * @param aggregate true to aggregate the invocations
+   */
+  public void setAggregateInvocations(final boolean aggregate) {
+    this.invocationAggregator = aggregate ? new InvocationAggregator(formatter) : null;
+  }
+
+  /**
+   * Creates a stage collapsing the repeats of intercepted lines, one per output stream.
+   *
+   * @param window the number of recent distinct lines repeats are looked for in
+   * @return the new deduplicator
+   */
+  protected LineDeduplicator newLineDeduplicator(final int window) {
+    return new LineDeduplicator(formatter, window);
+  }
+
+  /**
+   * Takes the aggregate lines of coalesced passing results and invocations, which are shown before
+   * the line just intercepted.
+   *
+   * @return the aggregate lines, empty unless results are coalesced or aggregated
+   */
+  public List<String> takeCoalescedLines() {
+    final List<String> lines = new ArrayList<>();
+    // Each line releases either a method's row or coalesced passes, never both
+    if (invocationAggregator != null) {
+      lines.addAll(invocationAggregator.takeReleasedLines());
+    }
+    if (resultCoalescer != null) {
+      lines.addAll(resultCoalescer.takeReleasedLines());
+    }
+    return lines;
+  }
+
+  /**
+   * Releases and takes the aggregate lines of all coalesced passing results and invocations, e.g.
+   * once the output has ended.
+   *
+   * @return the aggregate lines, empty unless results are coalesced or aggregated
+   */
+  public List<String> flushCoalescedLines() {
+    if (invocationAggregator != null) {
+      invocationAggregator.flush();
+    }
+    if (resultCoalescer != null) {
+      resultCoalescer.flush();
+    }
+    return takeCoalescedLines();
+  }
+
   /**
    * Intercepts and processes test output lines.
    *
@@ -61,11 +158,87 @@ public class TestExecutionInterceptor {
       if (formattedLine == null) {
         formattedLine = lineProcessor.preprocessOutputLine(line);
       }
+      // Class results are parsed from the sorted lines, released as soon as the class completes
+      final ReactorProgress progress = reactorProgress;
+      if (progress != null && executionResult != null) {
+        reportClassResult(line, executionResult, progress);
+      }
+      final boolean aggregated = invocationAggregator != null && aggregate(line);
+      if (aggregated || resultCoalescer != null && coalesce(line)) {
+        formattedLine = null;
+      }
     }
 
     return formattedLine;
   }
 
+  /**
+   * Tells the hang watchdog about the test event a line reports, as soon as the line is read. The
+   * lines of concurrently running test classes are sorted by class before they are intercepted,
+   * which holds back a class's start until it completes, so the watchdog has to see them before.
+   *
+   * @param line the output line as read from the child invocation
+   */
+  public void observeOutputLine(final String line) {
+    final HangWatchdog watchdog = hangWatchdog;
+    if (watchdog != null && line != null && !line.isBlank()) {
+      reportTestEvent(line, watchdog);
+    }
+  }
+
+  private void reportTestEvent(final String line, final HangWatchdog watchdog) {
+    final String startedClass = patternMatcher.findStartedClass(line);
+    final String completedClass =
+        startedClass == null ? patternMatcher.findCompletedClass(line) : null;
+    if (startedClass != null) {
+      watchdog.testClassStarted(startedClass);
+    } else if (completedClass != null) {
+      watchdog.testClassCompleted(completedClass);
+    } else if (patternMatcher.isTestEvent(line)) {
+      watchdog.testEvent();
+    }
+  }
+
+  private boolean aggregate(final String line) {
+    final OutputPatternMatcher.TestInvocation invocation = patternMatcher.findTestInvocation(line);
+    final boolean aggregated;
+    if (invocation == null) {
+      if (patternMatcher.isTestEvent(line)) {
+        invocationAggregator.flush();
+      }
+      aggregated = false;
+    } else {
+      // The invocations follow the passes coalesced before them
+      if (resultCoalescer != null) {
+        resultCoalescer.flush();
+      }
+      aggregated = invocationAggregator.accept(invocation);
+    }
+    return aggregated;
+  }
+
+  private boolean coalesce(final String line) {
+    final OutputPatternMatcher.PassedTest passedTest = patternMatcher.findPassedTest(line);
+    if (passedTest == null && patternMatcher.isTestEvent(line)) {
+      // Failures and class results follow the passes counted before them
+      resultCoalescer.flush();
+    }
+    return passedTest != null
+        && resultCoalescer.coalesce(passedTest.className, passedTest.durationMillis);
+  }
+
+  private void reportClassResult(
+      final String line,
+      final TestExecutionResult executionResult,
+      final ReactorProgress progress) {
+    final String completedClass = patternMatcher.findCompletedClass(line);
+    final TestExecutionResult.TestClassResult classResult =
+        completedClass == null ? null : executionResult.findClassResult(completedClass);
+    if (classResult != null) {
+      progress.testClassCompleted(classResult);
+    }
+  }
+
   /**
    * Intercepts and processes error output lines.
    *
@@ -78,7 +251,7 @@ public class TestExecutionInterceptor {
     if (line == null || line.isBlank()) {
       result = line;
     } else {
-      result = formatter.formatErrorLine(line);
+      result = lineProcessor.preprocessErrorLine(line);
     }
 
     return result;
@@ -1,7 +1,9 @@
 package io.github.clojang.sophodromos;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /** Tracks the results of test execution including counts, failures, and timing. */
 @SuppressWarnings({
@@ -21,6 +23,92 @@ public class TestExecutionResult {
   private final List<String> failures = new ArrayList<>();
   private final List<String> outputLines = new ArrayList<>();
   private final List<String> errorLines = new ArrayList<>();
+  private final Map<String, TestClassResult> classResults = new LinkedHashMap<>();
+  private int classFailureCount;
+  private final List<String> upToDateClasses = new ArrayList<>();
+  private long upToDateTests;
+  private boolean replayedFromCache;
+  private String startupLauncher;
+  private long startupSavedMillis;
+  private long sharedArchiveSavedMillis;
+  private String jvmProfile;
+  private String jvmProfileOptions;
+  private long peakForkRssBytes;
+  private long peakTreeRssBytes;
+  private long treeCpuMillis;
+  private final List<String> deferredClasses = new ArrayList<>();
+  private long deferredTimeMillis;
+  private String stopReason;
+  private boolean outputTruncated;
+  private final List<String> hungTests = new ArrayList<>();
+
+  /** Outcome of a single test class as reported by Surefire. */
+  public static class TestClassResult {
+    private final String className;
+    private final int testsRun;
+    private final int failures;
+    private final int errors;
+    private final int skipped;
+    private final long executionTime;
+
+    /**
+     * Constructs a new TestClassResult.
+     *
+     * @param className fully qualified test class name
+     * @param testsRun tests run in the class
+     * @param failures number of failures
+     * @param errors number of errors
+     * @param skipped number of skipped tests
+     * @param executionTime class execution time in milliseconds
+     */
+    public TestClassResult(
+        final String className,
+        final int testsRun,
+        final int failures,
+        final int errors,
+        final int skipped,
+        final long executionTime) {
+      this.className = className;
+      this.testsRun = testsRun;
+      this.failures = failures;
+      this.errors = errors;
+      this.skipped = skipped;
+      this.executionTime = executionTime;
+    }
+
+    public String getClassName() {
+      return className;
+    }
+
+    public int getTestsRun() {
+      return testsRun;
+    }
+
+    public int getFailures() {
+      return failures;
+    }
+
+    public int getErrors() {
+      return errors;
+    }
+
+    public int getSkipped() {
+      return skipped;
+    }
+
+    public long getExecutionTime() {
+      return executionTime;
+    }
+
+    /**
+     * Checks if the class had any failures or errors.
+     *
+     * @return true if the class failed
+     */
+    public boolean hasFailures() {
+      return failures > 0 || errors > 0;
+    }
+  }
 
   /** Default constructor. */
   public TestExecutionResult() {
@@ -256,4 +344,335 @@ public class TestExecutionResult {
   public List<String> getErrorLines() {
     return new ArrayList<>(errorLines);
   }
+
+  /**
+   * Records the outcome of a single test class.
+   *
+   * @param classResult the class outcome
+   */
+  public void recordClassResult(final TestClassResult classResult) {
+    if (classResult != null) {
+      final TestClassResult previous = classResults.put(classResult.getClassName(), classResult);
+      classFailureCount += classResult.getFailures() + classResult.getErrors();
+      if (previous != null) {
+        classFailureCount -= previous.getFailures() + previous.getErrors();
+      }
+    }
+  }
+
+  /**
+   * Gets the failed and erroneous tests of the recorded class outcomes. Unlike the totals, which
+   * Surefire reports at the end, these are known while the tests are still running.
+   *
+   * @return the failed tests of the completed classes
+   */
+  public int getClassFailureCount() {
+    return classFailureCount;
+  }
+
+  /**
+   * Finds the recorded outcome of a test class.
+   *
+   * @param className the test class name
+   * @return the class outcome, or null if the class has not completed
+   */
+  public TestClassResult findClassResult(final String className) {
+    return classResults.get(className);
+  }
+
+  /**
+   * Gets the recorded per-class outcomes, in the order the classes completed.
+   *
+   * @return class outcomes
+   */
+  public List<TestClassResult> getClassResults() {
+    return new ArrayList<>(classResults.values());
+  }
+
+  /**
+   * Records a test class that was not run because it is up-to-date.
+   *
+   * @param className the test class name
+   * @param testCount the number of tests the class ran at its last run
+   */
+  public void addUpToDateClass(final String className, final long testCount) {
+    upToDateClasses.add(className);
+    upToDateTests += testCount;
+  }
+
+  /**
+   * Gets the test classes that were not run because they are up-to-date.
+   *
+   * @return up-to-date test class names
+   */
+  public List<String> getUpToDateClasses() {
+    return new ArrayList<>(upToDateClasses);
+  }
+
+  /**
+   * Gets the number of tests in up-to-date classes, as recorded at their last run.
+   *
+   * @return up-to-date test count
+   */
+  public long getUpToDateTests() {
+    return upToDateTests;
+  }
+
+  /**
+   * Records a test class that was not run because it did not fit the time budget.
+   *
+   * @param className the test class name
+   * @param estimatedMillis the estimated duration of the class
+   */
+  public void addDeferredClass(final String className, final long estimatedMillis) {
+    deferredClasses.add(className);
+    deferredTimeMillis += estimatedMillis;
+  }
+
+  /**
+   * Gets the test classes that were not run because they did not fit the time budget.
+   *
+   * @return deferred test class names
+   */
+  public List<String> getDeferredClasses() {
+    return new ArrayList<>(deferredClasses);
+  }
+
+  /**
+   * Gets the estimated total duration of the deferred test classes.
+   *
+   * @return estimated deferred time in milliseconds
+   */
+  public long getDeferredTimeMillis() {
+    return deferredTimeMillis;
+  }
+
+  /**
+   * Checks whether this result was replayed from the result cache instead of being executed.
+   *
+   * @return true if the result came from the cache
+   */
+  public boolean isReplayedFromCache() {
+    return replayedFromCache;
+  }
+
+  /**
+   * Marks whether this result was replayed from the result cache.
+   *
+   * @param replayedFromCache true if the result came from the cache
+   */
+  public void setReplayedFromCache(final boolean replayedFromCache) {
+    this.replayedFromCache = replayedFromCache;
+  }
+
+  /**
+   * Records how much startup time the launcher saved compared with plain Maven.
+   *
+   * @param launcher the launcher that ran the tests, e.g. mvnd
+   * @param savedMillis the saved time in milliseconds, negative if the launcher was slower
+   */
+  public void setStartupSavings(final String launcher, final long savedMillis) {
+    this.startupLauncher = launcher;
+    this.startupSavedMillis = savedMillis;
+  }
+
+  /**
+   * Gets the launcher whose startup savings were recorded.
+   *
+   * @return the launcher name, or null if no savings were recorded
+   */
+  public String getStartupLauncher() {
+    return startupLauncher;
+  }
+
+  /**
+   * Gets the startup time saved compared with plain Maven.
+   *
+   * @return the saved time in milliseconds, negative if the launcher was slower
+   */
+  public long getStartupSavedMillis() {
+    return startupSavedMillis;
+  }
+
+  /**
+   * Records how much time class data sharing archives saved the warm JVMs of this run.
+   *
+   * @param savedMillis the saved time in milliseconds, negative if the archived start was slower
+   */
+  public void setSharedArchiveSavedMillis(final long savedMillis) {
+    this.sharedArchiveSavedMillis = savedMillis;
+  }
+
+  /**
+   * Gets the time class data sharing archives saved the warm JVMs of this run.
+   *
+   * @return the saved time in milliseconds, 0 if no JVM started from an archive
+   */
+  public long getSharedArchiveSavedMillis() {
+    return sharedArchiveSavedMillis;
+  }
+
+  /**
+   * Records the JVM profile applied to the forked test JVM.
+   *
+   * @param profile the profile name, e.g. short
+   * @param options the options the profile added, separated by spaces
+   */
+  public void setJvmProfile(final String profile, final String options) {
+    this.jvmProfile = profile;
+    this.jvmProfileOptions = options;
+  }
+
+  /**
+   * Gets the JVM profile applied to the forked test JVM.
+   *
+   * @return the profile name, or null if no profile was applied
+   */
+  public String getJvmProfile() {
+    return jvmProfile;
+  }
+
+  /**
+   * Gets the options the JVM profile added to the forked test JVM.
+   *
+   * @return the options separated by spaces, or null if no profile was applied
+   */
+  public String getJvmProfileOptions() {
+    return jvmProfileOptions;
+  }
+
+  /**
+   * Records the resident memory sampled while the tests ran, keeping the highest values seen.
+   *
+   * @param forkBytes the peak RSS of a single forked test JVM
+   * @param treeBytes the peak RSS of the whole child invocation
+   */
+  public void recordPeakRss(final long forkBytes, final long treeBytes) {
+    this.peakForkRssBytes = Math.max(this.peakForkRssBytes, forkBytes);
+    this.peakTreeRssBytes = Math.max(this.peakTreeRssBytes, treeBytes);
+  }
+
+  /**
+   * Gets the peak RSS of a single forked test JVM.
+   *
+   * @return the peak in bytes, 0 if not sampled
+   */
+  public long getPeakForkRssBytes() {
+    return peakForkRssBytes;
+  }
+
+  /**
+   * Gets the peak RSS of a whole child invocation, the child Maven JVM and its forks together.
+   *
+   * @return the peak in bytes, 0 if not sampled
+   */
+  public long getPeakTreeRssBytes() {
+    return peakTreeRssBytes;
+  }
+
+  /**
+   * Adds the CPU time used by the process tree of a child invocation.
+   *
+   * @param cpuMillis the CPU time in milliseconds
+   */
+  public void addTreeCpuMillis(final long cpuMillis) {
+    this.treeCpuMillis += cpuMillis;
+  }
+
+  /**
+   * Gets the CPU time used by the process trees of the child invocations.
+   *
+   * @return the CPU time in milliseconds, 0 if not sampled
+   */
+  public long getTreeCpuMillis() {
+    return treeCpuMillis;
+  }
+
+  /**
+   * Records a test class that stopped making progress.
+   *
+   * @param hungTest the test class and where its thread dumps are
+   */
+  public void addHungTest(final String hungTest) {
+    hungTests.add(hungTest);
+  }
+
+  /**
+   * Gets the test classes that stopped making progress.
+   *
+   * @return the hung tests, with where their thread dumps are
+   */
+  public List<String> getHungTests() {
+    return new ArrayList<>(hungTests);
+  }
+
+  /**
+   * Records that the output of a child invocation was cut off before its end.
+   *
+   * @param outputTruncated true if output was lost
+   */
+  public void setOutputTruncated(final boolean outputTruncated) {
+    this.outputTruncated = outputTruncated;
+  }
+
+  /**
+   * Checks whether the output of a child invocation was cut off before its end, so that the counts
+   * may miss its last test classes.
+   *
+   * @return true if output was lost
+   */
+  public boolean isOutputTruncated() {
+    return outputTruncated;
+  }
+
+  /**
+   * Records that the tests were stopped before all of them ran.
+   *
+   * @param reason why the tests were stopped
+   */
+  public void setStopReason(final String reason) {
+    this.stopReason = reason;
+  }
+
+  /**
+   * Gets why the tests were stopped before all of them ran.
+   *
+   * @return the reason, or null if all tests ran
+   */
+  public String getStopReason() {
+    return stopReason;
+  }
+
+  /**
+   * Adds the counts, timings, messages and class outcomes of another result to this one. Used when
+   * a module's tests are executed by more than one child invocation.
+   *
+   * @param other the result to merge into this one
+   */
+  public void merge(final TestExecutionResult other) {
+    this.totalTests += other.totalTests;
+    this.passedTests += other.passedTests;
+    this.failedTests += other.failedTests;
+    this.errorTests += other.errorTests;
+    this.skippedTests += other.skippedTests;
+    this.executionTime += other.executionTime;
+    this.exitCode = Math.max(this.exitCode, other.exitCode);
+    this.failures.addAll(other.failures);
+    this.outputLines.addAll(other.outputLines);
+    this.errorLines.addAll(other.errorLines);
+    for (final TestClassResult classResult : other.classResults.values()) {
+      recordClassResult(classResult);
+    }
+    this.upToDateClasses.addAll(other.upToDateClasses);
+    this.upToDateTests += other.upToDateTests;
+    this.deferredClasses.addAll(other.deferredClasses);
+    this.deferredTimeMillis += other.deferredTimeMillis;
+    recordPeakRss(other.peakForkRssBytes, other.peakTreeRssBytes);
+    this.treeCpuMillis += other.treeCpuMillis;
+    this.hungTests.addAll(other.hungTests);
+    this.outputTruncated |= other.outputTruncated;
+    if (other.stopReason != null) {
+      this.stopReason = other.stopReason;
+    }
+  }
 }
@@ -0,0 +1,345 @@
+package io.github.clojang.sophodromos;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Persists the results of previous test runs for a single module. The history is stored as JSON in
+ * the module's history directory and is used to plan the order and selection of later runs.
+ */
+@SuppressWarnings({
+  "PMD.LawOfDemeter",
+  "PMD.OnlyOneReturn",
+  "PMD.DataClass",
+  "PMD.GuardLogStatement"
+})
+class TestHistoryStore {
+
+  private static final String HISTORY_FILE = "history.json";
+
+  private final Path historyFile;
+  private final Log log;
+  private final ObjectMapper objectMapper =
+      new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  /** Recorded outcome of the most recent run of a single test class. */
+  public static class TestClassHistory implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private boolean lastFailed;
+    private long lastDurationMillis;
+    private long runCount;
+    private long failureCount;
+    private long lastTestCount;
+    private String classHash;
+    private String greenFingerprint;
+    private String coverage;
+    private String coverageFingerprint;
+
+    public TestClassHistory() {} // For JSON deserialization
+
+    public boolean isLastFailed() {
+      return lastFailed;
+    }
+
+    public void setLastFailed(final boolean lastFailed) {
+      this.lastFailed = lastFailed;
+    }
+
+    public long getLastDurationMillis() {
+      return lastDurationMillis;
+    }
+
+    public void setLastDurationMillis(final long lastDurationMillis) {
+      this.lastDurationMillis = lastDurationMillis;
+    }
+
+    public long getRunCount() {
+      return runCount;
+    }
+
+    public void setRunCount(final long runCount) {
+      this.runCount = runCount;
+    }
+
+    public long getFailureCount() {
+      return failureCount;
+    }
+
+    public void setFailureCount(final long failureCount) {
+      this.failureCount = failureCount;
+    }
+
+    public long getLastTestCount() {
+      return lastTestCount;
+    }
+
+    public void setLastTestCount(final long lastTestCount) {
+      this.lastTestCount = lastTestCount;
+    }
+
+    public String getClassHash() {
+      return classHash;
+    }
+
+    public void setClassHash(final String classHash) {
+      this.classHash = classHash;
+    }
+
+    public String getGreenFingerprint() {
+      return greenFingerprint;
+    }
+
+    public void setGreenFingerprint(final String greenFingerprint) {
+      this.greenFingerprint = greenFingerprint;
+    }
+
+    public String getCoverage() {
+      return coverage;
+    }
+
+    public void setCoverage(final String coverage) {
+      this.coverage = coverage;
+    }
+
+    public String getCoverageFingerprint() {
+      return coverageFingerprint;
+    }
+
+    public void setCoverageFingerprint(final String coverageFingerprint) {
+      this.coverageFingerprint = coverageFingerprint;
+    }
+
+    /**
+     * Records the outcome of a completed run of this test class.
+     *
+     * @param failed whether the class had failures or errors
+     * @param durationMillis the class execution time in milliseconds
+     * @param testCount the number of tests run in the class
+     * @param hash the hash of the class files that were executed
+     */
+    public void recordRun(
+        final boolean failed, final long durationMillis, final long testCount, final String hash) {
+      this.lastFailed = failed;
+      this.lastDurationMillis = durationMillis;
+      this.lastTestCount = testCount;
+      this.runCount++;
+      if (failed) {
+        this.failureCount++;
+      }
+      this.classHash = hash;
+    }
+  }
+
+  /** Cached content hash of a dependency file, reused while its size and timestamp match. */
+  public static class FileHash implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long size;
+    private long lastModified;
+    private String hash;
+
+    public FileHash() {} // For JSON deserialization
+
+    public FileHash(final long size, final long lastModified, final String hash) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public void setSize(final long size) {
+      this.size = size;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public void setLastModified(final long lastModified) {
+      this.lastModified = lastModified;
+    }
+
+    public String getHash() {
+      return hash;
+    }
+
+    public void setHash(final String hash) {
+      this.hash = hash;
+    }
+  }
+
+  /** Recorded history for all test classes of a module. */
+  public static class ModuleHistory implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Map<String, TestClassHistory> testClasses = new TreeMap<>();
+    private Map<String, FileHash> dependencyHashes = new TreeMap<>();
+    private List<String> coverageClassIndex = new ArrayList<>();
+    private long invocationOverheadMillis;
+    private Map<String, Long> launcherOverheadMillis = new TreeMap<>();
+    private long peakRssBytes;
+
+    public Map<String, TestClassHistory> getTestClasses() {
+      return testClasses == null ? new TreeMap<>() : new TreeMap<>(testClasses);
+    }
+
+    public void setTestClasses(final Map<String, TestClassHistory> testClasses) {
+      this.testClasses = testClasses == null ? new TreeMap<>() : new TreeMap<>(testClasses);
+    }
+
+    public Map<String, FileHash> getDependencyHashes() {
+      return dependencyHashes == null ? new TreeMap<>() : new TreeMap<>(dependencyHashes);
+    }
+
+    public void setDependencyHashes(final Map<String, FileHash> dependencyHashes) {
+      this.dependencyHashes =
+          dependencyHashes == null ? new TreeMap<>() : new TreeMap<>(dependencyHashes);
+    }
+
+    public List<String> getCoverageClassIndex() {
+      return coverageClassIndex == null ? new ArrayList<>() : new ArrayList<>(coverageClassIndex);
+    }
+
+    public void setCoverageClassIndex(final List<String> coverageClassIndex) {
+      this.coverageClassIndex =
+          coverageClassIndex == null ? new ArrayList<>() : new ArrayList<>(coverageClassIndex);
+    }
+
+    public long getInvocationOverheadMillis() {
+      return invocationOverheadMillis;
+    }
+
+    public void setInvocationOverheadMillis(final long invocationOverheadMillis) {
+      this.invocationOverheadMillis = invocationOverheadMillis;
+    }
+
+    public Map<String, Long> getLauncherOverheadMillis() {
+      return launcherOverheadMillis == null
+          ? new TreeMap<>()
+          : new TreeMap<>(launcherOverheadMillis);
+    }
+
+    public void setLauncherOverheadMillis(final Map<String, Long> launcherOverheadMillis) {
+      this.launcherOverheadMillis =
+          launcherOverheadMillis == null ? new TreeMap<>() : new TreeMap<>(launcherOverheadMillis);
+    }
+
+    public long getPeakRssBytes() {
+      return peakRssBytes;
+    }
+
+    public void setPeakRssBytes(final long peakRssBytes) {
+      this.peakRssBytes = peakRssBytes;
+    }
+
+    /**
+     * Gets the history of a test class, creating an empty record when none exists.
+     *
+     * @param className the fully qualified test class name
+     * @return the history record for the class
+     */
+    public TestClassHistory getOrCreateTestClass(final String className) {
+      if (testClasses == null) {
+        testClasses = new TreeMap<>();
+      }
+      return testClasses.computeIfAbsent(className, name -> new TestClassHistory());
+    }
+
+    /**
+     * Gets the history of a test class.
+     *
+     * @param className the fully qualified test class name
+     * @return the history record, or null if the class has never run
+     */
+    public TestClassHistory findTestClass(final String className) {
+      return testClasses == null ? null : testClasses.get(className);
+    }
+
+    /**
+     * Removes test classes that no longer exist in the module.
+     *
+     * @param existingClasses the test classes currently present
+     */
+    public void retainTestClasses(final Set<String> existingClasses) {
+      if (testClasses != null) {
+        testClasses.keySet().retainAll(existingClasses);
+      }
+    }
+  }
+
+  /**
+   * Creates a new history store.
+   *
+   * @param historyDirectory directory in which the history file is kept
+   * @param log Maven logger
+   */
+  protected TestHistoryStore(final Path historyDirectory, final Log log) {
+    this.historyFile = historyDirectory.resolve(HISTORY_FILE);
+    this.log = log;
+  }
+
+  /**
+   * Loads the module history, returning an empty history when none has been recorded yet.
+   *
+   * @return the recorded module history
+   */
+  protected ModuleHistory load() {
+    if (!Files.isRegularFile(historyFile)) {
+      return new ModuleHistory();
+    }
+    try {
+      return objectMapper.readValue(historyFile.toFile(), ModuleHistory.class);
+    } catch (final IOException e) {
+      if (log.isWarnEnabled()) {
+        log.warn("Could not read test history, starting fresh: " + e.getMessage());
+      }
+      return new ModuleHistory();
+    }
+  }
+
+  /**
+   * Saves the module history, replacing the previous file atomically where supported.
+   *
+   * @param history the module history to persist
+   */
+  protected void save(final ModuleHistory history) {
+    try {
+      Files.createDirectories(historyFile.getParent());
+      final Path tempFile = Files.createTempFile(historyFile.getParent(), HISTORY_FILE, ".tmp");
+      objectMapper.writeValue(tempFile.toFile(), history);
+      moveIntoPlace(tempFile);
+    } catch (final IOException e) {
+      if (log.isWarnEnabled()) {
+        log.warn("Could not write test history: " + e.getMessage());
+      }
+    }
+  }
+
+  private void moveIntoPlace(final Path tempFile) throws IOException {
+    try {
+      Files.move(
+          tempFile,
+          historyFile,
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (final AtomicMoveNotSupportedException e) {
+      Files.move(tempFile, historyFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
@@ -0,0 +1,239 @@
+package io.github.clojang.sophodromos;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Computes a dependency fingerprint for each test class. The fingerprint covers the hashes of every
+ * module class the test reaches through the bytecode dependency graph, plus the module's resources
+ * and test classpath. A test whose fingerprint matches the one recorded at its last green run
+ * cannot have been affected by any change and is up-to-date.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn"})
+class TestImpactAnalyzer {
+
+  private static final String ALGORITHM = "SHA-256";
+
+  private final MavenProject project;
+  private final ClassFileHasher hasher;
+
+  /**
+   * Constructs a new TestImpactAnalyzer.
+   *
+   * @param project the Maven project
+   * @param hasher the class file hasher
+   */
+  protected TestImpactAnalyzer(final MavenProject project, final ClassFileHasher hasher) {
+    this.project = project;
+    this.hasher = hasher;
+  }
+
+  /**
+   * Computes the dependency fingerprint of each given test class.
+   *
+   * @param testClasses the test classes to fingerprint
+   * @param testClassHashes hashes of the module's test classes
+   * @param history the module history, used to cache dependency file hashes
+   * @return map of test class name to fingerprint
+   * @throws IOException if class files or dependencies cannot be read
+   */
+  protected Map<String, String> fingerprintTestClasses(
+      final Collection<String> testClasses,
+      final Map<String, String> testClassHashes,
+      final TestHistoryStore.ModuleHistory history)
+      throws IOException {
+    final Path mainDirectory = Paths.get(project.getBuild().getOutputDirectory());
+    final Path testDirectory = Paths.get(project.getBuild().getTestOutputDirectory());
+
+    final Map<String, String> classHashes = new HashMap<>(hasher.hashClassDirectory(mainDirectory));
+    classHashes.putAll(testClassHashes);
+
+    final ClassDependencyGraph graph = new ClassDependencyGraph();
+    graph.addClassDirectory(mainDirectory);
+    graph.addClassDirectory(testDirectory);
+
+    final String externalFingerprint =
+        fingerprintExternalInputs(mainDirectory, testDirectory, history);
+
+    final Map<String, String> fingerprints = new TreeMap<>();
+    for (final String testClass : testClasses) {
+      fingerprints.put(
+          testClass,
+          fingerprint(externalFingerprint, graph.transitiveDependencies(testClass), classHashes));
+    }
+    return fingerprints;
+  }
+
+  /**
+   * Computes the fingerprint of each test class over the classes it was recorded to load at
+   * runtime, instead of the classes it reaches statically.
+   *
+   * @param coverage map of test class name to the module classes it loaded
+   * @param testClassHashes hashes of the module's test classes
+   * @param history the module history, used to cache dependency file hashes
+   * @return map of test class name to fingerprint
+   * @throws IOException if class files or dependencies cannot be read
+   */
+  protected Map<String, String> fingerprintCoveredClasses(
+      final Map<String, Set<String>> coverage,
+      final Map<String, String> testClassHashes,
+      final TestHistoryStore.ModuleHistory history)
+      throws IOException {
+    final Path mainDirectory = Paths.get(project.getBuild().getOutputDirectory());
+    final Path testDirectory = Paths.get(project.getBuild().getTestOutputDirectory());
+
+    final Map<String, String> classHashes = new HashMap<>(hasher.hashClassDirectory(mainDirectory));
+    classHashes.putAll(testClassHashes);
+
+    final String externalFingerprint =
+        fingerprintExternalInputs(mainDirectory, testDirectory, history);
+
+    final Map<String, String> fingerprints = new TreeMap<>();
+    for (final Map.Entry<String, Set<String>> entry : coverage.entrySet()) {
+      final Set<String> covered = new TreeSet<>(entry.getValue());
+      covered.add(entry.getKey());
+      fingerprints.put(entry.getKey(), fingerprint(externalFingerprint, covered, classHashes));
+    }
+    return fingerprints;
+  }
+
+  /**
+   * Computes a fingerprint of everything the module's test run depends on: its main and test
+   * classes, their resources and the test classpath.
+   *
+   * @param testClassHashes hashes of the module's test classes
+   * @param history the module history, used to cache dependency file hashes
+   * @return the module fingerprint
+   * @throws IOException if class files or dependencies cannot be read
+   */
+  protected String fingerprintModule(
+      final Map<String, String> testClassHashes, final TestHistoryStore.ModuleHistory history)
+      throws IOException {
+    final Path mainDirectory = Paths.get(project.getBuild().getOutputDirectory());
+    final Path testDirectory = Paths.get(project.getBuild().getTestOutputDirectory());
+
+    final Map<String, String> classHashes = new TreeMap<>(hasher.hashClassDirectory(mainDirectory));
+    classHashes.putAll(testClassHashes);
+
+    final String externalFingerprint =
+        fingerprintExternalInputs(mainDirectory, testDirectory, history);
+    return fingerprint(externalFingerprint, classHashes.keySet(), classHashes);
+  }
+
+  /** Digests the external fingerprint and the current hash of each class, in iteration order. */
+  private static String fingerprint(
+      final String externalFingerprint,
+      final Collection<String> classes,
+      final Map<String, String> classHashes) {
+    final MessageDigest digest = newDigest();
+    digest.update(externalFingerprint.getBytes(StandardCharsets.UTF_8));
+    for (final String className : classes) {
+      // A deleted class hashes as null, which differs from any recorded hash
+      final String entry = className + '=' + classHashes.get(className) + '\n';
+      digest.update(entry.getBytes(StandardCharsets.UTF_8));
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * Fingerprints inputs that are not tracked per class: resources in the module's output
+   * directories and every other element of the test classpath. Elements are named by their
+   * artifact, or by their path relative to the module, so that the fingerprint is the same on
+   * machines with other workspace or home directories.
+   */
+  private String fingerprintExternalInputs(
+      final Path mainDirectory,
+      final Path testDirectory,
+      final TestHistoryStore.ModuleHistory history)
+      throws IOException {
+    final MessageDigest digest = newDigest();
+    digest.update(hasher.hashResources(mainDirectory).getBytes(StandardCharsets.UTF_8));
+    digest.update(hasher.hashResources(testDirectory).getBytes(StandardCharsets.UTF_8));
+
+    final Map<String, TestHistoryStore.FileHash> cached = history.getDependencyHashes();
+    final Map<String, TestHistoryStore.FileHash> current = new TreeMap<>();
+    final Map<Path, String> artifactIds = new HashMap<>();
+    for (final Artifact artifact : project.getArtifacts()) {
+      if (artifact.getFile() != null) {
+        artifactIds.put(artifact.getFile().toPath().toAbsolutePath(), artifact.getId());
+      }
+    }
+    final Path basedir = project.getBasedir().toPath().toAbsolutePath();
+    for (final String element : getTestClasspathElements()) {
+      final Path path = Paths.get(element);
+      if (path.equals(mainDirectory) || path.equals(testDirectory) || !Files.exists(path)) {
+        continue;
+      }
+      final String hash =
+          Files.isDirectory(path) ? hashDirectory(path) : hashFileCached(path, cached, current);
+      final String name =
+          artifactIds.getOrDefault(
+              path.toAbsolutePath(),
+              basedir.relativize(path.toAbsolutePath()).toString().replace('\\', '/'));
+      digest.update((name + '=' + hash + '\n').getBytes(StandardCharsets.UTF_8));
+    }
+    history.setDependencyHashes(current);
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /** Hashes a classpath directory, such as a sibling reactor module's target/classes. */
+  private String hashDirectory(final Path directory) throws IOException {
+    final StringBuilder content = new StringBuilder(hasher.hashResources(directory));
+    for (final Map.Entry<String, String> entry : hasher.hashClassDirectory(directory).entrySet()) {
+      content.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+    }
+    final MessageDigest digest = newDigest();
+    digest.update(content.toString().getBytes(StandardCharsets.UTF_8));
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private String hashFileCached(
+      final Path file,
+      final Map<String, TestHistoryStore.FileHash> cached,
+      final Map<String, TestHistoryStore.FileHash> current)
+      throws IOException {
+    final String key = file.toString();
+    final long size = Files.size(file);
+    final long lastModified = Files.getLastModifiedTime(file).toMillis();
+    TestHistoryStore.FileHash fileHash = cached.get(key);
+    if (fileHash == null
+        || fileHash.getSize() != size
+        || fileHash.getLastModified() != lastModified) {
+      fileHash = new TestHistoryStore.FileHash(size, lastModified, hasher.hashFile(file));
+    }
+    current.put(key, fileHash);
+    return fileHash.getHash();
+  }
+
+  private List<String> getTestClasspathElements() throws IOException {
+    try {
+      return project.getTestClasspathElements();
+    } catch (final DependencyResolutionRequiredException e) {
+      throw new IOException("Test classpath of " + project.getArtifactId() + " is not resolved", e);
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(ALGORITHM + " is not available", e);
+    }
+  }
+}
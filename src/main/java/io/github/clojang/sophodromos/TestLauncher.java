@@ -0,0 +1,142 @@
+package io.github.clojang.sophodromos;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Maven executable running the child {@code surefire:test} invocations. The Maven Daemon
+ * ({@code mvnd}) keeps a warm JVM with cached plugin realms, which removes most of the startup cost
+ * of the nested build.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn"})
+final class TestLauncher {
+
+  /** Setting that always uses plain Maven. */
+  protected static final String DISABLED = "disabled";
+
+  /** Setting that uses the Maven Daemon when it is installed. */
+  protected static final String AUTO = "auto";
+
+  /** Name of the plain Maven launcher. */
+  protected static final String MAVEN = "mvn";
+
+  /** Name of the Maven Daemon launcher. */
+  protected static final String MAVEN_DAEMON = "mvnd";
+
+  private final String command;
+  private final boolean daemon;
+
+  private TestLauncher(final String command, final boolean daemon) {
+    this.command = command;
+    this.daemon = daemon;
+  }
+
+  /**
+   * Gets the plain Maven launcher.
+   *
+   * @return the launcher running {@code mvn} from the PATH
+   */
+  protected static TestLauncher maven() {
+    return new TestLauncher(MAVEN, false);
+  }
+
+  /**
+   * Resolves the launcher setting: {@code disabled} (or {@code mvn}) for plain Maven, {@code auto}
+   * for the Maven Daemon when it is installed, {@code mvnd} to require it, or the path of an
+   * executable.
+   *
+   * @param setting the configured launcher
+   * @param environment the environment variables, used to search PATH and MVND_HOME
+   * @return the launcher
+   * @throws IllegalArgumentException if the required launcher cannot be found
+   */
+  protected static TestLauncher resolve(
+      final String setting, final Map<String, String> environment) {
+    if (setting == null || setting.isBlank() || DISABLED.equals(setting) || MAVEN.equals(setting)) {
+      return maven();
+    }
+    if (AUTO.equals(setting) || MAVEN_DAEMON.equals(setting)) {
+      final Path mavenDaemon = findMavenDaemon(environment);
+      if (mavenDaemon != null) {
+        return new TestLauncher(mavenDaemon.toString(), true);
+      }
+      if (AUTO.equals(setting)) {
+        return maven();
+      }
+      throw new IllegalArgumentException("mvnd was found neither on the PATH nor in MVND_HOME");
+    }
+
+    final Path executable = Paths.get(setting);
+    if (!Files.isRegularFile(executable) || !Files.isExecutable(executable)) {
+      throw new IllegalArgumentException(setting + " is not an executable file");
+    }
+    return new TestLauncher(
+        executable.toAbsolutePath().toString(),
+        executable.getFileName().toString().startsWith(MAVEN_DAEMON));
+  }
+
+  private static Path findMavenDaemon(final Map<String, String> environment) {
+    final String mavenDaemonHome = environment.get("MVND_HOME");
+    if (mavenDaemonHome != null && !mavenDaemonHome.isBlank()) {
+      final Path candidate = Paths.get(mavenDaemonHome, "bin", MAVEN_DAEMON);
+      if (Files.isExecutable(candidate)) {
+        return candidate;
+      }
+    }
+    final String path = environment.get("PATH");
+    if (path == null) {
+      return null;
+    }
+    for (final String directory : path.split(File.pathSeparator)) {
+      if (!directory.isEmpty()) {
+        final Path candidate = Paths.get(directory, MAVEN_DAEMON);
+        if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+          return candidate;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the executable to start.
+   *
+   * @return the command
+   */
+  protected String getCommand() {
+    return command;
+  }
+
+  /**
+   * Gets the launcher's name for reports and history.
+   *
+   * @return {@code mvnd} for the Maven Daemon, {@code mvn} otherwise
+   */
+  protected String getName() {
+    return daemon ? MAVEN_DAEMON : MAVEN;
+  }
+
+  /**
+   * Checks whether the launcher is the Maven Daemon, which runs the child builds, and so forks
+   * their test JVMs, in a daemon process outside the launched client's process tree.
+   *
+   * @return true for {@code mvnd}
+   */
+  protected boolean isDaemon() {
+    return daemon;
+  }
+
+  /**
+   * Gets the launcher specific arguments of the child invocation.
+   *
+   * @return the arguments, empty for plain Maven
+   */
+  protected List<String> getArguments() {
+    // Stream the build output as it happens and unformatted, like plain Maven, so it can be parsed
+    return daemon ? List.of("-Dmvnd.noBuffering=true", "-Dmvnd.rawStreams=true") : List.of();
+  }
+}
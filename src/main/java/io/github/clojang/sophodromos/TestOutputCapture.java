@@ -4,7 +4,10 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import org.apache.maven.plugin.logging.Log;
 
 /** Captures and processes test output from input and error streams. */
@@ -13,6 +16,11 @@ class TestOutputCapture {
   private final TestExecutionInterceptor interceptor;
   private final boolean showProgress;
   private final Log log;
+  private boolean demultiplexed;
+  private FailureLimit failureLimit;
+  private ReactorProgress reactorProgress;
+  private long failureOutputBytes;
+  private int dedupWindow;
 
   /**
    * Constructs a new TestOutputCapture.
@@ -29,81 +37,252 @@ class TestOutputCapture {
   }
 
   /**
-   * Creates a thread to capture output from the input stream.
+   * Sets whether the test classes of a child invocation may run concurrently, so that their
+   * interleaved output has to be sorted by class before it is processed.
+   *
+   * @param demultiplexed true for several forks or parallel JUnit execution
+   */
+  protected void setDemultiplexed(final boolean demultiplexed) {
+    this.demultiplexed = demultiplexed;
+  }
+
+  /**
+   * Sets the limit of failed tests of the build, which learns of each test class's failures as soon
+   * as the class completes.
+   *
+   * @param failureLimit the limit, or null to not report failures
+   */
+  protected void setFailureLimit(final FailureLimit failureLimit) {
+    this.failureLimit = failureLimit;
+  }
+
+  /**
+   * Sets whether the output of a test class is only kept when the class fails, so that passing
+   * tests do not flood the log.
+   *
+   * @param maxBufferBytes the most bytes of a class's output held in memory before it moves to a
+   *     temporary file, 0 to keep all output
+   */
+  protected void setFailureOutputOnly(final long maxBufferBytes) {
+    this.failureOutputBytes = maxBufferBytes;
+  }
+
+  /**
+   * Sets how many recent distinct lines repeats of a line are collapsed within, so that a line
+   * emitted over and over is shown once with the number of its repeats.
+   *
+   * @param dedupWindow the number of recent distinct lines, 0 to show every line
+   */
+  protected void setDedupWindow(final int dedupWindow) {
+    this.dedupWindow = dedupWindow;
+  }
+
+  /**
+   * Sets the status line of the build, which the printed output has to stay above.
+   *
+   * @param reactorProgress the status line, or null if none is shown
+   */
+  protected void setReactorProgress(final ReactorProgress reactorProgress) {
+    this.reactorProgress = reactorProgress;
+  }
+
+  /**
+   * Starts capturing the output stream on a thread of its own.
    *
    * @param inputStream the input stream to capture
    * @param result the test execution result to populate
-   * @return the capture thread
+   * @return completed once the stream has been read to its end, or given up on by completing it
    */
-  protected Thread createOutputCaptureThread(
+  protected CompletableFuture<Void> captureOutput(
       final InputStream inputStream, final TestExecutionResult result) {
-    return new Thread(() -> processOutputStream(inputStream, result));
+    return capture(inputStream, result, false);
   }
 
   /**
-   * Creates a thread to capture output from the error stream.
+   * Starts capturing the error stream on a thread of its own.
    *
    * @param errorStream the error stream to capture
    * @param result the test execution result to populate
-   * @return the capture thread
+   * @return completed once the stream has been read to its end, or given up on by completing it
    */
-  protected Thread createErrorCaptureThread(
+  protected CompletableFuture<Void> captureErrors(
       final InputStream errorStream, final TestExecutionResult result) {
-    return new Thread(() -> processErrorStream(errorStream, result));
+    return capture(errorStream, result, true);
   }
 
-  private void processOutputStream(
-      final InputStream inputStream, final TestExecutionResult result) {
-    try (BufferedReader reader =
-        new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-      processReaderLines(reader, result, false);
-    } catch (final IOException e) {
-      log.error("Error reading test output", e);
-    }
-  }
-
-  private void processErrorStream(final InputStream errorStream, final TestExecutionResult result) {
-    try (BufferedReader reader =
-        new BufferedReader(new InputStreamReader(errorStream, StandardCharsets.UTF_8))) {
-      processReaderLines(reader, result, true);
-    } catch (final IOException e) {
-      log.error("Error reading test error output", e);
+  private CompletableFuture<Void> capture(
+      final InputStream stream, final TestExecutionResult result, final boolean isError) {
+    final CompletableFuture<Void> drained = new CompletableFuture<>();
+    // The status line is drawn while test output, which keeps it below, is read
+    final ReactorProgress progress = isError ? null : reactorProgress;
+    if (progress != null) {
+      progress.captureStarted();
+      // Also when a stalled stream is given up on
+      drained.thenRun(progress::captureStopped);
     }
+    final Thread thread =
+        new Thread(
+            () -> {
+              try (BufferedReader reader =
+                  new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                processReaderLines(reader, result, isError);
+              } catch (final IOException e) {
+                // A stream given up on is closed under the reader
+                if (!drained.isDone()) {
+                  log.error(
+                      isError ? "Error reading test error output" : "Error reading test output", e);
+                }
+              } finally {
+                drained.complete(null);
+              }
+            },
+            isError ? "sophodromos-stderr" : "sophodromos-stdout");
+    // Left behind if its stream stalls after the child invocation exited
+    thread.setDaemon(true);
+    thread.start();
+    return drained;
   }
 
   private void processReaderLines(
       final BufferedReader reader, final TestExecutionResult result, final boolean isError)
       throws IOException {
+    // Surefire's test events arrive on standard output only
+    final ForkOutputDemultiplexer demultiplexer =
+        demultiplexed && !isError ? new ForkOutputDemultiplexer() : null;
+    final FailureOutputBuffer outputBuffer =
+        failureOutputBytes > 0 && !isError ? new FailureOutputBuffer(failureOutputBytes) : null;
+    final LineDeduplicator deduplicator =
+        dedupWindow > 0 ? interceptor.newLineDeduplicator(dedupWindow) : null;
+    final Consumer<String> processor =
+        sortedLine -> processLine(sortedLine, result, isError, deduplicator);
+    final FailureLimit limit = isError ? null : failureLimit;
+    int reportedFailures = 0;
     String line = reader.readLine();
     while (line != null) {
-      final String formattedLine =
-          isError
-              ? interceptor.interceptErrorOutput(line)
-              : interceptor.interceptTestOutput(line, result);
-
-      processFormattedLine(formattedLine, result, isError);
+      if (!isError) {
+        interceptor.observeOutputLine(line);
+      }
+      if (demultiplexer == null) {
+        bufferLine(line, outputBuffer, processor);
+      } else {
+        for (final String releasedLine : demultiplexer.accept(line)) {
+          bufferLine(releasedLine, outputBuffer, processor);
+        }
+      }
+      if (limit != null && result.getClassFailureCount() > reportedFailures) {
+        limit.recordFailures(result.getClassFailureCount() - reportedFailures);
+        reportedFailures = result.getClassFailureCount();
+      }
       line = reader.readLine();
     }
+    if (demultiplexer != null) {
+      for (final String releasedLine : demultiplexer.flush()) {
+        bufferLine(releasedLine, outputBuffer, processor);
+      }
+      if (log.isDebugEnabled()) {
+        log.debug(
+            "Up to "
+                + demultiplexer.getMaxConcurrentClasses()
+                + " test classes ran at the same time");
+      }
+    }
+    if (outputBuffer != null) {
+      outputBuffer.flush(processor);
+    }
+    if (!isError) {
+      for (final String coalescedLine : interceptor.flushCoalescedLines()) {
+        processFormattedLine(coalescedLine, result, false, deduplicator);
+      }
+    }
+    if (deduplicator != null) {
+      deduplicator.flush();
+      printRepeatMarkers(deduplicator, result, isError);
+    }
+  }
+
+  private static void bufferLine(
+      final String line, final FailureOutputBuffer outputBuffer, final Consumer<String> processor)
+      throws IOException {
+    if (outputBuffer == null) {
+      processor.accept(line);
+    } else {
+      outputBuffer.accept(line, processor);
+    }
+  }
+
+  private void processLine(
+      final String line,
+      final TestExecutionResult result,
+      final boolean isError,
+      final LineDeduplicator deduplicator) {
+    final String formattedLine =
+        isError
+            ? interceptor.interceptErrorOutput(line)
+            : interceptor.interceptTestOutput(line, result);
+    if (deduplicator != null && FailureOutputBuffer.isTestEvent(line)) {
+      // Repeats are not collapsed across tests, e.g. in the stack traces of two failures
+      deduplicator.flush();
+    }
+    if (!isError) {
+      // Coalesced passing results precede the line that released them
+      for (final String coalescedLine : interceptor.takeCoalescedLines()) {
+        processFormattedLine(coalescedLine, result, false, deduplicator);
+      }
+    }
+    processFormattedLine(formattedLine, result, isError, deduplicator);
   }
 
-  @SuppressWarnings("PMD.SystemPrintln") // Intentional console output for clean formatting
   private void processFormattedLine(
-      final String formattedLine, final TestExecutionResult result, final boolean isError) {
+      final String formattedLine,
+      final TestExecutionResult result,
+      final boolean isError,
+      final LineDeduplicator deduplicator) {
     if (formattedLine != null) {
-      if (isError) {
-        result.addErrorLine(formattedLine);
-        System.err.println(formattedLine);
-      } else {
-        result.addOutputLine(formattedLine);
-        logProgressIfEnabled(formattedLine);
+      final boolean repeat = deduplicator != null && deduplicator.accept(formattedLine);
+      if (deduplicator != null) {
+        // Markers of lines that fell out of the window precede the line that pushed them out
+        printRepeatMarkers(deduplicator, result, isError);
+      }
+      if (!repeat) {
+        printFormattedLine(formattedLine, result, isError);
       }
     }
   }
 
+  private void printRepeatMarkers(
+      final LineDeduplicator deduplicator,
+      final TestExecutionResult result,
+      final boolean isError) {
+    for (final String marker : deduplicator.takeReleasedLines()) {
+      printFormattedLine(marker, result, isError);
+    }
+  }
+
+  @SuppressWarnings("PMD.SystemPrintln") // Intentional console output for clean formatting
+  private void printFormattedLine(
+      final String formattedLine, final TestExecutionResult result, final boolean isError) {
+    if (isError) {
+      result.addErrorLine(formattedLine);
+      print(System.err, formattedLine);
+    } else {
+      result.addOutputLine(formattedLine);
+      logProgressIfEnabled(formattedLine);
+    }
+  }
+
   @SuppressWarnings("PMD.SystemPrintln") // Intentional console output for clean formatting
   private void logProgressIfEnabled(final String formattedLine) {
     if (showProgress) {
-      System.out.println(formattedLine);
+      print(System.out, formattedLine);
+    }
+  }
+
+  @SuppressWarnings("PMD.SystemPrintln") // Intentional console output for clean formatting
+  private void print(final PrintStream stream, final String line) {
+    if (reactorProgress == null) {
+      stream.println(line);
+    } else {
+      reactorProgress.println(stream, line);
     }
   }
 }
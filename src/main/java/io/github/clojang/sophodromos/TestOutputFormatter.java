@@ -3,6 +3,8 @@ package io.github.clojang.sophodromos;
 import io.github.clojang.gradldromus.AnsiColors;
 import io.github.clojang.gradldromus.CleanTerminalPrinter;
 import io.github.clojang.gradldromus.GradlDromusExtension;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * Test output formatter that uses GradlDromus formatting classes. Delegates all formatting to the
@@ -108,6 +110,30 @@ public class TestOutputFormatter {
     return colors.colorize("    → " + line, AnsiColors.RED);
   }
 
+  /**
+   * Formats the marker of the repeats of an output line shown once.
+   *
+   * @param line the formatted output line
+   * @param repeats the number of times the line was repeated after it was shown
+   * @return the line followed by the number of repeats
+   */
+  public String formatRepeatedLine(final String line, final long repeats) {
+    return line
+        + " "
+        + colors.colorize(
+            String.format(Locale.ROOT, "(repeated %,d×)", repeats), AnsiColors.BRIGHT_BLACK);
+  }
+
+  /**
+   * Formats an output line that a user-defined rule highlights.
+   *
+   * @param line the output line
+   * @return the formatted line
+   */
+  public String formatHighlightedLine(final String line) {
+    return colors.colorize("    ★ " + line.trim(), AnsiColors.BOLD, AnsiColors.BRIGHT_YELLOW);
+  }
+
   /**
    * Formats a summary header section.
    *
@@ -163,6 +189,175 @@ public class TestOutputFormatter {
     return summary.toString();
   }
 
+  /**
+   * Formats the line reporting test classes skipped as up-to-date.
+   *
+   * @param classes the number of up-to-date test classes
+   * @param tests the number of tests in those classes, as recorded at their last run
+   * @return the formatted up-to-date line
+   */
+  public String formatUpToDateSummary(final int classes, final long tests) {
+    return colors.colorize(
+        extension.getSkipSymbol() + " " + tests + " tests in " + classes + " classes up-to-date",
+        AnsiColors.CYAN);
+  }
+
+  /**
+   * Formats the report of test classes deferred because they did not fit the time budget.
+   *
+   * @param deferredClasses the deferred test class names
+   * @param estimatedMs the estimated total duration of the deferred classes
+   * @return the formatted deferred report
+   */
+  public String formatDeferredSummary(final List<String> deferredClasses, final long estimatedMs) {
+    final StringBuilder report =
+        new StringBuilder(
+            colors.colorize(
+                "⏭️  "
+                    + deferredClasses.size()
+                    + " test classes deferred to fit the time budget (~"
+                    + (estimatedMs / MS_TO_SECONDS)
+                    + "s)",
+                AnsiColors.YELLOW));
+    for (final String className : deferredClasses) {
+      report.append('\n').append(colors.colorize("   " + className, AnsiColors.YELLOW));
+    }
+    return report.toString();
+  }
+
+  /**
+   * Formats the line reporting that a module's results were replayed from the result cache.
+   *
+   * @param originalTimeMs the execution time of the run that produced the cached results
+   * @return the formatted cache hit line
+   */
+  public String formatCacheHitSummary(final long originalTimeMs) {
+    return colors.colorize(
+        "♻️  Results replayed from cache, saved " + (originalTimeMs / MS_TO_SECONDS) + "s",
+        AnsiColors.CYAN);
+  }
+
+  /**
+   * Formats the line reporting the startup time a launcher saved compared with plain Maven.
+   *
+   * @param launcher the launcher that ran the tests
+   * @param savedMs the saved time in milliseconds, negative if the launcher was slower
+   * @return the formatted startup savings line
+   */
+  public String formatStartupSavings(final String launcher, final long savedMs) {
+    return colors.colorize(describeStartupSavings(launcher, savedMs), AnsiColors.CYAN);
+  }
+
+  /**
+   * Describes the startup time a launcher saved compared with plain Maven, without colors.
+   *
+   * @param launcher the launcher that ran the tests
+   * @param savedMs the saved time in milliseconds, negative if the launcher was slower
+   * @return the description
+   */
+  protected static String describeStartupSavings(final String launcher, final long savedMs) {
+    final String seconds = String.format(Locale.ROOT, "%.1fs", Math.abs(savedMs) / MS_TO_SECONDS);
+    return savedMs >= 0
+        ? "⚡ " + launcher + " saved ~" + seconds + " of startup compared to mvn"
+        : "⚡ " + launcher + " took ~" + seconds + " longer to start than mvn";
+  }
+
+  /**
+   * Formats the line reporting the time that class data sharing archives saved the warm JVMs.
+   *
+   * @param savedMs the saved time in milliseconds, negative if the archived start was slower
+   * @return the formatted savings line
+   */
+  public String formatSharedArchiveSavings(final long savedMs) {
+    return colors.colorize(describeSharedArchiveSavings(savedMs), AnsiColors.CYAN);
+  }
+
+  /**
+   * Describes the time that class data sharing archives saved the warm JVMs, without colors.
+   *
+   * @param savedMs the saved time in milliseconds, negative if the archived start was slower
+   * @return the description
+   */
+  protected static String describeSharedArchiveSavings(final long savedMs) {
+    final String seconds = String.format(Locale.ROOT, "%.1fs", Math.abs(savedMs) / MS_TO_SECONDS);
+    return savedMs >= 0
+        ? "📦 Class data sharing saved ~" + seconds + " of class loading"
+        : "📦 Class data sharing took ~" + seconds + " longer than loading classes afresh";
+  }
+
+  /**
+   * Formats the line reporting the JVM profile applied to the forked test JVM.
+   *
+   * @param profile the profile name
+   * @param options the options the profile added, separated by spaces
+   * @return the formatted profile line
+   */
+  public String formatJvmProfile(final String profile, final String options) {
+    return colors.colorize(describeJvmProfile(profile, options), AnsiColors.CYAN);
+  }
+
+  /**
+   * Describes the JVM profile applied to the forked test JVM, without colors.
+   *
+   * @param profile the profile name
+   * @param options the options the profile added, separated by spaces
+   * @return the description
+   */
+  protected static String describeJvmProfile(final String profile, final String options) {
+    return "🧬 JVM profile " + profile + ": " + (options.isEmpty() ? "JVM defaults" : options);
+  }
+
+  /**
+   * Formats the line reporting the CPU time of the child invocations' process trees.
+   *
+   * @param cpuMillis the CPU time in milliseconds
+   * @return the formatted CPU time line
+   */
+  public String formatTreeCpu(final long cpuMillis) {
+    return colors.colorize(describeTreeCpu(cpuMillis), AnsiColors.BRIGHT_BLACK);
+  }
+
+  /**
+   * Describes the CPU time of the child invocations' process trees, without colors.
+   *
+   * @param cpuMillis the CPU time in milliseconds
+   * @return the description
+   */
+  protected static String describeTreeCpu(final long cpuMillis) {
+    return String.format(
+        Locale.ROOT, "⚙️  CPU time: %.1fs across the test processes", cpuMillis / MS_TO_SECONDS);
+  }
+
+  /**
+   * Formats the line naming a test class that stopped making progress.
+   *
+   * @param hungTest the test class and where its thread dumps are
+   * @return the formatted hang line
+   */
+  public String formatHungTest(final String hungTest) {
+    return colors.colorize("⏳ Hung: " + hungTest, AnsiColors.RED);
+  }
+
+  /**
+   * Formats the line reporting that the tests were stopped before all of them ran.
+   *
+   * @param reason why the tests were stopped
+   * @return the formatted stop line
+   */
+  public String formatStopReason(final String reason) {
+    return colors.colorize("🛑 Tests stopped early: " + reason, AnsiColors.RED);
+  }
+
+  /**
+   * Formats the line reporting the resources and the concurrent test JVMs planned for them.
+   *
+   * @param plan the description of the resources and the plan
+   * @return the formatted plan line
+   */
+  public String formatResourcePlan(final String plan) {
+    return colors.colorize("🖥️  Resources: " + plan, AnsiColors.CYAN);
+  }
+
   /**
    * Formats a failure header section.
    *
@@ -215,4 +410,37 @@ public class TestOutputFormatter {
       final String className, final String methodName, final String status, final long duration) {
     return resultFormatter.formatTestResult(className, methodName, status, duration);
   }
+
+  /**
+   * Formats the passing tests of a class shown as one line, e.g. for fast parameterized tests.
+   *
+   * @param className the test class name
+   * @param count the passed tests
+   * @param duration their total duration in milliseconds
+   * @return the formatted aggregate line
+   */
+  public String formatPassedResults(final String className, final long count, final long duration) {
+    return resultFormatter.formatPassedResults(className, count, duration);
+  }
+
+  /**
+   * Formats the invocations of a parameterized or repeated test method as one row.
+   *
+   * @param className the test class name
+   * @param methodName the test method name without the invocation suffix
+   * @param passed the passed invocations
+   * @param failed the failed and erroneous invocations
+   * @param p50 the median invocation duration in milliseconds
+   * @param p99 the 99th percentile invocation duration in milliseconds
+   * @return the formatted row
+   */
+  public String formatInvocations(
+      final String className,
+      final String methodName,
+      final long passed,
+      final long failed,
+      final long p50,
+      final long p99) {
+    return resultFormatter.formatInvocations(className, methodName, passed, failed, p50, p99);
+  }
 }
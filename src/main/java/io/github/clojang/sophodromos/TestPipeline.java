@@ -0,0 +1,165 @@
+package io.github.clojang.sophodromos;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Runs the tests of reactor modules in the background while Maven goes on with the lifecycle of the
+ * next modules, so that compiling one module overlaps with testing another without {@code -T}. A
+ * module's tests start as soon as its {@code sd:test} execution is reached, right after its {@code
+ * test-compile}, and the last module waits for all of them. At most as many modules run at once as
+ * the resource plan allows; a module waiting for its turn holds up the reactor. The limit is a
+ * count of modules, not of memory: the plan packs modules by the highest recorded peak RSS, so that
+ * any of them may run together, and a module with a small peak takes a whole slot like any other.
+ *
+ * <p>The runs are kept in the session data as JDK types only, because the execution listener, which
+ * waits for them before the summary, may be loaded by another class realm than the mojos.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.DoNotUseThreads", "PMD.AvoidCatchingGenericException"})
+// Each module's tests run on a thread of their own, whose failures are handed to the last module
+final class TestPipeline {
+
+  private static final String RUNS_KEY = "sophodromos.pipeline.runs";
+  private static final String PERMITS_KEY = "sophodromos.pipeline.permits";
+
+  private final SessionData data;
+
+  /**
+   * Constructs a new TestPipeline.
+   *
+   * @param session the Maven session holding the runs
+   */
+  protected TestPipeline(final MavenSession session) {
+    this.data = session.getRepositorySession().getData();
+  }
+
+  /**
+   * Starts a module's tests in the background, waiting first while the most modules are running.
+   *
+   * @param moduleId the module ID
+   * @param maxConcurrentModules the most modules whose tests may run at once
+   * @param run the test run, returning the module's result or null if it did not run
+   * @throws InterruptedException if interrupted while waiting for a running module to finish
+   */
+  protected void submit(
+      final String moduleId,
+      final int maxConcurrentModules,
+      final Callable<TestExecutionResult> run)
+      throws InterruptedException {
+    final Semaphore permits =
+        getOrCreate(data, PERMITS_KEY, new Semaphore(Math.max(1, maxConcurrentModules)));
+    permits.acquire();
+    final CompletableFuture<TestExecutionResult> future = new CompletableFuture<>();
+    getRuns().put(moduleId, future);
+    final Thread thread =
+        new Thread(
+            () -> {
+              try {
+                future.complete(run.call());
+              } catch (final Exception e) {
+                future.completeExceptionally(e);
+              } catch (final Error e) {
+                future.completeExceptionally(e);
+                throw e;
+              } finally {
+                permits.release();
+              }
+            },
+            "sophodromos-pipeline-" + moduleId);
+    thread.start();
+  }
+
+  /**
+   * Waits for every module started so far and removes them from the pipeline.
+   *
+   * @return the results by module ID in the order the modules started, without modules that did not
+   *     run
+   * @throws IOException if a module's tests could not be run
+   * @throws InterruptedException if interrupted while waiting
+   */
+  protected Map<String, TestExecutionResult> awaitAll() throws IOException, InterruptedException {
+    final Map<String, TestExecutionResult> results = new LinkedHashMap<>();
+    final Map<String, CompletableFuture<?>> runs = getRuns();
+    for (final Map.Entry<String, CompletableFuture<?>> run : snapshot(runs.entrySet(), runs)) {
+      try {
+        final Object result = run.getValue().get();
+        if (result != null) {
+          results.put(run.getKey(), (TestExecutionResult) result);
+        }
+      } catch (final ExecutionException e) {
+        throw new IOException("The tests of " + run.getKey() + " failed to run", e.getCause());
+      }
+    }
+    runs.clear();
+    return results;
+  }
+
+  /**
+   * Waits for the modules still running, e.g. when the build failed before the last module. Their
+   * results are already recorded in the multi-module state, so only the waiting matters.
+   *
+   * @param session the Maven session
+   */
+  protected static void awaitQuietly(final MavenSession session) {
+    final Object runs = session.getRepositorySession().getData().get(RUNS_KEY);
+    if (runs instanceof Map) {
+      for (final Object run : snapshot(((Map<?, ?>) runs).values(), runs)) {
+        try {
+          ((CompletableFuture<?>) run).get();
+        } catch (final ExecutionException e) {
+          // The summary shows whatever the module recorded
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private Map<String, CompletableFuture<?>> getRuns() {
+    return getOrCreate(
+        data,
+        RUNS_KEY,
+        Collections.synchronizedMap(new LinkedHashMap<String, CompletableFuture<?>>()));
+  }
+
+  /** Copies a view of the synchronized runs, which modules may add to while it is iterated. */
+  private static <T> List<T> snapshot(final Collection<T> view, final Object runs) {
+    synchronized (runs) {
+      return new ArrayList<>(view);
+    }
+  }
+
+  /**
+   * Gets a value shared by the modules of the build, storing the given one if there is none yet.
+   *
+   * @param data the session data
+   * @param key the key, which only one class stores values under
+   * @param initial the value to store if there is none
+   * @return the shared value
+   */
+  @SuppressWarnings("unchecked") // Only the owning class stores values under its keys
+  protected static <T> T getOrCreate(final SessionData data, final String key, final T initial) {
+    // Another module may store its value between the lookup and the update
+    while (true) {
+      final Object existing = data.get(key);
+      if (existing != null) {
+        return (T) existing;
+      }
+      if (data.set(key, null, initial)) {
+        return initial;
+      }
+    }
+  }
+}
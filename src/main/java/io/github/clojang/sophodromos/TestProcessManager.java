@@ -3,12 +3,19 @@ package io.github.clojang.sophodromos;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import org.apache.maven.project.MavenProject;
 
 /** Manages the creation and configuration of Maven Surefire test processes. */
-@SuppressWarnings("PMD.TestClassWithoutTestCases") // This is not a test class
+@SuppressWarnings({"PMD.TestClassWithoutTestCases", "PMD.LawOfDemeter"}) // Not a test class
 class TestProcessManager {
+  private static final String ARG_LINE = "argLine";
+
   private final MavenProject project;
+  private final List<String> forkedJvmOptions = new ArrayList<>();
+  private TestLauncher launcher = TestLauncher.maven();
+  private final Map<String, String> surefireProperties = new TreeMap<>();
 
   /**
    * Constructs a new TestProcessManager.
@@ -19,6 +26,37 @@ class TestProcessManager {
     this.project = project;
   }
 
+  /**
+   * Sets the Maven executable running the child invocations.
+   *
+   * @param launcher the launcher, plain Maven by default
+   */
+  protected void setLauncher(final TestLauncher launcher) {
+    this.launcher = launcher;
+  }
+
+  /**
+   * Adds a JVM option for the test JVMs forked by Surefire. The options are appended to the
+   * project's own {@code argLine} property, so a POM that configures {@code <argLine>} directly
+   * must reference it as {@code @{argLine}} for them to take effect.
+   *
+   * @param option the JVM option, e.g. -javaagent:agent.jar
+   */
+  protected void addForkedJvmOption(final String option) {
+    // Surefire splits the argLine on whitespace unless the option is quoted
+    forkedJvmOptions.add(option.indexOf(' ') >= 0 ? '"' + option + '"' : option);
+  }
+
+  /**
+   * Sets a Surefire user property for every child invocation.
+   *
+   * @param name the property name, e.g. forkCount
+   * @param value the property value
+   */
+  protected void setSurefireProperty(final String name, final String value) {
+    surefireProperties.put(name, value);
+  }
+
   /**
    * Creates and starts a Surefire test process.
    *
@@ -26,22 +64,54 @@ class TestProcessManager {
    * @throws IOException if process creation fails
    */
   protected Process createSurefireProcess() throws IOException {
-    final ProcessBuilder processBuilder = createSurefireProcessBuilder();
+    return createSurefireProcess(TestSelection.all());
+  }
+
+  /**
+   * Creates and starts a Surefire test process restricted to the given test selection.
+   *
+   * @param selection the test classes to run
+   * @return the started process
+   * @throws IOException if process creation fails
+   */
+  protected Process createSurefireProcess(final TestSelection selection) throws IOException {
+    final ProcessBuilder processBuilder = createSurefireProcessBuilder(selection);
     return processBuilder.start();
   }
 
-  private ProcessBuilder createSurefireProcessBuilder() {
+  private ProcessBuilder createSurefireProcessBuilder(final TestSelection selection) {
     final List<String> command = new ArrayList<>();
-    command.add("mvn");
+    command.add(launcher.getCommand());
+    command.addAll(launcher.getArguments());
     command.add("surefire:test");
     command.add("-Dmaven.test.failure.ignore=true");
     command.add("-Dsurefire.printSummary=true");
     command.add("-Dsurefire.reportFormat=plain");
     command.add("-Dsurefire.useFile=false");
+    command.addAll(selection.toSurefireArguments());
+    for (final Map.Entry<String, String> property : surefireProperties.entrySet()) {
+      command.add("-D" + property.getKey() + '=' + property.getValue());
+    }
+    if (!forkedJvmOptions.isEmpty()) {
+      command.add("-D" + ARG_LINE + '=' + buildArgLine());
+    }
 
     final ProcessBuilder processBuilder = new ProcessBuilder(command);
     processBuilder.directory(project.getBasedir());
     processBuilder.redirectErrorStream(false);
     return processBuilder;
   }
+
+  private String buildArgLine() {
+    // The user property replaces the project's argLine property, so keep its value in front
+    final String projectArgLine = project.getProperties().getProperty(ARG_LINE, "");
+    final StringBuilder argLine = new StringBuilder(projectArgLine.trim());
+    for (final String option : forkedJvmOptions) {
+      if (argLine.length() > 0) {
+        argLine.append(' ');
+      }
+      argLine.append(option);
+    }
+    return argLine.toString();
+  }
 }
@@ -67,6 +67,83 @@ class TestResultFormatter {
     return outputStr.toString();
   }
 
+  /**
+   * Formats the passing tests of a class that are shown as one line instead of one line each.
+   *
+   * @param className the test class name
+   * @param count the passed tests
+   * @param duration their total duration in milliseconds
+   * @return the formatted aggregate line
+   */
+  protected String formatPassedResults(
+      final String className, final long count, final long duration) {
+    final StringBuilder outputStr = new StringBuilder(INDENT);
+    final String simpleClassName = className.substring(className.lastIndexOf('.') + 1);
+    outputStr
+        .append(colors.colorize(simpleClassName + ": ", AnsiColors.WHITE))
+        .append(
+            colors.colorize(
+                String.format(Locale.ROOT, "%,d %s", count, extension.getPassSymbol()),
+                AnsiColors.BOLD + AnsiColors.BRIGHT_GREEN));
+    if (extension.isShowTimings()) {
+      outputStr
+          .append(' ')
+          .append(
+              colors.colorize(
+                  String.format(Locale.ROOT, "(%.1fs)", duration / 1000.0),
+                  AnsiColors.BRIGHT_BLACK));
+    }
+    return outputStr.toString();
+  }
+
+  /**
+   * Formats the invocations of a parameterized or repeated test method as one row.
+   *
+   * @param className the test class name
+   * @param methodName the test method name without the invocation suffix
+   * @param passed the passed invocations
+   * @param failed the failed and erroneous invocations
+   * @param p50 the median invocation duration in milliseconds
+   * @param p99 the 99th percentile invocation duration in milliseconds
+   * @return the formatted row
+   */
+  protected String formatInvocations(
+      final String className,
+      final String methodName,
+      final long passed,
+      final long failed,
+      final long p50,
+      final long p99) {
+    final String invocations = methodName + "[×" + (passed + failed) + "]";
+    final StringBuilder outputStr = new StringBuilder(INDENT);
+    final String simpleClassName = className.substring(className.lastIndexOf('.') + 1);
+    outputStr
+        .append(colors.colorize(simpleClassName + ".", AnsiColors.WHITE))
+        .append(colors.colorize(invocations + " ", AnsiColors.YELLOW))
+        .append(
+            colors.colorize(
+                ".".repeat(calculateDotsNeeded(className, invocations)), AnsiColors.BRIGHT_BLACK))
+        .append(
+            colors.colorize(
+                passed + " " + extension.getPassSymbol(),
+                AnsiColors.BOLD + AnsiColors.BRIGHT_GREEN));
+    if (failed > 0) {
+      outputStr
+          .append(' ')
+          .append(
+              colors.colorize(
+                  failed + " " + extension.getFailSymbol(),
+                  AnsiColors.BOLD + AnsiColors.BRIGHT_RED));
+    }
+    if (extension.isShowTimings()) {
+      outputStr
+          .append(' ')
+          .append(
+              colors.colorize("(p50 " + p50 + "ms, p99 " + p99 + "ms)", AnsiColors.BRIGHT_BLACK));
+    }
+    return outputStr.toString();
+  }
+
   @SuppressWarnings("PMD.LawOfDemeter") // Standard string operations
   private int calculateDotsNeeded(final String className, final String methodName) {
     int nameLength = INDENT.length(); // indent
@@ -0,0 +1,725 @@
+package io.github.clojang.sophodromos;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Plans the child Surefire invocations for a module from the recorded test history and records the
+ * outcome of each run back into that history.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn", "PMD.GuardLogStatement"})
+class TestRunPlanner {
+
+  /** Run tests in the order chosen by the child Surefire configuration. */
+  protected static final String ORDER_DEFAULT = "default";
+
+  /** Run previously failed and changed test classes before everything else. */
+  protected static final String ORDER_FAILED_FIRST = "failedfirst";
+
+  private static final double FAILED_FAILURE_PROBABILITY = 0.9;
+  private static final double CHANGED_FAILURE_PROBABILITY = 0.5;
+  private static final long DEFAULT_CLASS_DURATION_MILLIS = 1000L;
+  // A full run lowers the recorded peak RSS by this fraction at most
+  private static final long PEAK_RSS_DECAY = 10L;
+
+  private final MavenProject project;
+  private final TestHistoryStore historyStore;
+  private final String runOrder;
+  private final Log log;
+  private final ClassFileHasher hasher = new ClassFileHasher();
+  private final TestImpactAnalyzer analyzer;
+  private final SurefireClassFilter classFilter;
+
+  private boolean incremental;
+  private boolean affectedOnly;
+  private CoverageRecorder coverageRecorder;
+  private TestHistoryStore.ModuleHistory history;
+  private Map<String, String> testClassHashes = new TreeMap<>();
+  private Map<String, String> fingerprints = new TreeMap<>();
+  private final List<String> upToDateClasses = new ArrayList<>();
+  private final Map<String, Long> deferredClasses = new LinkedHashMap<>();
+  private Long startupSavedMillis;
+  private long timeBudgetMillis;
+
+  /**
+   * Constructs a new TestRunPlanner.
+   *
+   * @param project the Maven project
+   * @param historyStore the store holding previous run results
+   * @param runOrder the requested run order
+   * @param log Maven logger
+   */
+  protected TestRunPlanner(
+      final MavenProject project,
+      final TestHistoryStore historyStore,
+      final String runOrder,
+      final Log log) {
+    this.project = project;
+    this.historyStore = historyStore;
+    this.runOrder = runOrder == null ? ORDER_DEFAULT : runOrder.toLowerCase(Locale.ROOT);
+    this.log = log;
+    this.analyzer = new TestImpactAnalyzer(project, hasher);
+    this.classFilter = SurefireClassFilter.of(project, log);
+  }
+
+  /**
+   * Checks whether the given run order is supported.
+   *
+   * @param runOrder the run order to check
+   * @return true if the planner understands the run order
+   */
+  protected static boolean isSupportedRunOrder(final String runOrder) {
+    final String normalized = runOrder == null ? ORDER_DEFAULT : runOrder.toLowerCase(Locale.ROOT);
+    return ORDER_DEFAULT.equals(normalized) || ORDER_FAILED_FIRST.equals(normalized);
+  }
+
+  /**
+   * Enables incremental mode, in which only test classes whose transitive dependencies changed
+   * since their last green run are executed.
+   *
+   * @param incremental whether to skip up-to-date test classes
+   */
+  protected void setIncremental(final boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  /**
+   * Enables affected-only mode, in which test classes with a recorded coverage map are executed
+   * only when a class they loaded at runtime changed since their last green run. Test classes
+   * without a map run unless incremental mode finds them up-to-date.
+   *
+   * @param affectedOnly whether to select test classes by their coverage maps
+   */
+  protected void setAffectedOnly(final boolean affectedOnly) {
+    this.affectedOnly = affectedOnly;
+  }
+
+  /**
+   * Limits the run to the test classes that fit a wall-clock budget. Classes are chosen by their
+   * recorded durations and failure rates; classes that do not fit are deferred and keep their
+   * changed status for the next run.
+   *
+   * @param timeBudgetMillis the budget in milliseconds, 0 for no limit
+   */
+  protected void setTimeBudget(final long timeBudgetMillis) {
+    this.timeBudgetMillis = timeBudgetMillis;
+  }
+
+  /**
+   * Sets the recorder whose coverage maps are stored for the test classes that pass.
+   *
+   * @param coverageRecorder the coverage recorder, or null when not recording
+   */
+  protected void setCoverageRecorder(final CoverageRecorder coverageRecorder) {
+    this.coverageRecorder = coverageRecorder;
+  }
+
+  /**
+   * Plans the child invocations needed to run the module's tests. In incremental and affected-only
+   * modes, up-to-date test classes are left out. When failed-first ordering is requested and some
+   * test classes failed last time or changed since, they are run by a first invocation and the
+   * remaining classes by a second one.
+   *
+   * @return the selections to execute, in order; empty when every test class is up-to-date
+   */
+  protected List<TestSelection> planSelections() {
+    loadHistory();
+    upToDateClasses.clear();
+    deferredClasses.clear();
+
+    // Null scope means every test class the child Surefire would run by default
+    List<String> scope = incremental || affectedOnly ? findAffectedClasses() : null;
+    if (timeBudgetMillis > 0) {
+      scope = applyTimeBudget(scope);
+    }
+    if (scope != null && scope.isEmpty()) {
+      return List.of();
+    }
+
+    if (!ORDER_FAILED_FIRST.equals(runOrder)) {
+      return List.of(scope == null ? TestSelection.all() : TestSelection.only(scope));
+    }
+
+    // A second invocation only pays off when some known test classes can wait
+    final List<String> prioritized = findPrioritizedClasses();
+    if (scope != null) {
+      prioritized.retainAll(scope);
+    }
+    final long candidates = scope == null ? listTestClasses().size() : scope.size();
+    if (prioritized.isEmpty() || prioritized.size() == candidates) {
+      return List.of(scope == null ? TestSelection.all() : TestSelection.only(scope));
+    }
+
+    if (log.isDebugEnabled()) {
+      log.debug("Running failed and changed test classes first: " + prioritized);
+    }
+    // An exclusion list such as -Dtest=!A would replace the project's includes and excludes too
+    final List<String> remaining = new ArrayList<>(scope == null ? listTestClasses() : scope);
+    remaining.removeAll(prioritized);
+    return List.of(TestSelection.only(prioritized), TestSelection.only(remaining));
+  }
+
+  /**
+   * Computes a fingerprint of the module's classes, resources and test classpath, for use as a
+   * result cache key.
+   *
+   * @return the module fingerprint
+   * @throws IOException if class files or dependencies cannot be read
+   */
+  protected String fingerprintModule() throws IOException {
+    loadHistory();
+    return analyzer.fingerprintModule(testClassHashes, history);
+  }
+
+  /**
+   * Lists the test classes a selection runs, for runners that need explicit class names. Like
+   * Surefire's default excludes, nested classes are not run on their own.
+   *
+   * @param selection a selection returned by {@link #planSelections()}
+   * @return the test class names, in the order they should run
+   */
+  protected List<String> listSelectedClasses(final TestSelection selection) {
+    loadHistory();
+    final List<String> classes =
+        selection.getIncludes().isEmpty()
+            ? listTestClasses()
+            : new ArrayList<>(selection.getIncludes());
+    classes.removeIf(className -> className.indexOf('$') >= 0);
+    return classes;
+  }
+
+  /**
+   * Estimates how long test classes take from their recorded durations. Classes that never ran are
+   * estimated like the time budget does.
+   *
+   * @param classes the test class names
+   * @return the estimated total duration in milliseconds
+   */
+  protected long estimateDuration(final List<String> classes) {
+    loadHistory();
+    final long unknownDuration = estimateUnknownDuration();
+    long total = 0;
+    for (final String className : classes) {
+      final TestHistoryStore.TestClassHistory record = history.findTestClass(className);
+      total +=
+          record == null || record.getRunCount() == 0
+              ? unknownDuration
+              : record.getLastDurationMillis();
+    }
+    return total;
+  }
+
+  /**
+   * Gets the recorded duration of a test class.
+   *
+   * @param className the test class name
+   * @return the duration of its last run in milliseconds, 0 if it never ran
+   */
+  protected long getRecordedDuration(final String className) {
+    loadHistory();
+    final TestHistoryStore.TestClassHistory record = history.findTestClass(className);
+    return record == null || record.getRunCount() == 0 ? 0L : record.getLastDurationMillis();
+  }
+
+  /**
+   * Gets the recorded durations of those test classes that ran before.
+   *
+   * @param classes the test class names
+   * @return the durations in milliseconds, without entries for classes that never ran
+   */
+  protected List<Long> getRecordedDurations(final List<String> classes) {
+    loadHistory();
+    final List<Long> durations = new ArrayList<>();
+    for (final String className : classes) {
+      final TestHistoryStore.TestClassHistory record = history.findTestClass(className);
+      if (record != null && record.getRunCount() > 0) {
+        durations.add(record.getLastDurationMillis());
+      }
+    }
+    return durations;
+  }
+
+  /**
+   * Gets the peak RSS of a forked test JVM recorded at the module's last sampled run.
+   *
+   * @return the peak in bytes, 0 if none was recorded
+   */
+  protected long getRecordedPeakRss() {
+    loadHistory();
+    return history.getPeakRssBytes();
+  }
+
+  /**
+   * Gets the test classes left out of the plan because they are up-to-date.
+   *
+   * @return up-to-date test class names
+   */
+  protected List<String> getUpToDateClasses() {
+    return new ArrayList<>(upToDateClasses);
+  }
+
+  /**
+   * Gets the test classes left out of the plan because they did not fit the time budget.
+   *
+   * @return map of deferred test class name to its estimated duration in milliseconds
+   */
+  protected Map<String, Long> getDeferredClasses() {
+    return new LinkedHashMap<>(deferredClasses);
+  }
+
+  /**
+   * Records the wall-clock time of the child invocations, from which the fixed cost of starting an
+   * invocation is estimated for later time budgets and, per launcher, compared with plain Maven.
+   *
+   * @param wallClockMillis the total wall-clock time of all invocations
+   * @param invocations the number of invocations
+   * @param result the combined result of the invocations
+   * @param launcher the name of the launcher that ran every invocation, or null if they differed
+   */
+  protected void recordWallClockTime(
+      final long wallClockMillis,
+      final int invocations,
+      final TestExecutionResult result,
+      final String launcher) {
+    if (invocations == 0 || result.getClassResults().isEmpty()) {
+      return;
+    }
+    loadHistory();
+    long classMillis = 0;
+    for (final TestExecutionResult.TestClassResult classResult : result.getClassResults()) {
+      classMillis += classResult.getExecutionTime();
+    }
+    final long overhead = Math.max(0L, (wallClockMillis - classMillis) / invocations);
+    history.setInvocationOverheadMillis(smooth(history.getInvocationOverheadMillis(), overhead));
+    if (launcher == null) {
+      return;
+    }
+
+    final Map<String, Long> launcherOverheads = history.getLauncherOverheadMillis();
+    final Long mavenOverhead = launcherOverheads.get(TestLauncher.MAVEN);
+    if (mavenOverhead != null && !TestLauncher.MAVEN.equals(launcher)) {
+      startupSavedMillis = (mavenOverhead - overhead) * invocations;
+    }
+    launcherOverheads.put(launcher, smooth(launcherOverheads.getOrDefault(launcher, 0L), overhead));
+    history.setLauncherOverheadMillis(launcherOverheads);
+  }
+
+  /**
+   * Gets the startup time the launcher saved in this run compared with plain Maven, based on the
+   * overhead recorded for plain Maven in earlier runs.
+   *
+   * @return the saved milliseconds, negative if slower, or null if there is nothing to compare with
+   */
+  protected Long getStartupSavedMillis() {
+    return startupSavedMillis;
+  }
+
+  /** Smooths out one-off slow starts such as a cold local repository. */
+  private static long smooth(final long previous, final long current) {
+    return previous == 0 ? current : (previous + current) / 2;
+  }
+
+  /**
+   * Gets the number of tests recorded for a test class at its last run.
+   *
+   * @param className the test class name
+   * @return the recorded test count, 0 if unknown
+   */
+  protected long getRecordedTestCount(final String className) {
+    final TestHistoryStore.TestClassHistory record =
+        history == null ? null : history.findTestClass(className);
+    return record == null ? 0L : record.getLastTestCount();
+  }
+
+  /**
+   * Records the outcome of a run into the module history and persists it.
+   *
+   * @param result the combined result of all executed selections
+   */
+  protected void recordResults(final TestExecutionResult result) {
+    if (history == null) {
+      history = historyStore.load();
+    }
+    // Nested test classes are reported separately but hashed with their top-level class
+    final Map<String, Boolean> failedByClass = new TreeMap<>();
+    final Map<String, Long> durationByClass = new TreeMap<>();
+    final Map<String, Long> testsByClass = new TreeMap<>();
+    for (final TestExecutionResult.TestClassResult classResult : result.getClassResults()) {
+      final String className = ClassFileHasher.toTopLevelClassName(classResult.getClassName());
+      failedByClass.merge(className, classResult.hasFailures(), Boolean::logicalOr);
+      durationByClass.merge(className, classResult.getExecutionTime(), Long::sum);
+      testsByClass.merge(className, (long) classResult.getTestsRun(), Long::sum);
+    }
+    for (final Map.Entry<String, Boolean> entry : failedByClass.entrySet()) {
+      final String className = entry.getKey();
+      final boolean failed = entry.getValue();
+      final TestHistoryStore.TestClassHistory record = history.getOrCreateTestClass(className);
+      record.recordRun(
+          failed,
+          durationByClass.get(className),
+          testsByClass.get(className),
+          testClassHashes.get(className));
+      // Only a green run with a known fingerprint lets the class be skipped next time
+      record.setGreenFingerprint(failed ? null : fingerprints.get(className));
+    }
+    updateCoverage(failedByClass);
+    recordPeakRss(result);
+    if (!testClassHashes.isEmpty()) {
+      history.retainTestClasses(testClassHashes.keySet());
+    }
+    historyStore.save(history);
+  }
+
+  /**
+   * Records the peak RSS of the module's forks. A partial run, such as one that skipped up-to-date
+   * classes or was stopped, may not have reached the module's peak, so it only raises the recorded
+   * peak. A full run lowers it by a tenth at most, so that a module whose tests shrank is packed
+   * more densely again over a few runs while a single light run cannot shrink its fork heap.
+   */
+  private void recordPeakRss(final TestExecutionResult result) {
+    final long observed = result.getPeakForkRssBytes();
+    if (observed > 0) {
+      final long recorded = history.getPeakRssBytes();
+      final boolean fullRun =
+          upToDateClasses.isEmpty() && deferredClasses.isEmpty() && result.getStopReason() == null;
+      history.setPeakRssBytes(
+          Math.max(observed, fullRun ? recorded - recorded / PEAK_RSS_DECAY : recorded));
+    }
+  }
+
+  /**
+   * Updates the coverage maps of the test classes that passed. Freshly recorded maps replace the
+   * stored ones; a stored map is kept only while none of the classes it covers has changed, since a
+   * run without recording cannot tell whether the test now loads other classes.
+   */
+  private void updateCoverage(final Map<String, Boolean> failedByClass) {
+    final Map<String, Set<String>> recorded =
+        coverageRecorder == null
+            ? Map.of()
+            : coverageRecorder.collectCoverage(failedByClass.keySet());
+    final CoverageIndex index = new CoverageIndex(history.getCoverageClassIndex());
+
+    final Map<String, Set<String>> coverage = new TreeMap<>();
+    for (final Map.Entry<String, Boolean> entry : failedByClass.entrySet()) {
+      // A failed run may have stopped early, so its map is incomplete
+      if (entry.getValue()) {
+        continue;
+      }
+      final String className = entry.getKey();
+      final Set<String> covered =
+          recorded.containsKey(className)
+              ? recorded.get(className)
+              : decodeCoverage(index, history.findTestClass(className));
+      if (covered != null) {
+        coverage.put(className, covered);
+      }
+    }
+    if (coverage.isEmpty()) {
+      return;
+    }
+
+    Map<String, String> current;
+    try {
+      current = analyzer.fingerprintCoveredClasses(coverage, testClassHashes, history);
+    } catch (final IOException e) {
+      if (log.isWarnEnabled()) {
+        log.warn("Could not fingerprint recorded coverage: " + e.getMessage());
+      }
+      current = Map.of();
+    }
+
+    for (final Map.Entry<String, Set<String>> entry : coverage.entrySet()) {
+      final String className = entry.getKey();
+      final TestHistoryStore.TestClassHistory record = history.getOrCreateTestClass(className);
+      final String fingerprint = current.get(className);
+      if (fingerprint != null && recorded.containsKey(className)) {
+        record.setCoverage(index.encode(entry.getValue()));
+        record.setCoverageFingerprint(fingerprint);
+      } else if (fingerprint == null || !fingerprint.equals(record.getCoverageFingerprint())) {
+        record.setCoverage(null);
+        record.setCoverageFingerprint(null);
+      }
+    }
+    history.setCoverageClassIndex(index.getClasses());
+  }
+
+  private List<String> findAffectedClasses() {
+    final List<String> candidates = new ArrayList<>();
+    for (final String className : testClassHashes.keySet()) {
+      if (classFilter.matches(className)) {
+        candidates.add(className);
+      }
+    }
+
+    final Map<String, String> coverageFingerprints;
+    try {
+      fingerprints =
+          incremental
+              ? analyzer.fingerprintTestClasses(candidates, testClassHashes, history)
+              : new TreeMap<>();
+      coverageFingerprints =
+          affectedOnly
+              ? analyzer.fingerprintCoveredClasses(
+                  readCoverage(candidates), testClassHashes, history)
+              : Map.of();
+    } catch (final IOException e) {
+      if (log.isWarnEnabled()) {
+        log.warn("Could not analyze test dependencies, running all tests: " + e.getMessage());
+      }
+      fingerprints = new TreeMap<>();
+      return null;
+    }
+
+    final List<String> affected = new ArrayList<>();
+    for (final String className : candidates) {
+      final TestHistoryStore.TestClassHistory record = history.findTestClass(className);
+      // A coverage map, where recorded, decides on its own; otherwise fall back to the static one
+      final boolean mapped = coverageFingerprints.containsKey(className);
+      final String fingerprint =
+          mapped ? coverageFingerprints.get(className) : fingerprints.get(className);
+      final String recordedFingerprint =
+          record == null
+              ? null
+              : mapped ? record.getCoverageFingerprint() : record.getGreenFingerprint();
+      if (fingerprint != null && fingerprint.equals(recordedFingerprint)) {
+        upToDateClasses.add(className);
+      } else {
+        affected.add(className);
+      }
+    }
+
+    if (log.isDebugEnabled()) {
+      log.debug(
+          "Incremental analysis: "
+              + affected.size()
+              + " affected, "
+              + upToDateClasses.size()
+              + " up-to-date test classes");
+    }
+    return affected;
+  }
+
+  /** Decodes the stored coverage maps of the candidates that passed at their last run. */
+  private Map<String, Set<String>> readCoverage(final List<String> candidates) {
+    final CoverageIndex index = new CoverageIndex(history.getCoverageClassIndex());
+    final Map<String, Set<String>> coverage = new TreeMap<>();
+    for (final String className : candidates) {
+      final TestHistoryStore.TestClassHistory record = history.findTestClass(className);
+      if (record != null && !record.isLastFailed() && record.getCoverageFingerprint() != null) {
+        final Set<String> covered = decodeCoverage(index, record);
+        if (covered != null) {
+          coverage.put(className, covered);
+        }
+      }
+    }
+    return coverage;
+  }
+
+  @SuppressWarnings("PMD.ReturnEmptyCollectionRatherThanNull") // null means "no usable map"
+  private Set<String> decodeCoverage(
+      final CoverageIndex index, final TestHistoryStore.TestClassHistory record) {
+    if (record == null || record.getCoverage() == null) {
+      return null;
+    }
+    try {
+      return index.decode(record.getCoverage());
+    } catch (final IllegalArgumentException e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Ignoring unreadable coverage map: " + e.getMessage());
+      }
+      return null;
+    }
+  }
+
+  private void loadHistory() {
+    if (history == null) {
+      history = historyStore.load();
+      testClassHashes = hashTestClasses();
+    }
+  }
+
+  private List<String> findPrioritizedClasses() {
+    final List<String> failed = new ArrayList<>();
+    final List<String> changed = new ArrayList<>();
+
+    for (final Map.Entry<String, String> entry : testClassHashes.entrySet()) {
+      final String className = entry.getKey();
+      if (!classFilter.matches(className)) {
+        continue;
+      }
+      final TestHistoryStore.TestClassHistory record = history.findTestClass(className);
+      if (record == null) {
+        changed.add(className);
+      } else if (record.isLastFailed()) {
+        failed.add(className);
+      } else if (!entry.getValue().equals(record.getClassHash())) {
+        changed.add(className);
+      }
+    }
+
+    // Shortest classes first within each group so the first results arrive quickly
+    final Comparator<String> byDuration = Comparator.comparingLong(this::recordedDuration);
+    failed.sort(byDuration);
+    changed.sort(byDuration);
+
+    final List<String> prioritized = new ArrayList<>(failed);
+    prioritized.addAll(changed);
+    return prioritized;
+  }
+
+  private List<String> listTestClasses() {
+    final List<String> classes = new ArrayList<>();
+    for (final String className : testClassHashes.keySet()) {
+      if (classFilter.matches(className)) {
+        classes.add(className);
+      }
+    }
+    return classes;
+  }
+
+  /**
+   * Narrows the scope to the test classes that fit the time budget, recording the rest as deferred.
+   *
+   * @param scope the classes to choose from, or null for all test classes
+   * @return the chosen classes, or the unchanged scope when everything fits
+   */
+  private List<String> applyTimeBudget(final List<String> scope) {
+    final List<String> candidates = scope == null ? listTestClasses() : scope;
+    final long unknownDuration = estimateUnknownDuration();
+    final Map<String, Long> durations = new TreeMap<>();
+    final Map<String, Double> values = new TreeMap<>();
+    for (final String className : candidates) {
+      final TestHistoryStore.TestClassHistory record = history.findTestClass(className);
+      durations.put(
+          className,
+          record == null || record.getRunCount() == 0
+              ? unknownDuration
+              : record.getLastDurationMillis());
+      // Classes in an incremental scope are affected by a change
+      values.put(className, estimateFailureProbability(className, record, scope != null));
+    }
+
+    final int invocations = ORDER_FAILED_FIRST.equals(runOrder) ? 2 : 1;
+    final long available = timeBudgetMillis - history.getInvocationOverheadMillis() * invocations;
+    final List<String> selected =
+        new TimeBudgetSelector(available).select(candidates, durations, values);
+    if (selected.size() == candidates.size()) {
+      return scope;
+    }
+    if (selected.isEmpty() && !candidates.isEmpty()) {
+      // An empty run would pass without testing anything
+      final String mostValuable = findMostValuable(candidates, durations, values);
+      selected.add(mostValuable);
+      if (log.isWarnEnabled()) {
+        log.warn(
+            "Time budget of "
+                + timeBudgetMillis
+                + "ms does not cover the recorded invocation overhead of "
+                + history.getInvocationOverheadMillis() * invocations
+                + "ms and any test class; running only "
+                + mostValuable);
+      }
+    }
+
+    for (final String className : candidates) {
+      if (!selected.contains(className)) {
+        deferredClasses.put(className, durations.get(className));
+      }
+    }
+    if (log.isDebugEnabled()) {
+      log.debug(
+          "Time budget of "
+              + timeBudgetMillis
+              + "ms: running "
+              + selected.size()
+              + ", deferring "
+              + deferredClasses.size()
+              + " test classes");
+    }
+    return selected;
+  }
+
+  /** Finds the class most likely to detect a failure, preferring the shorter one on a tie. */
+  private static String findMostValuable(
+      final List<String> candidates,
+      final Map<String, Long> durations,
+      final Map<String, Double> values) {
+    String mostValuable = candidates.get(0);
+    for (final String className : candidates) {
+      final int comparison = Double.compare(values.get(className), values.get(mostValuable));
+      if (comparison > 0
+          || comparison == 0 && durations.get(className) < durations.get(mostValuable)) {
+        mostValuable = className;
+      }
+    }
+    return mostValuable;
+  }
+
+  /**
+   * Estimates the probability that running a test class detects a failure. Classes that failed last
+   * time or changed since are likely to fail; otherwise the smoothed historical failure rate is
+   * used.
+   */
+  private double estimateFailureProbability(
+      final String className,
+      final TestHistoryStore.TestClassHistory record,
+      final boolean affected) {
+    if (record == null) {
+      return CHANGED_FAILURE_PROBABILITY;
+    }
+    if (record.isLastFailed()) {
+      return FAILED_FAILURE_PROBABILITY;
+    }
+    final double failureRate = (record.getFailureCount() + 1.0) / (record.getRunCount() + 2.0);
+    final boolean changed =
+        affected || !String.valueOf(testClassHashes.get(className)).equals(record.getClassHash());
+    return changed ? Math.max(failureRate, CHANGED_FAILURE_PROBABILITY) : failureRate;
+  }
+
+  /** Estimates the duration of classes that never ran as the median of the recorded durations. */
+  private long estimateUnknownDuration() {
+    final List<Long> recorded = new ArrayList<>();
+    for (final TestHistoryStore.TestClassHistory record : history.getTestClasses().values()) {
+      if (record.getRunCount() > 0) {
+        recorded.add(record.getLastDurationMillis());
+      }
+    }
+    if (recorded.isEmpty()) {
+      return DEFAULT_CLASS_DURATION_MILLIS;
+    }
+    recorded.sort(Comparator.naturalOrder());
+    return recorded.get(recorded.size() / 2);
+  }
+
+  private long recordedDuration(final String className) {
+    final TestHistoryStore.TestClassHistory record = history.findTestClass(className);
+    return record == null ? 0L : record.getLastDurationMillis();
+  }
+
+  private Map<String, String> hashTestClasses() {
+    final String testOutputDirectory = project.getBuild().getTestOutputDirectory();
+    if (testOutputDirectory == null) {
+      return new TreeMap<>();
+    }
+    final Path directory = Paths.get(testOutputDirectory);
+    try {
+      return hasher.hashClassDirectory(directory);
+    } catch (final IOException e) {
+      if (log.isWarnEnabled()) {
+        log.warn("Could not hash test classes in " + directory + ": " + e.getMessage());
+      }
+      return new TreeMap<>();
+    }
+  }
+}
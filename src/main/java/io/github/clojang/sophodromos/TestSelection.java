@@ -0,0 +1,65 @@
+package io.github.clojang.sophodromos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes which test classes a single child Surefire invocation should run. A selection either
+ * runs everything or an explicit list of classes. There is no selection of everything except a
+ * list: any {@code -Dtest} value, exclusions included, replaces the project's Surefire includes and
+ * excludes, so the remainder of a module is listed class by class instead.
+ */
+final class TestSelection {
+
+  private static final String TEST_PROPERTY = "-Dtest=";
+  private static final String ALLOW_EMPTY = "-Dsurefire.failIfNoSpecifiedTests=false";
+
+  private final List<String> includes;
+
+  private TestSelection(final List<String> includes) {
+    this.includes = Collections.unmodifiableList(new ArrayList<>(includes));
+  }
+
+  /**
+   * Creates a selection that runs every test the child Surefire would run by default.
+   *
+   * @return the unrestricted selection
+   */
+  protected static TestSelection all() {
+    return new TestSelection(List.of());
+  }
+
+  /**
+   * Creates a selection that runs only the given test classes.
+   *
+   * @param classNames fully qualified test class names, in the preferred order
+   * @return the restricted selection
+   */
+  protected static TestSelection only(final List<String> classNames) {
+    return new TestSelection(classNames);
+  }
+
+  /**
+   * Gets the explicitly included test classes.
+   *
+   * @return included class names, empty when not restricted to a list
+   */
+  protected List<String> getIncludes() {
+    return includes;
+  }
+
+  /**
+   * Converts the selection into command line arguments for the child Surefire invocation.
+   *
+   * @return the arguments, empty for the unrestricted selection
+   */
+  protected List<String> toSurefireArguments() {
+    final List<String> arguments = new ArrayList<>();
+    if (!includes.isEmpty()) {
+      arguments.add(TEST_PROPERTY + String.join(",", includes));
+      arguments.add(ALLOW_EMPTY);
+    }
+    return arguments;
+  }
+}
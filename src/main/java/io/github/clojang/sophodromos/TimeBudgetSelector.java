@@ -0,0 +1,85 @@
+package io.github.clojang.sophodromos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses the test classes that fit a wall-clock budget. Each class has an estimated duration and a
+ * value, its estimated probability of detecting a failure, and the selection maximizes the total
+ * value within the budget as a 0/1 knapsack over durations rounded to a fixed number of time slots.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn"})
+class TimeBudgetSelector {
+
+  private static final int TIME_SLOTS = 1000;
+
+  private final long budgetMillis;
+
+  /**
+   * Constructs a new TimeBudgetSelector.
+   *
+   * @param budgetMillis the time available for running test classes, in milliseconds
+   */
+  protected TimeBudgetSelector(final long budgetMillis) {
+    this.budgetMillis = budgetMillis;
+  }
+
+  /**
+   * Selects the most valuable test classes that fit the budget.
+   *
+   * @param classes the candidate test classes, in preferred execution order
+   * @param durations estimated duration of each class in milliseconds
+   * @param values estimated failure detection value of each class
+   * @return the selected classes, in the order given
+   */
+  protected List<String> select(
+      final List<String> classes,
+      final Map<String, Long> durations,
+      final Map<String, Double> values) {
+    if (budgetMillis <= 0 || classes.isEmpty()) {
+      return new ArrayList<>();
+    }
+    final long slotMillis = Math.max(1L, (budgetMillis + TIME_SLOTS - 1) / TIME_SLOTS);
+    final int capacity = (int) Math.min(TIME_SLOTS, budgetMillis / slotMillis);
+
+    final int count = classes.size();
+    final int[] weights = new int[count];
+    for (int i = 0; i < count; i++) {
+      final long duration = Math.max(0L, durations.getOrDefault(classes.get(i), 0L));
+      // Round up so that the selection never exceeds the budget
+      weights[i] =
+          (int) Math.min(capacity + 1L, Math.max(1L, (duration + slotMillis - 1) / slotMillis));
+    }
+
+    // best[w]: highest value within w slots so far; taken[i][w]: whether class i is part of it
+    final double[] best = new double[capacity + 1];
+    final boolean[][] taken = new boolean[count][capacity + 1];
+    for (int i = 0; i < count; i++) {
+      final double value = values.getOrDefault(classes.get(i), 0.0);
+      for (int w = capacity; w >= weights[i]; w--) {
+        if (best[w - weights[i]] + value > best[w]) {
+          best[w] = best[w - weights[i]] + value;
+          taken[i][w] = true;
+        }
+      }
+    }
+
+    final boolean[] chosen = new boolean[count];
+    int remaining = capacity;
+    for (int i = count - 1; i >= 0; i--) {
+      if (taken[i][remaining]) {
+        chosen[i] = true;
+        remaining -= weights[i];
+      }
+    }
+
+    final List<String> selected = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      if (chosen[i]) {
+        selected.add(classes.get(i));
+      }
+    }
+    return selected;
+  }
+}
@@ -0,0 +1,422 @@
+package io.github.clojang.sophodromos;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Runs test classes in the warm JVM pool kept by {@link WarmPoolDaemon}, starting the daemon when
+ * it is not running. A run is handed back as a {@link Process} whose output is the relayed test
+ * output, so it is captured exactly like a Surefire process. When the pool cannot run the tests,
+ * for example because no supported test framework is on the classpath, the caller falls back to
+ * Surefire for the rest of the module.
+ */
+@SuppressWarnings({"PMD.LawOfDemeter", "PMD.OnlyOneReturn", "PMD.GuardLogStatement"})
+class WarmPoolClient {
+
+  /** Launcher name under which runs in the pool are recorded and reported. */
+  protected static final String LAUNCHER_NAME = "warm JVM pool";
+
+  private static final String DAEMON_LOG = "pool.log";
+  private static final long STARTUP_TIMEOUT_MILLIS = 10_000;
+  private static final long STARTUP_POLL_MILLIS = 100;
+  // Surefire's late property replacement, resolved only in the JVMs Surefire forks
+  private static final String LATE_REPLACEMENT = "@{";
+  private static final int PIPE_SIZE = 64 * 1024;
+  private static final String PLATFORM_ENGINE = "junit-platform-engine";
+  private static final String PLATFORM_LAUNCHER = "junit-platform-launcher";
+
+  private final MavenProject project;
+  private final Path socketPath;
+  private final long idleTimeoutMillis;
+  private final int memoryCapMb;
+  private final int heapMb;
+  private final boolean sharedArchive;
+  private final Log log;
+  private final List<PooledProcess> started = new ArrayList<>();
+  private boolean unavailable;
+
+  /**
+   * Constructs a new WarmPoolClient.
+   *
+   * @param project the Maven project
+   * @param socketPath the daemon's Unix-domain socket
+   * @param idleTimeoutMillis time after which idle warm JVMs and the daemon stop
+   * @param memoryCapMb maximum total heap of all warm JVMs
+   * @param heapMb maximum heap of a single warm JVM
+   * @param sharedArchive whether warm JVMs start from a class data sharing archive of the classpath
+   * @param log Maven logger
+   */
+  protected WarmPoolClient(
+      final MavenProject project,
+      final Path socketPath,
+      final long idleTimeoutMillis,
+      final int memoryCapMb,
+      final int heapMb,
+      final boolean sharedArchive,
+      final Log log) {
+    this.project = project;
+    this.socketPath = socketPath.toAbsolutePath();
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.memoryCapMb = memoryCapMb;
+    this.heapMb = heapMb;
+    this.sharedArchive = sharedArchive;
+    this.log = log;
+  }
+
+  /**
+   * Starts running the given test classes in a warm JVM.
+   *
+   * @param testClasses the test classes to run, in order
+   * @return the running tests as a process, or null if the pool cannot run them
+   */
+  protected Process start(final List<String> testClasses) {
+    if (unavailable) {
+      return null;
+    }
+    final Path pluginJar = CoverageRecorder.findPluginJar();
+    if (pluginJar == null) {
+      return fallBack("the warm JVM pool needs the packaged plugin jar");
+    }
+
+    final String argLine = project.getProperties().getProperty("argLine", "");
+    if (argLine.contains(LATE_REPLACEMENT)) {
+      return fallBack("the argLine has @{...} placeholders, which only Surefire replaces");
+    }
+    final WarmPoolDaemon.Request request;
+    try {
+      request = createRequest(pluginJar, tokenizeArgLine(argLine), testClasses);
+    } catch (final DependencyResolutionRequiredException e) {
+      return fallBack("the test classpath is not resolved");
+    } catch (final IllegalArgumentException e) {
+      return fallBack(e.getMessage());
+    }
+
+    SocketChannel channel = null;
+    try {
+      channel = connect(pluginJar);
+      if (channel == null) {
+        return fallBack("the daemon did not start, see " + socketPath.resolveSibling(DAEMON_LOG));
+      }
+      final OutputStream output = Channels.newOutputStream(channel);
+      output.write((request.toLine() + '\n').getBytes(StandardCharsets.UTF_8));
+      output.flush();
+
+      final InputStream input = Channels.newInputStream(channel);
+      final String status = readLine(input);
+      if (WarmPoolDaemon.STATUS_OK.equals(status)) {
+        final PooledProcess process = new PooledProcess(channel, input);
+        started.add(process);
+        return process;
+      }
+      channel.close();
+      return fallBack(
+          status == null
+              ? "the daemon closed the connection"
+              : status.substring(WarmPoolDaemon.STATUS_UNAVAILABLE.length()).trim());
+    } catch (final IOException e) {
+      closeQuietly(channel);
+      return fallBack(e.getMessage());
+    }
+  }
+
+  /**
+   * Gets the time that class data sharing archives saved in the runs started so far, as measured by
+   * the daemon when a warm JVM started from an archive.
+   *
+   * @return the saved milliseconds, 0 if no run started a JVM from an archive
+   */
+  protected long getSharedArchiveSavedMillis() {
+    long savedMillis = 0;
+    for (final PooledProcess process : started) {
+      savedMillis += process.sharedArchiveSavedMillis;
+    }
+    return savedMillis;
+  }
+
+  private Process fallBack(final String reason) {
+    unavailable = true;
+    if (log.isWarnEnabled()) {
+      log.warn("Warm JVM pool unavailable, running tests with Surefire: " + reason);
+    }
+    return null;
+  }
+
+  /**
+   * Splits the test classpath: jars stay loaded in the warm JVM, class directories (the module's
+   * own and those of reactor siblings) change between runs and are loaded afresh each time.
+   */
+  private WarmPoolDaemon.Request createRequest(
+      final Path pluginJar, final List<String> jvmOptions, final List<String> testClasses)
+      throws DependencyResolutionRequiredException {
+    final List<String> jars = new ArrayList<>();
+    final List<String> directories = new ArrayList<>();
+    for (final String element : project.getTestClasspathElements()) {
+      final Path path = Paths.get(element).toAbsolutePath();
+      if (Files.isDirectory(path)) {
+        directories.add(path.toString());
+      } else if (Files.isRegularFile(path)) {
+        jars.add(path.toString());
+      }
+    }
+    addPlatformLauncher(jars);
+    jars.add(pluginJar.toString());
+
+    return new WarmPoolDaemon.Request(
+        project.getGroupId() + ":" + project.getArtifactId(),
+        project.getBasedir().getAbsolutePath(),
+        String.join(File.pathSeparator, jars),
+        String.join(File.pathSeparator, directories),
+        jvmOptions,
+        heapMb,
+        memoryCapMb,
+        idleTimeoutMillis,
+        sharedArchive,
+        testClasses);
+  }
+
+  /**
+   * Splits an argLine into JVM options like Surefire's command line does: at whitespace outside
+   * quotes, with single or double quotes grouping an option such as {@code -Dname="a b"} and
+   * removed from it.
+   *
+   * @param argLine the argLine
+   * @return the JVM options, empty for a blank argLine
+   * @throws IllegalArgumentException if a quote is not closed
+   */
+  protected static List<String> tokenizeArgLine(final String argLine) {
+    final List<String> options = new ArrayList<>();
+    final StringBuilder option = new StringBuilder();
+    boolean inOption = false;
+    char quote = 0;
+    for (int index = 0; index < argLine.length(); index++) {
+      final char next = argLine.charAt(index);
+      if (quote != 0) {
+        if (next == quote) {
+          quote = 0;
+        } else {
+          option.append(next);
+        }
+      } else if (next == '"' || next == '\'') {
+        quote = next;
+        inOption = true;
+      } else if (Character.isWhitespace(next)) {
+        if (inOption) {
+          options.add(option.toString());
+          option.setLength(0);
+          inOption = false;
+        }
+      } else {
+        option.append(next);
+        inOption = true;
+      }
+    }
+    if (quote != 0) {
+      throw new IllegalArgumentException("the argLine has an unbalanced " + quote + " quote");
+    }
+    if (inOption) {
+      options.add(option.toString());
+    }
+    return options;
+  }
+
+  /**
+   * Adds the JUnit Platform launcher, which Surefire provides itself and projects therefore rarely
+   * declare. It is taken from the local repository next to the platform engine of the same version,
+   * where Surefire will have resolved it.
+   *
+   * @param jars the classpath jars, extended in place
+   */
+  protected static void addPlatformLauncher(final List<String> jars) {
+    Path engine = null;
+    for (final String jar : jars) {
+      final Path path = Paths.get(jar);
+      final String fileName = path.getFileName().toString();
+      if (fileName.startsWith(PLATFORM_LAUNCHER + '-')) {
+        return;
+      }
+      if (fileName.startsWith(PLATFORM_ENGINE + '-')) {
+        engine = path;
+      }
+    }
+    if (engine == null || engine.getParent() == null || engine.getParent().getParent() == null) {
+      return;
+    }
+    // The engine jar is in <repository>/org/junit/platform/junit-platform-engine/<version>
+    final String version = engine.getParent().getFileName().toString();
+    final Path launcher =
+        engine
+            .getParent()
+            .getParent()
+            .resolveSibling(PLATFORM_LAUNCHER)
+            .resolve(version)
+            .resolve(PLATFORM_LAUNCHER + '-' + version + ".jar");
+    if (Files.isRegularFile(launcher)) {
+      jars.add(launcher.toString());
+    }
+  }
+
+  private SocketChannel connect(final Path pluginJar) throws IOException {
+    SocketChannel channel = tryConnect();
+    if (channel != null) {
+      return channel;
+    }
+
+    Files.createDirectories(socketPath.getParent());
+    new ProcessBuilder(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp",
+            pluginJar.toString(),
+            WarmPoolDaemon.class.getName(),
+            socketPath.toString())
+        .redirectErrorStream(true)
+        .redirectOutput(
+            ProcessBuilder.Redirect.appendTo(socketPath.resolveSibling(DAEMON_LOG).toFile()))
+        .start();
+    if (log.isDebugEnabled()) {
+      log.debug("Started warm JVM pool daemon on " + socketPath);
+    }
+
+    final long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+    while (channel == null && System.currentTimeMillis() < deadline) {
+      try {
+        Thread.sleep(STARTUP_POLL_MILLIS);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+      channel = tryConnect();
+    }
+    return channel;
+  }
+
+  private SocketChannel tryConnect() {
+    if (!Files.exists(socketPath)) {
+      return null;
+    }
+    try {
+      return SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+    } catch (final IOException e) {
+      // Stale socket of a daemon that has exited
+      return null;
+    }
+  }
+
+  /** Reads the status line byte by byte so that no relayed output is buffered away. */
+  private static String readLine(final InputStream input) throws IOException {
+    final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int next = input.read();
+    while (next != -1 && next != '\n') {
+      line.write(next);
+      next = input.read();
+    }
+    return next == -1 && line.size() == 0 ? null : line.toString(StandardCharsets.UTF_8);
+  }
+
+  private static void closeQuietly(final SocketChannel channel) {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (final IOException e) {
+        // Nothing left to clean up
+      }
+    }
+  }
+
+  /** A test run in the warm JVM pool, presented as a process writing the test output. */
+  @SuppressWarnings("PMD.DoNotUseThreads") // Relays the socket while the output is captured
+  private static final class PooledProcess extends Process {
+    private final SocketChannel channel;
+    private final PipedInputStream output = new PipedInputStream(PIPE_SIZE);
+    private final Thread relay;
+    private volatile int exitCode = 1;
+    private volatile long sharedArchiveSavedMillis;
+
+    private PooledProcess(final SocketChannel channel, final InputStream input) throws IOException {
+      super();
+      this.channel = channel;
+      final PipedOutputStream sink = new PipedOutputStream(output);
+      this.relay = new Thread(() -> relay(input, sink), "sophodromos-pool-relay");
+      relay.setDaemon(true);
+      relay.start();
+    }
+
+    private void relay(final InputStream input, final PipedOutputStream sink) {
+      try (BufferedReader reader =
+              new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+          OutputStream out = sink) {
+        String line = reader.readLine();
+        while (line != null) {
+          if (line.startsWith(WarmPoolDaemon.EXIT_PREFIX)) {
+            exitCode = Integer.parseInt(line.substring(WarmPoolDaemon.EXIT_PREFIX.length()));
+          } else if (line.startsWith(WarmPoolDaemon.SHARED_ARCHIVE_PREFIX)) {
+            sharedArchiveSavedMillis =
+                Long.parseLong(line.substring(WarmPoolDaemon.SHARED_ARCHIVE_PREFIX.length()));
+          } else {
+            out.write((line + '\n').getBytes(StandardCharsets.UTF_8));
+            out.flush();
+          }
+          line = reader.readLine();
+        }
+      } catch (final IOException | NumberFormatException e) {
+        // The run ends with exit code 1 unless the daemon reported otherwise
+      } finally {
+        closeQuietly(channel);
+      }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return output;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      // The worker's standard error is merged into its output
+      return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+      relay.join();
+      return exitCode;
+    }
+
+    @Override
+    public int exitValue() {
+      if (relay.isAlive()) {
+        throw new IllegalThreadStateException("Tests are still running in the warm JVM pool");
+      }
+      return exitCode;
+    }
+
+    @Override
+    public void destroy() {
+      // The daemon stops the worker when the connection is closed mid-run
+      closeQuietly(channel);
+    }
+  }
+}
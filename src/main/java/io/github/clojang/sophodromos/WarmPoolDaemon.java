@@ -0,0 +1,681 @@
+package io.github.clojang.sophodromos;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Long-lived local daemon keeping warm test JVMs ({@link WarmPoolWorker}) for each module. Clients
+ * connect over a Unix-domain socket and send one {@link Request} per connection; the daemon answers
+ * with a status line, relays the worker's output and ends with an exit line. Idle workers are
+ * stopped after the idle timeout, the number of live workers is limited by a memory cap, and a
+ * module's workers are replaced when its dependency classpath or JVM options change. The daemon
+ * exits once it has had no workers and no requests for the idle timeout. On request, workers start
+ * from a class data sharing archive of their classpath ({@link SharedArchiveCache}). A client that
+ * disconnects in the middle of a run, for example after a timeout, stops the worker running it.
+ */
+@SuppressWarnings({
+  "PMD.SystemPrintln",
+  "PMD.LawOfDemeter",
+  "PMD.OnlyOneReturn",
+  "PMD.DoNotUseThreads",
+  "PMD.DoNotTerminateVM"
+})
+// Standalone process: diagnostics go to the daemon log through standard error
+public final class WarmPoolDaemon {
+
+  /** Status line sent when the request is being run. */
+  static final String STATUS_OK = "OK";
+
+  /** Status line prefix sent when the request cannot be run, followed by the reason. */
+  static final String STATUS_UNAVAILABLE = "UNAVAILABLE";
+
+  /** Last line of a response, followed by the exit code of the run. */
+  static final String EXIT_PREFIX = "#sophodromos-exit ";
+
+  /**
+   * Line sent before the exit line when a worker started from a class data sharing archive,
+   * followed by the milliseconds its first run saved compared with the worker that created it.
+   */
+  static final String SHARED_ARCHIVE_PREFIX = "#sophodromos-shared-archive-saved ";
+
+  /** Surefire's report of a forked JVM that exited in the middle of a run. */
+  static final String WORKER_CRASHED =
+      "[ERROR] The forked VM terminated without properly saying goodbye."
+          + " VM crash or System.exit called?";
+
+  private static final long REAPER_INTERVAL_MILLIS = 5000;
+  private static final long ARCHIVE_TIMEOUT_MILLIS = 60_000;
+  private static final double HEAP_RECYCLE_RATIO = 0.75;
+  private static final String ARCHIVE_DIRECTORY = "cds";
+
+  private final SharedArchiveCache archiveCache;
+  private final List<Thread> archiveWriters = new ArrayList<>();
+  private final Map<String, Deque<Worker>> idleWorkers = new HashMap<>();
+  private final Set<Worker> busyWorkers = new HashSet<>();
+  private final Map<String, String> classpathHashes = new HashMap<>();
+  private int liveWorkers;
+  private int activeRequests;
+  private long idleTimeoutMillis = Long.MAX_VALUE;
+  private long lastActivity = System.currentTimeMillis();
+
+  private WarmPoolDaemon(final SharedArchiveCache archiveCache) {
+    this.archiveCache = archiveCache;
+  }
+
+  /**
+   * Runs the daemon until it has been idle for the idle timeout of the last request.
+   *
+   * @param args the path of the Unix-domain socket to listen on
+   * @throws IOException if the socket cannot be bound
+   */
+  public static void main(final String[] args) throws IOException {
+    final Path socketPath = Paths.get(args[0]).toAbsolutePath();
+    final Path lockFile = socketPath.resolveSibling(socketPath.getFileName() + ".lock");
+    try (FileChannel lockChannel =
+            FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = lockChannel.tryLock()) {
+      if (lock == null) {
+        // Another daemon started concurrently and owns the socket
+        return;
+      }
+      Files.deleteIfExists(socketPath);
+      final WarmPoolDaemon daemon =
+          new WarmPoolDaemon(new SharedArchiveCache(socketPath.resolveSibling(ARCHIVE_DIRECTORY)));
+      Runtime.getRuntime().addShutdownHook(new Thread(daemon::stopAllWorkers));
+      try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        System.err.println("Warm JVM pool listening on " + socketPath);
+        daemon.serve(server);
+      } finally {
+        Files.deleteIfExists(socketPath);
+      }
+      daemon.awaitArchiveWriters();
+    }
+    System.exit(0);
+  }
+
+  private void serve(final ServerSocketChannel server) throws IOException {
+    final Thread reaper =
+        new Thread(
+            () -> {
+              try {
+                while (!reapIdleWorkers()) {
+                  Thread.sleep(REAPER_INTERVAL_MILLIS);
+                }
+                server.close();
+              } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+              } catch (final IOException e) {
+                System.err.println("Could not close the warm JVM pool socket: " + e);
+              }
+            },
+            "sophodromos-pool-reaper");
+    reaper.setDaemon(true);
+    reaper.start();
+
+    while (true) {
+      final SocketChannel client;
+      try {
+        client = server.accept();
+      } catch (final ClosedChannelException e) {
+        System.err.println("Warm JVM pool idle, shutting down");
+        return;
+      }
+      final Thread handler = new Thread(() -> handle(client), "sophodromos-pool-request");
+      handler.setDaemon(true);
+      handler.start();
+    }
+  }
+
+  private void handle(final SocketChannel client) {
+    try (SocketChannel channel = client;
+        BufferedReader reader =
+            new BufferedReader(
+                new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+        Writer writer =
+            new BufferedWriter(
+                new OutputStreamWriter(
+                    Channels.newOutputStream(channel), StandardCharsets.UTF_8))) {
+      final Request request = Request.parse(reader.readLine());
+      if (request == null) {
+        writeLine(writer, STATUS_UNAVAILABLE + " malformed request");
+        return;
+      }
+      beginRequest();
+      try {
+        run(request, channel, writer);
+      } finally {
+        endRequest();
+      }
+    } catch (final IOException e) {
+      System.err.println("Warm JVM pool request failed: " + e);
+    }
+  }
+
+  private void run(final Request request, final SocketChannel channel, final Writer writer)
+      throws IOException {
+    final String classpathHash = request.hashClasspath();
+    final Worker worker;
+    try {
+      worker = acquire(request, classpathHash);
+    } catch (final IOException e) {
+      writeLine(writer, STATUS_UNAVAILABLE + ' ' + e.getMessage());
+      return;
+    }
+    if (worker == null) {
+      writeLine(writer, STATUS_UNAVAILABLE + " every warm JVM within the memory cap is busy");
+      return;
+    }
+
+    final AtomicBoolean finished = new AtomicBoolean();
+    boolean completed = false;
+    try {
+      watchClient(channel, worker, finished);
+      writeLine(writer, STATUS_OK);
+      completed = worker.runTests(request, writer);
+      writeLine(writer, EXIT_PREFIX + (completed ? 0 : 1));
+    } finally {
+      finished.set(true);
+      release(request.module, classpathHash, worker, completed);
+    }
+  }
+
+  /**
+   * Stops the worker when the client disconnects before the run has finished, so that a run the
+   * client gave up on does not keep a slot of the memory cap. The client sends nothing after its
+   * request, so the read only returns at the end of the connection. The run then ends as a crashed
+   * worker and is released like one.
+   */
+  private static void watchClient(
+      final SocketChannel channel, final Worker worker, final AtomicBoolean finished) {
+    // Reads the channel itself: a channel input stream would block the writer while waiting
+    final Thread watcher =
+        new Thread(
+            () -> {
+              final ByteBuffer buffer = ByteBuffer.allocate(64);
+              try {
+                while (channel.read(buffer) >= 0) {
+                  buffer.clear();
+                }
+              } catch (final IOException e) {
+                // Closed by the client or, after the run, by the request handler
+              }
+              if (!finished.get()) {
+                System.err.println("Client disconnected, stopping its warm JVM");
+                worker.kill();
+              }
+            },
+            "sophodromos-pool-client");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  /**
+   * Takes an idle worker of the module or starts a new one if the memory cap allows it.
+   *
+   * @return the worker, or null if the cap is reached and no idle worker can be stopped
+   */
+  private Worker acquire(final Request request, final String classpathHash) throws IOException {
+    synchronized (this) {
+      idleTimeoutMillis = request.idleTimeoutMillis;
+      final Deque<Worker> idle =
+          idleWorkers.computeIfAbsent(request.module, module -> new ArrayDeque<>());
+      if (!classpathHash.equals(classpathHashes.put(request.module, classpathHash))) {
+        // Workers of the previous classpath can no longer run this module's tests
+        while (!idle.isEmpty()) {
+          stop(idle.removeFirst());
+        }
+      }
+      Worker worker = idle.pollFirst();
+      while (worker != null && !worker.isAlive()) {
+        stop(worker);
+        worker = idle.pollFirst();
+      }
+      if (worker != null) {
+        busyWorkers.add(worker);
+        return worker;
+      }
+
+      final int maxWorkers = Math.max(1, request.memoryCapMb / request.heapMb);
+      while (liveWorkers >= maxWorkers && stopLeastRecentlyUsed()) {
+        // Make room for a worker of this module
+      }
+      if (liveWorkers >= maxWorkers) {
+        return null;
+      }
+      liveWorkers++;
+    }
+
+    try {
+      final Worker worker = Worker.start(request, classpathHash, archiveCache);
+      synchronized (this) {
+        busyWorkers.add(worker);
+      }
+      return worker;
+    } catch (final IOException e) {
+      synchronized (this) {
+        liveWorkers--;
+      }
+      throw e;
+    }
+  }
+
+  private synchronized void release(
+      final String module,
+      final String classpathHash,
+      final Worker worker,
+      final boolean completed) {
+    busyWorkers.remove(worker);
+    if (completed
+        && worker.isAlive()
+        && !worker.isHeapExhausted()
+        && classpathHash.equals(classpathHashes.get(module))) {
+      worker.lastUsed = System.currentTimeMillis();
+      idleWorkers.computeIfAbsent(module, name -> new ArrayDeque<>()).addFirst(worker);
+    } else {
+      stop(worker);
+    }
+  }
+
+  private boolean stopLeastRecentlyUsed() {
+    Deque<Worker> oldestQueue = null;
+    Worker oldest = null;
+    for (final Deque<Worker> idle : idleWorkers.values()) {
+      final Worker candidate = idle.peekLast();
+      if (candidate != null && (oldest == null || candidate.lastUsed < oldest.lastUsed)) {
+        oldest = candidate;
+        oldestQueue = idle;
+      }
+    }
+    if (oldestQueue == null) {
+      return false;
+    }
+    stop(oldestQueue.removeLast());
+    return true;
+  }
+
+  /**
+   * Stops workers that have been idle for the idle timeout.
+   *
+   * @return true if the daemon itself has been idle long enough to exit
+   */
+  private synchronized boolean reapIdleWorkers() {
+    final long now = System.currentTimeMillis();
+    for (final Deque<Worker> idle : idleWorkers.values()) {
+      final Iterator<Worker> workers = idle.iterator();
+      while (workers.hasNext()) {
+        final Worker worker = workers.next();
+        if (now - worker.lastUsed >= idleTimeoutMillis || !worker.isAlive()) {
+          workers.remove();
+          stop(worker);
+        }
+      }
+    }
+    return activeRequests == 0 && liveWorkers == 0 && now - lastActivity >= idleTimeoutMillis;
+  }
+
+  private synchronized void stopAllWorkers() {
+    // Busy workers would otherwise outlive the daemon, still running their tests
+    for (final Worker worker : busyWorkers) {
+      worker.kill();
+    }
+    for (final Deque<Worker> idle : idleWorkers.values()) {
+      while (!idle.isEmpty()) {
+        stop(idle.removeFirst());
+      }
+    }
+  }
+
+  private void stop(final Worker worker) {
+    liveWorkers--;
+    if (worker.archive == null || !worker.archive.isCreating()) {
+      worker.process.destroyForcibly();
+      return;
+    }
+    // The archive is written when the worker exits normally, at the end of its request loop
+    final Thread writer =
+        new Thread(
+            () -> {
+              worker.finish();
+              worker.archive.commit();
+            },
+            "sophodromos-pool-archive");
+    writer.setDaemon(true);
+    writer.start();
+    archiveWriters.add(writer);
+  }
+
+  /** Lets workers still writing a class data sharing archive finish before the daemon exits. */
+  private void awaitArchiveWriters() {
+    final List<Thread> writers;
+    synchronized (this) {
+      writers = new ArrayList<>(archiveWriters);
+    }
+    for (final Thread writer : writers) {
+      try {
+        writer.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private synchronized void beginRequest() {
+    activeRequests++;
+    lastActivity = System.currentTimeMillis();
+  }
+
+  private synchronized void endRequest() {
+    activeRequests--;
+    lastActivity = System.currentTimeMillis();
+  }
+
+  private static void writeLine(final Writer writer, final String line) throws IOException {
+    writer.write(line);
+    writer.write('\n');
+    writer.flush();
+  }
+
+  /** A pooled test JVM and the pipes to talk to it. */
+  private static final class Worker {
+    private final Process process;
+    private final BufferedReader output;
+    private final Writer input;
+    private final SharedArchiveCache.Archive archive;
+    private final long startedNanos = System.nanoTime();
+    private boolean firstRun = true;
+    private long lastUsed = System.currentTimeMillis();
+    private long usedHeap;
+    private long maxHeap = Long.MAX_VALUE;
+
+    private Worker(final Process process, final SharedArchiveCache.Archive archive) {
+      this.process = process;
+      this.archive = archive;
+      this.output =
+          new BufferedReader(
+              new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+      this.input =
+          new BufferedWriter(
+              new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static Worker start(
+        final Request request, final String classpathHash, final SharedArchiveCache archiveCache)
+        throws IOException {
+      final SharedArchiveCache.Archive archive =
+          request.sharedArchive
+              ? archiveCache.open(request.module, request.workerClasspath, request.jvmOptions)
+              : null;
+      final List<String> command = new ArrayList<>();
+      command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+      command.add("-Xmx" + request.heapMb + "m");
+      command.add("-Dbasedir=" + request.workingDirectory);
+      command.addAll(request.jvmOptions);
+      if (archive != null) {
+        command.addAll(archive.getJvmOptions());
+      }
+      command.add("-cp");
+      command.add(request.workerClasspath);
+      command.add(WarmPoolWorker.class.getName());
+
+      final Process process =
+          new ProcessBuilder(command)
+              .directory(new File(request.workingDirectory))
+              .redirectErrorStream(true)
+              .start();
+      final Worker worker = new Worker(process, archive);
+      String line = worker.output.readLine();
+      while (line != null && !line.startsWith(WarmPoolWorker.READY)) {
+        if (line.startsWith(WarmPoolWorker.UNSUPPORTED)) {
+          process.destroyForcibly();
+          throw new IOException(line.substring(WarmPoolWorker.UNSUPPORTED.length()).trim());
+        }
+        // JVM warnings printed before the worker is ready
+        System.err.println(line);
+        line = worker.output.readLine();
+      }
+      if (line == null) {
+        throw new IOException("the warm JVM exited during startup, see " + command);
+      }
+      System.err.println(
+          "Started warm JVM for " + request.module + " with classpath " + classpathHash);
+      return worker;
+    }
+
+    /**
+     * Runs the requested test classes and relays the output to the client.
+     *
+     * @return true if the worker completed the run and can be reused
+     */
+    private boolean runTests(final Request request, final Writer client) throws IOException {
+      input.write(request.moduleDirectories);
+      input.write(WarmPoolWorker.FIELD_SEPARATOR);
+      input.write(String.join(",", request.testClasses));
+      input.write('\n');
+      input.flush();
+
+      String line = output.readLine();
+      while (line != null && !line.startsWith(WarmPoolWorker.DONE)) {
+        writeLine(client, line);
+        line = output.readLine();
+      }
+      if (line == null) {
+        writeLine(client, WORKER_CRASHED);
+        return false;
+      }
+      final String[] heap = line.substring(WarmPoolWorker.DONE.length()).trim().split(" ");
+      usedHeap = Long.parseLong(heap[0]);
+      maxHeap = Long.parseLong(heap[1]);
+      if (firstRun && archive != null) {
+        // The archive pays off while classes are loaded: at startup and during the first run
+        final Long savedMillis =
+            archive.recordFirstRun(
+                request.testClasses, (System.nanoTime() - startedNanos) / 1_000_000L);
+        if (savedMillis != null) {
+          writeLine(client, SHARED_ARCHIVE_PREFIX + savedMillis);
+        }
+      }
+      firstRun = false;
+      return true;
+    }
+
+    /** Ends the request loop and waits for the worker to exit, stopping it if it takes too long. */
+    private void finish() {
+      try {
+        input.close();
+        if (!process.waitFor(ARCHIVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+          process.destroyForcibly();
+        }
+      } catch (final IOException e) {
+        process.destroyForcibly();
+      } catch (final InterruptedException e) {
+        process.destroyForcibly();
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private boolean isAlive() {
+      return process.isAlive();
+    }
+
+    /** Stops the worker and any processes its tests started. */
+    private void kill() {
+      process.descendants().forEach(ProcessHandle::destroyForcibly);
+      process.destroyForcibly();
+    }
+
+    /** Recycles workers whose live heap keeps growing, for example through leaked static state. */
+    private boolean isHeapExhausted() {
+      return usedHeap > maxHeap * HEAP_RECYCLE_RATIO;
+    }
+  }
+
+  /**
+   * A request to run test classes, sent as a single line of tab-separated fields. Lists within a
+   * field are separated by the path separator (class directories and the worker classpath), the
+   * unit separator character (JVM options) or commas (test classes).
+   */
+  static final class Request {
+    private static final String RUN = "RUN";
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String OPTION_SEPARATOR = "\u001f";
+    private static final int FIELD_COUNT = 11;
+
+    private final String module;
+    private final String workingDirectory;
+    private final String workerClasspath;
+    private final String moduleDirectories;
+    private final List<String> jvmOptions;
+    private final int heapMb;
+    private final int memoryCapMb;
+    private final long idleTimeoutMillis;
+    private final boolean sharedArchive;
+    private final List<String> testClasses;
+
+    /**
+     * Creates a request.
+     *
+     * @param module the module's identifier, e.g. groupId:artifactId
+     * @param workingDirectory the module's base directory, the worker's working directory
+     * @param workerClasspath the dependency jars, kept loaded by the worker
+     * @param moduleDirectories the class directories, loaded afresh for every run
+     * @param jvmOptions options for starting the worker JVM
+     * @param heapMb maximum heap of a worker JVM
+     * @param memoryCapMb maximum total heap of all worker JVMs
+     * @param idleTimeoutMillis time after which idle workers and the daemon stop
+     * @param sharedArchive whether workers start from a class data sharing archive
+     * @param testClasses the test classes to run, in order
+     */
+    @SuppressWarnings("PMD.ExcessiveParameterList") // Mirrors the wire format
+    protected Request(
+        final String module,
+        final String workingDirectory,
+        final String workerClasspath,
+        final String moduleDirectories,
+        final List<String> jvmOptions,
+        final int heapMb,
+        final int memoryCapMb,
+        final long idleTimeoutMillis,
+        final boolean sharedArchive,
+        final List<String> testClasses) {
+      this.module = module;
+      this.workingDirectory = workingDirectory;
+      this.workerClasspath = workerClasspath;
+      this.moduleDirectories = moduleDirectories;
+      this.jvmOptions = List.copyOf(jvmOptions);
+      this.heapMb = Math.max(1, heapMb);
+      this.memoryCapMb = memoryCapMb;
+      this.idleTimeoutMillis = idleTimeoutMillis;
+      this.sharedArchive = sharedArchive;
+      this.testClasses = List.copyOf(testClasses);
+    }
+
+    /**
+     * Formats the request as a protocol line.
+     *
+     * @return the line, without line terminator
+     */
+    protected String toLine() {
+      return String.join(
+          FIELD_SEPARATOR,
+          RUN,
+          module,
+          workingDirectory,
+          workerClasspath,
+          moduleDirectories,
+          String.join(OPTION_SEPARATOR, jvmOptions),
+          Integer.toString(heapMb),
+          Integer.toString(memoryCapMb),
+          Long.toString(idleTimeoutMillis),
+          Boolean.toString(sharedArchive),
+          String.join(",", testClasses));
+    }
+
+    private static Request parse(final String line) {
+      if (line == null) {
+        return null;
+      }
+      final String[] fields = line.split(FIELD_SEPARATOR, -1);
+      if (fields.length != FIELD_COUNT || !RUN.equals(fields[0])) {
+        return null;
+      }
+      try {
+        return new Request(
+            fields[1],
+            fields[2],
+            fields[3],
+            fields[4],
+            fields[5].isEmpty() ? List.of() : List.of(fields[5].split(OPTION_SEPARATOR)),
+            Integer.parseInt(fields[6]),
+            Integer.parseInt(fields[7]),
+            Long.parseLong(fields[8]),
+            Boolean.parseBoolean(fields[9]),
+            fields[10].isEmpty() ? List.of() : List.of(fields[10].split(",")));
+      } catch (final NumberFormatException e) {
+        return null;
+      }
+    }
+
+    /** Hashes what a started worker cannot pick up: its jars, JVM options and heap size. */
+    private String hashClasspath() {
+      final StringBuilder content = new StringBuilder();
+      content.append(System.getProperty("java.home")).append('\n');
+      content.append(heapMb).append('\n');
+      content.append(jvmOptions).append('\n');
+      for (final String element : workerClasspath.split(File.pathSeparator)) {
+        content.append(element);
+        try {
+          final BasicFileAttributes attributes =
+              Files.readAttributes(Paths.get(element), BasicFileAttributes.class);
+          content.append(' ').append(attributes.size());
+          content.append(' ').append(attributes.lastModifiedTime().toMillis());
+        } catch (final IOException e) {
+          content.append(" missing");
+        }
+        content.append('\n');
+      }
+      try {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return HexFormat.of()
+            .formatHex(digest.digest(content.toString().getBytes(StandardCharsets.UTF_8)));
+      } catch (final NoSuchAlgorithmException e) {
+        throw new IllegalStateException("SHA-256 is not available", e);
+      }
+    }
+  }
+}
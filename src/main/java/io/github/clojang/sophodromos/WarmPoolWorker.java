@@ -0,0 +1,506 @@
+package io.github.clojang.sophodromos;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Runs test classes inside a warm JVM started by {@link WarmPoolDaemon}. Dependency jars are on the
+ * worker's own classpath and stay loaded between runs, while the module's class directories get a
+ * fresh class loader for every run so that recompiled classes are picked up. Results are printed in
+ * Surefire's console format, so the usual output parsing applies. Tests run on the JUnit Platform
+ * when its launcher is available and on JUnit 4 otherwise.
+ *
+ * <p>Started with {@link #ISOLATED}, the worker itself has no test classpath: every run names the
+ * module's complete test classpath and gets a class loader of its own over it, so that the tests of
+ * several modules can run one after another in the same JVM without seeing each other's classes.
+ */
+@SuppressWarnings({
+  "PMD.SystemPrintln",
+  "PMD.LawOfDemeter",
+  "PMD.OnlyOneReturn",
+  "PMD.AvoidCatchingThrowable",
+  "PMD.AvoidCatchingGenericException"
+})
+// The worker talks to the daemon through standard input and output and must survive any test
+public final class WarmPoolWorker {
+
+  /** First line printed once the worker is ready for requests. */
+  static final String READY = "#sophodromos-ready";
+
+  /** First line printed instead of {@link #READY} when no supported test framework is present. */
+  static final String UNSUPPORTED = "#sophodromos-unsupported";
+
+  /** Line ending every run, followed by the used and maximum heap in bytes. */
+  static final String DONE = "#sophodromos-done";
+
+  /** Separates the module class directories from the test classes in a run request. */
+  static final char FIELD_SEPARATOR = '\t';
+
+  /**
+   * Argument starting the worker without a test classpath of its own. Requests then consist of the
+   * module base directory, the complete test classpath and the test classes.
+   */
+  static final String ISOLATED = "--isolated";
+
+  private static final String PLATFORM_LAUNCHER =
+      "org.junit.platform.launcher.core.LauncherFactory";
+  private static final String JUNIT4_CORE = "org.junit.runner.JUnitCore";
+  private static final String SUCCESSFUL = "SUCCESSFUL";
+  private static final String ABORTED = "ABORTED";
+
+  private final PrintStream out;
+  private final boolean isolated;
+  private boolean platform;
+  private int testsRun;
+  private int failures;
+  private int errors;
+  private int skipped;
+
+  private WarmPoolWorker(final PrintStream out, final boolean isolated, final boolean platform) {
+    this.out = out;
+    this.isolated = isolated;
+    this.platform = platform;
+  }
+
+  /**
+   * Reads run requests from standard input until it is closed.
+   *
+   * @param args {@link #ISOLATED} when every request names its complete test classpath
+   * @throws IOException if standard input cannot be read
+   */
+  public static void main(final String[] args) throws IOException {
+    // Keep the original stream, tests may redirect System.out
+    final PrintStream out =
+        new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+    final boolean isolated = args.length > 0 && ISOLATED.equals(args[0]);
+    final ClassLoader systemLoader = getSystemClassLoader();
+    final boolean platform = !isolated && isAvailable(PLATFORM_LAUNCHER, systemLoader);
+    if (!isolated && !platform && !isAvailable(JUNIT4_CORE, systemLoader)) {
+      out.println(UNSUPPORTED + " neither the JUnit Platform launcher nor JUnit 4 is available");
+      return;
+    }
+    out.println(READY);
+
+    final WarmPoolWorker worker = new WarmPoolWorker(out, isolated, platform);
+    final BufferedReader requests =
+        new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    String request = requests.readLine();
+    while (request != null) {
+      worker.run(request);
+      out.println(DONE + ' ' + usedHeapAfterCollection() + ' ' + maxHeap());
+      request = requests.readLine();
+    }
+  }
+
+  private void run(final String request) {
+    final String[] fields = request.split(String.valueOf(FIELD_SEPARATOR), -1);
+    final List<URL> elements = new ArrayList<>();
+    for (final String element : fields[fields.length - 2].split(File.pathSeparator)) {
+      if (!element.isEmpty()) {
+        try {
+          elements.add(Paths.get(element).toUri().toURL());
+        } catch (final IOException e) {
+          out.println("[WARNING] Ignoring classpath element " + element + ": " + e);
+        }
+      }
+    }
+    testsRun = 0;
+    failures = 0;
+    errors = 0;
+    skipped = 0;
+
+    final Thread thread = Thread.currentThread();
+    final ClassLoader previousLoader = thread.getContextClassLoader();
+    final Properties previousProperties = (Properties) System.getProperties().clone();
+    final PrintStream previousOut = System.out;
+    final PrintStream previousErr = System.err;
+    // Isolated runs must not see the plugin's own dependencies
+    try (URLClassLoader loader =
+        new URLClassLoader(
+            elements.toArray(new URL[0]),
+            isolated ? ClassLoader.getPlatformClassLoader() : getSystemClassLoader())) {
+      thread.setContextClassLoader(loader);
+      if (fields.length > 2) {
+        System.setProperty("basedir", fields[0]);
+      }
+      if (isolated) {
+        platform = isAvailable(PLATFORM_LAUNCHER, loader);
+      }
+      if (platform || isAvailable(JUNIT4_CORE, loader)) {
+        for (final String className : fields[fields.length - 1].split(",")) {
+          if (!className.isEmpty()) {
+            runClass(loader, className);
+          }
+        }
+      } else {
+        out.println("[WARNING] Neither the JUnit Platform launcher nor JUnit 4 is available");
+      }
+    } catch (final IOException e) {
+      out.println("[WARNING] Could not close the module class loader: " + e);
+    } finally {
+      // Leave no state behind for the next run
+      thread.setContextClassLoader(previousLoader);
+      System.setProperties(previousProperties);
+      System.setOut(previousOut);
+      System.setErr(previousErr);
+    }
+
+    out.println(
+        String.format(
+            Locale.ROOT,
+            "[%s] Tests run: %d, Failures: %d, Errors: %d, Skipped: %d",
+            failures + errors > 0 ? "ERROR" : "INFO",
+            testsRun,
+            failures,
+            errors,
+            skipped));
+  }
+
+  private void runClass(final ClassLoader loader, final String className) {
+    final ClassResult result = new ClassResult(className);
+    final long started = System.nanoTime();
+    try {
+      final Class<?> testClass = Class.forName(className, true, loader);
+      if (Modifier.isAbstract(testClass.getModifiers())) {
+        return;
+      }
+      if (platform) {
+        runOnPlatform(testClass, result);
+      } else if (isJUnit4Test(testClass)) {
+        runOnJUnit4(testClass, result);
+      }
+    } catch (final Throwable e) {
+      // Surefire reports classes that cannot be loaded or initialized as an error
+      result.error("initializationError", unwrap(e), 0L);
+    }
+    if (result.run > 0) {
+      printClassResult(result, System.nanoTime() - started);
+    }
+  }
+
+  private void runOnPlatform(final Class<?> testClass, final ClassResult result)
+      throws ReflectiveOperationException {
+    final ClassLoader loader = testClass.getClassLoader();
+    final Class<?> selectorType = load(loader, "org.junit.platform.engine.DiscoverySelector");
+    final Object selectors = Array.newInstance(selectorType, 1);
+    Array.set(
+        selectors,
+        0,
+        load(loader, "org.junit.platform.engine.discovery.DiscoverySelectors")
+            .getMethod("selectClass", Class.class)
+            .invoke(null, testClass));
+
+    final Class<?> builderType =
+        load(loader, "org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder");
+    final Object builder = builderType.getMethod("request").invoke(null);
+    builderType.getMethod("selectors", selectors.getClass()).invoke(builder, selectors);
+    final Object request = builderType.getMethod("build").invoke(builder);
+
+    final Class<?> listenerType = load(loader, "org.junit.platform.launcher.TestExecutionListener");
+    final Object listeners = Array.newInstance(listenerType, 1);
+    Array.set(
+        listeners,
+        0,
+        Proxy.newProxyInstance(
+            loader, new Class<?>[] {listenerType}, new PlatformListener(testClass, result)));
+
+    final Object launcher = load(loader, PLATFORM_LAUNCHER).getMethod("create").invoke(null);
+    load(loader, "org.junit.platform.launcher.Launcher")
+        .getMethod(
+            "execute",
+            load(loader, "org.junit.platform.launcher.LauncherDiscoveryRequest"),
+            listeners.getClass())
+        .invoke(launcher, request, listeners);
+  }
+
+  /**
+   * Runs a JUnit 4 class. JUnit 4 only reports failures after the run, so unlike on the JUnit
+   * Platform successful methods are not listed individually.
+   */
+  private void runOnJUnit4(final Class<?> testClass, final ClassResult result)
+      throws ReflectiveOperationException {
+    final ClassLoader loader = testClass.getClassLoader();
+    final Class<?> requestType = load(loader, "org.junit.runner.Request");
+    final Object request = requestType.getMethod("aClass", Class.class).invoke(null, testClass);
+    final Class<?> coreType = load(loader, JUNIT4_CORE);
+    final Object outcome =
+        coreType
+            .getMethod("run", requestType)
+            .invoke(coreType.getConstructor().newInstance(), request);
+
+    final int ignored = (Integer) call(outcome, "getIgnoreCount");
+    result.run += (Integer) call(outcome, "getRunCount") + ignored;
+    result.skipped += ignored;
+    for (final Object failure : (List<?>) call(outcome, "getFailures")) {
+      final Object description = call(failure, "getDescription");
+      final Object methodName = call(description, "getMethodName");
+      result.failed(
+          methodName == null ? testClass.getName() : methodName.toString(),
+          (Throwable) call(failure, "getException"),
+          0L);
+      // Failures were already counted as runs by JUnit
+      result.run--;
+    }
+  }
+
+  private static boolean isJUnit4Test(final Class<?> testClass) {
+    if (hasAnnotation(testClass.getAnnotations(), "org.junit.runner.RunWith")) {
+      return true;
+    }
+    for (Class<?> type = testClass; type != null; type = type.getSuperclass()) {
+      if ("junit.framework.TestCase".equals(type.getName())) {
+        return true;
+      }
+    }
+    for (final Method method : testClass.getMethods()) {
+      if (hasAnnotation(method.getAnnotations(), "org.junit.Test")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasAnnotation(
+      final Annotation[] annotations, final String annotationType) {
+    for (final Annotation annotation : annotations) {
+      if (annotationType.equals(annotation.annotationType().getName())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void printClassResult(final ClassResult result, final long elapsedNanos) {
+    final boolean failed = result.failed + result.errors > 0;
+    out.println(
+        String.format(
+            Locale.ROOT,
+            "[%s] Tests run: %d, Failures: %d, Errors: %d, Skipped: %d, Time elapsed: %.3f s%s"
+                + " -- in %s",
+            failed ? "ERROR" : "INFO",
+            result.run,
+            result.failed,
+            result.errors,
+            result.skipped,
+            elapsedNanos / 1e9,
+            failed ? " <<< FAILURE!" : "",
+            result.className));
+    testsRun += result.run;
+    failures += result.failed;
+    errors += result.errors;
+    skipped += result.skipped;
+  }
+
+  private static Throwable unwrap(final Throwable throwable) {
+    return throwable instanceof InvocationTargetException && throwable.getCause() != null
+        ? throwable.getCause()
+        : throwable;
+  }
+
+  private static Object call(final Object target, final String method)
+      throws ReflectiveOperationException {
+    return target.getClass().getMethod(method).invoke(target);
+  }
+
+  private static Class<?> load(final ClassLoader loader, final String className)
+      throws ClassNotFoundException {
+    return Class.forName(className, true, loader);
+  }
+
+  private static boolean isAvailable(final String className, final ClassLoader loader) {
+    try {
+      Class.forName(className, false, loader);
+      return true;
+    } catch (final ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  private static ClassLoader getSystemClassLoader() {
+    return ClassLoader.getSystemClassLoader();
+  }
+
+  /** Heap in use after the last garbage collection, so that garbage is not mistaken for a leak. */
+  private static long usedHeapAfterCollection() {
+    long used = 0;
+    for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      final MemoryUsage usage = pool.getCollectionUsage();
+      if (pool.getType() == MemoryType.HEAP && usage != null) {
+        used += usage.getUsed();
+      }
+    }
+    return used;
+  }
+
+  private static long maxHeap() {
+    return Runtime.getRuntime().maxMemory();
+  }
+
+  /** Counts of a single test class, printing a line per test method as it completes. */
+  private final class ClassResult {
+    private final String className;
+    private int run;
+    private int failed;
+    private int errors;
+    private int skipped;
+
+    private ClassResult(final String className) {
+      this.className = className;
+    }
+
+    private void passed(final String testClass, final String methodName, final long nanos) {
+      run++;
+      out.println(
+          String.format(
+              Locale.ROOT,
+              "[INFO] %s.%s -- Time elapsed: %.3f s",
+              testClass,
+              methodName,
+              nanos / 1e9));
+    }
+
+    private void failed(final String methodName, final Throwable cause, final long nanos) {
+      // Like Surefire, assertion failures are failures and everything else is an error
+      if (cause instanceof AssertionError) {
+        run++;
+        failed++;
+        report(methodName, cause, nanos, "FAILURE");
+      } else {
+        error(methodName, cause, nanos);
+      }
+    }
+
+    private void error(final String methodName, final Throwable cause, final long nanos) {
+      run++;
+      errors++;
+      report(methodName, cause, nanos, "ERROR");
+    }
+
+    private void report(
+        final String methodName, final Throwable cause, final long nanos, final String status) {
+      out.println(
+          String.format(
+              Locale.ROOT,
+              "%s(%s)  Time elapsed: %.3f s  <<< %s!",
+              methodName,
+              className,
+              nanos / 1e9,
+              status));
+      if (cause != null) {
+        out.println(cause);
+        for (final StackTraceElement element : cause.getStackTrace()) {
+          out.println("\tat " + element);
+        }
+      }
+    }
+  }
+
+  /** JUnit Platform {@code TestExecutionListener} implemented through a dynamic proxy. */
+  private static final class PlatformListener implements InvocationHandler {
+    private final Class<?> testClass;
+    private final ClassResult result;
+    private final Map<Object, Long> startTimes = new HashMap<>();
+
+    private PlatformListener(final Class<?> testClass, final ClassResult result) {
+      this.testClass = testClass;
+      this.result = result;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+        throws ReflectiveOperationException {
+      switch (method.getName()) {
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "equals":
+          return proxy == args[0];
+        case "toString":
+          return "WarmPoolWorker listener for " + testClass.getName();
+        case "executionStarted":
+          if (isTest(args[0])) {
+            startTimes.put(call(args[0], "getUniqueId"), System.nanoTime());
+          }
+          return null;
+        case "executionSkipped":
+          if (isTest(args[0])) {
+            result.run++;
+            result.skipped++;
+          }
+          return null;
+        case "executionFinished":
+          if (isTest(args[0])) {
+            finished(args[0], args[1]);
+          }
+          return null;
+        default:
+          return null;
+      }
+    }
+
+    private void finished(final Object identifier, final Object outcome)
+        throws ReflectiveOperationException {
+      final Long started = startTimes.remove(call(identifier, "getUniqueId"));
+      final long nanos = started == null ? 0L : System.nanoTime() - started;
+      final String status = call(outcome, "getStatus").toString();
+      final String methodName = methodName(identifier);
+      if (SUCCESSFUL.equals(status)) {
+        result.passed(className(identifier), methodName, nanos);
+      } else if (ABORTED.equals(status)) {
+        // Failed assumptions count as skipped, as in Surefire
+        result.run++;
+        result.skipped++;
+      } else {
+        final Optional<?> throwable = (Optional<?>) call(outcome, "getThrowable");
+        result.failed(methodName, (Throwable) throwable.orElse(null), nanos);
+      }
+    }
+
+    private String methodName(final Object identifier) throws ReflectiveOperationException {
+      final Object source = ((Optional<?>) call(identifier, "getSource")).orElse(null);
+      if (source != null && "MethodSource".equals(source.getClass().getSimpleName())) {
+        return call(source, "getMethodName").toString();
+      }
+      // No whitespace so that the method line stays parseable
+      return call(identifier, "getDisplayName").toString().replaceAll("\\s+", "_");
+    }
+
+    private String className(final Object identifier) throws ReflectiveOperationException {
+      final Object source = ((Optional<?>) call(identifier, "getSource")).orElse(null);
+      if (source != null && "MethodSource".equals(source.getClass().getSimpleName())) {
+        return call(source, "getClassName").toString();
+      }
+      return testClass.getName();
+    }
+
+    private static boolean isTest(final Object identifier) throws ReflectiveOperationException {
+      return (Boolean) call(identifier, "isTest");
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.execution.ProjectDependencyGraph;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for selecting the reactor modules affected by changes since a git ref. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class AffectedModuleSelectorTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void addsDownstreamModulesOfChangedOnes() throws IOException {
+    final Path root = folder.getRoot().toPath().toRealPath();
+    final MavenProject parent = project(root, "parent", "pom");
+    final MavenProject core = project(root.resolve("core"), "core", "jar");
+    final MavenProject app = project(root.resolve("app"), "app", "jar");
+    final AffectedModuleSelector selector =
+        new AffectedModuleSelector(session(parent, core, app), new SystemStreamLog());
+    final List<MavenProject> projects = List.of(parent, core, app);
+
+    assertEquals(
+        Set.of(core, app),
+        selector.findAffectedModules(
+            projects, List.of(root.resolve("core/src/main/java/Core.java"))));
+    assertEquals(
+        Set.of(app),
+        selector.findAffectedModules(projects, List.of(root.resolve("app/src/App.java"))));
+    // Files next to an aggregator affect it only through its POM
+    assertEquals(
+        Set.of(), selector.findAffectedModules(projects, List.of(root.resolve("README.md"))));
+    assertEquals(
+        Set.of(parent), selector.findAffectedModules(projects, List.of(root.resolve("pom.xml"))));
+  }
+
+  @Test
+  public void findsWhereTheBranchForkedOff() throws IOException, InterruptedException {
+    final Path repository = folder.getRoot().toPath().toRealPath();
+    git(repository, "init", "-q");
+    final String forkPoint = commit(repository, "a.txt");
+    git(repository, "branch", "feature");
+    commit(repository, "upstream.txt");
+    git(repository, "tag", "upstream");
+    git(repository, "checkout", "-q", "feature");
+    commit(repository, "feature.txt");
+
+    assertEquals(forkPoint, AffectedModuleSelector.findMergeBase(repository, "upstream"));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsRefsThatLookLikeOptions() throws IOException, InterruptedException {
+    final Path repository = folder.getRoot().toPath().toRealPath();
+    git(repository, "init", "-q");
+    commit(repository, "a.txt");
+    AffectedModuleSelector.findMergeBase(repository, "--output=" + repository.resolve("x"));
+  }
+
+  private static MavenProject project(
+      final Path basedir, final String artifactId, final String packaging) throws IOException {
+    Files.createDirectories(basedir);
+    final MavenProject project = new MavenProject();
+    project.setGroupId("com.example");
+    project.setArtifactId(artifactId);
+    project.setPackaging(packaging);
+    project.setFile(new File(basedir.toFile(), "pom.xml"));
+    return project;
+  }
+
+  /** A session whose app module depends on its core module. */
+  @SuppressWarnings("deprecation") // Maven injects sessions; tests have only this constructor
+  private static MavenSession session(
+      final MavenProject parent, final MavenProject core, final MavenProject app) {
+    final MavenSession session =
+        new MavenSession(
+            null,
+            new DefaultRepositorySystemSession(),
+            new DefaultMavenExecutionRequest(),
+            new DefaultMavenExecutionResult());
+    final List<MavenProject> projects = List.of(parent, core, app);
+    session.setProjects(projects);
+    session.setProjectDependencyGraph(
+        new ProjectDependencyGraph() {
+          @Override
+          public List<MavenProject> getAllProjects() {
+            return projects;
+          }
+
+          @Override
+          public List<MavenProject> getSortedProjects() {
+            return projects;
+          }
+
+          @Override
+          public List<MavenProject> getDownstreamProjects(
+              final MavenProject project, final boolean transitive) {
+            return project == core ? List.of(app) : List.of();
+          }
+
+          @Override
+          public List<MavenProject> getUpstreamProjects(
+              final MavenProject project, final boolean transitive) {
+            return project == app ? List.of(core) : List.of();
+          }
+        });
+    return session;
+  }
+
+  private static String commit(final Path repository, final String fileName)
+      throws IOException, InterruptedException {
+    Files.writeString(repository.resolve(fileName), fileName, StandardCharsets.UTF_8);
+    git(repository, "add", fileName);
+    git(
+        repository,
+        "-c",
+        "user.name=Test",
+        "-c",
+        "user.email=test@example.com",
+        "commit",
+        "-q",
+        "-m",
+        fileName);
+    return git(repository, "rev-parse", "HEAD");
+  }
+
+  private static String git(final Path repository, final String... arguments)
+      throws IOException, InterruptedException {
+    final List<String> command = new ArrayList<>(List.of("git"));
+    command.addAll(List.of(arguments));
+    final Process process =
+        new ProcessBuilder(command)
+            .directory(repository.toFile())
+            .redirectErrorStream(true)
+            .start();
+    final String output =
+        new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+    if (process.waitFor() != 0) {
+      throw new IllegalStateException(String.join(" ", command) + " failed: " + output);
+    }
+    return output;
+  }
+}
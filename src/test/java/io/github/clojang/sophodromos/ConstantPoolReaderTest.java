@@ -0,0 +1,48 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import org.junit.Test;
+
+/** Tests for reading class references from compiled class files. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class ConstantPoolReaderTest {
+
+  private Set<String> readOwnReferences() throws IOException {
+    try (InputStream classFile =
+        ConstantPoolReader.class.getResourceAsStream("ConstantPoolReader.class")) {
+      return new ConstantPoolReader().readReferencedClasses(classFile);
+    }
+  }
+
+  @Test
+  public void readsClassEntries() throws IOException {
+    final Set<String> referenced = readOwnReferences();
+    assertTrue("Instantiated class", referenced.contains("java.io.DataInputStream"));
+    assertTrue("Static field type", referenced.contains("java.util.regex.Pattern"));
+  }
+
+  @Test
+  public void readsDescriptorOnlyTypes() throws IOException {
+    // Path appears only in a method descriptor, never as a class entry
+    assertTrue("Parameter type", readOwnReferences().contains("java.nio.file.Path"));
+  }
+
+  @Test
+  public void doesNotReportPrimitiveDescriptors() throws IOException {
+    assertFalse("Primitive int", readOwnReferences().contains("I"));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsNonClassContent() throws IOException {
+    new ConstantPoolReader()
+        .readReferencedClasses(
+            new ByteArrayInputStream("not a class".getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,36 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+/** Tests for the compact encoding of coverage maps. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class CoverageIndexTest {
+
+  @Test
+  public void roundTripsCoveredClasses() {
+    final CoverageIndex index = new CoverageIndex(List.of());
+    final String encoded = index.encode(Set.of("com.example.Foo", "com.example.Bar"));
+    assertEquals(Set.of("com.example.Bar", "com.example.Foo"), index.decode(encoded));
+  }
+
+  @Test
+  public void keepsExistingIndicesStable() {
+    final CoverageIndex first = new CoverageIndex(List.of());
+    final String encoded = first.encode(Set.of("com.example.Foo"));
+
+    final CoverageIndex second = new CoverageIndex(first.getClasses());
+    second.encode(Set.of("com.example.Bar"));
+    assertEquals(List.of("com.example.Foo", "com.example.Bar"), second.getClasses());
+    assertEquals(Set.of("com.example.Foo"), second.decode(encoded));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownIndices() {
+    final String encoded = new CoverageIndex(List.of()).encode(Set.of("a.A", "b.B"));
+    new CoverageIndex(List.of("a.A")).decode(encoded);
+  }
+}
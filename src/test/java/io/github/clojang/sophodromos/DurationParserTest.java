@@ -0,0 +1,24 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Tests for parsing the durations of the plugin's parameters. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class DurationParserTest {
+
+  @Test
+  public void parsesDurations() {
+    assertEquals(300_000L, DurationParser.parse("5m"));
+    assertEquals(90_000L, DurationParser.parse("1m30s"));
+    assertEquals(1500L, DurationParser.parse("1500ms"));
+    assertEquals(45_000L, DurationParser.parse("45"));
+    assertEquals(120_000L, DurationParser.parse("PT2M"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownUnits() {
+    DurationParser.parse("5 minutes");
+  }
+}
@@ -0,0 +1,178 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.Test;
+
+/** Tests for stopping the tests of the reactor after a number of failed tests. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class FailureLimitTest {
+
+  private static final int THREADS = 8;
+
+  @Test
+  public void keepsProcessesRunningBelowLimit() {
+    final FailureLimit limit = new FailureLimit(session(), 5, 0L);
+    final FakeProcess process = new FakeProcess();
+    limit.track(process);
+    limit.recordFailures(4);
+    assertFalse(limit.isReached());
+    assertEquals(0, process.destroyed.get());
+    assertFalse(limit.untrack(process));
+  }
+
+  @Test
+  public void destroysRunningProcessesOnceAcrossThreads() throws Exception {
+    final FailureLimit limit = new FailureLimit(session(), 5, 0L);
+    final List<FakeProcess> processes = List.of(new FakeProcess(), new FakeProcess());
+    for (final FakeProcess process : processes) {
+      limit.track(process);
+    }
+    // Every thread reports failures beyond the limit, only the update crossing it may destroy
+    runConcurrently(() -> limit.recordFailures(1));
+    assertTrue(limit.isReached());
+    for (final FakeProcess process : processes) {
+      assertEquals(1, process.destroyed.get());
+      assertTrue(limit.untrack(process));
+    }
+    assertEquals(
+        "the build reached sophodromos.maxFailures after " + THREADS * 10 + " failed tests",
+        limit.describe());
+  }
+
+  @Test
+  public void destroysProcessTrackedAfterLimit() {
+    final FailureLimit limit = new FailureLimit(session(), 1, 0L);
+    limit.recordFailures(3);
+    final FakeProcess process = new FakeProcess();
+    limit.track(process);
+    assertEquals(1, process.destroyed.get());
+    assertTrue(limit.untrack(process));
+  }
+
+  @Test
+  public void destroysEveryProcessTrackedWhileLimitIsReached() throws Exception {
+    final FailureLimit limit = new FailureLimit(session(), 3, 0L);
+    final List<FakeProcess> processes = new ArrayList<>();
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      final Future<?> tracking =
+          executor.submit(
+              () -> {
+                start.await();
+                for (int i = 0; i < 200; i++) {
+                  final FakeProcess process = new FakeProcess();
+                  processes.add(process);
+                  limit.track(process);
+                }
+                return null;
+              });
+      final Future<?> failing =
+          executor.submit(
+              () -> {
+                start.await();
+                for (int i = 0; i < 5; i++) {
+                  limit.recordFailures(1);
+                  Thread.yield();
+                }
+                return null;
+              });
+      start.countDown();
+      tracking.get();
+      failing.get();
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // Either the update crossing the limit finds a process or the process finds the limit reached
+    for (final FakeProcess process : processes) {
+      assertEquals(1, process.destroyed.get());
+      assertTrue(limit.untrack(process));
+    }
+  }
+
+  private static void runConcurrently(final Runnable action) throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < THREADS; thread++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  for (int i = 0; i < 10; i++) {
+                    action.run();
+                  }
+                  return null;
+                }));
+      }
+      start.countDown();
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @SuppressWarnings("deprecation") // Maven injects sessions; tests have only this constructor
+  private static MavenSession session() {
+    return new MavenSession(
+        null,
+        new DefaultRepositorySystemSession(),
+        new DefaultMavenExecutionRequest(),
+        new DefaultMavenExecutionResult());
+  }
+
+  /** A run without an operating system process, like a run in the warm JVM pool. */
+  private static final class FakeProcess extends Process {
+    private final AtomicInteger destroyed = new AtomicInteger();
+
+    @Override
+    public OutputStream getOutputStream() {
+      return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return InputStream.nullInputStream();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() {
+      return 0;
+    }
+
+    @Override
+    public int exitValue() {
+      return 0;
+    }
+
+    @Override
+    public void destroy() {
+      destroyed.incrementAndGet();
+    }
+  }
+}
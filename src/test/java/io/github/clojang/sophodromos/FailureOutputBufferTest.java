@@ -0,0 +1,95 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.Test;
+
+/** Tests for holding back the output of test classes until they are known to have failed. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class FailureOutputBufferTest {
+
+  private static final String RUNNING = "[INFO] Running com.example.ATest";
+  private static final String PASSED =
+      "[INFO] Tests run: 2, Failures: 0, Errors: 0, Skipped: 0, Time elapsed: 0.1 s"
+          + " -- in com.example.ATest";
+  private static final String FAILED =
+      "[ERROR] Tests run: 2, Failures: 1, Errors: 0, Skipped: 0, Time elapsed: 0.1 s"
+          + " <<< FAILURE! -- in com.example.ATest";
+  private static final String METHOD = "[INFO] com.example.ATest.works -- Time elapsed: 0.01 s";
+
+  @Test
+  public void dropsOutputOfPassingClasses() throws IOException {
+    final FailureOutputBuffer buffer = new FailureOutputBuffer(1024);
+    final List<String> lines = new ArrayList<>();
+    for (final String line : List.of(RUNNING, "noise", METHOD, "more noise", PASSED, "after")) {
+      buffer.accept(line, lines::add);
+    }
+    assertEquals(List.of(RUNNING, METHOD, PASSED, "after"), lines);
+  }
+
+  @Test
+  public void releasesOutputOfFailingClassesBeforeTheirResults() throws IOException {
+    final FailureOutputBuffer buffer = new FailureOutputBuffer(1024);
+    final List<String> lines = new ArrayList<>();
+    for (final String line : List.of(RUNNING, "clue", METHOD, FAILED)) {
+      buffer.accept(line, lines::add);
+    }
+    assertEquals(List.of(RUNNING, METHOD, "clue", FAILED), lines);
+  }
+
+  @Test
+  public void movesLargeOutputToTemporaryFile() throws IOException {
+    final long filesBefore = countOverflowFiles();
+    final FailureOutputBuffer buffer = new FailureOutputBuffer(16);
+    final List<String> lines = new ArrayList<>();
+    buffer.accept(RUNNING, lines::add);
+    final List<String> output = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      output.add("output line " + i);
+      buffer.accept("output line " + i, lines::add);
+    }
+    assertEquals(filesBefore + 1, countOverflowFiles());
+    buffer.accept(FAILED, lines::add);
+
+    final List<String> expected = new ArrayList<>(List.of(RUNNING));
+    expected.addAll(output);
+    expected.add(FAILED);
+    assertEquals(expected, lines);
+    assertEquals(filesBefore, countOverflowFiles());
+  }
+
+  @Test
+  public void flushesClassesThatNeverCompleted() throws IOException {
+    final FailureOutputBuffer buffer = new FailureOutputBuffer(1024);
+    final List<String> lines = new ArrayList<>();
+    buffer.accept(RUNNING, lines::add);
+    buffer.accept("last words", lines::add);
+    buffer.flush(lines::add);
+    assertEquals(List.of(RUNNING, "last words"), lines);
+  }
+
+  @Test
+  public void recognizesTestEvents() {
+    assertTrue(FailureOutputBuffer.isTestEvent(RUNNING));
+    assertTrue(FailureOutputBuffer.isTestEvent(METHOD));
+    assertTrue(FailureOutputBuffer.isTestEvent(FAILED));
+    assertFalse(FailureOutputBuffer.isTestEvent("Hello from a test"));
+  }
+
+  private static long countOverflowFiles() throws IOException {
+    try (Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+      return files
+          .filter(file -> file.getFileName().toString().startsWith("sophodromos-output-"))
+          .count();
+    }
+  }
+}
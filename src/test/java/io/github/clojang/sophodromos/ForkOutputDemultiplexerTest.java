@@ -0,0 +1,57 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import org.junit.Test;
+
+/** Tests for sorting the interleaved output of concurrently running test classes by class. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class ForkOutputDemultiplexerTest {
+
+  private static final String RUNNING_A = "[INFO] Running com.example.ATest";
+  private static final String RUNNING_B = "[INFO] Running com.example.BTest";
+  private static final String COMPLETED_A =
+      "[INFO] Tests run: 1, Failures: 0, Errors: 0, Skipped: 0, Time elapsed: 0.1 s"
+          + " -- in com.example.ATest";
+  private static final String COMPLETED_B =
+      "[ERROR] Tests run: 1, Failures: 1, Errors: 0, Skipped: 0, Time elapsed: 0.2 s"
+          + " <<< FAILURE! -- in com.example.BTest";
+
+  @Test
+  public void releasesEachClassAsOneBlock() {
+    final ForkOutputDemultiplexer demultiplexer = new ForkOutputDemultiplexer();
+    assertEquals(List.of(), demultiplexer.accept(RUNNING_A));
+    assertEquals(List.of(), demultiplexer.accept(RUNNING_B));
+    // A stack trace names its class; a line naming none of the running classes passes through
+    final String frame = "\tat com.example.BTest.fails(BTest.java:12)";
+    assertEquals(List.of(), demultiplexer.accept(frame));
+    assertEquals(List.of("stray"), demultiplexer.accept("stray"));
+    assertEquals(List.of(RUNNING_B, frame, COMPLETED_B), demultiplexer.accept(COMPLETED_B));
+
+    // With one class left running, lines naming no class are its own
+    assertEquals(List.of(), demultiplexer.accept("hello from A"));
+    assertEquals(
+        List.of(RUNNING_A, "hello from A", COMPLETED_A), demultiplexer.accept(COMPLETED_A));
+    assertEquals(2, demultiplexer.getMaxConcurrentClasses());
+  }
+
+  @Test
+  public void attributesMethodLinesByTheirClass() {
+    final ForkOutputDemultiplexer demultiplexer = new ForkOutputDemultiplexer();
+    demultiplexer.accept(RUNNING_A);
+    demultiplexer.accept(RUNNING_B);
+    final String methodOfA = "[INFO] com.example.ATest.works -- Time elapsed: 0.01 s";
+    assertEquals(List.of(), demultiplexer.accept(methodOfA));
+    assertEquals(List.of(RUNNING_A, methodOfA, COMPLETED_A), demultiplexer.accept(COMPLETED_A));
+  }
+
+  @Test
+  public void flushesClassesThatNeverCompleted() {
+    final ForkOutputDemultiplexer demultiplexer = new ForkOutputDemultiplexer();
+    demultiplexer.accept(RUNNING_A);
+    demultiplexer.accept("last words");
+    assertEquals(List.of(RUNNING_A, "last words"), demultiplexer.flush());
+    assertEquals(List.of("after the crash"), demultiplexer.accept("after the crash"));
+  }
+}
@@ -0,0 +1,125 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for finding and ending test classes that stop making progress. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class HangWatchdogTest {
+
+  private static final String HUNG_CLASS = "com.example.DeadlockTest";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test(timeout = 10_000L)
+  public void killsTestClassWithoutProgress() throws Exception {
+    final FakeProcess process = new FakeProcess();
+    final HangWatchdog watchdog = newWatchdog(process, 0L);
+    watchdog.testClassStarted(HUNG_CLASS);
+    watchdog.start();
+
+    assertTrue(process.destroyed.await(5, TimeUnit.SECONDS));
+    watchdog.stop();
+    assertTrue(watchdog.isKilled());
+    final List<String> hungTests = watchdog.getHungTests();
+    assertEquals(1, hungTests.size());
+    assertTrue(hungTests.get(0).startsWith(HUNG_CLASS + ": no progress for "));
+    assertTrue(hungTests.get(0).endsWith(", forks killed"));
+  }
+
+  @Test(timeout = 10_000L)
+  public void reportsHangWithoutKillingWhenDisabled() throws Exception {
+    final FakeProcess process = new FakeProcess();
+    final HangWatchdog watchdog = newWatchdog(process, -1L);
+    watchdog.testClassStarted(HUNG_CLASS);
+    watchdog.start();
+
+    while (watchdog.getHungTests().isEmpty()) {
+      Thread.sleep(50);
+    }
+    watchdog.stop();
+    assertFalse(watchdog.isKilled());
+    assertEquals(1, process.destroyed.getCount());
+    assertFalse(watchdog.getHungTests().get(0).endsWith(", forks killed"));
+  }
+
+  @Test(timeout = 10_000L)
+  public void ignoresTestClassMakingProgress() throws Exception {
+    final FakeProcess process = new FakeProcess();
+    final HangWatchdog watchdog = newWatchdog(process, 0L);
+    watchdog.testClassStarted(HUNG_CLASS);
+    watchdog.start();
+
+    // Test outcomes keep arriving for longer than the hang timeout
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2500);
+    while (System.nanoTime() < deadline) {
+      watchdog.testEvent();
+      Thread.sleep(50);
+    }
+    watchdog.testClassCompleted(HUNG_CLASS);
+    watchdog.stop();
+    assertFalse(watchdog.isKilled());
+    assertEquals(List.of(), watchdog.getHungTests());
+  }
+
+  private HangWatchdog newWatchdog(final Process process, final long killGraceMillis) {
+    return new HangWatchdog(
+        process,
+        300L,
+        0,
+        className -> 0L,
+        folder.getRoot().toPath(),
+        killGraceMillis,
+        new SystemStreamLog());
+  }
+
+  /** A run without an operating system process, like a run in the warm JVM pool. */
+  private static final class FakeProcess extends Process {
+    private final CountDownLatch destroyed = new CountDownLatch(1);
+
+    @Override
+    public OutputStream getOutputStream() {
+      return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return InputStream.nullInputStream();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+      destroyed.await();
+      return 1;
+    }
+
+    @Override
+    public int exitValue() {
+      if (destroyed.getCount() > 0) {
+        throw new IllegalThreadStateException("running");
+      }
+      return 1;
+    }
+
+    @Override
+    public void destroy() {
+      destroyed.countDown();
+    }
+  }
+}
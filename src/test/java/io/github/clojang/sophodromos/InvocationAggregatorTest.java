@@ -0,0 +1,63 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+/** Tests for collapsing the invocations of parameterized test methods into one row. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class InvocationAggregatorTest {
+
+  private static final String CLASS = "com.example.ParameterizedTest";
+
+  private final TestOutputFormatter formatter = new TestOutputFormatter(false, true);
+
+  @Test
+  public void takesNearestRankPercentiles() {
+    final long[] sorted = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    assertEquals(5L, InvocationAggregator.percentile(sorted, 10, 50));
+    assertEquals(10L, InvocationAggregator.percentile(sorted, 10, 99));
+    assertEquals(1L, InvocationAggregator.percentile(sorted, 10, 1));
+    assertEquals(3L, InvocationAggregator.percentile(sorted, 3, 99));
+    assertEquals(7L, InvocationAggregator.percentile(new long[] {7}, 1, 50));
+  }
+
+  @Test
+  public void releasesRowOnceAnotherMethodIsReported() {
+    final InvocationAggregator aggregator = new InvocationAggregator(formatter);
+    assertTrue(aggregator.accept(invocation("adds", 30, false)));
+    assertFalse(aggregator.accept(invocation("adds", 10, true)));
+    assertTrue(aggregator.accept(invocation("adds", 20, false)));
+    assertEquals(List.of(), aggregator.takeReleasedLines());
+
+    assertTrue(aggregator.accept(invocation("subtracts", 5, false)));
+    assertEquals(
+        List.of(formatter.formatInvocations(CLASS, "adds", 2, 1, 20, 30)),
+        aggregator.takeReleasedLines());
+
+    aggregator.flush();
+    assertEquals(
+        List.of(formatter.formatInvocations(CLASS, "subtracts", 1, 0, 5, 5)),
+        aggregator.takeReleasedLines());
+  }
+
+  @Test
+  public void growsBeyondInitialCapacity() {
+    final InvocationAggregator aggregator = new InvocationAggregator(formatter);
+    for (int i = 1; i <= 100; i++) {
+      aggregator.accept(invocation("repeats", i, false));
+    }
+    aggregator.flush();
+    assertEquals(
+        List.of(formatter.formatInvocations(CLASS, "repeats", 100, 0, 50, 99)),
+        aggregator.takeReleasedLines());
+  }
+
+  private static OutputPatternMatcher.TestInvocation invocation(
+      final String methodName, final long durationMillis, final boolean failed) {
+    return new OutputPatternMatcher.TestInvocation(CLASS, methodName, durationMillis, failed);
+  }
+}
@@ -0,0 +1,45 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import org.junit.Test;
+
+/** Tests for choosing the JVM profile of forked test JVMs. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class JvmProfileSelectorTest {
+
+  private static final String SHORT_OPTIONS = "-XX:TieredStopAtLevel=1 -Xshare:auto -Xmx256m";
+
+  @Test
+  public void choosesProfileFromRecordedDurations() {
+    final JvmProfileSelector selector =
+        new JvmProfileSelector("auto", 5_000L, SHORT_OPTIONS, "-XX:+UseParallelGC");
+    final JvmProfileSelector.Profile quick = selector.select(List.of(800L, 1_200L), 2, "");
+    assertEquals("short", quick.getName());
+    assertEquals(
+        List.of("-XX:TieredStopAtLevel=1", "-Xshare:auto", "-Xmx256m"), quick.getOptions());
+
+    // The class without history is expected to take the median recorded duration
+    final JvmProfileSelector.Profile slow = selector.select(List.of(1_000L, 3_000L), 3, "");
+    assertEquals("long", slow.getName());
+    assertEquals(7_000L, slow.getEstimatedMillis());
+    assertEquals(List.of("-XX:+UseParallelGC"), slow.getOptions());
+  }
+
+  @Test
+  public void leavesModulesWithoutHistoryAlone() {
+    assertNull(new JvmProfileSelector("auto", 5_000L, SHORT_OPTIONS, "").select(List.of(), 4, ""));
+    assertNull(
+        new JvmProfileSelector("none", 5_000L, SHORT_OPTIONS, "").select(List.of(1L), 1, ""));
+  }
+
+  @Test
+  public void keepsOptionsTheProjectSets() {
+    final JvmProfileSelector.Profile profile =
+        new JvmProfileSelector("short", 5_000L, SHORT_OPTIONS, "")
+            .select(List.of(), 1, "-Xmx1g -XX:TieredStopAtLevel=4");
+    assertEquals(List.of("-Xshare:auto"), profile.getOptions());
+  }
+}
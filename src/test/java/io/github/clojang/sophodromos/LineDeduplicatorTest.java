@@ -0,0 +1,58 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+/** Tests for collapsing repeated output lines into a marker with their number of repeats. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class LineDeduplicatorTest {
+
+  private static final String WARNING = "WARNING: deprecated API";
+
+  private final TestOutputFormatter formatter = new TestOutputFormatter(false, true);
+
+  @Test
+  public void collapsesBackToBackRepeats() {
+    final LineDeduplicator deduplicator = new LineDeduplicator(formatter, 1);
+    assertFalse(deduplicator.accept(WARNING));
+    assertTrue(deduplicator.accept(WARNING));
+    assertTrue(deduplicator.accept(WARNING));
+    assertEquals(List.of(), deduplicator.takeReleasedLines());
+
+    // The next distinct line pushes the warning out of the window
+    assertFalse(deduplicator.accept("done"));
+    assertEquals(
+        List.of(formatter.formatRepeatedLine(WARNING, 2)), deduplicator.takeReleasedLines());
+  }
+
+  @Test
+  public void collapsesInterleavedRepeatsWithinTheWindow() {
+    final LineDeduplicator deduplicator = new LineDeduplicator(formatter, 2);
+    assertFalse(deduplicator.accept(WARNING));
+    assertFalse(deduplicator.accept("step"));
+    assertTrue(deduplicator.accept(WARNING));
+    assertTrue(deduplicator.accept("step"));
+    assertTrue(deduplicator.accept(WARNING));
+
+    deduplicator.flush();
+    assertEquals(
+        List.of(formatter.formatRepeatedLine("step", 1), formatter.formatRepeatedLine(WARNING, 2)),
+        deduplicator.takeReleasedLines());
+    // A cleared window shows the line again
+    assertFalse(deduplicator.accept(WARNING));
+  }
+
+  @Test
+  public void alwaysShowsBlankLines() {
+    final LineDeduplicator deduplicator = new LineDeduplicator(formatter, 1);
+    assertFalse(deduplicator.accept(""));
+    assertFalse(deduplicator.accept(""));
+    assertFalse(deduplicator.accept("   "));
+    deduplicator.flush();
+    assertEquals(List.of(), deduplicator.takeReleasedLines());
+  }
+}
@@ -0,0 +1,57 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+/** Tests for running the tests of small modules in the shared batch JVM. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class ModuleBatchTest {
+
+  @Test(timeout = 30_000L)
+  public void destroyingTimedOutRunStopsBatchJvm() throws Exception {
+    final Process worker =
+        new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp",
+                System.getProperty("java.class.path"),
+                HungWorker.class.getName())
+            .start();
+    final ModuleBatch batch = new ModuleBatch(null, new SystemStreamLog());
+    batch.attach(worker);
+    final Process run = batch.startNextRun();
+    assertFalse(run.waitFor(200, TimeUnit.MILLISECONDS));
+
+    // What the module timeout does once the run exceeds it
+    ProcessTreeReaper.terminate(run, 1000L);
+    assertEquals(1, run.waitFor());
+    assertTrue(batch.isStopped());
+    assertTrue(worker.waitFor(10, TimeUnit.SECONDS));
+  }
+
+  /** A batch JVM whose test deadlocks: it gets ready, starts a class and never finishes it. */
+  public static final class HungWorker {
+    private HungWorker() {
+      // Started as a process only
+    }
+
+    /**
+     * Starts the hung batch JVM.
+     *
+     * @param args ignored
+     * @throws InterruptedException never, the JVM is killed
+     */
+    @SuppressWarnings("PMD.SystemPrintln") // The batch JVM's protocol is its standard output
+    public static void main(final String[] args) throws InterruptedException {
+      System.out.println(WarmPoolWorker.READY);
+      System.out.println("[INFO] Running com.example.DeadlockTest");
+      System.out.flush();
+      Thread.sleep(Long.MAX_VALUE);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for storing, verifying and evicting cached module results. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class ModuleResultCacheTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void keysOnFingerprintAndConfigurationInAnyOrder() {
+    final String key = ModuleResultCache.computeKey("fingerprint", Map.of("a", "1", "b", "2"));
+    assertEquals(64, key.length());
+    assertEquals(key, ModuleResultCache.computeKey("fingerprint", Map.of("b", "2", "a", "1")));
+    assertNotEquals(key, ModuleResultCache.computeKey("fingerprint", Map.of("a", "1", "b", "3")));
+    assertNotEquals(key, ModuleResultCache.computeKey("changed", Map.of("a", "1", "b", "2")));
+  }
+
+  @Test
+  public void replaysStoredGreenResult() throws IOException {
+    final ModuleResultCache cache = newCache(Long.MAX_VALUE);
+    final String key = ModuleResultCache.computeKey("module", Map.of());
+    cache.store(key, greenResult());
+
+    final TestExecutionResult cached = cache.load(key);
+    assertNotNull(cached);
+    assertTrue(cached.isReplayedFromCache());
+    assertEquals(3, cached.getTotalTests());
+    assertEquals(List.of("[INFO] Running com.example.ATest"), cached.getOutputLines());
+    assertEquals("com.example.ATest", cached.getClassResults().get(0).getClassName());
+    assertNull(cache.load(ModuleResultCache.computeKey("other", Map.of())));
+  }
+
+  @Test
+  public void ignoresResultsWithFailures() throws IOException {
+    final ModuleResultCache cache = newCache(Long.MAX_VALUE);
+    final String key = ModuleResultCache.computeKey("module", Map.of());
+    final TestExecutionResult failed = greenResult();
+    failed.setExitCode(1);
+    cache.store(key, failed);
+    assertNull(cache.load(key));
+  }
+
+  @Test
+  public void discardsEntryFailingItsChecksum() throws IOException {
+    final ModuleResultCache cache = newCache(Long.MAX_VALUE);
+    final String key = ModuleResultCache.computeKey("module", Map.of());
+    cache.store(key, greenResult());
+    final Path entry = entryFile(key);
+    final String stored = Files.readString(entry, StandardCharsets.UTF_8);
+    Files.writeString(entry, stored.replace("totalTests\\\":3", "totalTests\\\":4"));
+    assertNotEquals(stored, Files.readString(entry, StandardCharsets.UTF_8));
+
+    assertNull(cache.load(key));
+    assertFalse(Files.exists(entry));
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedEntries() throws IOException {
+    final String oldKey = ModuleResultCache.computeKey("old", Map.of());
+    final String newKey = ModuleResultCache.computeKey("new", Map.of());
+    newCache(Long.MAX_VALUE).store(oldKey, greenResult());
+    final long entrySize = Files.size(entryFile(oldKey));
+    Files.setLastModifiedTime(entryFile(oldKey), FileTime.fromMillis(0L));
+
+    // Room for one entry only
+    newCache(entrySize + entrySize / 2).store(newKey, greenResult());
+    assertFalse(Files.exists(entryFile(oldKey)));
+    assertTrue(Files.exists(entryFile(newKey)));
+  }
+
+  private ModuleResultCache newCache(final long maxSizeBytes) {
+    return new ModuleResultCache(folder.getRoot().toPath(), maxSizeBytes, new SystemStreamLog());
+  }
+
+  private Path entryFile(final String key) {
+    return folder.getRoot().toPath().resolve(key.substring(0, 2)).resolve(key + ".json");
+  }
+
+  private static TestExecutionResult greenResult() {
+    final TestExecutionResult result = new TestExecutionResult();
+    result.setTotalTests(3);
+    result.setPassedTests(3);
+    result.addOutputLine("[INFO] Running com.example.ATest");
+    result.recordClassResult(
+        new TestExecutionResult.TestClassResult("com.example.ATest", 3, 0, 0, 0, 120L));
+    return result;
+  }
+}
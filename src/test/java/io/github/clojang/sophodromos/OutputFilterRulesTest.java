@@ -0,0 +1,46 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import org.junit.Test;
+
+/** Tests for matching output lines against the user-defined filter rules. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class OutputFilterRulesTest {
+
+  @Test
+  public void findsOverlappingLiterals() {
+    // "she" ends in "he", and "hers" shares the prefix of "he"
+    final OutputFilterRules rules =
+        new OutputFilterRules(List.of("hers"), List.of("he"), List.of("she"));
+    assertEquals(OutputFilterRules.EXCLUDE | OutputFilterRules.HIGHLIGHT, rules.match("ushe"));
+    assertEquals(OutputFilterRules.INCLUDE | OutputFilterRules.EXCLUDE, rules.match("ahers"));
+    assertEquals(
+        OutputFilterRules.INCLUDE | OutputFilterRules.EXCLUDE | OutputFilterRules.HIGHLIGHT,
+        rules.match("ushers"));
+    assertEquals(0, rules.match("hsr"));
+  }
+
+  @Test
+  public void combinesFlagsOfTheSameLiteral() {
+    final OutputFilterRules rules =
+        new OutputFilterRules(List.of(), List.of("Deprecated"), List.of("Deprecated"));
+    assertEquals(
+        OutputFilterRules.EXCLUDE | OutputFilterRules.HIGHLIGHT,
+        rules.match("WARNING: Deprecated API"));
+  }
+
+  @Test
+  public void matchesAnchoredExpressionsFromTheStart() {
+    final OutputFilterRules rules =
+        new OutputFilterRules(List.of(), List.of("^\\s*at org\\.junit\\."), List.of());
+    assertEquals(OutputFilterRules.EXCLUDE, rules.match("\tat org.junit.Assert.fail(Assert.java)"));
+    assertEquals(0, rules.match("Caused by: x at org.junit.Assert"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsInvalidExpressions() {
+    new OutputFilterRules(List.of("^[unclosed"), List.of(), List.of());
+  }
+}
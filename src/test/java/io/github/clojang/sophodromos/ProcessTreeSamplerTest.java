@@ -0,0 +1,52 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for reading the memory and CPU time of test JVMs from the proc file system. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class ProcessTreeSamplerTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void readsResidentMemoryInBytes() throws IOException {
+    final Path proc = folder.newFolder("proc").toPath();
+    write(proc.resolve("42/status"), "Name:\tjava\nVmPeak:\t 9000 kB\nVmRSS:\t  204800 kB\n");
+    assertEquals(200L * 1024 * 1024, ProcessTreeSampler.readRss(proc, 42));
+  }
+
+  @Test
+  public void readsCpuTimeOfProcessAndWaitedForChildren() throws IOException {
+    final Path proc = folder.newFolder("proc").toPath();
+    // The command name holds a space and a parenthesis; utime, stime, cutime and cstime follow
+    write(
+        proc.resolve("42/stat"),
+        "42 (java (main) x) S 1 42 42 0 -1 4194560 100 0 0 0 100 50 20 30 20 0 30 0\n");
+    assertEquals(2_000L, ProcessTreeSampler.readCpuMillis(proc, 42));
+  }
+
+  @Test
+  public void readsNothingForExitedOrUnreadableProcesses() throws IOException {
+    final Path proc = folder.newFolder("proc").toPath();
+    assertEquals(0L, ProcessTreeSampler.readRss(proc, 7));
+    assertEquals(0L, ProcessTreeSampler.readCpuMillis(proc, 7));
+
+    write(proc.resolve("8/status"), "Name:\tkthreadd\n");
+    write(proc.resolve("8/stat"), "8 (kthreadd) S 0\n");
+    assertEquals(0L, ProcessTreeSampler.readRss(proc, 8));
+    assertEquals(0L, ProcessTreeSampler.readCpuMillis(proc, 8));
+  }
+
+  private static void write(final Path file, final String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,98 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the status line of the reactor's tests. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class ReactorProgressTest {
+
+  private final ByteArrayOutputStream console = new ByteArrayOutputStream();
+  private PrintStream previousOut;
+
+  @Before
+  public void redirectConsole() {
+    previousOut = System.out;
+    System.setOut(new PrintStream(console, true, StandardCharsets.UTF_8));
+  }
+
+  @After
+  public void restoreConsole() {
+    System.setOut(previousOut);
+  }
+
+  @Test
+  public void describesProgress() {
+    assertEquals(
+        "Tests: 1/3 modules | 10 passed, 2 failed, 1 skipped | 2.0 tests/s | 6s elapsed"
+            + " | ETA 2m05s",
+        ReactorProgress.describe(1, 3, 10, 2, 1, 6500L, 125_000L));
+    assertEquals(
+        "Tests: 0/2 modules | 0 passed, 0 failed, 0 skipped | 0.0 tests/s | 0s elapsed | ETA --",
+        ReactorProgress.describe(0, 2, 0, 0, 0, 0L, -1L));
+    assertTrue(ReactorProgress.describe(0, 1, 0, 0, 0, 3_720_000L, 0L).contains("1h02m elapsed"));
+  }
+
+  @Test(timeout = 10_000L)
+  public void countsClassesUntilModulesReportTheirTotals() {
+    final MavenSession session = session();
+    final ReactorProgress core = new ReactorProgress(session, "com.example:core");
+    final ReactorProgress app = new ReactorProgress(session, "com.example:app");
+    final ReactorProgress docs = new ReactorProgress(session, "com.example:docs");
+    core.start(3, () -> Map.of("com.example:core", 1000L), 60_000L, 200);
+    // A second module finds the status line already shown
+    app.start(99, Map::of, 60_000L, 200);
+
+    core.testClassCompleted(
+        new TestExecutionResult.TestClassResult("com.example.ATest", 4, 1, 0, 1, 100L));
+    app.testClassCompleted(
+        new TestExecutionResult.TestClassResult("com.example.BTest", 3, 0, 1, 0, 50L));
+    docs.testClassCompleted(
+        new TestExecutionResult.TestClassResult("com.example.CTest", 2, 0, 0, 0, 10L));
+
+    // The rerun of ATest passed, so the module's totals replace what its classes reported
+    final TestExecutionResult coreResult = new TestExecutionResult();
+    coreResult.setPassedTests(3);
+    coreResult.setSkippedTests(1);
+    core.moduleCompleted(coreResult);
+    docs.moduleCompleted(null);
+    ReactorProgress.stop(session);
+
+    assertTrue(lastLine().startsWith("Tests: 2/3 modules | 5 passed, 1 failed, 1 skipped | "));
+    assertTrue(lastLine().endsWith(" | ETA --"));
+  }
+
+  @Test(timeout = 10_000L)
+  public void truncatesLineToWidth() {
+    final MavenSession session = session();
+    new ReactorProgress(session, "com.example:core").start(1, Map::of, 60_000L, 20);
+    ReactorProgress.stop(session);
+    assertEquals("Tests: 0/1 modules ", lastLine());
+  }
+
+  private String lastLine() {
+    final String[] lines = console.toString(StandardCharsets.UTF_8).split("\n");
+    return lines[lines.length - 1];
+  }
+
+  @SuppressWarnings("deprecation") // Maven injects sessions; tests have only this constructor
+  private static MavenSession session() {
+    return new MavenSession(
+        null,
+        new DefaultRepositorySystemSession(),
+        new DefaultMavenExecutionRequest(),
+        new DefaultMavenExecutionResult());
+  }
+}
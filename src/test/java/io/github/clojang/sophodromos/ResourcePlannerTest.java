@@ -0,0 +1,85 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for planning concurrent test JVMs from cgroup limits and recorded RSS. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class ResourcePlannerTest {
+
+  private static final long GIB = 1024L * 1024 * 1024;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void takesLowestLimitOfOwnCgroupAndAncestors() throws IOException {
+    final Path cgroup = folder.newFolder("cgroup").toPath();
+    final Path proc = folder.newFolder("proc").toPath();
+    write(proc.resolve("self/cgroup"), "0::/kubepods/pod1\n");
+    write(cgroup.resolve("kubepods/cpu.max"), "max 100000\n");
+    write(cgroup.resolve("kubepods/memory.max"), Long.toString(8 * GIB));
+    write(cgroup.resolve("kubepods/pod1/cpu.max"), "250000 100000\n");
+    write(cgroup.resolve("kubepods/pod1/memory.max"), "max\n");
+    write(cgroup.resolve("kubepods/pod1/memory.high"), Long.toString(4 * GIB));
+
+    final ResourcePlanner.Resources resources = new ResourcePlanner(cgroup, proc).detect(16, 0L);
+    assertEquals(2.5, resources.getCpus(), 0.001);
+    assertEquals(4 * GIB, resources.getMemoryBytes());
+  }
+
+  @Test
+  public void fallsBackToProcessorsAndHostMemory() throws IOException {
+    final Path cgroup = folder.newFolder("cgroup").toPath();
+    final Path proc = folder.newFolder("proc").toPath();
+    write(proc.resolve("meminfo"), "MemTotal: 16384000 kB\nMemAvailable: 2097152 kB\n");
+
+    final ResourcePlanner.Resources resources = new ResourcePlanner(cgroup, proc).detect(4, 0L);
+    assertEquals(4.0, resources.getCpus(), 0.001);
+    assertEquals(2 * GIB, resources.getMemoryBytes());
+  }
+
+  @Test
+  public void limitsForksAndModulesByMemory() throws IOException {
+    final Path cgroup = folder.newFolder("cgroup").toPath();
+    final Path proc = folder.newFolder("proc").toPath();
+    write(cgroup.resolve("cpu.max"), "800000 100000\n");
+    write(cgroup.resolve("memory.max"), Long.toString(4 * GIB));
+    final ResourcePlanner planner = new ResourcePlanner(cgroup, proc);
+    final ResourcePlanner.Resources resources = planner.detect(8, GIB / 2);
+
+    // 3.1 GiB remain: two modules with a child Maven and two 512 MiB forks each
+    final ResourcePlanner.Plan estimated = planner.plan(resources, List.of(), GIB / 2, 2);
+    assertEquals(2, estimated.getModules());
+    assertEquals(2, estimated.getForks());
+
+    // Packed by their peaks, the 2 GiB module fits next to one of 512 MiB but not next to two
+    final ResourcePlanner.Plan recorded =
+        planner.plan(resources, List.of(GIB / 4, 2 * GIB), GIB / 2, 8);
+    assertEquals(2, recorded.getModules());
+    assertEquals(1, recorded.getForks());
+    assertEquals(2 * GIB, recorded.getForkBytes());
+
+    final ResourcePlanner.Plan budgeted =
+        planner.plan(resources.withMemoryBudget(GIB), List.of(GIB / 2), GIB / 2, 1);
+    assertEquals(1, budgeted.getForks());
+  }
+
+  @Test
+  public void sizesHeapFromPeakRss() {
+    assertEquals("-Xmx512m", ResourcePlanner.sizeMaxHeap(400L * 1024 * 1024));
+    assertEquals("-Xmx128m", ResourcePlanner.sizeMaxHeap(10L * 1024 * 1024));
+  }
+
+  private static void write(final Path file, final String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,42 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+/** Tests for coalescing the passing results of fast suites into one line per class. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class ResultCoalescerTest {
+
+  private final TestOutputFormatter formatter = new TestOutputFormatter(false, true);
+
+  @Test
+  public void coalescesResultsAboveTheThreshold() {
+    final ResultCoalescer coalescer = new ResultCoalescer(formatter, 2);
+    assertFalse(coalescer.coalesce("com.example.ATest", 1));
+    assertFalse(coalescer.coalesce("com.example.ATest", 1));
+    assertTrue(coalescer.coalesce("com.example.ATest", 3));
+    assertTrue(coalescer.coalesce("com.example.ATest", 4));
+    assertTrue(coalescer.coalesce("com.example.BTest", 5));
+
+    coalescer.flush();
+    assertEquals(
+        List.of(
+            formatter.formatPassedResults("com.example.ATest", 2, 7),
+            formatter.formatPassedResults("com.example.BTest", 1, 5)),
+        coalescer.takeReleasedLines());
+    assertEquals(List.of(), coalescer.takeReleasedLines());
+  }
+
+  @Test
+  public void showsSlowResultsOneByOne() {
+    final ResultCoalescer coalescer = new ResultCoalescer(formatter, 1_000);
+    for (int i = 0; i < 100; i++) {
+      assertFalse(coalescer.coalesce("com.example.ATest", 1));
+    }
+    assertEquals(List.of(), coalescer.takeReleasedLines());
+  }
+}
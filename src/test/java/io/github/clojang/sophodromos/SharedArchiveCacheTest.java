@@ -0,0 +1,116 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for keeping class data sharing archives of the warm JVMs. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class SharedArchiveCacheTest {
+
+  private static final String MODULE = "com.example:core";
+  private static final List<String> OPTIONS = List.of("-Xss1m");
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path directory;
+  private Path jar;
+  private SharedArchiveCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = folder.getRoot().toPath().resolve("cds");
+    jar = Files.writeString(folder.newFile("junit.jar").toPath(), "classes");
+    cache = new SharedArchiveCache(directory);
+  }
+
+  @Test
+  public void createsArchiveOnceAndReusesIt() throws Exception {
+    final SharedArchiveCache.Archive creating = cache.open(MODULE, jar.toString(), OPTIONS);
+    assertTrue(creating.isCreating());
+    final String pending = optionValue(creating, "-XX:ArchiveClassesAtExit=");
+    assertTrue(pending.endsWith(".tmp"));
+    assertNull(creating.recordFirstRun(List.of("com.example.ATest"), 1000L));
+    // What the JVM does when it exits
+    Files.writeString(Paths.get(pending), "archive");
+    creating.commit();
+
+    final SharedArchiveCache.Archive using = cache.open(MODULE, jar.toString(), OPTIONS);
+    assertFalse(using.isCreating());
+    final Path archive = Paths.get(optionValue(using, "-XX:SharedArchiveFile="));
+    assertEquals(directory, archive.getParent());
+    assertTrue(archive.getFileName().toString().endsWith(".jsa"));
+    assertEquals("archive", Files.readString(archive));
+    assertFalse(Files.exists(Paths.get(pending)));
+    assertEquals(Long.valueOf(600L), using.recordFirstRun(List.of("com.example.ATest"), 400L));
+
+    // Other tests load other classes, so their first runs are not comparable
+    final SharedArchiveCache.Archive other = cache.open(MODULE, jar.toString(), OPTIONS);
+    assertNull(other.recordFirstRun(List.of("com.example.BTest"), 400L));
+  }
+
+  @Test
+  public void replacesArchiveOfChangedClasspath() throws Exception {
+    final Path previous = create(MODULE, OPTIONS);
+    final Path otherModule = create("com.example:app", OPTIONS);
+
+    Files.writeString(jar, "recompiled classes");
+    final SharedArchiveCache.Archive changed = cache.open(MODULE, jar.toString(), OPTIONS);
+    assertTrue(changed.isCreating());
+    Files.writeString(Paths.get(optionValue(changed, "-XX:ArchiveClassesAtExit=")), "archive");
+    changed.commit();
+
+    assertFalse(Files.exists(previous));
+    assertTrue(Files.exists(otherModule));
+    assertEquals(2, listArchives().size());
+  }
+
+  @Test
+  public void namesArchiveByJvmOptions() throws Exception {
+    assertNotEquals(create(MODULE, OPTIONS), create(MODULE, List.of("-Xss2m")));
+  }
+
+  @Test
+  public void keepsNoArchiveTheJvmDidNotWrite() throws Exception {
+    final SharedArchiveCache.Archive creating = cache.open(MODULE, jar.toString(), OPTIONS);
+    creating.commit();
+    assertEquals(List.of(), listArchives());
+    assertTrue(cache.open(MODULE, jar.toString(), OPTIONS).isCreating());
+  }
+
+  private Path create(final String module, final List<String> options) throws Exception {
+    final SharedArchiveCache.Archive creating = cache.open(module, jar.toString(), options);
+    Files.writeString(Paths.get(optionValue(creating, "-XX:ArchiveClassesAtExit=")), "archive");
+    creating.commit();
+    return Paths.get(
+        optionValue(cache.open(module, jar.toString(), options), "-XX:SharedArchiveFile="));
+  }
+
+  private List<Path> listArchives() throws Exception {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(file -> file.getFileName().toString().endsWith(".jsa"))
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static String optionValue(final SharedArchiveCache.Archive archive, final String prefix) {
+    final List<String> options = archive.getJvmOptions();
+    assertEquals(1, options.size());
+    assertTrue(options.get(0).startsWith(prefix));
+    return options.get(0).substring(prefix.length());
+  }
+}
@@ -0,0 +1,126 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/** Tests for reading both streams of a child invocation to their end. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class StreamDrainTest {
+
+  private static final int LINES = 20_000;
+  private static final int LINE_LENGTH = 100;
+
+  @Test(timeout = 30_000L)
+  public void drainsLargeOutputOfBothStreams() throws Exception {
+    final Process process =
+        new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp",
+                System.getProperty("java.class.path"),
+                NoisyChild.class.getName())
+            .start();
+    final AtomicLong outputBytes = new AtomicLong();
+    final AtomicLong errorBytes = new AtomicLong();
+    final StreamDrain drain =
+        new StreamDrain(
+            process.getInputStream(),
+            process.getErrorStream(),
+            read(process.getInputStream(), outputBytes),
+            read(process.getErrorStream(), errorBytes));
+
+    // Either pipe filling up would block the child before it exits
+    assertTrue(process.waitFor(20, TimeUnit.SECONDS));
+    assertTrue(drain.awaitEnd(10_000L));
+    final long expectedBytes = (long) LINES * (LINE_LENGTH + System.lineSeparator().length());
+    assertEquals(expectedBytes, outputBytes.get());
+    assertEquals(expectedBytes, errorBytes.get());
+  }
+
+  @Test(timeout = 10_000L)
+  public void cutsOffStalledStream() throws Exception {
+    final StalledStream output = new StalledStream();
+    final StalledStream errors = new StalledStream();
+    final CompletableFuture<Void> outputDrained = new CompletableFuture<>();
+    final CompletableFuture<Void> errorsDrained = CompletableFuture.completedFuture(null);
+    final StreamDrain drain = new StreamDrain(output, errors, outputDrained, errorsDrained);
+
+    assertFalse(drain.awaitEnd(100L));
+    assertTrue(outputDrained.isDone());
+    assertTrue(output.closed.get());
+    assertTrue(errors.closed.get());
+  }
+
+  private static CompletableFuture<Void> read(final InputStream stream, final AtomicLong bytes) {
+    final CompletableFuture<Void> drained = new CompletableFuture<>();
+    final Thread reader =
+        new Thread(
+            () -> {
+              final byte[] buffer = new byte[8192];
+              try {
+                int read = stream.read(buffer);
+                while (read >= 0) {
+                  bytes.addAndGet(read);
+                  read = stream.read(buffer);
+                }
+              } catch (final IOException e) {
+                drained.completeExceptionally(e);
+              }
+              drained.complete(null);
+            });
+    reader.setDaemon(true);
+    reader.start();
+    return drained;
+  }
+
+  /** A stream of a run whose relay stalls after the child invocation exited. */
+  private static final class StalledStream extends InputStream {
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    @Override
+    public int read() {
+      throw new UnsupportedOperationException("never read");
+    }
+
+    @Override
+    public void close() {
+      closed.set(true);
+    }
+  }
+
+  /** A child writing more to both streams than their pipes hold, error output first. */
+  public static final class NoisyChild {
+    private NoisyChild() {
+      // Started as a process only
+    }
+
+    /**
+     * Writes the output.
+     *
+     * @param args ignored
+     */
+    @SuppressWarnings("PMD.SystemPrintln") // The child's output is what is tested
+    public static void main(final String[] args) {
+      final char[] chars = new char[LINE_LENGTH];
+      Arrays.fill(chars, 'x');
+      final String line = new String(chars);
+      for (final PrintStream stream : new PrintStream[] {System.err, System.out}) {
+        for (int i = 0; i < LINES; i++) {
+          stream.println(line);
+        }
+        stream.flush();
+      }
+    }
+  }
+}
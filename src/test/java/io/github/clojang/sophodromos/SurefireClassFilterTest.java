@@ -0,0 +1,44 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+/** Tests for matching test classes against Surefire's includes and excludes. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class SurefireClassFilterTest {
+
+  @Test
+  public void appliesSurefireDefaults() {
+    final SurefireClassFilter filter = new SurefireClassFilter(List.of(), List.of());
+    assertTrue(filter.matches("com.example.WidgetTest"));
+    assertTrue(filter.matches("com.example.TestWidget"));
+    assertTrue(filter.matches("WidgetTests"));
+    assertTrue(filter.matches("com.example.WidgetTestCase"));
+    assertFalse(filter.matches("com.example.WidgetIT"));
+    assertFalse(filter.matches("com.example.TestSupport$Fixture"));
+    assertFalse(filter.matches("com.example.Widget"));
+  }
+
+  @Test
+  public void replacesDefaultsWithConfiguredPatterns() {
+    final SurefireClassFilter filter =
+        new SurefireClassFilter(
+            List.of("**/*IT.java", "com.example.fast.*Check"), List.of("**/slow/**"));
+    assertTrue(filter.matches("com.example.WidgetIT"));
+    assertTrue(filter.matches("com.example.fast.WidgetCheck"));
+    assertFalse(filter.matches("com.example.WidgetTest"));
+    assertFalse(filter.matches("com.example.slow.WidgetIT"));
+    assertFalse(filter.matches("com.example.WidgetCheck"));
+  }
+
+  @Test
+  public void matchesRegularExpressionsAgainstClassFiles() {
+    final SurefireClassFilter filter =
+        new SurefireClassFilter(List.of("%regex[.*/Widget.*Spec.*]"), List.of());
+    assertTrue(filter.matches("com.example.WidgetFooSpec"));
+    assertFalse(filter.matches("com.example.GadgetSpec"));
+  }
+}
@@ -0,0 +1,97 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for choosing the Maven executable of the child invocations. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class TestLauncherTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void runsPlainMavenByDefault() {
+    for (final String setting : new String[] {null, " ", "disabled", "mvn"}) {
+      final TestLauncher launcher = TestLauncher.resolve(setting, Map.of());
+      assertEquals("mvn", launcher.getCommand());
+      assertEquals("mvn", launcher.getName());
+      assertFalse(launcher.isDaemon());
+      assertEquals(List.of(), launcher.getArguments());
+    }
+  }
+
+  @Test
+  public void findsMavenDaemonOnPath() throws Exception {
+    final Path empty = folder.newFolder("empty").toPath();
+    final Path bin = folder.newFolder("bin").toPath();
+    final Path mavenDaemon = executable(bin.resolve("mvnd"));
+    final TestLauncher launcher =
+        TestLauncher.resolve("auto", Map.of("PATH", empty + File.pathSeparator + bin));
+    assertEquals(mavenDaemon.toString(), launcher.getCommand());
+    assertEquals("mvnd", launcher.getName());
+    assertTrue(launcher.isDaemon());
+    // The child build's output is parsed as it happens, so mvnd must not buffer or format it
+    assertEquals(
+        List.of("-Dmvnd.noBuffering=true", "-Dmvnd.rawStreams=true"), launcher.getArguments());
+  }
+
+  @Test
+  public void prefersMavenDaemonHome() throws Exception {
+    final Path home = folder.newFolder("mvnd-home").toPath();
+    final Path mavenDaemon =
+        executable(Files.createDirectories(home.resolve("bin")).resolve("mvnd"));
+    final Path bin = folder.newFolder("bin").toPath();
+    executable(bin.resolve("mvnd"));
+    final TestLauncher launcher =
+        TestLauncher.resolve("mvnd", Map.of("MVND_HOME", home.toString(), "PATH", bin.toString()));
+    assertEquals(mavenDaemon.toString(), launcher.getCommand());
+  }
+
+  @Test
+  public void fallsBackToMavenWithoutMavenDaemon() throws Exception {
+    final Path bin = folder.newFolder("bin").toPath();
+    // Not executable, so not an installed mvnd
+    Files.createFile(bin.resolve("mvnd"));
+    final TestLauncher launcher = TestLauncher.resolve("auto", Map.of("PATH", bin.toString()));
+    assertEquals("mvn", launcher.getCommand());
+    assertFalse(launcher.isDaemon());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsRequiredMavenDaemonThatIsMissing() {
+    TestLauncher.resolve("mvnd", Map.of());
+  }
+
+  @Test
+  public void runsConfiguredExecutable() throws Exception {
+    final Path wrapper = executable(folder.getRoot().toPath().resolve("mvnw"));
+    final TestLauncher launcher = TestLauncher.resolve(wrapper.toString(), Map.of());
+    assertEquals(wrapper.toAbsolutePath().toString(), launcher.getCommand());
+    assertEquals("mvn", launcher.getName());
+    assertFalse(launcher.isDaemon());
+
+    final Path mavenDaemon = executable(folder.getRoot().toPath().resolve("mvnd-1.0"));
+    assertTrue(TestLauncher.resolve(mavenDaemon.toString(), Map.of()).isDaemon());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsConfiguredFileThatIsNotExecutable() throws Exception {
+    TestLauncher.resolve(folder.newFile("mvn.txt").getPath(), Map.of());
+  }
+
+  private static Path executable(final Path path) throws Exception {
+    return Files.createFile(
+        path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwxr-xr-x")));
+  }
+}
@@ -0,0 +1,114 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.Test;
+
+/** Tests for running the tests of reactor modules in the background. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class TestPipelineTest {
+
+  @Test(timeout = 10_000L)
+  public void awaitsResultsInTheOrderModulesStarted() throws Exception {
+    final MavenSession session = session();
+    final TestExecutionResult slow = new TestExecutionResult();
+    final TestExecutionResult fast = new TestExecutionResult();
+    final CountDownLatch fastDone = new CountDownLatch(1);
+    new TestPipeline(session)
+        .submit(
+            "com.example:slow",
+            3,
+            () -> {
+              fastDone.await();
+              return slow;
+            });
+    new TestPipeline(session)
+        .submit(
+            "com.example:fast",
+            3,
+            () -> {
+              fastDone.countDown();
+              return fast;
+            });
+    new TestPipeline(session).submit("com.example:skipped", 3, () -> null);
+
+    final Map<String, TestExecutionResult> results = new TestPipeline(session).awaitAll();
+    assertEquals(List.of("com.example:slow", "com.example:fast"), List.copyOf(results.keySet()));
+    assertSame(slow, results.get("com.example:slow"));
+    assertSame(fast, results.get("com.example:fast"));
+    assertEquals(Map.of(), new TestPipeline(session).awaitAll());
+  }
+
+  @Test(timeout = 10_000L)
+  public void reportsModuleThatFailedToRun() throws Exception {
+    final MavenSession session = session();
+    final IllegalStateException failure = new IllegalStateException("no forks");
+    new TestPipeline(session).submit("com.example:ok", 1, TestExecutionResult::new);
+    new TestPipeline(session)
+        .submit(
+            "com.example:broken",
+            1,
+            () -> {
+              throw failure;
+            });
+    try {
+      new TestPipeline(session).awaitAll();
+      fail("A module that failed to run must fail the build");
+    } catch (final IOException e) {
+      assertEquals("The tests of com.example:broken failed to run", e.getMessage());
+      assertSame(failure, e.getCause());
+    }
+  }
+
+  @Test(timeout = 10_000L)
+  public void awaitsRunningModulesQuietly() throws Exception {
+    final MavenSession session = session();
+    final AtomicBoolean finished = new AtomicBoolean();
+    new TestPipeline(session)
+        .submit(
+            "com.example:broken",
+            2,
+            () -> {
+              throw new IOException("no forks");
+            });
+    new TestPipeline(session)
+        .submit(
+            "com.example:slow",
+            2,
+            () -> {
+              TimeUnit.MILLISECONDS.sleep(200);
+              finished.set(true);
+              return new TestExecutionResult();
+            });
+
+    TestPipeline.awaitQuietly(session);
+    assertTrue(finished.get());
+  }
+
+  @Test
+  public void awaitsNothingWithoutPipeline() {
+    TestPipeline.awaitQuietly(session());
+  }
+
+  @SuppressWarnings("deprecation") // Maven injects sessions; tests have only this constructor
+  private static MavenSession session() {
+    return new MavenSession(
+        null,
+        new DefaultRepositorySystemSession(),
+        new DefaultMavenExecutionRequest(),
+        new DefaultMavenExecutionResult());
+  }
+}
@@ -0,0 +1,74 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for planning the child invocations of a module's test classes. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class TestRunPlannerTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void runsRemainderOfFailedFirstWithoutExcludedClasses() throws IOException {
+    final Path testClasses = folder.newFolder("test-classes").toPath();
+    for (final String name : List.of("ChangedTest", "StableTest", "DatabaseIntegrationTest")) {
+      write(testClasses.resolve("com/example/" + name + ".class"), name);
+    }
+    final MavenProject project = new MavenProject();
+    project.setFile(folder.getRoot().toPath().resolve("pom.xml").toFile());
+    project.getBuild().setTestOutputDirectory(testClasses.toString());
+    project.getBuild().addPlugin(surefireExcluding("**/*IntegrationTest.java"));
+
+    // StableTest passed last time and did not change since, so ChangedTest runs first
+    final TestHistoryStore store =
+        new TestHistoryStore(folder.newFolder("history").toPath(), new SystemStreamLog());
+    final Map<String, String> hashes = new ClassFileHasher().hashClassDirectory(testClasses);
+    final TestHistoryStore.ModuleHistory history = store.load();
+    history
+        .getOrCreateTestClass("com.example.StableTest")
+        .setClassHash(hashes.get("com.example.StableTest"));
+    store.save(history);
+
+    final List<TestSelection> selections =
+        new TestRunPlanner(project, store, "failedfirst", new SystemStreamLog()).planSelections();
+    assertEquals(2, selections.size());
+    assertEquals(List.of("com.example.ChangedTest"), selections.get(0).getIncludes());
+    assertEquals(List.of("com.example.StableTest"), selections.get(1).getIncludes());
+    assertEquals(
+        List.of("-Dtest=com.example.StableTest", "-Dsurefire.failIfNoSpecifiedTests=false"),
+        selections.get(1).toSurefireArguments());
+  }
+
+  private static Plugin surefireExcluding(final String pattern) {
+    final Xpp3Dom exclude = new Xpp3Dom("exclude");
+    exclude.setValue(pattern);
+    final Xpp3Dom excludes = new Xpp3Dom("excludes");
+    excludes.addChild(exclude);
+    final Xpp3Dom configuration = new Xpp3Dom("configuration");
+    configuration.addChild(excludes);
+    final Plugin surefire = new Plugin();
+    surefire.setGroupId("org.apache.maven.plugins");
+    surefire.setArtifactId("maven-surefire-plugin");
+    surefire.setConfiguration(configuration);
+    return surefire;
+  }
+
+  private static void write(final Path file, final String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+  }
+}
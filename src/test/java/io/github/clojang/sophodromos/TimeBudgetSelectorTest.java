@@ -0,0 +1,35 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/** Tests for choosing test classes within a time budget. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class TimeBudgetSelectorTest {
+
+  @Test
+  public void prefersValueOverCount() {
+    // Two cheap classes are worth less than the slow class that is likely to fail
+    final List<String> selected =
+        new TimeBudgetSelector(10_000L)
+            .select(
+                List.of("FastTest", "OtherFastTest", "SlowTest"),
+                Map.of("FastTest", 4_000L, "OtherFastTest", 4_000L, "SlowTest", 9_000L),
+                Map.of("FastTest", 0.1, "OtherFastTest", 0.1, "SlowTest", 0.9));
+    assertEquals(List.of("SlowTest"), selected);
+  }
+
+  @Test
+  public void keepsGivenOrderAndStaysWithinBudget() {
+    final List<String> selected =
+        new TimeBudgetSelector(10_000L)
+            .select(
+                List.of("ATest", "BTest", "CTest"),
+                Map.of("ATest", 5_000L, "BTest", 6_000L, "CTest", 5_000L),
+                Map.of("ATest", 0.5, "BTest", 0.5, "CTest", 0.5));
+    assertEquals(List.of("ATest", "CTest"), selected);
+  }
+}
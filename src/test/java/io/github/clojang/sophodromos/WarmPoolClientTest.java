@@ -0,0 +1,25 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import org.junit.Test;
+
+/** Tests for preparing the runs of the warm JVM pool. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class WarmPoolClientTest {
+
+  @Test
+  public void tokenizesArgLineLikeSurefire() {
+    assertEquals(
+        List.of("-Xmx1g", "-Dfoo=a b", "-Dbar=c d", "-ea"),
+        WarmPoolClient.tokenizeArgLine("  -Xmx1g -Dfoo=\"a b\"\t'-Dbar=c d'   -ea "));
+    assertEquals(List.of("-Dempty="), WarmPoolClient.tokenizeArgLine("-Dempty=\"\""));
+    assertEquals(List.of(), WarmPoolClient.tokenizeArgLine("   "));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnbalancedQuotes() {
+    WarmPoolClient.tokenizeArgLine("-Dfoo=\"a b");
+  }
+}
@@ -0,0 +1,105 @@
+package io.github.clojang.sophodromos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for running test classes in the warm JVMs of the pool daemon. */
+@SuppressWarnings({"PMD.AtLeastOneConstructor", "PMD.JUnitTestContainsTooManyAsserts"})
+public class WarmPoolDaemonTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test(timeout = 60_000L)
+  public void disconnectingClientStopsHungWorker() throws Exception {
+    final Path directory = folder.getRoot().toPath();
+    final Path socketPath = directory.resolve("pool.sock");
+    final String classpath = System.getProperty("java.class.path");
+    final Process daemon =
+        new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp",
+                classpath,
+                WarmPoolDaemon.class.getName(),
+                socketPath.toString())
+            .redirectErrorStream(true)
+            .redirectOutput(directory.resolve("pool.log").toFile())
+            .start();
+    try {
+      while (!Files.exists(socketPath)) {
+        Thread.sleep(50);
+      }
+      final Path started = directory.resolve("started");
+      final WarmPoolDaemon.Request request =
+          new WarmPoolDaemon.Request(
+              "com.example:hung",
+              directory.toString(),
+              classpath,
+              "",
+              List.of("-D" + HungTest.MARKER + "=" + started),
+              64,
+              256,
+              60_000L,
+              false,
+              List.of(HungTest.class.getName()));
+      try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+        final Writer writer =
+            new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+        writer.write(request.toLine() + '\n');
+        writer.flush();
+        final BufferedReader reader =
+            new BufferedReader(
+                new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+        assertEquals(WarmPoolDaemon.STATUS_OK, reader.readLine());
+        while (!Files.exists(started)) {
+          Thread.sleep(50);
+        }
+        assertFalse(daemon.descendants().findAny().isEmpty());
+      }
+
+      // What destroying the pooled process does once the run exceeds its timeout
+      while (daemon.descendants().anyMatch(ProcessHandle::isAlive)) {
+        Thread.sleep(50);
+      }
+    } finally {
+      daemon.destroyForcibly();
+      daemon.waitFor(10, TimeUnit.SECONDS);
+    }
+  }
+
+  /** A test class that hangs while it is loaded, after recording that it started. */
+  public static final class HungTest {
+    /** System property naming the file created when the class starts. */
+    static final String MARKER = "hung.started";
+
+    static {
+      try {
+        Files.createFile(Paths.get(System.getProperty(MARKER)));
+        Thread.sleep(Long.MAX_VALUE);
+      } catch (final IOException | InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private HungTest() {
+      // Loaded by the warm JVM only
+    }
+  }
+}